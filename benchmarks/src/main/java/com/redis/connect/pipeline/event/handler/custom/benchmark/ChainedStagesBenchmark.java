@@ -0,0 +1,143 @@
+package com.redis.connect.pipeline.event.handler.custom.benchmark;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.Sequence;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.EventHandlerGroup;
+import com.lmax.disruptor.dsl.ProducerType;
+import com.lmax.disruptor.util.DaemonThreadFactory;
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import com.redis.connect.pipeline.event.handler.custom.impl.CompositeStage;
+import com.redis.connect.pipeline.event.handler.custom.parallel.ParallelStageHandler;
+import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The same list of stages wired into a real disruptor either as one handler per stage ({@code CHAINED}, the way a job
+ * pipeline lists them) or as a single {@code COMPOSITE} handler, each followed by a sink stub that only records the
+ * sequence it reached.
+ * <ul>
+ *     <li>{@link #publish()} measures steady-state throughput: the publisher is only held back by a full ring.</li>
+ *     <li>{@link #roundTrip()} publishes one event and waits for the sink, i.e. the latency of every hop plus the
+ *     work of the stages.</li>
+ * </ul>
+ * The difference between the two wirings is the cost of the extra ring buffer hops and consumer threads. With
+ * {@code workers} above 1, each chained stage runs on a key-sharded worker pool instead.
+ * <pre>
+ * java -jar target/benchmarks.jar ChainedStagesBenchmark
+ * java -jar target/benchmarks.jar ChainedStagesBenchmark -p stages=TO_UPPER_CASE,FILTER_ROUTE,METADATA_ENRICHMENT
+ * java -jar target/benchmarks.jar ChainedStagesBenchmark.publish -p stages=TRANSFORM_LOB_TO_JSON -p wiring=CHAINED -p lobBytes=65536 -p workers=1,4
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChainedStagesBenchmark {
+
+    public enum Wiring {
+        CHAINED, COMPOSITE
+    }
+
+    @Param({"TO_UPPER_CASE,GABS_CHANGE_EVENT_OPERATION_STAGE"})
+    public String stages;
+
+    @Param({"CHAINED", "COMPOSITE"})
+    public Wiring wiring;
+
+    @Param({"16"})
+    public int rowWidth;
+
+    @Param({"0"})
+    public int lobBytes;
+
+    @Param({"8192"})
+    public int ringSize;
+
+    /** parallel.workers of every stage, more than 1 runs each stage on a key-sharded worker pool. */
+    @Param({"1"})
+    public int workers;
+
+    private SyntheticChangeEvents events;
+    private Disruptor<ChangeEventDTO> disruptor;
+    private RingBuffer<ChangeEventDTO> ringBuffer;
+    private final Sequence sinkSequence = new Sequence();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        events = new SyntheticChangeEvents(rowWidth, lobBytes, "C=10,U=85,D=5", 1);
+        Map<String, String> parallel = Map.of(ParallelStageHandler.CUSTOM_CONFIG_WORKERS, String.valueOf(workers));
+
+        List<BaseCustomStageHandler> handlers = new ArrayList<>();
+        if (wiring == Wiring.COMPOSITE) {
+            handlers.add(StageFixtures.instantiate("COMPOSITE", events, Map.of(CompositeStage.CUSTOM_CONFIG_STAGES, stages)));
+        } else {
+            for (String stageName : CustomStageConfiguration.splitList(stages))
+                handlers.add(StageFixtures.instantiate(stageName, events, parallel));
+        }
+
+        disruptor = new Disruptor<>(ChangeEventDTO::new, ringSize, DaemonThreadFactory.INSTANCE,
+                ProducerType.SINGLE, new YieldingWaitStrategy());
+        EventHandlerGroup<ChangeEventDTO> group = disruptor.handleEventsWith(handlers.get(0));
+        for (int i = 1; i < handlers.size(); i++)
+            group = group.then(handlers.get(i));
+        EventHandler<ChangeEventDTO> sink = (changeEvent, sequence, endOfBatch) -> sinkSequence.set(sequence);
+        group.then(sink);
+        ringBuffer = disruptor.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        disruptor.shutdown();
+    }
+
+    @Benchmark
+    public long publish() {
+        return publishNext();
+    }
+
+    @Benchmark
+    public long roundTrip() {
+        long sequence = publishNext();
+        // Yield like the consumers do, so the benchmark also runs on machines with fewer cores than threads
+        while (sinkSequence.get() < sequence)
+            Thread.yield();
+        return sequence;
+    }
+
+    private long publishNext() {
+        ChangeEventDTO template = events.next();
+        long sequence = ringBuffer.next();
+        ChangeEventDTO changeEvent = ringBuffer.get(sequence);
+        changeEvent.setSchemaAndTableName(template.getSchemaAndTableName());
+        changeEvent.setOperation(template.getOperation());
+        changeEvent.setKey(template.getKey());
+        changeEvent.setValues(template.getValues());
+        changeEvent.setValueBlob(template.getValueBlob());
+        changeEvent.setValid(true);
+        ringBuffer.publish(sequence);
+        return sequence;
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.redis.connect.pipeline.event.handler.custom.benchmark;
+
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code onEvent} hot path of every in-process stage registered in the factory. {@link #baseline()} measures the
+ * synthetic event copy alone so it can be subtracted from {@link #onEvent()}. Every event is handed over as its own
+ * disruptor batch, so {@code COALESCE_KEYS} pays for a window per event and coalesces nothing (see
+ * {@link KeyCoalescingBenchmark}), and {@code SUPPRESS_UNCHANGED_UPDATES} runs without its {@code COMMIT} stage, so
+ * it compares every update and suppresses none. The stages that call a server are left out: the HTTP stages run in
+ * {@link HttpStageBenchmark}, {@code REFERENCE_JOIN} and {@code REDIS_JSON_WRITER} need a Redis server.
+ * <pre>
+ * java -jar target/benchmarks.jar CustomStageBenchmark -prof gc
+ * java -jar target/benchmarks.jar CustomStageBenchmark -p stageName=TRANSFORM_LOB_TO_JSON -p lobBytes=0,4096,262144
+ * java -jar target/benchmarks.jar CustomStageBenchmark.onEvent -p stageName=FILTER_ROUTE -p instrumented=false,true
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomStageBenchmark {
+
+    @Param({"TO_UPPER_CASE", "VALUE_TO_DELIMITED_STRING", "TRANSFORM_LOB_TO_JSON", "GEMFIRE_HASH_PREP_STAGE",
+            "OBJECT_TO_MAP_STAGE", "GABS_CHANGE_EVENT_OPERATION_STAGE", "FILTER_ROUTE", "COLUMN_TRANSFORM", "COERCE_TYPES", "METADATA_ENRICHMENT",
+            "LAG_TRACKER", "COALESCE_KEYS", "SUPPRESS_UNCHANGED_UPDATES", "HANDOFF_DEDUP"})
+    public String stageName;
+
+    @Param({"8", "64"})
+    public int rowWidth;
+
+    @Param({"1024"})
+    public int lobBytes;
+
+    @Param({"C=10,U=85,D=5"})
+    public String operationMix;
+
+    @Param({"1", "16"})
+    public int tableCount;
+
+    /** Wraps the stage in the metrics decorator, as the factory does unless metrics.instrumentation.enabled is false. */
+    @Param({"true"})
+    public boolean instrumented;
+
+    private SyntheticChangeEvents events;
+    private BaseCustomStageHandler stage;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        events = new SyntheticChangeEvents(rowWidth, lobBytes, operationMix, tableCount);
+        stage = StageFixtures.create(stageName, events, Map.of("metrics.instrumentation.enabled", String.valueOf(instrumented)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stage.onShutdown();
+    }
+
+    @Benchmark
+    public ChangeEventDTO baseline() {
+        return events.next();
+    }
+
+    @Benchmark
+    public ChangeEventDTO onEvent() throws Exception {
+        ChangeEventDTO changeEvent = events.next();
+        stage.onEvent(changeEvent, sequence++, true);
+        return changeEvent;
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.redis.connect.pipeline.event.handler.custom.benchmark;
+
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Stages that call out over HTTP, measured against an in-process stub server on the loopback interface so that the
+ * numbers reflect client side cost (serialization, connection reuse, batching, caching) rather than a remote service.
+ * <p>
+ * Every invocation signals end of batch, which makes batched and async modes flush per event; use
+ * {@code -p batchSize} to hand them realistic disruptor batches.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// Without TCP_NODELAY the stub server's separate header and body writes stall on delayed ACKs (~40 ms per request)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class HttpStageBenchmark {
+
+    @Param({"FORWARD_HEC_REQUEST", "CALLBACK_HTTP_REQUEST"})
+    public String stageName;
+
+    /** Enables splunk.batch.enabled, callback.async.enabled and callback.cache.enabled respectively. */
+    @Param({"false", "true"})
+    public boolean optimized;
+
+    @Param({"16"})
+    public int rowWidth;
+
+    @Param({"64"})
+    public int batchSize;
+
+    // Splunk HEC expects its request headers as a JSON column of the event
+    private static final String HTTP_HEADERS = "{\"Authorization\":[\"Splunk 00000000-0000-0000-0000-000000000000\"],\"Content-Type\":[\"application/json\"]}";
+
+    private HttpServer server;
+    private SyntheticChangeEvents events;
+    private BaseCustomStageHandler stage;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        byte[] clientBody = "{\"tier\":\"gold\",\"region\":\"emea\"}".getBytes(StandardCharsets.UTF_8);
+        byte[] hecBody = "{\"text\":\"Success\",\"code\":0}".getBytes(StandardCharsets.UTF_8);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.createContext("/", exchange -> {
+            try (InputStream request = exchange.getRequestBody()) {
+                request.transferTo(OutputStream.nullOutputStream());
+            }
+            byte[] body = exchange.getRequestURI().getPath().startsWith("/clients/") ? clientBody : hecBody;
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream response = exchange.getResponseBody()) {
+                response.write(body);
+            }
+        });
+        server.start();
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        Map<String, String> configuration = new HashMap<>();
+        configuration.put("splunk.destination.url", baseUrl + "/services/collector/event");
+        configuration.put("callback.url", baseUrl + "/clients");
+        if (optimized) {
+            configuration.put("splunk.batch.enabled", "true");
+            configuration.put("callback.async.enabled", "true");
+            configuration.put("callback.cache.enabled", "true");
+        }
+
+        events = new SyntheticChangeEvents(rowWidth, 0, "U", 1);
+        stage = StageFixtures.create(stageName, events, configuration);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stage.onShutdown();
+        server.stop(0);
+        ((java.util.concurrent.ExecutorService) server.getExecutor()).shutdownNow();
+    }
+
+    @Benchmark
+    public ChangeEventDTO onEvent() throws Exception {
+        ChangeEventDTO changeEvent = events.next();
+        changeEvent.getValues().put("httpHeaders", HTTP_HEADERS);
+        long current = sequence++;
+        stage.onEvent(changeEvent, current, (current + 1) % batchSize == 0);
+        return changeEvent;
+    }
+
+}
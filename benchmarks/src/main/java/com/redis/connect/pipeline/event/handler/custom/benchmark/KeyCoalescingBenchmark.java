@@ -0,0 +1,85 @@
+package com.redis.connect.pipeline.event.handler.custom.benchmark;
+
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.pipeline.event.handler.custom.impl.KeyCoalescingStage;
+import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Events per second through {@code COALESCE_KEYS}, in disruptor batches of 1024 events whose keys are drawn from
+ * {@code distinctKeys} rows: a few hot rows coalesce most events away, millions of rows almost none, which is the
+ * cost of the stage when it has nothing to do.
+ * <pre>
+ * java -jar target/benchmarks.jar KeyCoalescingBenchmark -prof gc
+ * java -jar target/benchmarks.jar KeyCoalescingBenchmark -p distinctKeys=16 -p windowEvents=64,1024
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeyCoalescingBenchmark {
+
+    private static final int BATCH_SIZE = 1024;
+    private static final int KEY_RING_SIZE = 1 << 16;
+
+    @Param({"16", "1024", "1048576"})
+    public int distinctKeys;
+
+    @Param({"1024"})
+    public int windowEvents;
+
+    private SyntheticChangeEvents events;
+    private BaseCustomStageHandler stage;
+    private final String[] keys = new String[KEY_RING_SIZE];
+    private int position;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        events = new SyntheticChangeEvents(16, 0, "C=10,U=85,D=5", 1);
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < KEY_RING_SIZE; i++)
+            keys[i] = "CHINOOK.TRACK:" + random.nextInt(distinctKeys);
+
+        stage = StageFixtures.create("COALESCE_KEYS", events, Map.of(
+                KeyCoalescingStage.CUSTOM_CONFIG_WINDOW_EVENTS, String.valueOf(windowEvents),
+                KeyCoalescingStage.CUSTOM_CONFIG_WINDOW_MS, "0"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stage.onShutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void events(Blackhole blackhole) throws Exception {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            ChangeEventDTO changeEvent = events.next();
+            changeEvent.setKey(keys[position++ & (KEY_RING_SIZE - 1)]);
+            stage.onEvent(changeEvent, sequence++, i == BATCH_SIZE - 1);
+            blackhole.consume(changeEvent);
+        }
+    }
+
+}
@@ -0,0 +1,218 @@
+package com.redis.connect.pipeline.event.handler.custom.benchmark;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import com.lmax.disruptor.util.DaemonThreadFactory;
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.pipeline.event.handler.custom.lag.LagMetrics;
+import com.redis.connect.pipeline.event.handler.custom.lag.TableLagView;
+import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Offline, reproducible replication lag measurement. Synthetic change events are published into a real disruptor
+ * wired like a Redis Connect job: {@code LAG_TRACKER (STAGE)} &rarr; sink &rarr; {@code LAG_TRACKER (SINK_ACK)}.
+ * The sink is an in-memory stub that spins for {@code --sink-micros} per flush to model the Redis round trip, or, with
+ * {@code --redis-url}, writes the rows as hashes to a real Redis and waits for the replies. {@code --partitions} runs
+ * several such disruptors side by side, events are dealt to them round robin.
+ * <pre>
+ * java -cp target/benchmarks.jar com.redis.connect.pipeline.event.handler.custom.benchmark.LagReplayHarness \
+ *      --events 1000000 --rate 50000 --sink-micros 250 --commit-delay-ms 5 --tables 4
+ * </pre>
+ */
+public final class LagReplayHarness {
+
+    private LagReplayHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = options(args);
+        long eventCount = Long.parseLong(options.getOrDefault("events", "1000000"));
+        long rate = Long.parseLong(options.getOrDefault("rate", "0"));
+        long sinkMicros = Long.parseLong(options.getOrDefault("sink-micros", "200"));
+        int sinkBatch = Integer.parseInt(options.getOrDefault("sink-batch", "500"));
+        long commitDelayMs = Long.parseLong(options.getOrDefault("commit-delay-ms", "0"));
+        int tables = Integer.parseInt(options.getOrDefault("tables", "1"));
+        int rowWidth = Integer.parseInt(options.getOrDefault("row-width", "16"));
+        int ringSize = Integer.parseInt(options.getOrDefault("ring-size", "16384"));
+        int partitions = Integer.parseInt(options.getOrDefault("partitions", "1"));
+        String redisUrl = options.get("redis-url");
+
+        SyntheticChangeEvents events = new SyntheticChangeEvents(rowWidth, 0, "C=10,U=85,D=5", tables);
+        List<Disruptor<ChangeEventDTO>> disruptors = new ArrayList<>();
+        List<RingBuffer<ChangeEventDTO>> ringBuffers = new ArrayList<>();
+        List<EventHandler<ChangeEventDTO>> sinks = new ArrayList<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            BaseCustomStageHandler stamp = StageFixtures.instantiate("LAG_TRACKER", events,
+                    Map.of("lag.mode", "STAGE", "lag.timeline.size", String.valueOf(ringSize)));
+            BaseCustomStageHandler acknowledge = StageFixtures.instantiate("LAG_TRACKER", events,
+                    Map.of("lag.mode", "SINK_ACK", "lag.timeline.size", String.valueOf(ringSize)));
+            EventHandler<ChangeEventDTO> sink = redisUrl == null ? new StubSink(sinkBatch, sinkMicros) : new RedisHashSink(redisUrl, sinkBatch);
+
+            Disruptor<ChangeEventDTO> disruptor = new Disruptor<>(ChangeEventDTO::new, ringSize, DaemonThreadFactory.INSTANCE,
+                    ProducerType.SINGLE, new YieldingWaitStrategy());
+            disruptor.handleEventsWith(stamp).then(sink).then(acknowledge);
+            ringBuffers.add(disruptor.start());
+            disruptors.add(disruptor);
+            sinks.add(sink);
+        }
+
+        // Keep a reference so the metrics outlive the stages' shutdown
+        LagMetrics metrics = LagMetrics.acquire(StageFixtures.JOB_ID);
+        long intervalNanos = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+        long start = System.nanoTime();
+        for (long i = 0; i < eventCount; i++) {
+            if (intervalNanos > 0) {
+                long due = start + i * intervalNanos;
+                while (System.nanoTime() < due)
+                    Thread.onSpinWait();
+            }
+            ChangeEventDTO template = events.next();
+            ringBuffers.get((int) (i % partitions)).publishEvent((changeEvent, sequence, source) -> {
+                long now = System.currentTimeMillis();
+                changeEvent.setSchemaAndTableName(source.getSchemaAndTableName());
+                changeEvent.setOperation(source.getOperation());
+                changeEvent.setKey(source.getKey());
+                changeEvent.setValues(source.getValues());
+                changeEvent.setValid(true);
+                changeEvent.setSourceTxSequence(source.getSourceTxSequence());
+                changeEvent.setSourceTxTime(now - commitDelayMs);
+                changeEvent.setPublishPipelineTime(now);
+            }, template);
+        }
+        disruptors.forEach(Disruptor::shutdown);
+        long elapsedNanos = System.nanoTime() - start;
+
+        System.out.printf("Replayed %d events in %.1f ms (%.0f events/s), sink: %s%n", eventCount, elapsedNanos / 1e6,
+                eventCount * 1e9 / elapsedNanos, partitions + " x " + sinks.get(0));
+        for (TableLagView table : metrics.getTables())
+            System.out.println(table);
+        System.out.println("Missing stamps (timeline too small): " + metrics.getMissingStamps());
+        metrics.release();
+    }
+
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--"))
+                throw new IllegalArgumentException("Expected --option value pairs but got " + args[i]);
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    /**
+     * Keeps the latest row per key in memory and models a pipelined Redis round trip per flush.
+     */
+    private static final class StubSink implements EventHandler<ChangeEventDTO> {
+
+        private final Map<String, Map<String, Object>> rows = new HashMap<>();
+        private final int batchSize;
+        private final long roundTripNanos;
+        private int pending;
+
+        StubSink(int batchSize, long roundTripMicros) {
+            this.batchSize = batchSize;
+            this.roundTripNanos = TimeUnit.MICROSECONDS.toNanos(roundTripMicros);
+        }
+
+        @Override
+        public void onEvent(ChangeEventDTO changeEvent, long sequence, boolean endOfBatch) {
+            if (changeEvent.isValid()) {
+                if ("D".equals(changeEvent.getOperation()))
+                    rows.remove(changeEvent.getKey());
+                else
+                    rows.put(changeEvent.getKey(), changeEvent.getValues());
+                pending++;
+            }
+            if (pending > 0 && (endOfBatch || pending >= batchSize)) {
+                long due = System.nanoTime() + roundTripNanos;
+                while (System.nanoTime() < due)
+                    Thread.onSpinWait();
+                pending = 0;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "stub (" + TimeUnit.NANOSECONDS.toMicros(roundTripNanos) + " us per flush of up to " + batchSize + " events)";
+        }
+
+    }
+
+    /**
+     * Writes rows as hashes to a real Redis, pipelining a batch and waiting for every reply before releasing it.
+     */
+    private static final class RedisHashSink implements EventHandler<ChangeEventDTO> {
+
+        private final String redisUrl;
+        private final int batchSize;
+        private final List<RedisFuture<?>> pending = new ArrayList<>();
+        private RedisClient client;
+        private StatefulRedisConnection<String, String> connection;
+        private RedisAsyncCommands<String, String> commands;
+
+        RedisHashSink(String redisUrl, int batchSize) {
+            this.redisUrl = redisUrl;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public void onStart() {
+            client = RedisClient.create(redisUrl);
+            connection = client.connect();
+            connection.setAutoFlushCommands(false);
+            commands = connection.async();
+        }
+
+        @Override
+        public void onEvent(ChangeEventDTO changeEvent, long sequence, boolean endOfBatch) {
+            if (changeEvent.isValid()) {
+                String key = "lag-replay:" + changeEvent.getKey();
+                if ("D".equals(changeEvent.getOperation())) {
+                    pending.add(commands.del(key));
+                } else {
+                    Map<String, String> hash = new HashMap<>();
+                    changeEvent.getValues().forEach((column, value) -> {
+                        if (value != null)
+                            hash.put(column, value.toString());
+                    });
+                    pending.add(commands.hset(key, hash));
+                }
+            }
+            if (!pending.isEmpty() && (endOfBatch || pending.size() >= batchSize)) {
+                connection.flushCommands();
+                if (!LettuceFutures.awaitAll(Duration.ofSeconds(10), pending.toArray(new RedisFuture<?>[0])))
+                    LockSupport.parkNanos(1);
+                pending.clear();
+            }
+        }
+
+        @Override
+        public void onShutdown() {
+            connection.close();
+            client.shutdown();
+        }
+
+        @Override
+        public String toString() {
+            return redisUrl + " (pipelines of up to " + batchSize + " HSET/DEL)";
+        }
+
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.redis.connect.pipeline.event.handler.custom.benchmark;
+
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.pipeline.event.handler.custom.impl.CompositeStage;
+import com.redis.connect.pipeline.event.handler.custom.load.LoadMode;
+import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Rows per second of stages during an initial load, the way the disruptor hands them a load partition: full batches of
+ * inserts of one table, {@code onBatchStart} first and {@code endOfBatch} on the last event. {@code jobType=STREAM}
+ * runs the same rows through the streaming path, {@code jobType=LOAD} through the {@link LoadMode} fast path.
+ * <pre>
+ * java -jar target/benchmarks.jar LoadModeBenchmark -prof gc
+ * java -jar target/benchmarks.jar LoadModeBenchmark -p stages=METADATA_ENRICHMENT -p microBatchSize=1,64,1024
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadModeBenchmark {
+
+    private static final int BATCH_SIZE = 1024;
+
+    /** A single stage, or several run as one COMPOSITE stage. */
+    @Param({"GABS_CHANGE_EVENT_OPERATION_STAGE", "METADATA_ENRICHMENT", "VALUE_TO_DELIMITED_STRING",
+            "TO_UPPER_CASE,VALUE_TO_DELIMITED_STRING,METADATA_ENRICHMENT"})
+    public String stages;
+
+    @Param({"STREAM", "LOAD"})
+    public String jobType;
+
+    @Param({"256"})
+    public int microBatchSize;
+
+    @Param({"16"})
+    public int rowWidth;
+
+    private SyntheticChangeEvents events;
+    private BaseCustomStageHandler stage;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // Initial load partitions read committed rows of one table
+        events = new SyntheticChangeEvents(rowWidth, 0, "C=1", 1);
+
+        Map<String, String> configuration = new HashMap<>();
+        configuration.put(LoadMode.CUSTOM_CONFIG_MICRO_BATCH_SIZE, String.valueOf(microBatchSize));
+        String stageName = stages;
+        if (stages.contains(",")) {
+            configuration.put(CompositeStage.CUSTOM_CONFIG_STAGES, stages);
+            stageName = "COMPOSITE";
+        }
+        stage = StageFixtures.create(stageName, jobType, events, configuration);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stage.onShutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void rows(Blackhole blackhole) throws Exception {
+        stage.onBatchStart(BATCH_SIZE, BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            ChangeEventDTO changeEvent = events.next();
+            stage.onEvent(changeEvent, sequence++, i == BATCH_SIZE - 1);
+            blackhole.consume(changeEvent);
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.redis.connect.pipeline.event.handler.custom.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redis.connect.domain.EmployeeData;
+import com.redis.connect.domain.EmployeeKey;
+import com.redis.connect.pipeline.event.handler.custom.objectmap.ObjectMapConverter;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Gemfire value blob ({@link EmployeeData} with a nested {@link EmployeeKey}) to event values:
+ * <ul>
+ *     <li>{@link #jacksonPerEvent()} is what {@code OBJECT_TO_MAP_STAGE} used to do, a new {@code ObjectMapper} and a
+ *     {@code convertValue} per event,</li>
+ *     <li>{@link #jacksonShared()} the same with one shared {@code ObjectMapper},</li>
+ *     <li>{@link #accessorNested()} and {@link #accessorFlat()} the cached accessor plans of {@link ObjectMapConverter}.</li>
+ * </ul>
+ * <pre>
+ * java -jar target/benchmarks.jar ObjectToMapBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObjectToMapBenchmark {
+
+    private static final int EMPLOYEES = 1024;
+
+    private final EmployeeData[] employees = new EmployeeData[EMPLOYEES];
+    private final ObjectMapper sharedMapper = new ObjectMapper();
+    private final ObjectMapConverter nested = new ObjectMapConverter(ObjectMapConverter.Layout.NESTED);
+    private final ObjectMapConverter flat = new ObjectMapConverter(ObjectMapConverter.Layout.FLAT);
+    private int position;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < EMPLOYEES; i++)
+            employees[i] = new EmployeeData(new EmployeeKey("Employee " + i, 1000 + i), 50_000 + i * 10, 20 + i % 20);
+
+        // Both paths must produce the same values, otherwise the comparison is meaningless
+        Map<?, ?> expected = sharedMapper.convertValue(employees[0], Map.class);
+        Map<String, Object> actual = nested.toMap(employees[0]);
+        if (!expected.equals(actual))
+            throw new IllegalStateException("Accessor plan produced " + actual + " but Jackson produced " + expected);
+    }
+
+    private EmployeeData next() {
+        return employees[position++ & (EMPLOYEES - 1)];
+    }
+
+    @Benchmark
+    public Map<?, ?> jacksonPerEvent() {
+        ObjectMapper mapper = new ObjectMapper();
+        return mapper.convertValue(next(), Map.class);
+    }
+
+    @Benchmark
+    public Map<?, ?> jacksonShared() {
+        return sharedMapper.convertValue(next(), Map.class);
+    }
+
+    @Benchmark
+    public Map<String, Object> accessorNested() {
+        return nested.toMap(next());
+    }
+
+    @Benchmark
+    public Map<String, Object> accessorFlat() {
+        return flat.toMap(next());
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.redis.connect.pipeline.event.handler.custom.benchmark;
+
+import com.redis.connect.dto.DatabaseDTO;
+import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.pipeline.event.handler.ChangeEventHandler;
+import com.redis.connect.pipeline.event.handler.CustomChangeEventHandlerFactory;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import com.redis.connect.pipeline.event.handler.custom.impl.CompositeStage;
+import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Creates stages through {@link CustomChangeEventHandlerFactory}, exactly as Redis Connect does, with a
+ * {@code customConfiguration} that makes every stage do its real work on {@link SyntheticChangeEvents}.
+ */
+final class StageFixtures {
+
+    static final String JOB_ID = "benchmark-job";
+    static final String JOB_TYPE = "STREAM";
+
+    private StageFixtures() {
+    }
+
+    static BaseCustomStageHandler create(String stageName, SyntheticChangeEvents events, Map<String, String> extraConfiguration) throws Exception {
+        return create(stageName, JOB_TYPE, events, extraConfiguration);
+    }
+
+    /**
+     * @param jobType {@code STREAM} or {@code LOAD}, the job type Redis Connect passes to the factory
+     */
+    static BaseCustomStageHandler create(String stageName, String jobType, SyntheticChangeEvents events, Map<String, String> extraConfiguration) throws Exception {
+        if ("HANDOFF_DEDUP".equals(stageName) && !"LOAD".equals(jobType))
+            recordLoad(stageName, events, extraConfiguration);
+        BaseCustomStageHandler handler = instantiate(stageName, jobType, events, extraConfiguration);
+        // Same lifecycle callback the disruptor uses, which runs the stage init()
+        handler.onStart();
+        return handler;
+    }
+
+    /**
+     * Runs the LOAD run of the stage over every synthetic row, so that the STREAM run created next finds their SCNs and
+     * looks each event up instead of passing it through.
+     */
+    private static void recordLoad(String stageName, SyntheticChangeEvents events, Map<String, String> extraConfiguration) throws Exception {
+        BaseCustomStageHandler load = create(stageName, "LOAD", events, extraConfiguration);
+        for (int i = 0; i < SyntheticChangeEvents.RING_SIZE; i++)
+            load.onEvent(events.next(), i, true);
+        load.onShutdown();
+    }
+
+    /**
+     * Creates the stage without starting it, for use as a handler of a real disruptor which calls {@code onStart}.
+     */
+    static BaseCustomStageHandler instantiate(String stageName, SyntheticChangeEvents events, Map<String, String> extraConfiguration) throws Exception {
+        return instantiate(stageName, JOB_TYPE, events, extraConfiguration);
+    }
+
+    private static BaseCustomStageHandler instantiate(String stageName, String jobType, SyntheticChangeEvents events, Map<String, String> extraConfiguration) throws Exception {
+        Map<String, String> customConfiguration = new HashMap<>(configuration(stageName, events));
+        // A composite's sub-stages read the composite's customConfiguration
+        for (String subStageName : CustomStageConfiguration.splitList(extraConfiguration.get(CompositeStage.CUSTOM_CONFIG_STAGES)))
+            customConfiguration.putAll(configuration(subStageName, events));
+        customConfiguration.putAll(extraConfiguration);
+
+        DatabaseDTO database = new DatabaseDTO();
+        database.setCustomConfiguration(customConfiguration);
+        JobPipelineStageDTO jobPipelineStage = new JobPipelineStageDTO();
+        jobPipelineStage.setStageName(stageName);
+        jobPipelineStage.setUserDefinedType("CUSTOM");
+        jobPipelineStage.setIndex(1);
+        jobPipelineStage.setDatabase(database);
+
+        ChangeEventHandler handler = new CustomChangeEventHandlerFactory().getInstance(JOB_ID, jobType, jobPipelineStage);
+        return (BaseCustomStageHandler) handler;
+    }
+
+    private static Map<String, String> configuration(String stageName, SyntheticChangeEvents events) {
+        Map<String, String> configuration = new HashMap<>();
+        switch (stageName) {
+            case "VALUE_TO_DELIMITED_STRING" -> {
+                String columns = String.join(",", events.getColumns());
+                for (String table : events.getTables())
+                    configuration.put("delimited.columns." + table, columns);
+            }
+            case "TRANSFORM_LOB_TO_JSON" -> configuration.put("lob.columns", SyntheticChangeEvents.LOB_COLUMN);
+            case "FILTER_ROUTE" -> {
+                configuration.put("filter.rules.*.10", "GENREID IN (1, 2, 3) -> KEEP");
+                configuration.put("filter.rules.*.20", "UNITPRICE BETWEEN 0 AND 0.99 OR NAME IS NULL -> DROP");
+                configuration.put("filter.rules." + SyntheticChangeEvents.SCHEMA + ".TRACK.30", "GENREID > 20 -> DELETE");
+            }
+            case "COLUMN_TRANSFORM" -> {
+                configuration.put("transform.rules.*.10", "NAME : trim | substring(0, 16) | upper");
+                configuration.put("transform.rules.*.20", "UNITPRICE : cast(double) | default(0)");
+                configuration.put("transform.rules." + SyntheticChangeEvents.SCHEMA + ".TRACK.30", "clientId : replace('^client-', '') | rename(CLIENT_ID)");
+            }
+            case "HANDOFF_DEDUP" -> {
+                // Rows are loaded at, and streamed with, their TRACKID as SCN: every change is covered by the load
+                configuration.put("handoff.scn.column", "TRACKID");
+                configuration.put("handoff.commit.scn.column", "TRACKID");
+            }
+            case "COERCE_TYPES" -> {
+                configuration.put("coerce.types.*.GENREID", "LONG");
+                configuration.put("coerce.types.*.UNITPRICE", "DECIMAL");
+            }
+            default -> {
+            }
+        }
+        return configuration;
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.redis.connect.pipeline.event.handler.custom.benchmark;
+
+import com.redis.connect.dto.ChangeEventDTO;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static com.redis.connect.constants.DomainConstants.*;
+
+/**
+ * Deterministic stream of synthetic change events shaped like the CHINOOK.TRACK rows the sample stages were written
+ * for. A fixed ring of templates is generated up front; {@link #next()} hands out a fresh {@link ChangeEventDTO} with a
+ * copy of the template values, because stages mutate the event in place. Benchmarks subtract that copy cost with a
+ * baseline that only calls {@link #next()}.
+ */
+public final class SyntheticChangeEvents {
+
+    public static final String SCHEMA = "CHINOOK";
+    public static final String LOB_COLUMN = "PAYLOAD";
+
+    public static final int RING_SIZE = 1024;
+
+    private final List<String> tables;
+    private final List<String> columns;
+    private final ChangeEventDTO[] templates = new ChangeEventDTO[RING_SIZE];
+    private int position;
+
+    /**
+     * @param rowWidth     number of columns per row, at least the 5 key columns
+     * @param lobBytes     approximate size of the JSON document in the {@value #LOB_COLUMN} column, 0 for none
+     * @param operationMix relative weights of creates, updates and deletes, e.g. {@code C=10,U=85,D=5}
+     * @param tableCount   number of distinct tables the events are spread over
+     */
+    public SyntheticChangeEvents(int rowWidth, int lobBytes, String operationMix, int tableCount) {
+        SplittableRandom random = new SplittableRandom(42);
+
+        tables = new ArrayList<>(tableCount);
+        tables.add(SCHEMA + ".TRACK");
+        for (int i = 1; i < tableCount; i++)
+            tables.add(SCHEMA + ".TRACK_" + i);
+
+        columns = new ArrayList<>(List.of("TRACKID", "NAME", "GENREID", "clientId", "UNITPRICE"));
+        for (int i = columns.size(); i < rowWidth; i++)
+            columns.add("COL" + i);
+        if (lobBytes > 0)
+            columns.add(LOB_COLUMN);
+
+        String[] operations = operations(operationMix);
+        String lob = lobBytes > 0 ? jsonDocument(lobBytes, random) : null;
+
+        for (int i = 0; i < RING_SIZE; i++) {
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("TRACKID", i);
+            values.put("NAME", random.nextInt(10) == 0 ? null : "Track, number " + random.nextInt(100_000));
+            // Streaming delivers numbers, load delivers BigDecimal and some sources strings
+            values.put("GENREID", switch (i % 4) {
+                case 0 -> 2;
+                case 1 -> 1 + random.nextInt(25);
+                case 2 -> BigDecimal.valueOf(1 + random.nextInt(25));
+                default -> (1 + random.nextInt(25)) + ".0";
+            });
+            values.put("clientId", "client-" + random.nextInt(64));
+            values.put("UNITPRICE", BigDecimal.valueOf(random.nextInt(1000), 2));
+            for (int c = 5; c < rowWidth; c++) {
+                values.put("COL" + c, switch (c % 4) {
+                    case 0 -> random.nextLong();
+                    case 1 -> "value " + random.nextInt();
+                    case 2 -> random.nextDouble();
+                    default -> new Timestamp(1_700_000_000_000L + random.nextInt(1_000_000_000));
+                });
+            }
+            if (lob != null)
+                values.put(LOB_COLUMN, lob);
+
+            ChangeEventDTO template = new ChangeEventDTO();
+            template.setSchemaAndTableName(tables.get(i % tableCount));
+            template.setOperation(operations[random.nextInt(operations.length)]);
+            template.setKey(template.getSchemaAndTableName() + ":" + i);
+            template.setValues(values);
+            template.setValid(true);
+            template.setSourceTxSequence(1_000_000L + i);
+            template.setSourceTxTime(1_700_000_000_000L + i);
+            templates[i] = template;
+        }
+    }
+
+    public ChangeEventDTO next() {
+        ChangeEventDTO template = templates[position++ & (RING_SIZE - 1)];
+
+        ChangeEventDTO changeEvent = new ChangeEventDTO();
+        changeEvent.setSchemaAndTableName(template.getSchemaAndTableName());
+        changeEvent.setOperation(template.getOperation());
+        changeEvent.setKey(template.getKey());
+        changeEvent.setValid(true);
+        changeEvent.setSourceTxSequence(template.getSourceTxSequence());
+        changeEvent.setSourceTxTime(template.getSourceTxTime());
+        changeEvent.setPublishPipelineTime(System.currentTimeMillis());
+        Map<String, Object> values = new HashMap<>(template.getValues());
+        changeEvent.setValues(values);
+        // The Gemfire stages read the row from the value blob
+        changeEvent.setValueBlob(new HashMap<>(values));
+        return changeEvent;
+    }
+
+    public List<String> getTables() {
+        return tables;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    private static String[] operations(String operationMix) {
+        List<String> operations = new ArrayList<>();
+        for (String weight : operationMix.split(",")) {
+            String[] parts = weight.trim().split("=");
+            String operation = switch (parts[0].trim()) {
+                case "C" -> CHANGE_EVENT_DTO_OPERATION_CREATE;
+                case "U" -> CHANGE_EVENT_DTO_OPERATION_UPDATE;
+                case "D" -> CHANGE_EVENT_DTO_OPERATION_DELETE;
+                default -> throw new IllegalArgumentException("Unknown operation in mix " + operationMix);
+            };
+            for (int i = 0, n = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1; i < n; i++)
+                operations.add(operation);
+        }
+        return operations.toArray(new String[0]);
+    }
+
+    private static String jsonDocument(int bytes, SplittableRandom random) {
+        StringBuilder json = new StringBuilder(bytes + 64).append("{\"customer\":{\"id\":").append(random.nextInt(10_000))
+                .append(",\"name\":\"Synthetic customer\"},\"total\":").append(random.nextInt(100_000) / 100.0).append(",\"lines\":[");
+        for (int line = 0; json.length() < bytes; line++) {
+            if (line > 0)
+                json.append(',');
+            json.append("{\"line\":").append(line).append(",\"sku\":\"SKU-").append(random.nextInt(1_000_000))
+                    .append("\",\"quantity\":").append(1 + random.nextInt(9)).append(",\"price\":").append(random.nextInt(10_000) / 100.0).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+}
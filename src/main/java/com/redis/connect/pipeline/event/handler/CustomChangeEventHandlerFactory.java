@@ -1,10 +1,17 @@
 package com.redis.connect.pipeline.event.handler;
 
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
 import com.redis.connect.pipeline.event.handler.custom.impl.*;
+import com.redis.connect.pipeline.event.handler.custom.metrics.InstrumentedStageHandler;
+import com.redis.connect.pipeline.event.handler.custom.parallel.ParallelStageHandler;
+import com.redis.connect.pipeline.event.handler.custom.parallel.ThreadSafeStage;
+import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
 import com.redis.connect.dto.JobPipelineStageDTO;
 import com.redis.connect.exception.ValidationException;
 import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 public class CustomChangeEventHandlerFactory implements ChangeEventHandlerFactory {
@@ -18,8 +25,21 @@ public class CustomChangeEventHandlerFactory implements ChangeEventHandlerFactor
     private static final String TYPE_CALLBACK_HTTP_REQUEST_CUSTOM_STAGE = "CALLBACK_HTTP_REQUEST";
     private static final String TYPE_GEMFIRE_HASH_PREP_STAGE = "GEMFIRE_HASH_PREP_STAGE";
     private static final String TYPE_GEMFIRE_OBJECT_TO_MAP_STAGE = "OBJECT_TO_MAP_STAGE";
+    private static final String TYPE_FILTER_ROUTE_STAGE = "FILTER_ROUTE";
+    private static final String TYPE_COLUMN_TRANSFORM_STAGE = "COLUMN_TRANSFORM";
+    private static final String TYPE_COERCE_TYPES_STAGE = "COERCE_TYPES";
+    private static final String TYPE_METADATA_ENRICHMENT_STAGE = "METADATA_ENRICHMENT";
+    private static final String TYPE_LAG_TRACKER_STAGE = "LAG_TRACKER";
+    private static final String TYPE_COALESCE_KEYS_STAGE = "COALESCE_KEYS";
+    private static final String TYPE_SUPPRESS_UNCHANGED_UPDATES_STAGE = "SUPPRESS_UNCHANGED_UPDATES";
+    private static final String TYPE_HANDOFF_DEDUP_STAGE = "HANDOFF_DEDUP";
+    private static final String TYPE_REFERENCE_JOIN_STAGE = "REFERENCE_JOIN";
+    private static final String TYPE_REDIS_JSON_WRITER_STAGE = "REDIS_JSON_WRITER";
+    private static final String TYPE_COMPOSITE_STAGE = "COMPOSITE";
     private static final String TYPE_GABS_CHANGE_EVENT_OPERATION_STAGE = "GABS_CHANGE_EVENT_OPERATION_STAGE"; // This is my uber like use case
 
+    private static final String CUSTOM_CONFIG_INSTRUMENTATION_ENABLED = "metrics.instrumentation.enabled";
+
     private static final Set<String> supportedChangeEventHandlers = new HashSet<>();
 
     static {
@@ -30,13 +50,50 @@ public class CustomChangeEventHandlerFactory implements ChangeEventHandlerFactor
         supportedChangeEventHandlers.add(TYPE_CALLBACK_HTTP_REQUEST_CUSTOM_STAGE);
         supportedChangeEventHandlers.add(TYPE_GEMFIRE_HASH_PREP_STAGE);
         supportedChangeEventHandlers.add(TYPE_GEMFIRE_OBJECT_TO_MAP_STAGE);
+        supportedChangeEventHandlers.add(TYPE_FILTER_ROUTE_STAGE);
+        supportedChangeEventHandlers.add(TYPE_COLUMN_TRANSFORM_STAGE);
+        supportedChangeEventHandlers.add(TYPE_COERCE_TYPES_STAGE);
+        supportedChangeEventHandlers.add(TYPE_METADATA_ENRICHMENT_STAGE);
+        supportedChangeEventHandlers.add(TYPE_LAG_TRACKER_STAGE);
+        supportedChangeEventHandlers.add(TYPE_COALESCE_KEYS_STAGE);
+        supportedChangeEventHandlers.add(TYPE_SUPPRESS_UNCHANGED_UPDATES_STAGE);
+        supportedChangeEventHandlers.add(TYPE_HANDOFF_DEDUP_STAGE);
+        supportedChangeEventHandlers.add(TYPE_REFERENCE_JOIN_STAGE);
+        supportedChangeEventHandlers.add(TYPE_REDIS_JSON_WRITER_STAGE);
+        supportedChangeEventHandlers.add(TYPE_COMPOSITE_STAGE);
         supportedChangeEventHandlers.add(TYPE_GABS_CHANGE_EVENT_OPERATION_STAGE); // This is my uber like use case
     }
 
     @Override
     public ChangeEventHandler getInstance(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage) throws Exception {
 
-        ChangeEventHandler changeEventHandler;
+        BaseCustomStageHandler changeEventHandler = newStage(jobId, jobType, jobPipelineStage);
+
+        // Called here instead of the BO layer since we need to instantiate the handler in order to have visibility to the validate method
+        changeEventHandler.validateEventHandler();
+
+        CustomStageConfiguration configuration = CustomStageConfiguration.of(jobPipelineStage);
+
+        // Opt-in worker pool for CPU-heavy stages, events are sharded by key to keep per-key ordering
+        int workers = configuration.getPositiveInt(ParallelStageHandler.CUSTOM_CONFIG_WORKERS, 1);
+        if (workers > 1) {
+            if (!(changeEventHandler instanceof ThreadSafeStage))
+                throw new ValidationException("Instance: " + instanceId + " JobId: " + jobId + " Stage: " + jobPipelineStage.getStageName() +
+                        " cannot run on " + ParallelStageHandler.CUSTOM_CONFIG_WORKERS + " because it is not thread safe");
+            changeEventHandler = new ParallelStageHandler(jobId, jobType, jobPipelineStage, changeEventHandler, workers,
+                    configuration.getPositiveInt(ParallelStageHandler.CUSTOM_CONFIG_QUEUE_DEPTH, 1024));
+        }
+
+        // Per-table latency and throughput metrics over JMX and the optional pull endpoint, unless opted out
+        if (configuration.getBoolean(CUSTOM_CONFIG_INSTRUMENTATION_ENABLED, true))
+            changeEventHandler = new InstrumentedStageHandler(jobId, jobType, jobPipelineStage, changeEventHandler);
+
+        return changeEventHandler;
+    }
+
+    private BaseCustomStageHandler newStage(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage) throws Exception {
+
+        BaseCustomStageHandler changeEventHandler;
 
         switch (jobPipelineStage.getStageName()) {
             case TYPE_FORWARD_HEC_REQUEST_CUSTOM_STAGE ->
@@ -53,6 +110,28 @@ public class CustomChangeEventHandlerFactory implements ChangeEventHandlerFactor
                     changeEventHandler = new GemfireHashSinkPreparationStage(jobId, jobType, jobPipelineStage);
             case TYPE_GEMFIRE_OBJECT_TO_MAP_STAGE ->
                     changeEventHandler = new GemfireObjectToMapPrepStage(jobId, jobType, jobPipelineStage);
+            case TYPE_FILTER_ROUTE_STAGE ->
+                    changeEventHandler = new ChangeEventFilterStage(jobId, jobType, jobPipelineStage);
+            case TYPE_COLUMN_TRANSFORM_STAGE ->
+                    changeEventHandler = new ColumnTransformStage(jobId, jobType, jobPipelineStage);
+            case TYPE_COERCE_TYPES_STAGE ->
+                    changeEventHandler = new TypeCoercionStage(jobId, jobType, jobPipelineStage);
+            case TYPE_METADATA_ENRICHMENT_STAGE ->
+                    changeEventHandler = new MetadataEnrichmentStage(jobId, jobType, jobPipelineStage);
+            case TYPE_LAG_TRACKER_STAGE ->
+                    changeEventHandler = new LagTrackingStage(jobId, jobType, jobPipelineStage);
+            case TYPE_COALESCE_KEYS_STAGE ->
+                    changeEventHandler = new KeyCoalescingStage(jobId, jobType, jobPipelineStage);
+            case TYPE_SUPPRESS_UNCHANGED_UPDATES_STAGE ->
+                    changeEventHandler = new UnchangedUpdateSuppressionStage(jobId, jobType, jobPipelineStage);
+            case TYPE_HANDOFF_DEDUP_STAGE ->
+                    changeEventHandler = new HandoffDeduplicationStage(jobId, jobType, jobPipelineStage);
+            case TYPE_REFERENCE_JOIN_STAGE ->
+                    changeEventHandler = new ReferenceDataJoinStage(jobId, jobType, jobPipelineStage);
+            case TYPE_REDIS_JSON_WRITER_STAGE ->
+                    changeEventHandler = new RedisJsonWriterStage(jobId, jobType, jobPipelineStage);
+            case TYPE_COMPOSITE_STAGE ->
+                    changeEventHandler = newCompositeStage(jobId, jobType, jobPipelineStage);
             case TYPE_GABS_CHANGE_EVENT_OPERATION_STAGE ->  // This is my uber like use case
                     changeEventHandler = new GabsChangeEventOperationStage(jobId, jobType, jobPipelineStage);
             default -> {
@@ -61,12 +140,47 @@ public class CustomChangeEventHandlerFactory implements ChangeEventHandlerFactor
             }
         }
 
-        // Called here instead of the BO layer since we need to instantiate the handler in order to have visibility to the validate method
-        changeEventHandler.validateEventHandler();
-
         return changeEventHandler;
     }
 
+    /**
+     * Sub-stages are created from the composite's stage definition with their own stage name, so they read the same
+     * customConfiguration. They are neither validated nor instrumented individually, the composite does both.
+     */
+    private CompositeStage newCompositeStage(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage) throws Exception {
+
+        List<String> stageNames = CustomStageConfiguration.of(jobPipelineStage).getList(CompositeStage.CUSTOM_CONFIG_STAGES);
+        if (stageNames.isEmpty())
+            throw new ValidationException(CompositeStage.CUSTOM_CONFIG_STAGES + " is a required configuration for the " + TYPE_COMPOSITE_STAGE + " custom stage");
+
+        List<BaseCustomStageHandler> stages = new ArrayList<>(stageNames.size());
+        for (String stageName : stageNames) {
+            if (TYPE_COMPOSITE_STAGE.equals(stageName))
+                throw new ValidationException("Instance: " + instanceId + " JobId: " + jobId + " " + TYPE_COMPOSITE_STAGE + " stages cannot be nested");
+            if (TYPE_COALESCE_KEYS_STAGE.equals(stageName))
+                // Later sub-stages would already have run on the events it drops
+                throw new ValidationException("Instance: " + instanceId + " JobId: " + jobId + " " + TYPE_COALESCE_KEYS_STAGE + " must be its own pipeline stage, not part of a " + TYPE_COMPOSITE_STAGE + " stage");
+
+            JobPipelineStageDTO subStage = new JobPipelineStageDTO();
+            subStage.setStageName(stageName);
+            subStage.setIndex(jobPipelineStage.getIndex());
+            subStage.setDatabase(jobPipelineStage.getDatabase());
+            subStage.setCheckpointDatabase(jobPipelineStage.getCheckpointDatabase());
+            subStage.setUserDefinedType(jobPipelineStage.getUserDefinedType());
+            subStage.setKeyPrefix(jobPipelineStage.getKeyPrefix());
+            subStage.setBatchSize(jobPipelineStage.getBatchSize());
+            subStage.setFlushInterval(jobPipelineStage.getFlushInterval());
+            subStage.setMetricsEnabled(jobPipelineStage.isMetricsEnabled());
+            subStage.setMetricsRetentionInHours(jobPipelineStage.getMetricsRetentionInHours());
+            subStage.setCheckpointStageIndicator(jobPipelineStage.isCheckpointStageIndicator());
+            subStage.setCheckpointTransactionsEnabled(jobPipelineStage.isCheckpointTransactionsEnabled());
+
+            stages.add(newStage(jobId, jobType, subStage));
+        }
+
+        return new CompositeStage(jobId, jobType, jobPipelineStage, stages);
+    }
+
     @Override
     public String getType() {
         return "CUSTOM";
@@ -0,0 +1,165 @@
+package com.redis.connect.pipeline.event.handler.custom.cache;
+
+import com.redis.connect.pipeline.event.handler.custom.metrics.MBeanRegistration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded, least-recently-used lookup cache with a time-to-live per entry and optional negative caching.
+ * <p>
+ * Positive entries hold a looked up value for {@code ttlMillis}. Negative entries remember that a lookup was answered
+ * with "not found" for {@code negativeTtlMillis} so repeated misses for the same key do not hit the remote service
+ * again. Access is synchronized because lookups complete on I/O threads while the disruptor thread reads.
+ */
+public class LookupCache<K, V> implements LookupCacheMXBean {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final Map<K, Entry<V>> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    private volatile RedisLookupStore sharedStore;
+    private MBeanRegistration registration;
+
+    public LookupCache(int maxEntries, long ttlMillis, long negativeTtlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.negativeTtlNanos = negativeTtlMillis * 1_000_000L;
+        this.entries = new LinkedHashMap<>(Math.min(maxEntries, 1 << 16), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > LookupCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the live entry for this key, or null when absent or expired
+     */
+    public synchronized Entry<V> get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (System.nanoTime() - entry.expiresAtNanos > 0) {
+            entries.remove(key);
+            expirations.increment();
+            misses.increment();
+            return null;
+        }
+        if (entry.negative)
+            negativeHits.increment();
+        else
+            hits.increment();
+        return entry;
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(value, false, System.nanoTime() + ttlNanos));
+    }
+
+    public synchronized void putNegative(K key) {
+        if (negativeTtlNanos > 0)
+            entries.put(key, new Entry<>(null, true, System.nanoTime() + negativeTtlNanos));
+    }
+
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Reports the counters of the shared store that local misses fall back to through this cache's MBean.
+     */
+    public void setSharedStore(RedisLookupStore sharedStore) {
+        this.sharedStore = sharedStore;
+    }
+
+    public void registerMBean(String name) {
+        registration = MBeanRegistration.register("LookupCache", name, this);
+    }
+
+    public void unregisterMBean() {
+        if (registration != null)
+            registration.unregister();
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getNegativeHitCount() {
+        return negativeHits.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getExpirationCount() {
+        return expirations.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hitCount = hits.sum() + negativeHits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0d : (double) hitCount / total;
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    @Override
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    @Override
+    public long getSharedHitCount() {
+        RedisLookupStore store = sharedStore;
+        return store == null ? 0 : store.getHitCount();
+    }
+
+    @Override
+    public long getSharedMissCount() {
+        RedisLookupStore store = sharedStore;
+        return store == null ? 0 : store.getMissCount();
+    }
+
+    @Override
+    public String toString() {
+        return "LookupCache{size=" + getSize() + ", maxEntries=" + maxEntries + ", hits=" + hits.sum() + ", negativeHits=" + negativeHits.sum() +
+                ", misses=" + misses.sum() + ", evictions=" + evictions.sum() + ", expirations=" + expirations.sum() + "}";
+    }
+
+    public record Entry<V>(V value, boolean negative, long expiresAtNanos) {
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.redis.connect.pipeline.event.handler.custom.cache;
+
+/**
+ * JMX view of a {@link LookupCache}, registered under {@code com.redis.connect.customstage:type=LookupCache}.
+ */
+public interface LookupCacheMXBean {
+
+    long getHitCount();
+
+    long getNegativeHitCount();
+
+    long getMissCount();
+
+    long getEvictionCount();
+
+    long getExpirationCount();
+
+    double getHitRatio();
+
+    int getSize();
+
+    int getMaxEntries();
+
+    /**
+     * @return hits in the shared {@link RedisLookupStore} behind this cache, 0 without one
+     */
+    long getSharedHitCount();
+
+    long getSharedMissCount();
+
+}
@@ -0,0 +1,85 @@
+package com.redis.connect.pipeline.event.handler.custom.cache;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Second level lookup store kept in Redis so that several Connect instances share each other's hits.
+ * <p>
+ * Every value is a string key {@code <keyPrefix><field>} written with {@code SET ... PX <ttlMillis>}, so Redis expires
+ * it on its own and the store never outgrows the set of live entries. The store is strictly best effort: any Redis
+ * failure is logged and reported as a miss so that enrichment falls back to the origin instead of stalling the
+ * pipeline.
+ */
+public class RedisLookupStore implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+
+    private final String keyPrefix;
+    private final SetArgs setArgs;
+    private final RedisClient redisClient;
+    private final StatefulRedisConnection<String, String> connection;
+    private final RedisAsyncCommands<String, String> commands;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public RedisLookupStore(String redisUrl, String keyPrefix, long ttlMillis) {
+        this.keyPrefix = keyPrefix;
+        this.setArgs = SetArgs.Builder.px(ttlMillis);
+        this.redisClient = RedisClient.create(redisUrl);
+        this.connection = redisClient.connect();
+        this.commands = connection.async();
+    }
+
+    public CompletableFuture<String> get(String field) {
+        return commands.get(keyPrefix + field).toCompletableFuture()
+                .thenApply(value -> {
+                    if (value == null)
+                        misses.increment();
+                    else
+                        hits.increment();
+                    return value;
+                })
+                .exceptionally(t -> {
+                    LOGGER.warn("Failed to read {}{} from shared lookup store, falling back to origin", keyPrefix, field, t);
+                    misses.increment();
+                    return null;
+                });
+    }
+
+    public void put(String field, String value) {
+        commands.set(keyPrefix + field, value, setArgs)
+                .exceptionally(t -> {
+                    if (LOGGER.isDebugEnabled())
+                        LOGGER.debug("Failed to write {}{} to shared lookup store", keyPrefix, field, t);
+                    return null;
+                });
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+        redisClient.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "RedisLookupStore{keyPrefix=" + keyPrefix + ", hits=" + hits.sum() + ", misses=" + misses.sum() + "}";
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.redis.connect.pipeline.event.handler.custom.coalesce;
+
+import com.redis.connect.dto.ChangeEventDTO;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Latest change event per ({@code schemaAndTableName}, key) of a coalescing window, in an open-addressing table with
+ * linear probing sized once for the largest window: no entry objects, no composite key strings and no rehashing.
+ * {@link #clear()} is O(1), slots of earlier windows are told apart by a generation stamp. Not thread safe.
+ */
+public final class LatestEventMap {
+
+    private final int mask;
+    private final int[] generations;
+    private final int[] hashes;
+    private final String[] tables;
+    private final String[] keys;
+    private final ChangeEventDTO[] events;
+    private int generation = 1;
+    private int size;
+    private final int maxSize;
+
+    /**
+     * @param maxSize the most keys a window can hold, the table keeps a load factor of at most 0.5
+     */
+    public LatestEventMap(int maxSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, maxSize) * 2 - 1) << 1;
+        this.mask = capacity - 1;
+        this.maxSize = maxSize;
+        this.generations = new int[capacity];
+        this.hashes = new int[capacity];
+        this.tables = new String[capacity];
+        this.keys = new String[capacity];
+        this.events = new ChangeEventDTO[capacity];
+    }
+
+    /**
+     * Makes {@code changeEvent} the latest event of its key.
+     *
+     * @return the event it replaces, or {@code null} when it is the first of its key in this window
+     */
+    public ChangeEventDTO put(String table, String key, ChangeEventDTO changeEvent) {
+        int hash = hash(table, key);
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            if (generations[slot] != generation) {
+                if (size == maxSize)
+                    throw new IllegalStateException("Coalescing window is limited to " + maxSize + " keys");
+                generations[slot] = generation;
+                hashes[slot] = hash;
+                tables[slot] = table;
+                keys[slot] = key;
+                events[slot] = changeEvent;
+                size++;
+                return null;
+            }
+            if (hashes[slot] == hash && key.equals(keys[slot]) && Objects.equals(table, tables[slot])) {
+                ChangeEventDTO previous = events[slot];
+                events[slot] = changeEvent;
+                return previous;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Empties the map for the next window. Keys and events of earlier windows stay referenced until their slot is
+     * reused, at most one table's worth.
+     */
+    public void clear() {
+        size = 0;
+        if (++generation == 0) {
+            Arrays.fill(generations, 0);
+            generation = 1;
+        }
+    }
+
+    private static int hash(String table, String key) {
+        int hash = 31 * (table == null ? 0 : table.hashCode()) + key.hashCode();
+        // Spread the high bits, keys of one table often differ in their last characters only
+        return hash ^ (hash >>> 16) ^ (hash >>> 7);
+    }
+
+}
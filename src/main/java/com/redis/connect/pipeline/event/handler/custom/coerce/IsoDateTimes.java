@@ -0,0 +1,152 @@
+package com.redis.connect.pipeline.event.handler.custom.coerce;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Parses the ISO-8601 shapes change events carry during streaming, {@code 2024-01-31}, {@code 2024-01-31T10:15:30} and
+ * {@code 2024-01-31T10:15:30.123456Z} / {@code +01:00}, by position without a {@code DateTimeFormatter}. Returns
+ * {@code null} instead of throwing when the text has another shape; only zoned text with a region id
+ * ({@code [Europe/Paris]}) goes through {@link ZonedDateTime#parse(CharSequence)}.
+ */
+final class IsoDateTimes {
+
+    private static final int[] FRACTION_SCALE = {0, 100_000_000, 10_000_000, 1_000_000, 100_000, 10_000, 1_000, 100, 10, 1};
+
+    private IsoDateTimes() {
+    }
+
+    static LocalDate parseDate(CharSequence text) {
+        if (text.length() != 10 || !isDate(text))
+            return null;
+        try {
+            return LocalDate.of(digits(text, 0, 4), digits(text, 5, 2), digits(text, 8, 2));
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    static LocalDateTime parseLocal(CharSequence text) {
+        int end = localDateTimeEnd(text);
+        return end == text.length() ? localDateTime(text, end) : null;
+    }
+
+    static ZonedDateTime parseZoned(CharSequence text) {
+        int end = localDateTimeEnd(text);
+        if (end < 0)
+            return null;
+
+        ZoneOffset offset = offset(text, end);
+        if (offset == null)
+            return end < text.length() ? parseRegion(text) : null;
+
+        LocalDateTime local = localDateTime(text, end);
+        return local == null ? null : ZonedDateTime.of(local, offset);
+    }
+
+    /**
+     * @return true for a date time followed by an offset, the text {@link #parseZoned} parses without a formatter
+     */
+    static boolean isZoned(CharSequence text) {
+        int end = localDateTimeEnd(text);
+        return end > 0 && offset(text, end) != null;
+    }
+
+    private static ZonedDateTime parseRegion(CharSequence text) {
+        if (text.charAt(text.length() - 1) != ']')
+            return null;
+        try {
+            return ZonedDateTime.parse(text);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the index after {@code yyyy-MM-ddTHH:mm[:ss[.fffffffff]]}, or -1 when the text does not start with one
+     */
+    private static int localDateTimeEnd(CharSequence text) {
+        int length = text.length();
+        if (length < 16 || !isDate(text) || (text.charAt(10) != 'T' && text.charAt(10) != ' ')
+                || !isDigits(text, 11, 2) || text.charAt(13) != ':' || !isDigits(text, 14, 2))
+            return -1;
+        if (length == 16 || text.charAt(16) != ':')
+            return 16;
+        if (length < 19 || !isDigits(text, 17, 2))
+            return -1;
+        if (length == 19 || text.charAt(19) != '.')
+            return 19;
+
+        int end = 20;
+        while (end < length && end < 29 && isDigit(text.charAt(end)))
+            end++;
+        return end == 20 ? -1 : end;
+    }
+
+    private static LocalDateTime localDateTime(CharSequence text, int end) {
+        int second = end > 16 ? digits(text, 17, 2) : 0;
+        int nanos = end > 20 ? digits(text, 20, end - 20) * FRACTION_SCALE[end - 20] : 0;
+        try {
+            return LocalDateTime.of(digits(text, 0, 4), digits(text, 5, 2), digits(text, 8, 2),
+                    digits(text, 11, 2), digits(text, 14, 2), second, nanos);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the offset {@code Z}, {@code ±HH}, {@code ±HHMM} or {@code ±HH:MM} that ends the text at {@code from}
+     */
+    private static ZoneOffset offset(CharSequence text, int from) {
+        int length = text.length() - from;
+        if (length == 1 && text.charAt(from) == 'Z')
+            return ZoneOffset.UTC;
+        if (length < 3 || (text.charAt(from) != '+' && text.charAt(from) != '-') || !isDigits(text, from + 1, 2))
+            return null;
+
+        int minutes;
+        if (length == 3)
+            minutes = 0;
+        else if (length == 5 && isDigits(text, from + 3, 2))
+            minutes = digits(text, from + 3, 2);
+        else if (length == 6 && text.charAt(from + 3) == ':' && isDigits(text, from + 4, 2))
+            minutes = digits(text, from + 4, 2);
+        else
+            return null;
+
+        int sign = text.charAt(from) == '-' ? -1 : 1;
+        try {
+            return ZoneOffset.ofHoursMinutes(sign * digits(text, from + 1, 2), sign * minutes);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    private static boolean isDate(CharSequence text) {
+        return isDigits(text, 0, 4) && text.charAt(4) == '-' && isDigits(text, 5, 2) && text.charAt(7) == '-' && isDigits(text, 8, 2);
+    }
+
+    private static boolean isDigits(CharSequence text, int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            if (!isDigit(text.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int digits(CharSequence text, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++)
+            value = value * 10 + (text.charAt(i) - '0');
+        return value;
+    }
+
+}
@@ -0,0 +1,277 @@
+package com.redis.connect.pipeline.event.handler.custom.coerce;
+
+import com.redis.connect.pipeline.event.handler.custom.filter.NumericValues;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import oracle.sql.TIMESTAMPTZ;
+
+/**
+ * The logical type of a column and its canonical Java representation, whatever the source delivered: boxed numbers or
+ * strings while streaming, {@code BigDecimal}, {@code java.sql.Timestamp} or {@code oracle.sql.TIMESTAMPTZ} during the
+ * initial load.
+ * <ul>
+ *     <li>{@link #STRING} {@code String}, {@link #LONG} {@code Long}, {@link #DOUBLE} {@code Double},
+ *     {@link #DECIMAL} {@code BigDecimal}, {@link #BOOLEAN} {@code Boolean},</li>
+ *     <li>{@link #TIMESTAMP_TZ} {@code ZonedDateTime}, {@link #TIMESTAMP} {@code LocalDateTime} and {@link #DATE}
+ *     {@code LocalDate}; numbers are epoch milliseconds for timestamps (UTC) and epoch days for dates,</li>
+ *     <li>{@link #PASSTHROUGH} leaves the value alone.</li>
+ * </ul>
+ * A value that does not fit its column's type (e.g. {@code 2.5} in a {@link #LONG} column or {@code "n/a"} in a
+ * {@link #TIMESTAMP_TZ} column) is left unchanged, so no data is lost and nothing is thrown. {@link TypeCoercion}
+ * widens a {@link #LONG} column it only {@link #infer inferred} to {@link #DECIMAL} instead.
+ */
+public enum LogicalType {
+
+    STRING {
+        @Override
+        ValueConverter converterFor(Class<?> source) {
+            if (source == String.class)
+                return ValueConverter.IDENTITY;
+            if (source == BigDecimal.class)
+                return value -> ((BigDecimal) value).toPlainString();
+            if (Number.class.isAssignableFrom(source) || source == Boolean.class || CharSequence.class.isAssignableFrom(source))
+                return Object::toString;
+            return ValueConverter.IDENTITY;
+        }
+    },
+    LONG {
+        @Override
+        ValueConverter converterFor(Class<?> source) {
+            if (source == Long.class)
+                return ValueConverter.IDENTITY;
+            if (source == Integer.class || source == Short.class || source == Byte.class)
+                return value -> ((Number) value).longValue();
+            if (source == BigDecimal.class)
+                return value -> {
+                    BigDecimal decimal = (BigDecimal) value;
+                    return isIntegral(decimal) ? (Object) decimal.longValue() : value;
+                };
+            if (source == BigInteger.class)
+                return value -> ((BigInteger) value).bitLength() < 64 ? (Object) ((BigInteger) value).longValue() : value;
+            if (Number.class.isAssignableFrom(source))
+                return value -> toLong(((Number) value).doubleValue(), value);
+            if (CharSequence.class.isAssignableFrom(source))
+                return value -> toLong(NumericValues.parse((CharSequence) value), value);
+            return ValueConverter.IDENTITY;
+        }
+    },
+    DOUBLE {
+        @Override
+        ValueConverter converterFor(Class<?> source) {
+            if (source == Double.class)
+                return ValueConverter.IDENTITY;
+            if (Number.class.isAssignableFrom(source))
+                return value -> ((Number) value).doubleValue();
+            if (CharSequence.class.isAssignableFrom(source))
+                return value -> {
+                    double number = NumericValues.parse((CharSequence) value);
+                    return Double.isNaN(number) ? value : (Object) number;
+                };
+            return ValueConverter.IDENTITY;
+        }
+    },
+    DECIMAL {
+        @Override
+        ValueConverter converterFor(Class<?> source) {
+            if (source == BigDecimal.class)
+                return ValueConverter.IDENTITY;
+            if (source == Long.class || source == Integer.class || source == Short.class || source == Byte.class)
+                return value -> BigDecimal.valueOf(((Number) value).longValue());
+            if (source == BigInteger.class)
+                return value -> new BigDecimal((BigInteger) value);
+            if (source == Double.class || source == Float.class)
+                return value -> {
+                    double number = ((Number) value).doubleValue();
+                    return Double.isFinite(number) ? BigDecimal.valueOf(number) : value;
+                };
+            if (CharSequence.class.isAssignableFrom(source))
+                return value -> {
+                    String text = value.toString().strip();
+                    return isDecimal(text) ? new BigDecimal(text) : value;
+                };
+            return ValueConverter.IDENTITY;
+        }
+    },
+    BOOLEAN {
+        @Override
+        ValueConverter converterFor(Class<?> source) {
+            if (source == Boolean.class)
+                return ValueConverter.IDENTITY;
+            if (Number.class.isAssignableFrom(source))
+                return value -> ((Number) value).doubleValue() != 0;
+            if (CharSequence.class.isAssignableFrom(source))
+                return value -> {
+                    String text = value.toString().strip();
+                    if (text.equalsIgnoreCase("true") || text.equalsIgnoreCase("Y") || text.equals("1"))
+                        return Boolean.TRUE;
+                    if (text.equalsIgnoreCase("false") || text.equalsIgnoreCase("N") || text.equals("0"))
+                        return Boolean.FALSE;
+                    return value;
+                };
+            return ValueConverter.IDENTITY;
+        }
+    },
+    TIMESTAMP_TZ {
+        @Override
+        ValueConverter converterFor(Class<?> source) {
+            if (source == ZonedDateTime.class)
+                return ValueConverter.IDENTITY;
+            if (source == TIMESTAMPTZ.class)
+                return value -> ((TIMESTAMPTZ) value).toZonedDateTime();
+            if (source == OffsetDateTime.class)
+                return value -> ((OffsetDateTime) value).toZonedDateTime();
+            if (source == Instant.class)
+                return value -> ((Instant) value).atZone(ZoneOffset.UTC);
+            if (Date.class.isAssignableFrom(source))
+                return value -> ((Date) value).toInstant().atZone(ZoneOffset.UTC);
+            if (source == Long.class || source == Integer.class)
+                return value -> Instant.ofEpochMilli(((Number) value).longValue()).atZone(ZoneOffset.UTC);
+            if (CharSequence.class.isAssignableFrom(source))
+                return value -> orValue(IsoDateTimes.parseZoned((CharSequence) value), value);
+            return ValueConverter.IDENTITY;
+        }
+    },
+    TIMESTAMP {
+        @Override
+        ValueConverter converterFor(Class<?> source) {
+            if (source == LocalDateTime.class)
+                return ValueConverter.IDENTITY;
+            if (source == java.sql.Timestamp.class)
+                return value -> ((java.sql.Timestamp) value).toLocalDateTime();
+            if (source == java.sql.Date.class)
+                return value -> ((java.sql.Date) value).toLocalDate().atStartOfDay();
+            if (Date.class.isAssignableFrom(source))
+                return value -> LocalDateTime.ofInstant(((Date) value).toInstant(), ZoneOffset.UTC);
+            if (source == Long.class || source == Integer.class)
+                return value -> LocalDateTime.ofInstant(Instant.ofEpochMilli(((Number) value).longValue()), ZoneOffset.UTC);
+            if (CharSequence.class.isAssignableFrom(source))
+                return value -> orValue(IsoDateTimes.parseLocal((CharSequence) value), value);
+            return ValueConverter.IDENTITY;
+        }
+    },
+    DATE {
+        @Override
+        ValueConverter converterFor(Class<?> source) {
+            if (source == LocalDate.class)
+                return ValueConverter.IDENTITY;
+            if (source == java.sql.Date.class)
+                return value -> ((java.sql.Date) value).toLocalDate();
+            if (source == java.sql.Timestamp.class)
+                return value -> ((java.sql.Timestamp) value).toLocalDateTime().toLocalDate();
+            if (source == LocalDateTime.class)
+                return value -> ((LocalDateTime) value).toLocalDate();
+            if (source == Long.class || source == Integer.class)
+                return value -> LocalDate.ofEpochDay(((Number) value).longValue());
+            if (CharSequence.class.isAssignableFrom(source))
+                return value -> orValue(IsoDateTimes.parseDate((CharSequence) value), value);
+            return ValueConverter.IDENTITY;
+        }
+    },
+    PASSTHROUGH {
+        @Override
+        ValueConverter converterFor(Class<?> source) {
+            return ValueConverter.IDENTITY;
+        }
+    };
+
+    private static final BigDecimal LONG_MIN = BigDecimal.valueOf(Long.MIN_VALUE);
+    private static final BigDecimal LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+
+    /**
+     * @return the converter from values of class {@code source} to this type's canonical form
+     */
+    abstract ValueConverter converterFor(Class<?> source);
+
+    /**
+     * Converts a single value. Callers converting many values of the same column should hold on to a
+     * {@link TypeCoercion} instead, which selects the converter once per column and source representation.
+     */
+    public Object convert(Object value) throws Exception {
+        return value == null ? null : converterFor(value.getClass()).convert(value);
+    }
+
+    /**
+     * @return the type a column holding {@code value} most likely has, or {@code null} when the value does not tell,
+     * e.g. a string that is not a zoned ISO-8601 date time. An integral value only tells that the column holds no
+     * fractions so far, the inferred {@link #LONG} may have to be widened to {@link #DECIMAL} later.
+     */
+    public static LogicalType infer(Object value) {
+        if (value == null)
+            return null;
+        if (value instanceof CharSequence text)
+            return IsoDateTimes.isZoned(text) ? TIMESTAMP_TZ : null;
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte || value instanceof BigInteger)
+            return LONG;
+        // The initial load reads every NUMBER column as a BigDecimal, NUMBER(p) columns stream as integers
+        if (value instanceof BigDecimal decimal)
+            return decimal.scale() <= 0 ? LONG : DECIMAL;
+        if (value instanceof Double || value instanceof Float)
+            return DOUBLE;
+        if (value instanceof Boolean)
+            return BOOLEAN;
+        if (value instanceof ZonedDateTime || value instanceof OffsetDateTime || value instanceof TIMESTAMPTZ || value instanceof Instant)
+            return TIMESTAMP_TZ;
+        if (value instanceof java.sql.Timestamp || value instanceof LocalDateTime)
+            return TIMESTAMP;
+        if (value instanceof java.sql.Date || value instanceof LocalDate)
+            return DATE;
+        return PASSTHROUGH;
+    }
+
+    private static boolean isIntegral(BigDecimal decimal) {
+        return (decimal.scale() <= 0 || decimal.signum() == 0 || decimal.stripTrailingZeros().scale() <= 0) && decimal.compareTo(LONG_MIN) >= 0 && decimal.compareTo(LONG_MAX) <= 0;
+    }
+
+    private static Object toLong(double number, Object value) {
+        return number == Math.rint(number) && Math.abs(number) < 0x1p63 ? (Object) (long) number : value;
+    }
+
+    private static Object orValue(Object converted, Object value) {
+        return converted != null ? converted : value;
+    }
+
+    /**
+     * Plain or scientific decimal notation, what {@link BigDecimal#BigDecimal(String)} accepts.
+     */
+    private static boolean isDecimal(String text) {
+        int i = 0;
+        int length = text.length();
+        if (i < length && (text.charAt(i) == '+' || text.charAt(i) == '-'))
+            i++;
+        int digits = 0;
+        while (i < length && Character.isDigit(text.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < length && text.charAt(i) == '.') {
+            i++;
+            while (i < length && Character.isDigit(text.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0)
+            return false;
+        if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i++;
+            if (i < length && (text.charAt(i) == '+' || text.charAt(i) == '-'))
+                i++;
+            int exponentDigits = 0;
+            while (i < length && Character.isDigit(text.charAt(i))) {
+                i++;
+                exponentDigits++;
+            }
+            if (exponentDigits == 0 || exponentDigits > 9)
+                return false;
+        }
+        return i == length;
+    }
+
+}
@@ -0,0 +1,298 @@
+package com.redis.connect.pipeline.event.handler.custom.coerce;
+
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.exception.ValidationException;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Normalizes the values of change events to the canonical form of each column's {@link LogicalType}, in place, so
+ * that the stages after it see the same Java types during the initial load and while streaming.
+ * <p>
+ * Column types are declared with {@code coerce.types.<schema.table>.<column>} ({@code *} for every table) or inferred
+ * from the first non-null values of a column: a column whose first values do not tell (plain strings) keeps being
+ * inferred for the first {@code coerce.infer.events} events of its table and is left alone after that. A column
+ * inferred as {@link LogicalType#LONG} from integral values is widened to {@link LogicalType#DECIMAL} by the first
+ * fractional or out of range number, so it never mixes {@code Long}s and unconverted numbers. Each table
+ * keeps an array of its columns with their converters, selected once per Java class the source delivers for a column,
+ * so converting a value costs a class comparison or two and the conversion itself. A row with more columns than the
+ * table's array extends it.
+ * <pre>
+ * "customConfiguration" : {
+ *   "coerce.types.C##RCUSER.TEST.MODIFIED_DATE" : "TIMESTAMP_TZ",
+ *   "coerce.types.*.GENREID" : "LONG",
+ *   "coerce.infer.events" : 16
+ * }
+ * </pre>
+ * Safe for concurrent use: converters are immutable, plans are replaced, never modified, and each column's coercion is
+ * replaced by compare-and-set from the one it was derived from, so a converter or a widening installed by another
+ * thread is never overwritten and a widened column never goes back to {@link LogicalType#LONG}.
+ */
+public final class TypeCoercion {
+
+    public static final String CUSTOM_CONFIG_TYPES_PREFIX = "coerce.types.";
+    public static final String CUSTOM_CONFIG_INFER_EVENTS = "coerce.infer.events";
+    public static final String ALL_TABLES = "*";
+
+    private final Map<String, Map<String, LogicalType>> declaredTypes;
+    private final int inferEvents;
+    private final Map<String, TablePlan> plans = new ConcurrentHashMap<>();
+
+    /**
+     * @param declaredTypes column types per {@code schemaAndTableName}, {@link #ALL_TABLES} for every table
+     * @param inferEvents   number of events per table during which undeclared columns are inferred, 0 to only
+     *                      coerce declared columns
+     */
+    public TypeCoercion(Map<String, Map<String, LogicalType>> declaredTypes, int inferEvents) {
+        this.declaredTypes = declaredTypes;
+        this.inferEvents = inferEvents;
+    }
+
+    public static TypeCoercion of(CustomStageConfiguration configuration) throws ValidationException {
+        Map<String, Map<String, LogicalType>> declaredTypes = new HashMap<>();
+        for (Map.Entry<String, String> entry : configuration.asMap().entrySet()) {
+            if (!entry.getKey().startsWith(CUSTOM_CONFIG_TYPES_PREFIX))
+                continue;
+
+            String tableAndColumn = entry.getKey().substring(CUSTOM_CONFIG_TYPES_PREFIX.length());
+            int separator = tableAndColumn.lastIndexOf('.');
+            if (separator <= 0 || separator == tableAndColumn.length() - 1)
+                throw new ValidationException(entry.getKey() + " must be " + CUSTOM_CONFIG_TYPES_PREFIX + "<schema.table>.<column>");
+
+            LogicalType type;
+            try {
+                type = LogicalType.valueOf(entry.getValue().strip().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new ValidationException(e, entry.getKey() + " must be one of " + Arrays.toString(LogicalType.values()) + " but was: " + entry.getValue());
+            }
+            declaredTypes.computeIfAbsent(tableAndColumn.substring(0, separator), table -> new HashMap<>())
+                    .put(tableAndColumn.substring(separator + 1), type);
+        }
+        return new TypeCoercion(declaredTypes, configuration.getInt(CUSTOM_CONFIG_INFER_EVENTS, 16));
+    }
+
+    public void coerce(ChangeEventDTO changeEvent) throws Exception {
+        Map<String, Object> values = changeEvent.getValues();
+        if (values != null && !values.isEmpty())
+            coerce(changeEvent.getSchemaAndTableName(), values);
+    }
+
+    public void coerce(String schemaAndTableName, Map<String, Object> values) throws Exception {
+        String table = schemaAndTableName == null ? "" : schemaAndTableName;
+        TablePlan plan = plans.get(table);
+        if (plan == null)
+            plan = plans.computeIfAbsent(table, this::newPlan);
+        plan.coerce(values);
+    }
+
+    /**
+     * @return the current type of every column seen so far in the table, {@code null} for columns not inferred yet
+     */
+    public Map<String, LogicalType> getTypes(String schemaAndTableName) {
+        Map<String, LogicalType> types = new LinkedHashMap<>();
+        TablePlan plan = plans.get(schemaAndTableName);
+        if (plan != null) {
+            Columns columns = plan.columns;
+            for (int i = 0; i < columns.names.length; i++)
+                types.put(columns.names[i], columns.slots[i].get().type);
+        }
+        return types;
+    }
+
+    private TablePlan newPlan(String table) {
+        Map<String, LogicalType> declared = new HashMap<>(declaredTypes.getOrDefault(ALL_TABLES, Map.of()));
+        declared.putAll(declaredTypes.getOrDefault(table, Map.of()));
+        return new TablePlan(declared);
+    }
+
+    /**
+     * The columns of one table with their coercions, in parallel arrays. Replaced as a whole when a row brings columns
+     * the plan has not seen yet, keeping the slots of the columns it already had; a slot's coercion is replaced when
+     * its column's type is inferred or widened, or its source class changes.
+     */
+    private final class TablePlan {
+
+        private final Map<String, LogicalType> declared;
+        private final AtomicInteger events = new AtomicInteger();
+        private volatile Columns columns = new Columns(new String[0], new CoercionSlot[0]);
+
+        private TablePlan(Map<String, LogicalType> declared) {
+            this.declared = declared;
+        }
+
+        private void coerce(Map<String, Object> values) throws Exception {
+            Columns current = columns;
+            if (values.size() > current.names.length)
+                current = addColumns(values);
+
+            boolean inferring = events.get() < inferEvents && events.incrementAndGet() <= inferEvents;
+            if (coerce(current, values, inferring) < values.size())
+                // Same number of columns but some the plan has not seen, e.g. after a column was dropped and another added
+                coerce(addColumns(values), values, inferring);
+        }
+
+        /**
+         * @return the number of the row's columns the plan knows
+         */
+        private int coerce(Columns current, Map<String, Object> values, boolean inferring) throws Exception {
+            String[] names = current.names;
+            CoercionSlot[] slots = current.slots;
+            int known = 0;
+
+            for (int i = 0; i < names.length; i++) {
+                Object value = values.get(names[i]);
+                if (value == null) {
+                    if (values.containsKey(names[i]))
+                        known++;
+                    continue;
+                }
+                known++;
+
+                ColumnCoercion coercion = slots[i].get();
+                ValueConverter converter = coercion.converterFor(value.getClass());
+                if (converter == null) {
+                    coercion = slots[i].resolve(value, inferring);
+                    converter = coercion.converterFor(value.getClass());
+                    if (converter == null)
+                        continue;
+                }
+
+                Object converted = converter.convert(value);
+                if (coercion.widensFor(converted)) {
+                    coercion = slots[i].widen(value);
+                    converted = coercion.converterFor(value.getClass()).convert(value);
+                }
+                if (converted != value)
+                    values.put(names[i], converted);
+            }
+            return known;
+        }
+
+        private synchronized Columns addColumns(Map<String, Object> values) {
+            Columns current = columns;
+            Map<String, CoercionSlot> merged = new LinkedHashMap<>();
+            for (int i = 0; i < current.names.length; i++)
+                merged.put(current.names[i], current.slots[i]);
+            for (String name : values.keySet()) {
+                if (!merged.containsKey(name)) {
+                    LogicalType type = declared.get(name);
+                    merged.put(name, new CoercionSlot(type != null ? ColumnCoercion.declared(type) : ColumnCoercion.UNKNOWN));
+                }
+            }
+            if (merged.size() == current.names.length)
+                return current;
+
+            Columns extended = new Columns(merged.keySet().toArray(new String[0]), merged.values().toArray(new CoercionSlot[0]));
+            columns = extended;
+            return extended;
+        }
+    }
+
+    private record Columns(String[] names, CoercionSlot[] slots) {
+    }
+
+    /**
+     * The current coercion of a column, shared by every plan of its table. Worker threads that race to add a converter
+     * or widen the column each derive their coercion from the one they replace, and retry from the winner's.
+     */
+    private static final class CoercionSlot extends AtomicReference<ColumnCoercion> {
+
+        private CoercionSlot(ColumnCoercion coercion) {
+            super(coercion);
+        }
+
+        /**
+         * @return the coercion with a converter for the value's class, or the current one when the type is still unknown
+         */
+        private ColumnCoercion resolve(Object value, boolean inferring) {
+            while (true) {
+                ColumnCoercion current = get();
+                if (current.converterFor(value.getClass()) != null)
+                    return current;
+                ColumnCoercion resolved = current.resolve(value, inferring);
+                if (resolved == current || compareAndSet(current, resolved))
+                    return resolved;
+            }
+        }
+
+        /**
+         * @return a {@link LogicalType#DECIMAL} coercion with a converter for the value's class
+         */
+        private ColumnCoercion widen(Object value) {
+            while (true) {
+                ColumnCoercion current = get();
+                if (current.type != LogicalType.LONG)
+                    // Already widened by another thread
+                    return resolve(value, false);
+                ColumnCoercion widened = current.widen(value);
+                if (compareAndSet(current, widened))
+                    return widened;
+            }
+        }
+    }
+
+    /**
+     * A column's type and the converters selected so far, one per class the source delivered for it, e.g.
+     * {@code BigDecimal} during the load and {@code Integer} while streaming. While the type is unknown there are no
+     * converters and every value goes through {@link #resolve}.
+     */
+    private record ColumnCoercion(LogicalType type, boolean inferred, Class<?>[] sources, ValueConverter[] converters) {
+
+        private static final int MAX_SOURCES = 8;
+        private static final ColumnCoercion UNKNOWN = new ColumnCoercion(null, true, new Class<?>[0], new ValueConverter[0]);
+
+        private static ColumnCoercion declared(LogicalType type) {
+            return new ColumnCoercion(type, false, new Class<?>[0], new ValueConverter[0]);
+        }
+
+        /**
+         * @return true when an inferred {@link LogicalType#LONG} column could not convert a number, e.g. {@code 2.5}
+         */
+        private boolean widensFor(Object converted) {
+            return inferred && type == LogicalType.LONG && converted instanceof Number && !(converted instanceof Long);
+        }
+
+        /**
+         * @return a {@link LogicalType#DECIMAL} coercion with a converter for the value's class
+         */
+        private ColumnCoercion widen(Object value) {
+            return new ColumnCoercion(LogicalType.DECIMAL, true, new Class<?>[0], new ValueConverter[0]).resolve(value, false);
+        }
+
+        private ValueConverter converterFor(Class<?> source) {
+            for (int i = 0; i < sources.length; i++) {
+                if (sources[i] == source)
+                    return converters[i];
+            }
+            return null;
+        }
+
+        /**
+         * @return the coercion with a converter for the value's class, or this one when the type is still unknown
+         */
+        private ColumnCoercion resolve(Object value, boolean inferring) {
+            LogicalType resolved = type != null ? type : LogicalType.infer(value);
+            if (resolved == null) {
+                if (inferring)
+                    return this;
+                resolved = LogicalType.PASSTHROUGH;
+            }
+
+            // A column should only ever see a few representations, start over rather than grow without bound
+            int size = sources.length < MAX_SOURCES ? sources.length : 0;
+            Class<?>[] resolvedSources = Arrays.copyOf(sources, size + 1);
+            ValueConverter[] resolvedConverters = Arrays.copyOf(converters, size + 1);
+            resolvedSources[size] = value.getClass();
+            resolvedConverters[size] = resolved.converterFor(value.getClass());
+            return new ColumnCoercion(resolved, inferred, resolvedSources, resolvedConverters);
+        }
+    }
+
+}
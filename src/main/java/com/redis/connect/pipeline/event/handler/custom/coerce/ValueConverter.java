@@ -0,0 +1,15 @@
+package com.redis.connect.pipeline.event.handler.custom.coerce;
+
+/**
+ * Converts one source representation of a column value (e.g. {@code oracle.sql.TIMESTAMPTZ} or an ISO-8601 string)
+ * to the canonical form of a {@link LogicalType}. Selected once per column and representation, never {@code null}
+ * input, and returns the value unchanged when it cannot be converted rather than throwing.
+ */
+@FunctionalInterface
+public interface ValueConverter {
+
+    ValueConverter IDENTITY = value -> value;
+
+    Object convert(Object value) throws Exception;
+
+}
@@ -0,0 +1,118 @@
+package com.redis.connect.pipeline.event.handler.custom.config;
+
+import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.exception.ValidationException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typed, read-only view over a custom stage's {@code database.customConfiguration} block.
+ * <p>
+ * Custom stages are free to omit the {@code database} block entirely, in which case every lookup
+ * falls back to its default. Malformed values fail fast with a {@link ValidationException} so that a
+ * misconfigured job is rejected at {@code init()} rather than on the first change event.
+ */
+public final class CustomStageConfiguration {
+
+    private final Map<String, String> properties;
+
+    private CustomStageConfiguration(Map<String, String> properties) {
+        this.properties = properties;
+    }
+
+    public static CustomStageConfiguration of(JobPipelineStageDTO jobPipelineStage) {
+        if (jobPipelineStage == null || jobPipelineStage.getDatabase() == null
+                || jobPipelineStage.getDatabase().getCustomConfiguration() == null)
+            return new CustomStageConfiguration(Collections.emptyMap());
+
+        return new CustomStageConfiguration(Collections.unmodifiableMap(jobPipelineStage.getDatabase().getCustomConfiguration()));
+    }
+
+    public Map<String, String> asMap() {
+        return properties;
+    }
+
+    public boolean contains(String key) {
+        String value = properties.get(key);
+        return value != null && !value.isBlank();
+    }
+
+    public String getString(String key) {
+        return getString(key, null);
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = properties.get(key);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    public int getInt(String key, int defaultValue) throws ValidationException {
+        String value = getString(key);
+        if (value == null)
+            return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ValidationException(e, key + " must be an integer but was: " + value);
+        }
+    }
+
+    public long getLong(String key, long defaultValue) throws ValidationException {
+        String value = getString(key);
+        if (value == null)
+            return defaultValue;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new ValidationException(e, key + " must be a long but was: " + value);
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) throws ValidationException {
+        String value = getString(key);
+        if (value == null)
+            return defaultValue;
+        if ("true".equalsIgnoreCase(value))
+            return true;
+        if ("false".equalsIgnoreCase(value))
+            return false;
+        throw new ValidationException(key + " must be true or false but was: " + value);
+    }
+
+    public int getPositiveInt(String key, int defaultValue) throws ValidationException {
+        int value = getInt(key, defaultValue);
+        if (value <= 0)
+            throw new ValidationException(key + " must be greater than 0 but was: " + value);
+        return value;
+    }
+
+    public long getPositiveLong(String key, long defaultValue) throws ValidationException {
+        long value = getLong(key, defaultValue);
+        if (value <= 0)
+            throw new ValidationException(key + " must be greater than 0 but was: " + value);
+        return value;
+    }
+
+    /**
+     * Splits a comma separated value into trimmed, non-empty entries preserving their order.
+     */
+    public List<String> getList(String key) {
+        return splitList(getString(key));
+    }
+
+    public static List<String> splitList(String value) {
+        if (value == null || value.isBlank())
+            return Collections.emptyList();
+
+        List<String> entries = new ArrayList<>();
+        for (String entry : value.split(",")) {
+            String trimmed = entry.trim();
+            if (!trimmed.isEmpty())
+                entries.add(trimmed);
+        }
+        return Collections.unmodifiableList(entries);
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.redis.connect.pipeline.event.handler.custom.deadletter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.pipeline.event.handler.custom.http.HttpStatusException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A change event a stage gave up on, together with why: the event's table, key, operation and values as they entered
+ * the stage (JSON), the error, the HTTP status when there was one and the number of attempts. Stored as the fields of
+ * one Redis Stream entry by {@link DeadLetterSink} and turned back into a change event by {@link DeadLetterReplayTool}.
+ */
+public record DeadLetter(String jobId, String stage, String table, String key, String operation, String values,
+                         long sourceTxTime, String error, String errorClass, int statusCode, int attempts, long failedAt) {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> VALUES_TYPE = new TypeReference<>() {
+    };
+
+    static final String FIELD_JOB_ID = "jobId";
+    static final String FIELD_STAGE = "stage";
+    static final String FIELD_TABLE = "table";
+    static final String FIELD_KEY = "key";
+    static final String FIELD_OPERATION = "operation";
+    static final String FIELD_VALUES = "values";
+    static final String FIELD_SOURCE_TX_TIME = "sourceTxTime";
+    static final String FIELD_ERROR = "error";
+    static final String FIELD_ERROR_CLASS = "errorClass";
+    static final String FIELD_STATUS_CODE = "statusCode";
+    static final String FIELD_ATTEMPTS = "attempts";
+    static final String FIELD_FAILED_AT = "failedAt";
+
+    /**
+     * @param values the event values as they entered the stage, {@code null} when the event had none
+     */
+    public static DeadLetter of(String jobId, String stage, ChangeEventDTO changeEvent, Map<String, Object> values, Throwable failure) throws JsonProcessingException {
+        return of(jobId, stage, changeEvent.getSchemaAndTableName(), changeEvent.getKey(), changeEvent.getOperation(),
+                changeEvent.getSourceTxTime(), values == null ? null : mapper.writeValueAsString(values), failure);
+    }
+
+    /**
+     * @param values the event values as JSON, e.g. the line of a newline-delimited request body
+     */
+    public static DeadLetter of(String jobId, String stage, String table, String key, String operation, long sourceTxTime, String values, Throwable failure) {
+        Throwable cause = RetryPolicy.unwrap(failure);
+        int attempts = 1;
+        if (cause instanceof RetryExhaustedException exhausted) {
+            attempts = exhausted.getAttempts();
+            cause = exhausted.getCause();
+        }
+
+        int statusCode = 0;
+        for (Throwable t = cause; t != null && statusCode == 0; t = t.getCause()) {
+            if (t instanceof HttpStatusException statusException)
+                statusCode = statusException.getStatusCode();
+        }
+
+        return new DeadLetter(jobId, stage, table, key, operation, values, sourceTxTime,
+                String.valueOf(cause.getMessage()), cause.getClass().getName(), statusCode, attempts, System.currentTimeMillis());
+    }
+
+    public static DeadLetter fromFields(Map<String, String> fields) {
+        return new DeadLetter(fields.get(FIELD_JOB_ID), fields.get(FIELD_STAGE), fields.get(FIELD_TABLE), fields.get(FIELD_KEY),
+                fields.get(FIELD_OPERATION), fields.get(FIELD_VALUES), parseLong(fields.get(FIELD_SOURCE_TX_TIME)),
+                fields.get(FIELD_ERROR), fields.get(FIELD_ERROR_CLASS), (int) parseLong(fields.get(FIELD_STATUS_CODE)),
+                (int) parseLong(fields.get(FIELD_ATTEMPTS)), parseLong(fields.get(FIELD_FAILED_AT)));
+    }
+
+    private static long parseLong(String value) {
+        return value == null || value.isEmpty() ? 0 : Long.parseLong(value);
+    }
+
+    /**
+     * @return the stream entry fields, leaving out the ones without a value
+     */
+    public Map<String, String> toFields() {
+        Map<String, String> fields = new LinkedHashMap<>();
+        put(fields, FIELD_JOB_ID, jobId);
+        put(fields, FIELD_STAGE, stage);
+        put(fields, FIELD_TABLE, table);
+        put(fields, FIELD_KEY, key);
+        put(fields, FIELD_OPERATION, operation);
+        put(fields, FIELD_VALUES, values);
+        put(fields, FIELD_SOURCE_TX_TIME, Long.toString(sourceTxTime));
+        put(fields, FIELD_ERROR, error);
+        put(fields, FIELD_ERROR_CLASS, errorClass);
+        if (statusCode != 0)
+            put(fields, FIELD_STATUS_CODE, Integer.toString(statusCode));
+        put(fields, FIELD_ATTEMPTS, Integer.toString(attempts));
+        put(fields, FIELD_FAILED_AT, Long.toString(failedAt));
+        return fields;
+    }
+
+    private static void put(Map<String, String> fields, String name, String value) {
+        if (value != null)
+            fields.put(name, value);
+    }
+
+    /**
+     * Rebuilds the change event as it entered the stage. Values come back as JSON types, e.g. a {@code BigDecimal}
+     * column as a {@code Double}.
+     */
+    public ChangeEventDTO toChangeEvent() throws JsonProcessingException {
+        ChangeEventDTO changeEvent = new ChangeEventDTO();
+        changeEvent.setSchemaAndTableName(table);
+        changeEvent.setKey(key);
+        changeEvent.setOperation(operation);
+        changeEvent.setSourceTxTime(sourceTxTime);
+        changeEvent.setValues(values == null ? null : mapper.readValue(values, VALUES_TYPE));
+        changeEvent.setValid(true);
+        return changeEvent;
+    }
+
+}
@@ -0,0 +1,197 @@
+package com.redis.connect.pipeline.event.handler.custom.deadletter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.dto.DatabaseDTO;
+import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.pipeline.event.handler.CustomChangeEventHandlerFactory;
+import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
+import io.lettuce.core.Limit;
+import io.lettuce.core.Range;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.StreamMessage;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Re-injects the dead letters of a stream written by {@link DeadLetterSink}: every entry is turned back into the
+ * change event that entered the stage and run through a fresh instance of that stage, created by
+ * {@link CustomChangeEventHandlerFactory} from the stage's {@code customConfiguration} (a properties file). Entries
+ * the stage now accepts are deleted from the stream; entries that fail again stay for the next run.
+ * <p>
+ * Only {@code FORWARD_HEC_REQUEST} delivers the events it accepts by itself. Any other stage, e.g.
+ * {@code CALLBACK_HTTP_REQUEST}, merely transforms them for the stages after it, so its entries are only replayed, and
+ * deleted, with {@code --target-stream}; without it they stay in the stream untouched.
+ * <p>
+ * The stage runs without its {@code deadletter.*}, {@code parallel.*} and instrumentation settings and with one event
+ * per call, so batching and async modes do not apply; {@code retry.*} does. With {@code --target-stream}, the values of
+ * every replayed event that is still valid afterwards (e.g. enriched by {@code CALLBACK_HTTP_REQUEST}) are appended to
+ * that stream for a downstream job to pick up.
+ * <pre>
+ * java -cp redis-connect-custom-stage-sample.jar com.redis.connect.pipeline.event.handler.custom.deadletter.DeadLetterReplayTool \
+ *      --redis-url redis://127.0.0.1:14000 --stream deadletter:job1:FORWARD_HEC_REQUEST --config splunk-stage.properties \
+ *      [--stage FORWARD_HEC_REQUEST] [--count 1000] [--target-stream replayed:job1] [--dry-run]
+ * </pre>
+ */
+public final class DeadLetterReplayTool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String JOB_TYPE = "STREAM";
+    private static final int PAGE_SIZE = 100;
+    // Stages that deliver the events they accept, nothing after them in the job would
+    private static final Set<String> TERMINAL_STAGES = Set.of("FORWARD_HEC_REQUEST");
+
+    private DeadLetterReplayTool() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = options(args);
+        String redisUrl = required(options, "redis-url");
+        String streamKey = required(options, "stream");
+        String targetStream = options.get("target-stream");
+        String stageOverride = options.get("stage");
+        long count = Long.parseLong(options.getOrDefault("count", String.valueOf(Long.MAX_VALUE)));
+        boolean dryRun = options.containsKey("dry-run");
+        Map<String, String> customConfiguration = stageConfiguration(options.get("config"));
+
+        RedisClient redisClient = RedisClient.create(redisUrl);
+        Map<String, BaseCustomStageHandler> stages = new HashMap<>();
+        long replayed = 0;
+        long failed = 0;
+        long kept = 0;
+
+        try (StatefulRedisConnection<String, String> connection = redisClient.connect()) {
+            RedisCommands<String, String> commands = connection.sync();
+            Range.Boundary<String> from = Range.Boundary.including("-");
+
+            while (replayed + failed + kept < count) {
+                List<StreamMessage<String, String>> entries = commands.xrange(streamKey, Range.from(from, Range.Boundary.including("+")),
+                        Limit.from((int) Math.min(PAGE_SIZE, count - replayed - failed - kept)));
+                if (entries.isEmpty())
+                    break;
+
+                for (StreamMessage<String, String> entry : entries) {
+                    DeadLetter deadLetter = DeadLetter.fromFields(entry.getBody());
+                    String stageName = stageOverride != null ? stageOverride : deadLetter.stage();
+
+                    if (targetStream == null && !TERMINAL_STAGES.contains(stageName)) {
+                        LOGGER.warn("Entry {} of {} stays in the stream: {} does not deliver events itself, replay it with --target-stream",
+                                entry.getId(), streamKey, stageName);
+                        kept++;
+                        continue;
+                    }
+
+                    if (dryRun) {
+                        LOGGER.info("Entry {} would be replayed through {}: {}", entry.getId(), stageName, deadLetter);
+                        replayed++;
+                        continue;
+                    }
+
+                    try {
+                        ChangeEventDTO changeEvent = deadLetter.toChangeEvent();
+                        BaseCustomStageHandler stage = stages.get(stageName);
+                        if (stage == null) {
+                            stage = newStage(deadLetter.jobId(), stageName, customConfiguration);
+                            stages.put(stageName, stage);
+                        }
+                        stage.onEvent(changeEvent);
+
+                        if (targetStream != null && changeEvent.isValid())
+                            commands.xadd(targetStream, replayedFields(changeEvent));
+                        commands.xdel(streamKey, entry.getId());
+                        replayed++;
+                    } catch (Exception e) {
+                        LOGGER.warn("Entry {} of {} failed again in {} and stays in the stream: {}", entry.getId(), streamKey, stageName, e.getMessage());
+                        failed++;
+                    }
+                }
+                from = Range.Boundary.excluding(entries.get(entries.size() - 1).getId());
+            }
+
+            LOGGER.info("{} {} dead letter(s) from {}, {} failed again, {} kept without --target-stream, {} left in the stream",
+                    dryRun ? "Would replay" : "Replayed", replayed, streamKey, failed, kept, commands.xlen(streamKey));
+        } finally {
+            for (BaseCustomStageHandler stage : stages.values())
+                stage.shutdown();
+            redisClient.shutdown();
+        }
+    }
+
+    private static BaseCustomStageHandler newStage(String jobId, String stageName, Map<String, String> customConfiguration) throws Exception {
+        DatabaseDTO database = new DatabaseDTO();
+        database.setCustomConfiguration(new HashMap<>(customConfiguration));
+        JobPipelineStageDTO jobPipelineStage = new JobPipelineStageDTO();
+        jobPipelineStage.setStageName(stageName);
+        jobPipelineStage.setUserDefinedType("CUSTOM");
+        jobPipelineStage.setIndex(1);
+        jobPipelineStage.setDatabase(database);
+
+        BaseCustomStageHandler stage = (BaseCustomStageHandler) new CustomChangeEventHandlerFactory()
+                .getInstance(jobId == null ? "dead-letter-replay" : jobId, JOB_TYPE, jobPipelineStage);
+        stage.init();
+        return stage;
+    }
+
+    /**
+     * Loads the stage's {@code customConfiguration} without the settings that make no sense while replaying.
+     */
+    private static Map<String, String> stageConfiguration(String path) throws Exception {
+        Map<String, String> customConfiguration = new HashMap<>();
+        if (path != null) {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(Path.of(path))) {
+                properties.load(reader);
+            }
+            for (String name : properties.stringPropertyNames())
+                customConfiguration.put(name, properties.getProperty(name));
+        }
+        customConfiguration.keySet().removeIf(name -> name.startsWith("deadletter.") || name.startsWith("parallel."));
+        customConfiguration.put("metrics.instrumentation.enabled", "false");
+        return customConfiguration;
+    }
+
+    private static Map<String, String> replayedFields(ChangeEventDTO changeEvent) throws Exception {
+        Map<String, String> fields = new HashMap<>();
+        if (changeEvent.getSchemaAndTableName() != null)
+            fields.put(DeadLetter.FIELD_TABLE, changeEvent.getSchemaAndTableName());
+        if (changeEvent.getKey() != null)
+            fields.put(DeadLetter.FIELD_KEY, changeEvent.getKey());
+        if (changeEvent.getOperation() != null)
+            fields.put(DeadLetter.FIELD_OPERATION, changeEvent.getOperation());
+        fields.put(DeadLetter.FIELD_VALUES, mapper.writeValueAsString(changeEvent.getValues()));
+        return fields;
+    }
+
+    private static String required(Map<String, String> options, String name) {
+        String value = options.get(name);
+        if (value == null)
+            throw new IllegalArgumentException("--" + name + " is required");
+        return value;
+    }
+
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--"))
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            String name = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--"))
+                options.put(name, args[++i]);
+            else
+                options.put(name, "true");
+        }
+        return options;
+    }
+
+}
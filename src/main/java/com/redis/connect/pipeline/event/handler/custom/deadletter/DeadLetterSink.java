@@ -0,0 +1,132 @@
+package com.redis.connect.pipeline.event.handler.custom.deadletter;
+
+import com.redis.connect.exception.ValidationException;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.XAddArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends {@link DeadLetter}s to a Redis Stream, one entry per change event, so that a stage can move past an event
+ * it gave up on instead of stalling its partition.
+ * <p>
+ * Unlike the lookup stores, writing a dead letter is not best effort: if Redis does not acknowledge the entry the
+ * write fails, and with it the event, so nothing is lost silently. The stream is therefore never trimmed unless
+ * {@code deadletter.stream.max.length} caps it, at about that many entries (approximate trimming); Redis then discards
+ * the oldest dead letters without telling, so the cap is logged when the sink starts.
+ * <pre>
+ * "customConfiguration" : {
+ *   "deadletter.redis.url" : "redis://127.0.0.1:14000",
+ *   "deadletter.stream" : "deadletter:splunk",
+ *   "deadletter.stream.max.length" : 100000,
+ *   "deadletter.write.timeout.ms" : 5000
+ * }
+ * </pre>
+ */
+public class DeadLetterSink implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+
+    public static final String CUSTOM_CONFIG_REDIS_URL = "deadletter.redis.url";
+    public static final String CUSTOM_CONFIG_STREAM = "deadletter.stream";
+    public static final String CUSTOM_CONFIG_STREAM_MAX_LENGTH = "deadletter.stream.max.length";
+    public static final String CUSTOM_CONFIG_WRITE_TIMEOUT_MS = "deadletter.write.timeout.ms";
+
+    private final String streamKey;
+    private final long writeTimeoutMillis;
+    private final XAddArgs addArgs;
+    private final RedisClient redisClient;
+    private final StatefulRedisConnection<String, String> connection;
+    private final RedisAsyncCommands<String, String> commands;
+
+    private final LongAdder written = new LongAdder();
+
+    /**
+     * @param maxLength approximate number of entries the stream is trimmed to, 0 to never trim it
+     */
+    public DeadLetterSink(String redisUrl, String streamKey, long maxLength, long writeTimeoutMillis) {
+        this.streamKey = streamKey;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        this.addArgs = maxLength > 0 ? new XAddArgs().maxlen(maxLength).approximateTrimming() : new XAddArgs();
+        if (maxLength > 0)
+            LOGGER.warn("Dead letter stream {} is capped at about {} entries, older dead letters are discarded", streamKey, maxLength);
+        this.redisClient = RedisClient.create(redisUrl);
+        this.connection = redisClient.connect();
+        this.commands = connection.async();
+    }
+
+    /**
+     * @return the sink configured by {@code deadletter.redis.url}, or {@code null} when dead-lettering is disabled
+     */
+    public static DeadLetterSink of(CustomStageConfiguration configuration, String jobId, String stageName) throws ValidationException {
+        if (!configuration.contains(CUSTOM_CONFIG_REDIS_URL))
+            return null;
+
+        return new DeadLetterSink(configuration.getString(CUSTOM_CONFIG_REDIS_URL),
+                configuration.getString(CUSTOM_CONFIG_STREAM, "deadletter:" + jobId + ":" + stageName),
+                maxLength(configuration),
+                configuration.getPositiveLong(CUSTOM_CONFIG_WRITE_TIMEOUT_MS, 5000));
+    }
+
+    private static long maxLength(CustomStageConfiguration configuration) throws ValidationException {
+        long maxLength = configuration.getLong(CUSTOM_CONFIG_STREAM_MAX_LENGTH, 0);
+        if (maxLength < 0)
+            throw new ValidationException(CUSTOM_CONFIG_STREAM_MAX_LENGTH + " must be 0 (never trim) or positive but was: " + maxLength);
+        return maxLength;
+    }
+
+    /**
+     * @return the id of the stream entry
+     */
+    public CompletableFuture<String> writeAsync(DeadLetter deadLetter) {
+        return commands.xadd(streamKey, addArgs, deadLetter.toFields()).toCompletableFuture()
+                .whenComplete((id, t) -> {
+                    if (t != null) {
+                        LOGGER.error("Failed to write dead letter for key {} of {} to stream {}", deadLetter.key(), deadLetter.table(), streamKey, t);
+                    } else {
+                        written.increment();
+                        LOGGER.warn("Dead-lettered key {} of {} to stream {} as entry {} after {} attempt(s): {}", deadLetter.key(), deadLetter.table(), streamKey, id, deadLetter.attempts(), deadLetter.error());
+                    }
+                });
+    }
+
+    /**
+     * Blocks until Redis has acknowledged the entry.
+     */
+    public String write(DeadLetter deadLetter) throws Exception {
+        try {
+            return writeAsync(deadLetter).get(writeTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+    public String getStreamKey() {
+        return streamKey;
+    }
+
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+        redisClient.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "DeadLetterSink{streamKey=" + streamKey + ", written=" + written.sum() + "}";
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.redis.connect.pipeline.event.handler.custom.deadletter;
+
+import io.lettuce.core.RedisConnectionException;
+
+/**
+ * A call retried by a {@link RetryPolicy} still failed on its last attempt. The cause is the last attempt's failure.
+ */
+public class RetryExhaustedException extends RedisConnectionException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int attempts;
+
+    public RetryExhaustedException(int attempts, Throwable cause) {
+        super(cause.getMessage() + " (gave up after " + attempts + " attempts)", cause);
+        this.attempts = attempts;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+}
@@ -0,0 +1,178 @@
+package com.redis.connect.pipeline.event.handler.custom.deadletter;
+
+import com.redis.connect.exception.ValidationException;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import com.redis.connect.pipeline.event.handler.custom.http.HttpStatusException;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Retries calls to an external service with exponential backoff and full jitter: before attempt {@code n + 1} the
+ * caller waits a random time between 0 and {@code min(retry.backoff.max.ms, retry.backoff.initial.ms * 2^(n - 1))},
+ * so stages of many partitions that hit the same outage do not retry in lock step.
+ * <p>
+ * Only transient failures are retried: connection failures and timeouts ({@link IOException}s) and responses whose
+ * status is listed in {@code retry.status.codes}, where {@code 5xx} stands for a whole status class. Everything else,
+ * e.g. a 400 or a call rejected by an open circuit breaker, is rethrown as it is, on whichever attempt it happens. When
+ * the attempts run out on a transient failure, it is rethrown wrapped in a {@link RetryExhaustedException}.
+ * <pre>
+ * "customConfiguration" : {
+ *   "retry.max.attempts" : 5,
+ *   "retry.backoff.initial.ms" : 100,
+ *   "retry.backoff.max.ms" : 10000,
+ *   "retry.status.codes" : "5xx,408,429"
+ * }
+ * </pre>
+ * The default of a single attempt keeps the stages' behaviour of failing on the first error. Immutable and safe for
+ * concurrent use.
+ */
+public final class RetryPolicy {
+
+    public static final String CUSTOM_CONFIG_MAX_ATTEMPTS = "retry.max.attempts";
+    public static final String CUSTOM_CONFIG_BACKOFF_INITIAL_MS = "retry.backoff.initial.ms";
+    public static final String CUSTOM_CONFIG_BACKOFF_MAX_MS = "retry.backoff.max.ms";
+    public static final String CUSTOM_CONFIG_STATUS_CODES = "retry.status.codes";
+
+    private static final String DEFAULT_STATUS_CODES = "5xx,408,429";
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final String statusCodes;
+    private final BitSet retryableStatusCodes;
+
+    public RetryPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis, String retryableStatusCodes) {
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = Math.max(initialBackoffMillis, maxBackoffMillis);
+        this.statusCodes = retryableStatusCodes;
+        this.retryableStatusCodes = parseStatusCodes(retryableStatusCodes);
+    }
+
+    public static RetryPolicy of(CustomStageConfiguration configuration) throws ValidationException {
+        try {
+            return new RetryPolicy(configuration.getPositiveInt(CUSTOM_CONFIG_MAX_ATTEMPTS, 1),
+                    configuration.getPositiveLong(CUSTOM_CONFIG_BACKOFF_INITIAL_MS, 100),
+                    configuration.getPositiveLong(CUSTOM_CONFIG_BACKOFF_MAX_MS, 10000),
+                    configuration.getString(CUSTOM_CONFIG_STATUS_CODES, DEFAULT_STATUS_CODES));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException(e, CUSTOM_CONFIG_STATUS_CODES + " is invalid: " + e.getMessage());
+        }
+    }
+
+    private static BitSet parseStatusCodes(String statusCodes) {
+        BitSet codes = new BitSet(600);
+        for (String code : CustomStageConfiguration.splitList(statusCodes)) {
+            if (code.length() == 3 && (code.endsWith("xx") || code.endsWith("XX")) && code.charAt(0) >= '1' && code.charAt(0) <= '5') {
+                int from = (code.charAt(0) - '0') * 100;
+                codes.set(from, from + 100);
+            } else {
+                int status = Integer.parseInt(code);
+                if (status < 100 || status > 599)
+                    throw new IllegalArgumentException(code + " is not an HTTP status code");
+                codes.set(status);
+            }
+        }
+        return codes;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @return true when the call that failed with {@code failure} may succeed if attempted again
+     */
+    public boolean isRetryable(Throwable failure) {
+        for (Throwable t = unwrap(failure); t != null; t = t.getCause()) {
+            if (t instanceof HttpStatusException statusException)
+                return retryableStatusCodes.get(statusException.getStatusCode());
+            if (t instanceof IOException)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param attempt the attempt that just failed, starting at 1
+     */
+    long backoffMillis(int attempt) {
+        long ceiling = initialBackoffMillis << Math.min(attempt - 1, 30);
+        if (ceiling <= 0 || ceiling > maxBackoffMillis)
+            ceiling = maxBackoffMillis;
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Runs a blocking call, sleeping on the calling thread between attempts.
+     */
+    public <T> T call(Callable<T> call) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.call();
+            } catch (Exception e) {
+                if (!isRetryable(e))
+                    throw e;
+                if (attempt >= maxAttempts)
+                    throw attempt == 1 ? e : new RetryExhaustedException(attempt, e);
+                Thread.sleep(backoffMillis(attempt));
+            }
+        }
+    }
+
+    /**
+     * Runs an asynchronous call, scheduling every further attempt after its backoff without blocking a thread.
+     */
+    public <T> CompletableFuture<T> callAsync(Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(call, 1, result);
+        return result;
+    }
+
+    private <T> void attempt(Supplier<CompletableFuture<T>> call, int attempt, CompletableFuture<T> result) {
+        CompletableFuture<T> response;
+        try {
+            response = call.get();
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+
+        response.whenComplete((value, t) -> {
+            if (t == null) {
+                result.complete(value);
+                return;
+            }
+            Throwable failure = unwrap(t);
+            if (!isRetryable(failure)) {
+                result.completeExceptionally(failure);
+                return;
+            }
+            if (attempt >= maxAttempts) {
+                result.completeExceptionally(attempt == 1 ? failure : new RetryExhaustedException(attempt, failure));
+                return;
+            }
+            CompletableFuture.delayedExecutor(backoffMillis(attempt), TimeUnit.MILLISECONDS)
+                    .execute(() -> attempt(call, attempt + 1, result));
+        });
+    }
+
+    static Throwable unwrap(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null)
+            t = t.getCause();
+        return t;
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy{maxAttempts=" + maxAttempts + ", initialBackoffMillis=" + initialBackoffMillis
+                + ", maxBackoffMillis=" + maxBackoffMillis + ", retryableStatusCodes=" + statusCodes + "}";
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.redis.connect.pipeline.event.handler.custom.delimited;
+
+/**
+ * Appends one column value of a delimited record. Implementations are compiled once per column and must be stateless.
+ */
+@FunctionalInterface
+public interface ColumnFormatter {
+
+    ColumnFormatter TO_STRING = (value, target) -> target.append(value);
+
+    ColumnFormatter SKIP_NULL = (value, target) -> {
+        if (value != null)
+            target.append(value);
+    };
+
+    void appendTo(Object value, StringBuilder target) throws Exception;
+
+}
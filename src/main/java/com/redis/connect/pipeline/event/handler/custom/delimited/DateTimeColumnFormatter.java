@@ -0,0 +1,34 @@
+package com.redis.connect.pipeline.event.handler.custom.delimited;
+
+import com.redis.connect.pipeline.event.handler.custom.coerce.LogicalType;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+
+/**
+ * Formats timestamps with a pattern compiled once. Load/snapshot events carry {@code oracle.sql.TIMESTAMPTZ}, stream
+ * events carry the ISO-8601 zoned representation as a string; both are converted by {@link LogicalType#TIMESTAMP_TZ},
+ * which parses the string without a {@code DateTimeFormatter}, unless a {@code COERCE_TYPES} stage already did.
+ */
+public class DateTimeColumnFormatter implements ColumnFormatter {
+
+    private final DateTimeFormatter formatter;
+
+    /**
+     * See Patterns for Formatting and Parsing,
+     * https://docs.oracle.com/javase/8/docs/api/java/time/format/DateTimeFormatter.html#:~:text=Patterns%20for%20Formatting%20and%20Parsing
+     */
+    public DateTimeColumnFormatter(String pattern) {
+        this.formatter = DateTimeFormatter.ofPattern(pattern);
+    }
+
+    @Override
+    public void appendTo(Object value, StringBuilder target) throws Exception {
+        Object converted = value instanceof TemporalAccessor ? value : LogicalType.TIMESTAMP_TZ.convert(value);
+        // Text the coercion could not parse fails with the parser's message, as before
+        TemporalAccessor temporal = converted instanceof TemporalAccessor accessor ? accessor : ZonedDateTime.parse(String.valueOf(value));
+
+        formatter.formatTo(temporal, target);
+    }
+
+}
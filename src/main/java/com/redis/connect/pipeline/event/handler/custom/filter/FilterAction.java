@@ -0,0 +1,33 @@
+package com.redis.connect.pipeline.event.handler.custom.filter;
+
+import com.redis.connect.dto.ChangeEventDTO;
+
+import static com.redis.connect.constants.DomainConstants.*;
+
+/**
+ * What happens to a change event matched by a {@link FilterRule}.
+ */
+public enum FilterAction {
+
+    /** Pass the event on unchanged and stop evaluating further rules. */
+    KEEP(null),
+    /** Mark the event invalid so that downstream stages and the sink skip it. */
+    DROP(null),
+    CREATE(CHANGE_EVENT_DTO_OPERATION_CREATE),
+    UPDATE(CHANGE_EVENT_DTO_OPERATION_UPDATE),
+    DELETE(CHANGE_EVENT_DTO_OPERATION_DELETE);
+
+    private final String operation;
+
+    FilterAction(String operation) {
+        this.operation = operation;
+    }
+
+    public void apply(ChangeEventDTO changeEvent) {
+        if (this == DROP)
+            changeEvent.setValid(false);
+        else if (operation != null)
+            changeEvent.setOperation(operation);
+    }
+
+}
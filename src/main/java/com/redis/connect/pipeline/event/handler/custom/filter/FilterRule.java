@@ -0,0 +1,37 @@
+package com.redis.connect.pipeline.event.handler.custom.filter;
+
+import java.util.Locale;
+
+/**
+ * A compiled {@code <predicate> -> <action>} rule, e.g. {@code GENREID != 2 -> DELETE}.
+ */
+public record FilterRule(String expression, ValuePredicate predicate, FilterAction action) {
+
+    private static final String ARROW = "->";
+
+    /**
+     * @throws IllegalArgumentException when the rule is malformed
+     */
+    public static FilterRule compile(String rule) {
+        int arrow = rule.lastIndexOf(ARROW);
+        if (arrow < 0)
+            throw new IllegalArgumentException("Invalid filter rule [" + rule + "]: expected <predicate> -> <action>");
+
+        String actionName = rule.substring(arrow + ARROW.length()).trim().toUpperCase(Locale.ROOT);
+        FilterAction action;
+        try {
+            action = FilterAction.valueOf(actionName);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid filter rule [" + rule + "]: unknown action " + actionName, e);
+        }
+
+        String expression = rule.substring(0, arrow).trim();
+        return new FilterRule(expression, PredicateCompiler.compile(expression), action);
+    }
+
+    @Override
+    public String toString() {
+        return expression + " " + ARROW + " " + action;
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.redis.connect.pipeline.event.handler.custom.filter;
+
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.exception.ValidationException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Ordered, per-table filter rules compiled from stage configuration entries of the form
+ * {@code <prefix><schemaAndTableName>.<priority> = <predicate> -> <action>}. Rules are evaluated by ascending priority
+ * and the first matching rule wins; rules of the {@code *} table apply to every table after its own rules.
+ * <p>
+ * The rule set is immutable once compiled, so a single instance can be shared by all pipeline threads. Applying it
+ * costs one map lookup and the predicate evaluations, neither of which allocates.
+ */
+public final class FilterRuleSet {
+
+    public static final String ALL_TABLES = "*";
+
+    private static final FilterRule[] NO_RULES = new FilterRule[0];
+
+    private final Map<String, FilterRule[]> rulesByTable;
+    private final FilterRule[] defaultRules;
+
+    private FilterRuleSet(Map<String, FilterRule[]> rulesByTable, FilterRule[] defaultRules) {
+        this.rulesByTable = rulesByTable;
+        this.defaultRules = defaultRules;
+    }
+
+    public static FilterRuleSet compile(Map<String, String> properties, String prefix) throws ValidationException {
+        Map<String, TreeMap<Integer, FilterRule>> rules = new HashMap<>();
+
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith(prefix) || entry.getValue() == null || entry.getValue().isBlank())
+                continue;
+
+            String schemaAndTableName = key.substring(prefix.length());
+            int priority = 0;
+            int lastDot = schemaAndTableName.lastIndexOf('.');
+            if (lastDot > 0 && isDigits(schemaAndTableName, lastDot + 1)) {
+                priority = Integer.parseInt(schemaAndTableName.substring(lastDot + 1));
+                schemaAndTableName = schemaAndTableName.substring(0, lastDot);
+            }
+
+            FilterRule rule;
+            try {
+                rule = FilterRule.compile(entry.getValue());
+            } catch (IllegalArgumentException e) {
+                throw new ValidationException(e, key + " is not a valid filter rule: " + e.getMessage());
+            }
+            if (rules.computeIfAbsent(schemaAndTableName, table -> new TreeMap<>()).put(priority, rule) != null)
+                throw new ValidationException("Duplicate filter rule priority " + priority + " for table " + schemaAndTableName);
+        }
+
+        return of(rules);
+    }
+
+    /**
+     * Builds a rule set from rules already ordered by priority, keyed by table or {@link #ALL_TABLES}.
+     */
+    public static FilterRuleSet of(Map<String, ? extends Map<Integer, FilterRule>> rules) {
+        List<FilterRule> wildcardRules = rules.containsKey(ALL_TABLES) ? List.copyOf(rules.get(ALL_TABLES).values()) : List.of();
+
+        Map<String, FilterRule[]> rulesByTable = new HashMap<>();
+        for (Map.Entry<String, ? extends Map<Integer, FilterRule>> entry : rules.entrySet()) {
+            if (ALL_TABLES.equals(entry.getKey()))
+                continue;
+            List<FilterRule> tableRules = new ArrayList<>(entry.getValue().values());
+            tableRules.addAll(wildcardRules);
+            rulesByTable.put(entry.getKey(), tableRules.toArray(NO_RULES));
+        }
+
+        return new FilterRuleSet(Map.copyOf(rulesByTable), wildcardRules.toArray(NO_RULES));
+    }
+
+    /**
+     * Applies the first matching rule of the event's table.
+     *
+     * @return the action that was applied, or {@code null} when no rule matched or the event has no values
+     */
+    public FilterAction apply(ChangeEventDTO changeEvent) {
+        Map<String, Object> values = changeEvent.getValues();
+        if (values == null)
+            return null;
+
+        FilterRule[] rules = rulesByTable.getOrDefault(changeEvent.getSchemaAndTableName(), defaultRules);
+        for (FilterRule rule : rules) {
+            if (rule.predicate().test(values)) {
+                rule.action().apply(changeEvent);
+                return rule.action();
+            }
+        }
+        return null;
+    }
+
+    public boolean isEmpty() {
+        return rulesByTable.isEmpty() && defaultRules.length == 0;
+    }
+
+    @Override
+    public String toString() {
+        Map<String, List<FilterRule>> description = new TreeMap<>();
+        rulesByTable.forEach((table, rules) -> description.put(table, List.of(rules)));
+        if (defaultRules.length > 0)
+            description.put(ALL_TABLES, List.of(defaultRules));
+        return description.toString();
+    }
+
+    private static boolean isDigits(String text, int start) {
+        if (start >= text.length() || text.length() - start > 9)
+            return false;
+        for (int i = start; i < text.length(); i++) {
+            if (!Character.isDigit(text.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.redis.connect.pipeline.event.handler.custom.filter;
+
+/**
+ * Allocation-free numeric view of column values as they arrive from the source: boxed numbers during streaming,
+ * {@code BigDecimal} during load, or their string representation (e.g. {@code "2"} or {@code "2.0"}).
+ */
+public final class NumericValues {
+
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private NumericValues() {
+    }
+
+    /**
+     * @return the numeric value, or {@link Double#NaN} when the value is null or not numeric
+     */
+    public static double toDouble(Object value) {
+        if (value instanceof Number number)
+            return number.doubleValue();
+        if (value instanceof CharSequence text)
+            return parse(text);
+        return Double.NaN;
+    }
+
+    /**
+     * Parses plain decimal notation without allocating. Anything else (exponents, very long mantissas) falls back to
+     * {@link Double#parseDouble(String)}.
+     */
+    public static double parse(CharSequence text) {
+        int length = text.length();
+        int i = 0;
+        while (i < length && text.charAt(i) == ' ')
+            i++;
+        while (length > i && text.charAt(length - 1) == ' ')
+            length--;
+        if (i == length)
+            return Double.NaN;
+
+        boolean negative = false;
+        char first = text.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int scale = -1;
+        int digits = 0;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (scale >= 0)
+                    scale++;
+                if (mantissa >= MAX_EXACT_MANTISSA || scale >= POWERS_OF_TEN.length)
+                    return parseSlow(text);
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                return parseSlow(text);
+            }
+        }
+        if (digits == 0)
+            return Double.NaN;
+
+        double result = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+        return negative ? -result : result;
+    }
+
+    private static double parseSlow(CharSequence text) {
+        try {
+            return Double.parseDouble(text.toString());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+}
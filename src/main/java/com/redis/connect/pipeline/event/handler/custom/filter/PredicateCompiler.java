@@ -0,0 +1,288 @@
+package com.redis.connect.pipeline.event.handler.custom.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compiles a small SQL-like predicate language into a {@link ValuePredicate} tree.
+ * <pre>
+ * predicate  := or
+ * or         := and ( OR and )*
+ * and        := unary ( AND unary )*
+ * unary      := NOT unary | '(' predicate ')' | comparison
+ * comparison := column ( '=' | '==' | '!=' | '&lt;&gt;' | '&lt;' | '&lt;=' | '&gt;' | '&gt;=' ) literal
+ *             | column [ NOT ] IN '(' literal ( ',' literal )* ')'
+ *             | column [ NOT ] BETWEEN literal AND literal
+ *             | column IS [ NOT ] NULL
+ * literal    := number | 'string'
+ * </pre>
+ * Column names may be double quoted. Numeric literals compare numerically against numbers and numeric strings (so
+ * {@code 2}, {@code 2.0} and {@code "2.0"} are all equal to {@code 2}), string literals compare textually. As in SQL,
+ * every comparison against a missing or null column is false, and so is its negation: {@code NOT} is false whenever a
+ * column compared inside it is missing or null ({@code IS [NOT] NULL} tests do not count).
+ */
+public final class PredicateCompiler {
+
+    private final String expression;
+    private final List<String> tokens;
+    // Columns of the comparisons parsed so far, in order, for NOT to guard against null columns
+    private final List<String> comparedColumns = new ArrayList<>();
+    private int position;
+
+    private PredicateCompiler(String expression) {
+        this.expression = expression;
+        this.tokens = tokenize(expression);
+    }
+
+    /**
+     * @throws IllegalArgumentException when the expression is not a valid predicate
+     */
+    public static ValuePredicate compile(String expression) {
+        PredicateCompiler compiler = new PredicateCompiler(expression);
+        ValuePredicate predicate = compiler.parseOr();
+        if (compiler.position != compiler.tokens.size())
+            throw compiler.error("unexpected token '" + compiler.tokens.get(compiler.position) + "'");
+        return predicate;
+    }
+
+    private ValuePredicate parseOr() {
+        ValuePredicate predicate = parseAnd();
+        while (acceptKeyword("OR"))
+            predicate = ValuePredicate.or(predicate, parseAnd());
+        return predicate;
+    }
+
+    private ValuePredicate parseAnd() {
+        ValuePredicate predicate = parseUnary();
+        while (acceptKeyword("AND"))
+            predicate = ValuePredicate.and(predicate, parseUnary());
+        return predicate;
+    }
+
+    private ValuePredicate parseUnary() {
+        if (acceptKeyword("NOT")) {
+            int first = comparedColumns.size();
+            ValuePredicate predicate = parseUnary();
+            List<String> columns = comparedColumns.subList(first, comparedColumns.size());
+            return ValuePredicate.not(predicate, columns.stream().distinct().toArray(String[]::new));
+        }
+        if (accept("(")) {
+            ValuePredicate predicate = parseOr();
+            expect(")");
+            return predicate;
+        }
+        return parseComparison();
+    }
+
+    private ValuePredicate parseComparison() {
+        String column = parseColumn();
+
+        if (acceptKeyword("IS")) {
+            boolean negated = acceptKeyword("NOT");
+            expectKeyword("NULL");
+            return negated ? values -> values.get(column) != null : values -> values.get(column) == null;
+        }
+        comparedColumns.add(column);
+
+        boolean negated = acceptKeyword("NOT");
+        if (acceptKeyword("IN")) {
+            expect("(");
+            List<Object> literals = new ArrayList<>();
+            do {
+                literals.add(parseLiteral());
+            } while (accept(","));
+            expect(")");
+            ValuePredicate in = in(column, literals);
+            return negated ? values -> values.get(column) != null && !in.test(values) : in;
+        }
+        if (acceptKeyword("BETWEEN")) {
+            Object low = parseLiteral();
+            expectKeyword("AND");
+            Object high = parseLiteral();
+            ValuePredicate between = ValuePredicate.and(compare(column, ">=", low), compare(column, "<=", high));
+            return negated ? values -> values.get(column) != null && !between.test(values) : between;
+        }
+        if (negated)
+            throw error("expected IN or BETWEEN after NOT");
+
+        String operator = next("comparison operator");
+        return compare(column, operator, parseLiteral());
+    }
+
+    private static ValuePredicate compare(String column, String operator, Object literal) {
+        if (literal instanceof Double number) {
+            double operand = number;
+            return switch (operator) {
+                case "=", "==" -> values -> NumericValues.toDouble(values.get(column)) == operand;
+                case "!=", "<>" -> values -> {
+                    double value = NumericValues.toDouble(values.get(column));
+                    return !Double.isNaN(value) && value != operand;
+                };
+                case "<" -> values -> NumericValues.toDouble(values.get(column)) < operand;
+                case "<=" -> values -> NumericValues.toDouble(values.get(column)) <= operand;
+                case ">" -> values -> NumericValues.toDouble(values.get(column)) > operand;
+                case ">=" -> values -> NumericValues.toDouble(values.get(column)) >= operand;
+                default -> throw new IllegalArgumentException("Unknown comparison operator " + operator);
+            };
+        }
+
+        String operand = (String) literal;
+        return switch (operator) {
+            case "=", "==" -> values -> {
+                Object value = values.get(column);
+                return value != null && compareText(value, operand) == 0;
+            };
+            case "!=", "<>" -> values -> {
+                Object value = values.get(column);
+                return value != null && compareText(value, operand) != 0;
+            };
+            case "<" -> values -> {
+                Object value = values.get(column);
+                return value != null && compareText(value, operand) < 0;
+            };
+            case "<=" -> values -> {
+                Object value = values.get(column);
+                return value != null && compareText(value, operand) <= 0;
+            };
+            case ">" -> values -> {
+                Object value = values.get(column);
+                return value != null && compareText(value, operand) > 0;
+            };
+            case ">=" -> values -> {
+                Object value = values.get(column);
+                return value != null && compareText(value, operand) >= 0;
+            };
+            default -> throw new IllegalArgumentException("Unknown comparison operator " + operator);
+        };
+    }
+
+    private static int compareText(Object value, String operand) {
+        if (value instanceof String text)
+            return text.compareTo(operand);
+        if (value instanceof CharSequence text)
+            return CharSequence.compare(text, operand);
+        return String.valueOf(value).compareTo(operand);
+    }
+
+    private static ValuePredicate in(String column, List<Object> literals) {
+        if (literals.stream().allMatch(Double.class::isInstance)) {
+            double[] set = literals.stream().mapToDouble(Double.class::cast).sorted().distinct().toArray();
+            return values -> {
+                double value = NumericValues.toDouble(values.get(column));
+                return !Double.isNaN(value) && Arrays.binarySearch(set, value) >= 0;
+            };
+        }
+        if (literals.stream().allMatch(String.class::isInstance)) {
+            Set<String> set = new HashSet<>(literals.stream().map(String.class::cast).toList());
+            return values -> {
+                Object value = values.get(column);
+                return value != null && set.contains(value instanceof String text ? text : String.valueOf(value));
+            };
+        }
+        throw new IllegalArgumentException("IN list of column " + column + " mixes numeric and string literals");
+    }
+
+    private String parseColumn() {
+        String token = next("column name");
+        if (token.startsWith("\""))
+            return token.substring(1, token.length() - 1).intern();
+        if (!Character.isLetter(token.charAt(0)) && token.charAt(0) != '_')
+            throw error("expected a column name but found '" + token + "'");
+        return token.intern();
+    }
+
+    private Object parseLiteral() {
+        String token = next("literal");
+        if (token.startsWith("'"))
+            return token.substring(1, token.length() - 1).replace("''", "'");
+        try {
+            return Double.parseDouble(token);
+        } catch (NumberFormatException e) {
+            throw error("expected a number or a quoted string but found '" + token + "'");
+        }
+    }
+
+    private boolean accept(String token) {
+        if (position < tokens.size() && tokens.get(position).equals(token)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean acceptKeyword(String keyword) {
+        if (position < tokens.size() && tokens.get(position).equalsIgnoreCase(keyword)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) {
+        if (!accept(token))
+            throw error("expected '" + token + "'");
+    }
+
+    private void expectKeyword(String keyword) {
+        if (!acceptKeyword(keyword))
+            throw error("expected " + keyword);
+    }
+
+    private String next(String expected) {
+        if (position >= tokens.size())
+            throw error("expected " + expected + " but reached the end of the expression");
+        return tokens.get(position++);
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Invalid predicate [" + expression + "]: " + message);
+    }
+
+    private static List<String> tokenize(String expression) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < expression.length()) {
+            char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'' || c == '"') {
+                int end = i + 1;
+                while (true) {
+                    if (end >= expression.length())
+                        throw new IllegalArgumentException("Invalid predicate [" + expression + "]: unterminated quote");
+                    if (expression.charAt(end) == c) {
+                        // '' escapes a quote inside a string literal
+                        if (c == '\'' && end + 1 < expression.length() && expression.charAt(end + 1) == '\'') {
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                tokens.add(expression.substring(i, end + 1));
+                i = end + 1;
+            } else if ("(),".indexOf(c) >= 0) {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if ("=!<>".indexOf(c) >= 0) {
+                int end = i + 1;
+                if (end < expression.length() && "=>".indexOf(expression.charAt(end)) >= 0)
+                    end++;
+                tokens.add(expression.substring(i, end));
+                i = end;
+            } else {
+                int end = i;
+                while (end < expression.length() && !Character.isWhitespace(expression.charAt(end)) && "(),=!<>'\"".indexOf(expression.charAt(end)) < 0)
+                    end++;
+                tokens.add(expression.substring(i, end));
+                i = end;
+            }
+        }
+        return tokens;
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.redis.connect.pipeline.event.handler.custom.filter;
+
+import java.util.Map;
+
+/**
+ * Node of a compiled predicate tree evaluated against the values of a change event.
+ * <p>
+ * Implementations resolve column names and literals at compile time; {@link #test(Map)} must not allocate.
+ */
+@FunctionalInterface
+public interface ValuePredicate {
+
+    boolean test(Map<String, Object> values);
+
+    static ValuePredicate and(ValuePredicate left, ValuePredicate right) {
+        return values -> left.test(values) && right.test(values);
+    }
+
+    static ValuePredicate or(ValuePredicate left, ValuePredicate right) {
+        return values -> left.test(values) || right.test(values);
+    }
+
+    /**
+     * @param columns the columns compared by {@code predicate}; as every comparison against a null column is unknown
+     *                rather than false, the negation is false when any of them is missing or null
+     */
+    static ValuePredicate not(ValuePredicate predicate, String... columns) {
+        return values -> {
+            for (String column : columns) {
+                if (values.get(column) == null)
+                    return false;
+            }
+            return !predicate.test(values);
+        };
+    }
+
+}
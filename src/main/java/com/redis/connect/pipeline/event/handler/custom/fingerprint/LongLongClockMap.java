@@ -0,0 +1,162 @@
+package com.redis.connect.pipeline.event.handler.custom.fingerprint;
+
+import java.util.Arrays;
+
+/**
+ * Map of {@code long} keys to {@code long} values in two primitive arrays with linear probing, bounded to
+ * {@code maxEntries}: once full, each new key evicts one that was not read or written since the clock hand last passed
+ * it (CLOCK, an approximation of least recently used that needs one byte per slot instead of a linked list). Meant for
+ * fingerprint keys, which are already well mixed. Not thread safe; {@link #size()} and {@link #getEvictionCount()}
+ * may be read from other threads for monitoring.
+ */
+public final class LongLongClockMap {
+
+    private static final long FREE = 0;
+    // Stands in for the key 0, which marks free slots
+    private static final long ZERO_KEY = 0x8000000000000001L;
+
+    private final int maxEntries;
+    private final int mask;
+    private final long[] keys;
+    private final long[] values;
+    private final byte[] referenced;
+    private int hand;
+    private volatile int size;
+    private volatile long evictions;
+
+    public LongLongClockMap(int maxEntries) {
+        this.maxEntries = maxEntries;
+        // Load factor between 3/8 and 3/4
+        int capacity = Integer.highestOneBit(Math.max(2, maxEntries + (maxEntries >>> 1))) << 1;
+        this.mask = capacity - 1;
+        this.keys = new long[capacity];
+        this.values = new long[capacity];
+        this.referenced = new byte[capacity];
+    }
+
+    /**
+     * Maps {@code key} to {@code value}.
+     *
+     * @return whether {@code key} was already mapped to {@code value}
+     */
+    public boolean putAndCompare(long key, long value) {
+        if (key == FREE)
+            key = ZERO_KEY;
+
+        int slot = find(key);
+        if (keys[slot] == key) {
+            referenced[slot] = 1;
+            if (values[slot] == value)
+                return true;
+            values[slot] = value;
+            return false;
+        }
+
+        if (size == maxEntries) {
+            evict();
+            slot = find(key);
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        referenced[slot] = 1;
+        size++;
+        return false;
+    }
+
+    /**
+     * @return the value of {@code key}, or {@code missing} when it is not in the map
+     */
+    public long get(long key, long missing) {
+        if (key == FREE)
+            key = ZERO_KEY;
+
+        int slot = find(key);
+        if (keys[slot] != key)
+            return missing;
+        referenced[slot] = 1;
+        return values[slot];
+    }
+
+    public void remove(long key) {
+        if (key == FREE)
+            key = ZERO_KEY;
+
+        int slot = find(key);
+        if (keys[slot] == key)
+            delete(slot);
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        Arrays.fill(referenced, (byte) 0);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * @return bytes held by the arrays of the map, whatever its size
+     */
+    public long getFootprintBytes() {
+        return (long) keys.length * (Long.BYTES + Long.BYTES + 1);
+    }
+
+    /**
+     * @return the slot holding {@code key}, or the free slot where it would be inserted
+     */
+    private int find(long key) {
+        int slot = home(key);
+        while (keys[slot] != FREE && keys[slot] != key)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private int home(long key) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    private void evict() {
+        while (true) {
+            if (keys[hand] != FREE) {
+                if (referenced[hand] == 0) {
+                    delete(hand);
+                    evictions++;
+                    hand = (hand + 1) & mask;
+                    return;
+                }
+                referenced[hand] = 0;
+            }
+            hand = (hand + 1) & mask;
+        }
+    }
+
+    /**
+     * Frees {@code slot} and shifts back the entries of its probe run, so that lookups need no tombstones.
+     */
+    private void delete(int slot) {
+        int gap = slot;
+        for (int i = (slot + 1) & mask; keys[i] != FREE; i = (i + 1) & mask) {
+            // An entry can fill the gap unless its home slot lies between the gap and itself
+            if (((i - home(keys[i])) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                referenced[gap] = referenced[i];
+                gap = i;
+            }
+        }
+        keys[gap] = FREE;
+        referenced[gap] = 0;
+        size--;
+    }
+
+}
@@ -0,0 +1,245 @@
+package com.redis.connect.pipeline.event.handler.custom.fingerprint;
+
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.pipeline.event.handler.custom.metrics.MBeanRegistration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.redis.connect.constants.DomainConstants.CHANGE_EVENT_DTO_OPERATION_DELETE;
+import static com.redis.connect.constants.DomainConstants.CHANGE_EVENT_DTO_OPERATION_UPDATE;
+
+/**
+ * Tells updates that leave the projected columns of a row unchanged, by the 64-bit fingerprint of those columns for the
+ * same ({@code schemaAndTableName}, key). Keys are fingerprinted as well, so an entry costs two {@code long}s in a
+ * {@link LongLongClockMap} however long the key is. Two different rows or values collide with a probability of about
+ * 2<sup>-64</sup>.
+ * <p>
+ * A fingerprint only counts once the target holds the row: {@link #isUnchanged} parks the fingerprint of each event
+ * under its ring buffer sequence, and {@link #commit} records it when the event comes back still valid after the
+ * sink. An update is unchanged when it matches both the last fingerprint seen and the last one committed for its
+ * row, so an update replayed after the sink failed, or whose predecessor a later stage dropped, is passed on, and so
+ * is an update that follows a different one still in flight. A row whose entry was evicted, or was never written
+ * since the stage started, is always considered changed.
+ * <p>
+ * Every partition of a job runs its own pair of stages: the suppressing stage {@link #offer offers} its instance with
+ * the events it is handed, and the committing stage of the same partition {@link #claim claims} it with the first
+ * one, as {@link com.redis.connect.pipeline.event.handler.custom.lag.LagTimeline} does. Pending slots are plain
+ * arrays, published to the committing stage by the disruptor's sequences; the committed fingerprints are read and
+ * written under a lock. Everything else is confined to the suppressing stage's thread.
+ */
+public class UnchangedUpdates implements UnchangedUpdatesMXBean {
+
+    // Ring buffer entries handed out by instances no committing stage has claimed yet
+    private static final Map<ChangeEventDTO, UnchangedUpdates> unclaimed = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    private final LongLongClockMap seen;
+    private final LongLongClockMap committed;
+    private final long[] pendingSequences;
+    private final long[] pendingRows;
+    private final long[] pendingFingerprints;
+    private final boolean[] pendingDeletes;
+    private final int mask;
+    private final List<String> columns;
+    private final Set<String> ignoredColumns;
+
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder suppressed = new LongAdder();
+
+    private volatile boolean claimed;
+    private int offers;
+    private MBeanRegistration registration;
+
+    /**
+     * @param pendingSize    at least the ring buffer size, rounded up to a power of two
+     * @param columns        the projected columns, or an empty list for all of them
+     * @param ignoredColumns columns left out of the comparison, e.g. audit timestamps
+     */
+    public UnchangedUpdates(int maxEntries, int pendingSize, List<String> columns, Set<String> ignoredColumns) {
+        this.seen = new LongLongClockMap(maxEntries);
+        this.committed = new LongLongClockMap(maxEntries);
+        pendingSize = Integer.highestOneBit(Math.max(2, pendingSize - 1)) << 1;
+        this.pendingSequences = new long[pendingSize];
+        this.pendingRows = new long[pendingSize];
+        this.pendingFingerprints = new long[pendingSize];
+        this.pendingDeletes = new boolean[pendingSize];
+        this.mask = pendingSize - 1;
+        this.columns = columns;
+        this.ignoredColumns = ignoredColumns;
+        Arrays.fill(pendingSequences, -1);
+    }
+
+    /**
+     * Makes this instance claimable through {@code changeEvent} until a committing stage claims it. The committing
+     * stage is first handed the first event offered, so offering stops after one lap of the pending slots.
+     */
+    public void offer(ChangeEventDTO changeEvent) {
+        if (claimed || offers > mask)
+            return;
+        offers++;
+        unclaimed.put(changeEvent, this);
+    }
+
+    /**
+     * @return the instance of the suppressing stage that was handed {@code changeEvent}, or {@code null}
+     */
+    public static UnchangedUpdates claim(ChangeEventDTO changeEvent) {
+        UnchangedUpdates unchangedUpdates = unclaimed.get(changeEvent);
+        if (unchangedUpdates != null) {
+            unchangedUpdates.claimed = true;
+            unchangedUpdates.withdraw();
+        }
+        return unchangedUpdates;
+    }
+
+    /**
+     * Removes the remaining offers of this instance, when it is claimed or its suppressing stage shuts down.
+     */
+    public void withdraw() {
+        unclaimed.values().removeIf(unchangedUpdates -> unchangedUpdates == this);
+    }
+
+    /**
+     * Parks the fingerprint of an insert or update, or the delete of its row, under {@code sequence} until
+     * {@link #commit}.
+     *
+     * @return whether the event is an update of the projected columns to the values the target already holds
+     */
+    public boolean isUnchanged(ChangeEventDTO changeEvent, long sequence) {
+        long key = ValueFingerprint.combine(ValueFingerprint.of(changeEvent.getSchemaAndTableName()), ValueFingerprint.of(changeEvent.getKey()));
+        int slot = (int) sequence & mask;
+
+        String operation = changeEvent.getOperation();
+        if (CHANGE_EVENT_DTO_OPERATION_DELETE.equals(operation)) {
+            seen.remove(key);
+            pend(slot, sequence, key, 0, true);
+            return false;
+        }
+
+        long fingerprint = rowFingerprint(changeEvent.getValues());
+        boolean unchanged = seen.putAndCompare(key, fingerprint);
+        pend(slot, sequence, key, fingerprint, false);
+        if (!CHANGE_EVENT_DTO_OPERATION_UPDATE.equals(operation))
+            return false;
+
+        updates.increment();
+        if (unchanged) {
+            // ~fingerprint stands for a row that was never committed
+            synchronized (committed) {
+                unchanged = committed.get(key, ~fingerprint) == fingerprint;
+            }
+        }
+        if (unchanged)
+            suppressed.increment();
+        return unchanged;
+    }
+
+    private void pend(int slot, long sequence, long key, long fingerprint, boolean delete) {
+        pendingRows[slot] = key;
+        pendingFingerprints[slot] = fingerprint;
+        pendingDeletes[slot] = delete;
+        pendingSequences[slot] = sequence;
+    }
+
+    /**
+     * Records the fingerprint parked under {@code sequence} as written, unless a later stage dropped the event or the
+     * slot was already overwritten by a later lap of the ring.
+     */
+    public void commit(ChangeEventDTO changeEvent, long sequence) {
+        int slot = (int) sequence & mask;
+        long key = pendingRows[slot];
+        long fingerprint = pendingFingerprints[slot];
+        boolean delete = pendingDeletes[slot];
+        if (pendingSequences[slot] != sequence || !changeEvent.isValid())
+            return;
+
+        synchronized (committed) {
+            if (delete)
+                committed.remove(key);
+            else
+                committed.putAndCompare(key, fingerprint);
+        }
+    }
+
+    private long rowFingerprint(Map<String, Object> values) {
+        if (values == null)
+            return ValueFingerprint.of(null);
+
+        // Summed per column, the iteration order of the values does not matter
+        long fingerprint = 0;
+        int count = 0;
+        if (columns.isEmpty()) {
+            for (Map.Entry<String, Object> column : values.entrySet()) {
+                if (ignoredColumns.contains(column.getKey()))
+                    continue;
+                fingerprint += ValueFingerprint.combine(column.getKey().hashCode(), ValueFingerprint.of(column.getValue()));
+                count++;
+            }
+        } else {
+            for (String column : columns) {
+                Object value = values.get(column);
+                if (value == null && !values.containsKey(column))
+                    continue;
+                fingerprint += ValueFingerprint.combine(column.hashCode(), ValueFingerprint.of(value));
+                count++;
+            }
+        }
+        return ValueFingerprint.combine(fingerprint, count);
+    }
+
+    public void registerMBean(String name) {
+        registration = MBeanRegistration.register("UnchangedUpdates", name, this);
+    }
+
+    public void unregisterMBean() {
+        if (registration != null)
+            registration.unregister();
+    }
+
+    @Override
+    public long getUpdateCount() {
+        return updates.sum();
+    }
+
+    @Override
+    public long getSuppressedCount() {
+        return suppressed.sum();
+    }
+
+    @Override
+    public double getSuppressedRatio() {
+        long total = updates.sum();
+        return total == 0 ? 0d : (double) suppressed.sum() / total;
+    }
+
+    @Override
+    public int getCacheSize() {
+        return committed.size();
+    }
+
+    @Override
+    public int getCacheMaxEntries() {
+        return committed.getMaxEntries();
+    }
+
+    @Override
+    public long getCacheEvictionCount() {
+        return seen.getEvictionCount() + committed.getEvictionCount();
+    }
+
+    @Override
+    public long getCacheFootprintBytes() {
+        return seen.getFootprintBytes() + committed.getFootprintBytes() + (long) pendingSequences.length * (Long.BYTES * 3 + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "UnchangedUpdates{updates=" + updates.sum() + ", suppressed=" + suppressed.sum() + ", cacheSize=" + getCacheSize() +
+                ", cacheMaxEntries=" + getCacheMaxEntries() + ", cacheEvictions=" + getCacheEvictionCount() + ", cacheFootprintBytes=" + getCacheFootprintBytes() + "}";
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.redis.connect.pipeline.event.handler.custom.fingerprint;
+
+/**
+ * JMX view of an {@link UnchangedUpdates} filter, registered under
+ * {@code com.redis.connect.customstage:type=UnchangedUpdates}.
+ */
+public interface UnchangedUpdatesMXBean {
+
+    long getUpdateCount();
+
+    long getSuppressedCount();
+
+    double getSuppressedRatio();
+
+    int getCacheSize();
+
+    int getCacheMaxEntries();
+
+    long getCacheEvictionCount();
+
+    long getCacheFootprintBytes();
+
+}
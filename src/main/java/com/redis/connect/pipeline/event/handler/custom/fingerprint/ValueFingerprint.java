@@ -0,0 +1,85 @@
+package com.redis.connect.pipeline.event.handler.custom.fingerprint;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+
+/**
+ * 64-bit fingerprints of column values, to tell whether a column changed without keeping its previous value. Equal
+ * values of the same representation get equal fingerprints; anything else collides with a probability of about
+ * 2<sup>-64</sup>. Numbers, strings, booleans, byte arrays and dates are hashed without allocating; other values
+ * through their {@code toString()}.
+ * <p>
+ * The representation is part of the fingerprint: {@code 2}, {@code "2"} and {@code BigDecimal} 2.0 differ, like
+ * they do once serialized.
+ */
+public final class ValueFingerprint {
+
+    /** Fingerprint of a column that is not in the row at all, as opposed to a {@code null} value. */
+    public static final long ABSENT = 0x6a09e667f3bcc909L;
+
+    private static final long NULL = 0xbb67ae8584caa73bL;
+    private static final long TRUE = 0x3c6ef372fe94f82bL;
+    private static final long FALSE = 0xa54ff53a5f1d36f1L;
+    private static final long INTEGRAL = 0x510e527fade682d1L;
+    private static final long FLOATING = 0x9b05688c2b3e6c1fL;
+    private static final long DECIMAL = 0x1f83d9abfb41bd6bL;
+    private static final long TEXT = 0x5be0cd19137e2179L;
+    private static final long BYTES = 0xcbbb9d5dc1059ed8L;
+    private static final long DATE = 0x629a292a367cd507L;
+    private static final long OTHER = 0x9159015a3070dd17L;
+
+    private ValueFingerprint() {
+    }
+
+    public static long of(Object value) {
+        if (value == null)
+            return NULL;
+        if (value instanceof CharSequence text)
+            return text(TEXT, text);
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+            return mix(INTEGRAL ^ ((Number) value).longValue());
+        if (value instanceof Double || value instanceof Float)
+            return mix(FLOATING ^ Double.doubleToLongBits(((Number) value).doubleValue()));
+        if (value instanceof BigDecimal decimal) {
+            BigInteger unscaled = decimal.unscaledValue();
+            long digits = unscaled.bitLength() < 64 ? mix(unscaled.longValue()) : text(DECIMAL, unscaled.toString());
+            return mix(DECIMAL ^ digits ^ ((long) decimal.scale() << 32));
+        }
+        if (value instanceof Boolean bool)
+            return bool ? TRUE : FALSE;
+        if (value instanceof byte[] bytes) {
+            long hash = BYTES;
+            for (byte b : bytes)
+                hash = (hash ^ b) * 0x100000001b3L;
+            return mix(hash ^ bytes.length);
+        }
+        if (value instanceof java.sql.Timestamp timestamp)
+            return mix(DATE ^ mix(timestamp.getTime()) ^ timestamp.getNanos());
+        if (value instanceof Date date)
+            return mix(DATE ^ mix(date.getTime()));
+        return text(OTHER ^ value.getClass().getName().hashCode(), value.toString());
+    }
+
+    /**
+     * @return a fingerprint of both fingerprints, which depends on their order
+     */
+    public static long combine(long first, long second) {
+        return mix(first * 0x9e3779b97f4a7c15L + second);
+    }
+
+    private static long text(long seed, CharSequence text) {
+        // FNV-1a over the UTF-16 code units, finished with the SplitMix64 finalizer
+        long hash = seed;
+        for (int i = 0, length = text.length(); i < length; i++)
+            hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+        return mix(hash ^ text.length());
+    }
+
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+}
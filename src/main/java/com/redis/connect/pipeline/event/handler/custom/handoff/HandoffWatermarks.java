@@ -0,0 +1,139 @@
+package com.redis.connect.pipeline.event.handler.custom.handoff;
+
+import com.redis.connect.pipeline.event.handler.custom.fingerprint.LongLongClockMap;
+import com.redis.connect.pipeline.event.handler.custom.fingerprint.ValueFingerprint;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-row high-water SCNs of the initial load of a job, kept from the LOAD run until the STREAM run that follows it
+ * has read past them. A row is covered by the load up to the SCN recorded for it: the load read the row after that
+ * SCN, so a streamed change committed at or before it is already in the target.
+ * <p>
+ * Rows are keyed by the fingerprint of ({@code schemaAndTableName}, key) in a {@link LongLongClockMap} of at most
+ * {@code maxKeys} rows. A row evicted from a load larger than that is simply not deduplicated. Load partitions record
+ * concurrently, hence the synchronized methods; the STREAM run uses them from a single thread.
+ * <p>
+ * Once every LOAD stage of the job has stopped, the watermarks wait at most the given timeout for a STREAM run to
+ * {@link #forStream claim} them, so a job whose STREAM run starts on another instance does not hold them forever.
+ */
+public final class HandoffWatermarks {
+
+    public static final long NONE = -1;
+
+    private static final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+    private static final Map<String, HandoffWatermarks> watermarks = new ConcurrentHashMap<>();
+
+    private final LongLongClockMap rows;
+    private long cutOverScn = NONE;
+    private long recorded;
+    private int loading;
+    private boolean claimed;
+
+    private HandoffWatermarks(int maxKeys) {
+        this.rows = new LongLongClockMap(maxKeys);
+    }
+
+    /**
+     * @return the watermarks of the job, created empty for a LOAD stage that records them until it calls
+     * {@link #loadStopped}
+     */
+    public static HandoffWatermarks forLoad(String jobId, int maxKeys) {
+        HandoffWatermarks handoffWatermarks = watermarks.computeIfAbsent(jobId, id -> new HandoffWatermarks(maxKeys));
+        synchronized (handoffWatermarks) {
+            handoffWatermarks.loading++;
+        }
+        return handoffWatermarks;
+    }
+
+    /**
+     * @return the watermarks a LOAD run left for the job in this JVM, or {@code null}
+     */
+    public static HandoffWatermarks forStream(String jobId) {
+        HandoffWatermarks handoffWatermarks = watermarks.get(jobId);
+        if (handoffWatermarks != null) {
+            synchronized (handoffWatermarks) {
+                handoffWatermarks.claimed = true;
+            }
+        }
+        return handoffWatermarks;
+    }
+
+    /**
+     * Called by every LOAD stage that stopped recording. When it was the last one, the watermarks are dropped after
+     * {@code streamTimeoutMillis} unless a STREAM run claimed them, or another LOAD run started, in the meantime.
+     */
+    public void loadStopped(String jobId, long streamTimeoutMillis) {
+        synchronized (this) {
+            if (--loading > 0 || claimed)
+                return;
+        }
+        CompletableFuture.delayedExecutor(streamTimeoutMillis, TimeUnit.MILLISECONDS).execute(() -> {
+            synchronized (this) {
+                if (loading > 0 || claimed)
+                    return;
+            }
+            if (watermarks.remove(jobId, this))
+                LOGGER.info("Instance: {} JobId: {} released handoff watermarks, no STREAM run claimed them within {} ms, {}", instanceId, jobId, streamTimeoutMillis, this);
+        });
+    }
+
+    /**
+     * Drops the watermarks of the job once the stream is past its cut-over SCN.
+     */
+    public static void release(String jobId, HandoffWatermarks handoffWatermarks) {
+        watermarks.remove(jobId, handoffWatermarks);
+    }
+
+    public synchronized void record(String table, String key, long scn) {
+        long row = row(table, key);
+        if (scn > rows.get(row, NONE))
+            rows.putAndCompare(row, scn);
+        cutOverScn = Math.max(cutOverScn, scn);
+        recorded++;
+    }
+
+    /**
+     * Looks up the row of a streamed change and forgets it once the stream has passed it.
+     *
+     * @return whether the load already covered the change
+     */
+    public synchronized boolean covers(String table, String key, long commitScn) {
+        long row = row(table, key);
+        long highWater = rows.get(row, NONE);
+        if (highWater == NONE)
+            return false;
+        if (commitScn <= highWater)
+            return true;
+        rows.remove(row);
+        return false;
+    }
+
+    /**
+     * @return the highest SCN recorded, after which no streamed change can be covered, or {@link #NONE}
+     */
+    public synchronized long getCutOverScn() {
+        return cutOverScn;
+    }
+
+    public synchronized int size() {
+        return rows.size();
+    }
+
+    private static long row(String table, String key) {
+        return ValueFingerprint.combine(ValueFingerprint.of(table), ValueFingerprint.of(key));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "HandoffWatermarks{recorded=" + recorded + ", rows=" + rows.size() + ", evictions=" + rows.getEvictionCount() +
+                ", cutOverScn=" + cutOverScn + ", footprintBytes=" + rows.getFootprintBytes() + "}";
+    }
+
+}
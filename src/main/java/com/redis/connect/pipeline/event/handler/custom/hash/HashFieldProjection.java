@@ -0,0 +1,100 @@
+package com.redis.connect.pipeline.event.handler.custom.hash;
+
+import com.redis.connect.pipeline.event.handler.custom.objectmap.ObjectMapConverter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Projects a change event's value blob onto the string fields of a Redis hash in a single pass over the columns:
+ * values are formatted by {@link HashValueFormatter}, nested maps and domain objects are flattened to dotted field
+ * names ({@code nameAndNumber.name}), and null values are either left out or written as a configured placeholder.
+ * <p>
+ * When the blob carries both a before and an after image under the configured keys, the after image is projected
+ * and, with {@code skipUnchanged}, fields whose value equals the before image are left out, so the sink only writes
+ * what changed. Otherwise the whole blob is the after image.
+ */
+public final class HashFieldProjection {
+
+    private static final ObjectMapConverter BEANS = new ObjectMapConverter(ObjectMapConverter.Layout.FLAT);
+
+    private final HashValueFormatter formatter;
+    private final String nullValue;
+    private final String beforeImageKey;
+    private final String afterImageKey;
+    private final boolean skipUnchanged;
+
+    /**
+     * @param nullValue      written for null values, {@code null} to leave the field out
+     * @param beforeImageKey blob entry holding the before image, {@code null} when the blob is the after image
+     * @param afterImageKey  blob entry holding the after image, {@code null} when the blob is the after image
+     */
+    public HashFieldProjection(HashValueFormatter formatter, String nullValue, String beforeImageKey, String afterImageKey, boolean skipUnchanged) {
+        this.formatter = formatter;
+        this.nullValue = nullValue;
+        this.beforeImageKey = beforeImageKey;
+        this.afterImageKey = afterImageKey;
+        this.skipUnchanged = skipUnchanged;
+    }
+
+    /**
+     * @return the hash fields, or {@code null} when there is no blob
+     */
+    public Map<String, Object> project(Object blob) throws Exception {
+        Map<?, ?> after = asMap(blob);
+        if (after == null)
+            return null;
+
+        Map<?, ?> before = null;
+        if (afterImageKey != null && after.get(afterImageKey) != null) {
+            before = skipUnchanged ? asMap(after.get(beforeImageKey)) : null;
+            after = asMap(after.get(afterImageKey));
+        }
+
+        Map<String, Object> fields = new HashMap<>((int) (after.size() / 0.75f) + 1);
+        project(null, after, before, fields);
+        return fields;
+    }
+
+    private void project(String prefix, Map<?, ?> after, Map<?, ?> before, Map<String, Object> fields) throws Exception {
+        for (Map.Entry<?, ?> entry : after.entrySet()) {
+            String name = entry.getKey() instanceof String key ? key : String.valueOf(entry.getKey());
+            String field = prefix == null ? name : prefix + name;
+            Object value = entry.getValue();
+            Object previous = before == null ? null : before.get(entry.getKey());
+
+            if (isNested(value)) {
+                project(field + ".", asMap(value), isNested(previous) ? asMap(previous) : null, fields);
+                continue;
+            }
+
+            if (before != null && (previous != null || before.containsKey(entry.getKey())) && same(value, previous))
+                continue;
+
+            if (value != null)
+                fields.put(field, formatter.format(value));
+            else if (nullValue != null)
+                fields.put(field, nullValue);
+        }
+    }
+
+    private static boolean isNested(Object value) {
+        if (value == null || value instanceof CharSequence || value instanceof Number)
+            return false;
+        return value instanceof Map<?, ?> || ObjectMapConverter.isBean(value.getClass());
+    }
+
+    private static Map<?, ?> asMap(Object value) {
+        if (value == null || value instanceof Map<?, ?>)
+            return (Map<?, ?>) value;
+        return BEANS.toMap(value);
+    }
+
+    private static boolean same(Object value, Object previous) {
+        if (value instanceof byte[] bytes && previous instanceof byte[] previousBytes)
+            return Arrays.equals(bytes, previousBytes);
+        return Objects.equals(value, previous);
+    }
+
+}
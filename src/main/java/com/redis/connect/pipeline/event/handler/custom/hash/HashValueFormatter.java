@@ -0,0 +1,103 @@
+package com.redis.connect.pipeline.event.handler.custom.hash;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.Locale;
+import oracle.sql.TIMESTAMPTZ;
+
+/**
+ * Formats a column value as the string stored in a Redis hash field, by type:
+ * <ul>
+ *     <li>text as it is, integers and floating point numbers with {@code toString()}, {@code BigDecimal} in plain
+ *     notation (never {@code 1E+3}),</li>
+ *     <li>{@code byte[]} as {@code BASE64} (default) or {@code HEX} instead of the array's identity string,</li>
+ *     <li>dates and timestamps as {@code ISO}-8601 (default), {@code EPOCH_MILLIS} or with a
+ *     {@link DateTimeFormatter} pattern. {@code java.sql.Date} and {@code java.sql.Timestamp} are local values,
+ *     other {@code java.util.Date}s are instants rendered in UTC.</li>
+ * </ul>
+ * Immutable and safe for concurrent use.
+ */
+public final class HashValueFormatter {
+
+    public static final String DATE_FORMAT_ISO = "ISO";
+    public static final String DATE_FORMAT_EPOCH_MILLIS = "EPOCH_MILLIS";
+    public static final String BINARY_FORMAT_BASE64 = "BASE64";
+    public static final String BINARY_FORMAT_HEX = "HEX";
+
+    private final boolean epochMillis;
+    private final DateTimeFormatter pattern;
+    private final boolean hex;
+
+    /**
+     * @throws IllegalArgumentException when a format is unknown or the date pattern is invalid
+     */
+    public HashValueFormatter(String dateFormat, String binaryFormat) {
+        this.epochMillis = DATE_FORMAT_EPOCH_MILLIS.equalsIgnoreCase(dateFormat);
+        this.pattern = epochMillis || DATE_FORMAT_ISO.equalsIgnoreCase(dateFormat) ? null : DateTimeFormatter.ofPattern(dateFormat);
+
+        switch (binaryFormat.toUpperCase(Locale.ROOT)) {
+            case BINARY_FORMAT_BASE64 -> hex = false;
+            case BINARY_FORMAT_HEX -> hex = true;
+            default -> throw new IllegalArgumentException("Unknown binary format " + binaryFormat + ", expected " + BINARY_FORMAT_BASE64 + " or " + BINARY_FORMAT_HEX);
+        }
+    }
+
+    /**
+     * @param value a non-null column value
+     */
+    public String format(Object value) throws Exception {
+        if (value instanceof String text)
+            return text;
+        if (value instanceof BigDecimal decimal)
+            return decimal.toPlainString();
+        if (value instanceof Number || value instanceof Boolean || value instanceof CharSequence)
+            return value.toString();
+        if (value instanceof byte[] bytes)
+            return hex ? HexFormat.of().formatHex(bytes) : Base64.getEncoder().encodeToString(bytes);
+        if (value instanceof java.sql.Timestamp timestamp)
+            return formatTemporal(timestamp.toLocalDateTime());
+        if (value instanceof java.sql.Date date)
+            return formatTemporal(date.toLocalDate());
+        if (value instanceof Date date)
+            return formatTemporal(date.toInstant().atZone(ZoneOffset.UTC));
+        if (value instanceof TIMESTAMPTZ timestamp)
+            return formatTemporal(timestamp.toZonedDateTime());
+        if (value instanceof TemporalAccessor temporal)
+            return formatTemporal(temporal);
+        if (value instanceof char[] chars)
+            return new String(chars);
+        return value.toString();
+    }
+
+    private String formatTemporal(TemporalAccessor temporal) {
+        if (epochMillis)
+            return Long.toString(toEpochMillis(temporal));
+        if (pattern != null)
+            return pattern.format(temporal);
+        // The java.time types all print themselves as ISO-8601
+        return temporal.toString();
+    }
+
+    private static long toEpochMillis(TemporalAccessor temporal) {
+        if (temporal instanceof Instant instant)
+            return instant.toEpochMilli();
+        if (temporal.isSupported(ChronoField.INSTANT_SECONDS))
+            return Instant.from(temporal).toEpochMilli();
+        if (temporal instanceof LocalDateTime dateTime)
+            return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        if (temporal instanceof LocalDate date)
+            return date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        throw new IllegalArgumentException("Cannot convert " + temporal + " to epoch milliseconds");
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.redis.connect.pipeline.event.handler.custom.http;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Minimal consecutive-failure circuit breaker for calls to an external endpoint.
+ * <p>
+ * After {@code failureThreshold} consecutive failures the circuit opens and every call is rejected without touching
+ * the network for {@code openDurationMillis}. The first call after that window is let through as a probe
+ * (half-open); its outcome closes the circuit again or re-opens it for another window.
+ */
+public class CircuitBreaker {
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openDurationNanos;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long openedAtNanos;
+
+    public CircuitBreaker(String name, int failureThreshold, long openDurationMillis) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = openDurationMillis * 1_000_000L;
+    }
+
+    /**
+     * @return true when a call may be attempted, false when it should fail fast
+     */
+    public boolean tryAcquire() {
+        State current = state.get();
+        if (current == State.CLOSED)
+            return true;
+        if (current == State.OPEN && System.nanoTime() - openedAtNanos >= openDurationNanos)
+            return state.compareAndSet(State.OPEN, State.HALF_OPEN);
+        return false;
+    }
+
+    public void onSuccess() {
+        consecutiveFailures.set(0);
+        if (state.get() != State.CLOSED)
+            state.set(State.CLOSED);
+    }
+
+    public void onFailure() {
+        if (state.get() == State.HALF_OPEN || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            openedAtNanos = System.nanoTime();
+            state.set(State.OPEN);
+        }
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker{name=" + name + ", state=" + state.get() + ", consecutiveFailures=" + consecutiveFailures.get() + "}";
+    }
+
+}
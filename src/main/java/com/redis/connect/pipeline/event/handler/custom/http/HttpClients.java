@@ -0,0 +1,51 @@
+package com.redis.connect.pipeline.event.handler.custom.http;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process wide HTTP client shared by every custom stage that talks to an external service.
+ * <p>
+ * {@link HttpClient} keeps an internal pool of HTTP/1.1 keep-alive connections per destination, so sharing a
+ * single instance across stages and partitions avoids a TCP (and TLS) handshake per change event.
+ */
+public final class HttpClients {
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+    // The JDK client manages these itself and rejects them when set explicitly
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host", "upgrade");
+
+    private HttpClients() {
+    }
+
+    private static final class Holder {
+        private static final HttpClient SHARED = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    public static HttpClient shared() {
+        return Holder.SHARED;
+    }
+
+    /**
+     * Copies multi-valued headers onto a request builder, skipping the ones the JDK client owns.
+     */
+    public static HttpRequest.Builder headers(HttpRequest.Builder builder, Map<String, List<String>> headers) {
+        if (headers != null) {
+            headers.forEach((name, values) -> {
+                if (name != null && values != null && !RESTRICTED_HEADERS.contains(name.toLowerCase()))
+                    values.forEach(value -> builder.header(name, value));
+            });
+        }
+        return builder;
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.redis.connect.pipeline.event.handler.custom.http;
+
+import io.lettuce.core.RedisConnectionException;
+
+/**
+ * An external endpoint answered with a status other than 200. Still a {@link RedisConnectionException}, which is what
+ * the HTTP stages have always thrown, but carries the status so a retry policy can tell a 503 from a 400.
+ */
+public class HttpStatusException extends RedisConnectionException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public HttpStatusException(String destinationUrl, int statusCode, String detail) {
+        super("HTTP request to " + destinationUrl + (detail == null ? "" : " " + detail) + " received a response with HttpStatusCode: " + statusCode);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+}
@@ -1,78 +1,373 @@
-package com.redis.connect.pipeline.event.handler.custom.impl;
-
-import com.lmax.disruptor.Sequence;
-import com.redis.connect.dto.ChangeEventDTO;
-import com.redis.connect.dto.JobPipelineStageDTO;
-import com.redis.connect.exception.ValidationException;
-import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
-import io.lettuce.core.RedisConnectionException;
-import java.lang.management.ManagementFactory;
-import java.util.Map;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.client.RestTemplate;
-
-public class CallbackHttpRequestCustomStage extends BaseCustomStageHandler {
-
-    private final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
-    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
-    private static final String CUSTOM_CONFIG_DESTINATION_URL = "callback.url";
-    private final String destinationUrl;
-
-    public CallbackHttpRequestCustomStage(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage) {
-        super(jobId, jobType, jobPipelineStage);
-        destinationUrl = jobPipelineStage.getDatabase().getCustomConfiguration().get(CUSTOM_CONFIG_DESTINATION_URL);
-    }
-
-    @Override
-    public void onEvent(ChangeEventDTO changeEvent) {
-
-        Map<String, Object> values = changeEvent.getValues();
-
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Instance: {} -------------------------------------------Stage: CUSTOM, destinationUrl: {}, Raw values: {}", instanceId, destinationUrl, values);
-        }
-
-        if (values != null && values.containsKey("clientId")) {
-
-            String clientId = String.valueOf(values.remove("clientId"));
-
-            if (LOGGER.isDebugEnabled()) {
-                LOGGER.debug("Instance: {} CallbackHttpRequestCustomStage::onEvent Processor, clientId: {}, values: {}", instanceId, clientId, values);
-            }
-
-            // Compose GET Request
-            ResponseEntity<String> response = new RestTemplate().getForEntity(destinationUrl + "/" + clientId, String.class);
-
-            if (response.getBody() == null)
-                throw new RedisConnectionException("HTTP request to " + destinationUrl + " did not receive a response");
-
-            else if (!response.getStatusCode().equals(HttpStatus.OK))
-                throw new RedisConnectionException("HTTP request to " + destinationUrl + " received a response with HttpStatusCode: " + response.getStatusCode());
-
-            values.put(clientId, response.getBody());
-        }
-    }
-
-    @Override
-    public void init() throws Exception {
-        setSequenceCallback(new Sequence());
-
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Instance: {} successfully started disruptor (replication pipeline) in CallbackHttpRequestCustomStage.", instanceId);
-        }
-
-        if (destinationUrl == null || destinationUrl.isBlank())
-            throw new ValidationException(CUSTOM_CONFIG_DESTINATION_URL + " is a required configuration for this custom stage");
-    }
-
-    @Override
-    public void shutdown() {
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Instance: {} successfully shutdown disruptor (replication pipeline) in CallbackHttpRequestCustomStage.", instanceId);
-        }
-    }
-
-}
\ No newline at end of file
+package com.redis.connect.pipeline.event.handler.custom.impl;
+
+import com.lmax.disruptor.Sequence;
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.exception.InvalidChangeEventException;
+import com.redis.connect.exception.ValidationException;
+import com.redis.connect.pipeline.event.handler.custom.cache.LookupCache;
+import com.redis.connect.pipeline.event.handler.custom.cache.RedisLookupStore;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import com.redis.connect.pipeline.event.handler.custom.deadletter.DeadLetter;
+import com.redis.connect.pipeline.event.handler.custom.deadletter.DeadLetterSink;
+import com.redis.connect.pipeline.event.handler.custom.deadletter.RetryPolicy;
+import com.redis.connect.pipeline.event.handler.custom.http.CircuitBreaker;
+import com.redis.connect.pipeline.event.handler.custom.http.HttpClients;
+import com.redis.connect.pipeline.event.handler.custom.http.HttpStatusException;
+import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
+import io.lettuce.core.RedisConnectionException;
+import java.lang.management.ManagementFactory;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.util.DefaultUriBuilderFactory;
+
+/**
+ * Enriches change events carrying a {@code clientId} with the body returned by {@code GET <callback.url>/<clientId>}.
+ * <p>
+ * With {@code callback.async.enabled} set to true, lookups are pipelined: up to {@code callback.async.max.inflight}
+ * distinct lookups run concurrently on the shared HTTP client, events waiting for the same {@code clientId} share one
+ * request, and results are applied in ring buffer order before the disruptor batch is handed to the next stage and
+ * before the stage {@link Sequence} advances. A circuit breaker rejects lookups without a network round trip once the
+ * endpoint has failed {@code callback.circuit.failure.threshold} times in a row.
+ * <p>
+ * With {@code callback.cache.enabled} set to true, responses are kept in a bounded LRU cache for
+ * {@code callback.cache.ttl.ms}; a 404 is remembered for {@code callback.cache.negative.ttl.ms}. When
+ * {@code callback.cache.redis.url} is set, local misses are looked up in (and successful responses written through to)
+ * Redis keys {@code <callback.cache.redis.key.prefix><clientId>} that expire after the same TTL, sharing hits between
+ * Connect instances. Local hit, miss and eviction counters and the shared hit and miss counters are exposed through
+ * JMX.
+ * <p>
+ * Lookups that fail with a transient error are retried as configured by {@link RetryPolicy} ({@code retry.*}); a
+ * lookup rejected by the open circuit is not. When {@code deadletter.redis.url} is set, an event whose lookup still
+ * fails is written to a Redis Stream by {@link DeadLetterSink} and dropped ({@code setValid(false)}) instead of
+ * stopping the pipeline; {@code DeadLetterReplayTool} re-injects it later.
+ * <pre>
+ * "customConfiguration" : {
+ *   "callback.url" : "http://enrichment:8080/clients",
+ *   "callback.async.enabled" : true,
+ *   "callback.async.max.inflight" : 64,
+ *   "callback.request.timeout.ms" : 2000,
+ *   "callback.circuit.failure.threshold" : 5,
+ *   "callback.circuit.open.ms" : 30000,
+ *   "callback.cache.enabled" : true,
+ *   "callback.cache.max.entries" : 10000,
+ *   "callback.cache.ttl.ms" : 60000,
+ *   "callback.cache.negative.ttl.ms" : 5000,
+ *   "callback.cache.redis.url" : "redis://127.0.0.1:14000",
+ *   "callback.cache.redis.key.prefix" : "callback:cache:",
+ *   "retry.max.attempts" : 3,
+ *   "deadletter.redis.url" : "redis://127.0.0.1:14000"
+ * }
+ * </pre>
+ */
+public class CallbackHttpRequestCustomStage extends BaseCustomStageHandler implements EndOfBatchAware {
+
+    private final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+    private static final String CUSTOM_CONFIG_DESTINATION_URL = "callback.url";
+    private static final String CUSTOM_CONFIG_ASYNC_ENABLED = "callback.async.enabled";
+    private static final String CUSTOM_CONFIG_ASYNC_MAX_INFLIGHT = "callback.async.max.inflight";
+    private static final String CUSTOM_CONFIG_REQUEST_TIMEOUT_MS = "callback.request.timeout.ms";
+    private static final String CUSTOM_CONFIG_CIRCUIT_FAILURE_THRESHOLD = "callback.circuit.failure.threshold";
+    private static final String CUSTOM_CONFIG_CIRCUIT_OPEN_MS = "callback.circuit.open.ms";
+    private static final String CUSTOM_CONFIG_CACHE_ENABLED = "callback.cache.enabled";
+    private static final String CUSTOM_CONFIG_CACHE_MAX_ENTRIES = "callback.cache.max.entries";
+    private static final String CUSTOM_CONFIG_CACHE_TTL_MS = "callback.cache.ttl.ms";
+    private static final String CUSTOM_CONFIG_CACHE_NEGATIVE_TTL_MS = "callback.cache.negative.ttl.ms";
+    private static final String CUSTOM_CONFIG_CACHE_REDIS_URL = "callback.cache.redis.url";
+    private static final String CUSTOM_CONFIG_CACHE_REDIS_KEY_PREFIX = "callback.cache.redis.key.prefix";
+    private static final String CLIENT_ID_KEY = "clientId";
+    // Encodes the URL the way RestTemplate.getForEntity(String, ...) did, so endpoints receive the same paths as before
+    private static final DefaultUriBuilderFactory uriFactory = new DefaultUriBuilderFactory();
+
+    static {
+        uriFactory.setEncodingMode(DefaultUriBuilderFactory.EncodingMode.URI_COMPONENT);
+    }
+
+    private final String destinationUrl;
+    private final String jobId;
+    private final JobPipelineStageDTO jobPipelineStage;
+
+    private Duration requestTimeout;
+    private boolean asyncEnabled;
+    private int maxInFlight;
+    private CircuitBreaker circuitBreaker;
+    private Sequence sequenceCallback;
+    private LookupCache<String, String> lookupCache;
+    private RedisLookupStore sharedLookupStore;
+    private RetryPolicy retryPolicy;
+    private DeadLetterSink deadLetterSink;
+
+    // Async mode state, only touched from the disruptor thread
+    private final List<PendingEnrichment> pendingEnrichments = new ArrayList<>();
+    private final Map<String, CompletableFuture<String>> inFlightLookups = new HashMap<>();
+    private long highestPendingSequence = -1;
+
+    public CallbackHttpRequestCustomStage(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage) {
+        super(jobId, jobType, jobPipelineStage);
+        this.jobId = jobId;
+        this.jobPipelineStage = jobPipelineStage;
+        destinationUrl = jobPipelineStage.getDatabase().getCustomConfiguration().get(CUSTOM_CONFIG_DESTINATION_URL);
+    }
+
+    @Override
+    public void setSequenceCallback(Sequence sequenceCallback) {
+        super.setSequenceCallback(sequenceCallback);
+        this.sequenceCallback = sequenceCallback;
+    }
+
+    @Override
+    public void onEvent(ChangeEventDTO changeEvent, long sequence, boolean endOfBatch) throws Exception {
+
+        if (!asyncEnabled || !changeEvent.isValid()) {
+            super.onEvent(changeEvent, sequence, endOfBatch);
+            // An invalid event can close the batch as well, pending lookups must not leak into the next one
+            if (asyncEnabled && endOfBatch)
+                onEndOfBatch();
+            return;
+        }
+
+        try {
+            Map<String, Object> values = changeEvent.getValues();
+
+            if (values != null && values.containsKey(CLIENT_ID_KEY)) {
+
+                String clientId = String.valueOf(values.remove(CLIENT_ID_KEY));
+
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Instance: {} CallbackHttpRequestCustomStage::onEvent Processor, clientId: {}, sequence: {}, in-flight lookups: {}", instanceId, clientId, sequence, inFlightLookups.size());
+                }
+
+                CompletableFuture<String> response = inFlightLookups.computeIfAbsent(clientId, this::lookup);
+                pendingEnrichments.add(new PendingEnrichment(changeEvent, values, clientId, response, sequence));
+            }
+            highestPendingSequence = sequence;
+
+            // Everything must be enriched before the disruptor publishes this batch to the next stage
+            if (endOfBatch || inFlightLookups.size() >= maxInFlight)
+                drain();
+
+        } catch (Exception e) {
+            throw new InvalidChangeEventException(e, "Failed to transform change event in custom stage");
+        }
+    }
+
+    @Override
+    public void onEvent(ChangeEventDTO changeEvent) throws Exception {
+
+        Map<String, Object> values = changeEvent.getValues();
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Instance: {} -------------------------------------------Stage: CUSTOM, destinationUrl: {}, Raw values: {}", instanceId, destinationUrl, values);
+        }
+
+        if (values != null && values.containsKey(CLIENT_ID_KEY)) {
+
+            String clientId = String.valueOf(values.remove(CLIENT_ID_KEY));
+
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Instance: {} CallbackHttpRequestCustomStage::onEvent Processor, clientId: {}, values: {}", instanceId, clientId, values);
+            }
+
+            try {
+                values.put(clientId, await(lookup(clientId)));
+            } catch (RedisConnectionException e) {
+                if (deadLetterSink == null)
+                    throw e;
+                deadLetter(changeEvent, values, clientId, e);
+            }
+        }
+    }
+
+    @Override
+    public void onEndOfBatch() throws Exception {
+        if (asyncEnabled && !pendingEnrichments.isEmpty())
+            drain();
+    }
+
+    /**
+     * Applies completed lookups in ring buffer order and moves the stage sequence past them. Without a dead letter
+     * sink, on the first failed lookup the sequence is left just before the failed event and the failure is rethrown.
+     */
+    private void drain() throws Exception {
+        try {
+            for (PendingEnrichment pending : pendingEnrichments) {
+                try {
+                    pending.values.put(pending.clientId, await(pending.response));
+                } catch (RedisConnectionException e) {
+                    if (deadLetterSink == null) {
+                        sequenceCallback.set(pending.sequence - 1);
+                        throw e;
+                    }
+                    deadLetter(pending.changeEvent, pending.values, pending.clientId, e);
+                } catch (Exception e) {
+                    sequenceCallback.set(pending.sequence - 1);
+                    throw e;
+                }
+            }
+            sequenceCallback.set(highestPendingSequence);
+        } finally {
+            pendingEnrichments.clear();
+            inFlightLookups.clear();
+        }
+    }
+
+    /**
+     * Writes the event, with its clientId put back, to the dead letter stream and drops it from the pipeline.
+     */
+    private void deadLetter(ChangeEventDTO changeEvent, Map<String, Object> values, String clientId, Exception failure) throws Exception {
+        values.put(CLIENT_ID_KEY, clientId);
+        deadLetterSink.write(DeadLetter.of(jobId, jobPipelineStage.getStageName(), changeEvent, values, failure));
+        changeEvent.setValid(false);
+    }
+
+    /**
+     * Resolves a clientId from the local cache, then the shared Redis store and finally the callback endpoint.
+     */
+    private CompletableFuture<String> lookup(String clientId) {
+
+        if (lookupCache == null)
+            return fetchAsync(clientId);
+
+        LookupCache.Entry<String> cached = lookupCache.get(clientId);
+        if (cached != null) {
+            return cached.negative()
+                    ? CompletableFuture.failedFuture(new HttpStatusException(destinationUrl, 404, "(cached)"))
+                    : CompletableFuture.completedFuture(cached.value());
+        }
+
+        if (sharedLookupStore == null)
+            return fetchAsync(clientId);
+
+        return sharedLookupStore.get(clientId).thenCompose(shared -> {
+            if (shared == null)
+                return fetchAsync(clientId);
+            lookupCache.put(clientId, shared);
+            return CompletableFuture.completedFuture(shared);
+        });
+    }
+
+    private CompletableFuture<String> fetchAsync(String clientId) {
+        return retryPolicy.callAsync(() -> fetchOnce(clientId));
+    }
+
+    private CompletableFuture<String> fetchOnce(String clientId) {
+
+        if (!circuitBreaker.tryAcquire())
+            return CompletableFuture.failedFuture(new RedisConnectionException("HTTP request to " + destinationUrl + " was rejected because the circuit breaker is " + circuitBreaker.getState()));
+
+        // Compose GET Request
+        HttpRequest request = HttpRequest.newBuilder(uriFactory.expand(destinationUrl + "/" + clientId))
+                .timeout(requestTimeout)
+                .GET()
+                .build();
+
+        return HttpClients.shared().sendAsync(request, HttpResponse.BodyHandlers.ofString()).handle((response, t) -> {
+            if (t != null) {
+                circuitBreaker.onFailure();
+                throw new RedisConnectionException("HTTP request to " + destinationUrl + " failed: " + t.getMessage(), t);
+            }
+
+            // A 4xx still proves the endpoint is alive, only server side errors count towards opening the circuit
+            if (response.statusCode() >= 500)
+                circuitBreaker.onFailure();
+            else
+                circuitBreaker.onSuccess();
+
+            if (response.body() == null)
+                throw new RedisConnectionException("HTTP request to " + destinationUrl + " did not receive a response");
+
+            else if (response.statusCode() != 200) {
+                if (response.statusCode() == 404 && lookupCache != null)
+                    lookupCache.putNegative(clientId);
+                throw new HttpStatusException(destinationUrl, response.statusCode(), null);
+            }
+
+            if (lookupCache != null) {
+                lookupCache.put(clientId, response.body());
+                if (sharedLookupStore != null)
+                    sharedLookupStore.put(clientId, response.body());
+            }
+            return response.body();
+        });
+    }
+
+    private static String await(CompletableFuture<String> response) throws Exception {
+        try {
+            return response.get();
+        } catch (ExecutionException | CompletionException e) {
+            if (e.getCause() instanceof Exception cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+    @Override
+    public void init() throws Exception {
+        setSequenceCallback(new Sequence());
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Instance: {} successfully started disruptor (replication pipeline) in CallbackHttpRequestCustomStage.", instanceId);
+        }
+
+        if (destinationUrl == null || destinationUrl.isBlank())
+            throw new ValidationException(CUSTOM_CONFIG_DESTINATION_URL + " is a required configuration for this custom stage");
+
+        CustomStageConfiguration configuration = CustomStageConfiguration.of(jobPipelineStage);
+        requestTimeout = Duration.ofMillis(configuration.getPositiveLong(CUSTOM_CONFIG_REQUEST_TIMEOUT_MS, 5000));
+        asyncEnabled = configuration.getBoolean(CUSTOM_CONFIG_ASYNC_ENABLED, false);
+        maxInFlight = configuration.getPositiveInt(CUSTOM_CONFIG_ASYNC_MAX_INFLIGHT, 64);
+        circuitBreaker = new CircuitBreaker(destinationUrl,
+                configuration.getPositiveInt(CUSTOM_CONFIG_CIRCUIT_FAILURE_THRESHOLD, 5),
+                configuration.getPositiveLong(CUSTOM_CONFIG_CIRCUIT_OPEN_MS, 30000));
+        retryPolicy = RetryPolicy.of(configuration);
+        deadLetterSink = DeadLetterSink.of(configuration, jobId, jobPipelineStage.getStageName());
+
+        if (configuration.getBoolean(CUSTOM_CONFIG_CACHE_ENABLED, false)) {
+            long ttlMillis = configuration.getPositiveLong(CUSTOM_CONFIG_CACHE_TTL_MS, 60000);
+            lookupCache = new LookupCache<>(configuration.getPositiveInt(CUSTOM_CONFIG_CACHE_MAX_ENTRIES, 10000), ttlMillis,
+                    configuration.getLong(CUSTOM_CONFIG_CACHE_NEGATIVE_TTL_MS, 5000));
+            lookupCache.registerMBean(jobId + "-" + jobPipelineStage.getStageName() + "-" + jobPipelineStage.getIndex());
+
+            if (configuration.contains(CUSTOM_CONFIG_CACHE_REDIS_URL)) {
+                sharedLookupStore = new RedisLookupStore(configuration.getString(CUSTOM_CONFIG_CACHE_REDIS_URL),
+                        configuration.getString(CUSTOM_CONFIG_CACHE_REDIS_KEY_PREFIX, "callback:cache:"), ttlMillis);
+                lookupCache.setSharedStore(sharedLookupStore);
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        inFlightLookups.values().forEach(response -> response.cancel(true));
+
+        if (lookupCache != null) {
+            LOGGER.info("Instance: {} CallbackHttpRequestCustomStage lookup cache statistics: {}, shared store: {}", instanceId, lookupCache, sharedLookupStore);
+            lookupCache.unregisterMBean();
+        }
+        if (sharedLookupStore != null)
+            sharedLookupStore.close();
+        if (deadLetterSink != null) {
+            LOGGER.info("Instance: {} CallbackHttpRequestCustomStage dead letters: {}", instanceId, deadLetterSink);
+            deadLetterSink.close();
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Instance: {} successfully shutdown disruptor (replication pipeline) in CallbackHttpRequestCustomStage.", instanceId);
+        }
+    }
+
+    private record PendingEnrichment(ChangeEventDTO changeEvent, Map<String, Object> values, String clientId, CompletableFuture<String> response, long sequence) {
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.redis.connect.pipeline.event.handler.custom.impl;
+
+import com.lmax.disruptor.Sequence;
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.exception.ValidationException;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import com.redis.connect.pipeline.event.handler.custom.filter.FilterAction;
+import com.redis.connect.pipeline.event.handler.custom.filter.FilterRuleSet;
+import com.redis.connect.pipeline.event.handler.custom.parallel.ThreadSafeStage;
+import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps, drops or re-routes change events based on declarative rules compiled once at {@code init()}, see
+ * {@link FilterRuleSet} and {@link com.redis.connect.pipeline.event.handler.custom.filter.PredicateCompiler} for the
+ * rule syntax. Dropped events are marked invalid, the other actions rewrite the event operation.
+ * <pre>
+ * "customConfiguration" : {
+ *   "filter.rules.CHINOOK.TRACK.10" : "GENREID IN (1, 2) -> KEEP",
+ *   "filter.rules.CHINOOK.TRACK.20" : "MILLISECONDS BETWEEN 0 AND 1000 OR NAME IS NULL -> DROP",
+ *   "filter.rules.*.100" : "DELETED_FLAG == 'Y' -> DELETE"
+ * }
+ * </pre>
+ */
+public class ChangeEventFilterStage extends BaseCustomStageHandler implements ThreadSafeStage {
+
+    private static final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+    static final String CUSTOM_CONFIG_RULES_PREFIX = "filter.rules.";
+    private final JobPipelineStageDTO jobPipelineStage;
+    private final int processors = Runtime.getRuntime().availableProcessors();
+    private final Map<FilterAction, LongAdder> matches = new EnumMap<>(FilterAction.class);
+    private FilterRuleSet ruleSet;
+
+    public ChangeEventFilterStage(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage) {
+        super(jobId, jobType, jobPipelineStage);
+        this.jobPipelineStage = jobPipelineStage;
+        for (FilterAction action : FilterAction.values())
+            matches.put(action, new LongAdder());
+    }
+
+    @Override
+    public void onEvent(ChangeEventDTO changeEvent) throws Exception {
+
+        FilterAction action = ruleSet.apply(changeEvent);
+        if (action == null)
+            return;
+
+        matches.get(action).increment();
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} CustomStage::onEvent Processor, schemaAndTableName: {}, key: {}, action: {}", instanceId, changeEvent.getSchemaAndTableName(), changeEvent.getKey(), action);
+    }
+
+    @Override
+    public void validateEventHandler() {
+        try {
+            if (FilterRuleSet.compile(CustomStageConfiguration.of(jobPipelineStage).asMap(), CUSTOM_CONFIG_RULES_PREFIX).isEmpty())
+                LOGGER.warn("Instance: {} no {}<schemaAndTableName>.<priority> rules are configured, ChangeEventFilterStage will pass every event through", instanceId, CUSTOM_CONFIG_RULES_PREFIX);
+        } catch (ValidationException e) {
+            LOGGER.error("Instance: {} ChangeEventFilterStage rules are invalid: {}", instanceId, e.getMessage());
+        }
+    }
+
+    @Override
+    public void init() throws Exception {
+        setSequenceCallback(new Sequence());
+
+        ruleSet = FilterRuleSet.compile(CustomStageConfiguration.of(jobPipelineStage).asMap(), CUSTOM_CONFIG_RULES_PREFIX);
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully started disruptor (replication pipeline) in ChangeEventFilterStage. Available CPU: {}, rules: {}", instanceId, processors, ruleSet);
+    }
+
+    @Override
+    public void shutdown() throws Exception {
+        LOGGER.info("Instance: {} ChangeEventFilterStage matched events by action: {}", instanceId, matches);
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully shutdown disruptor (replication pipeline) in ChangeEventFilterStage. Available CPU: {}", instanceId, processors);
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.redis.connect.pipeline.event.handler.custom.impl;
+
+import com.lmax.disruptor.Sequence;
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.exception.ValidationException;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import com.redis.connect.pipeline.event.handler.custom.parallel.ThreadSafeStage;
+import com.redis.connect.pipeline.event.handler.custom.transform.ColumnTransformSet;
+import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rewrites column values with per-table transforms compiled once at {@code init()}, see {@link ColumnTransformSet}
+ * for the configuration layout. Supported transforms are {@code upper}, {@code lower}, {@code trim},
+ * {@code substring(begin[, end])}, {@code replace('regex', 'replacement')},
+ * {@code cast(string|int|long|double|decimal|boolean)}, {@code default(value)}, {@code rename(column)} and
+ * {@code drop}.
+ * <pre>
+ * "customConfiguration" : {
+ *   "transform.rules.CHINOOK.TRACK.10" : "NAME : trim | upper",
+ *   "transform.rules.CHINOOK.TRACK.20" : "COMPOSER : replace('\\s+', ' ') | default('Unknown')",
+ *   "transform.rules.CHINOOK.TRACK.30" : "GENREID : cast(int) | rename(GENRE_ID)",
+ *   "transform.rules.*.100" : "ROWVERSION : drop"
+ * }
+ * </pre>
+ */
+public class ColumnTransformStage extends BaseCustomStageHandler implements ThreadSafeStage {
+
+    private static final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+    static final String CUSTOM_CONFIG_RULES_PREFIX = "transform.rules.";
+    private final JobPipelineStageDTO jobPipelineStage;
+    private final int processors = Runtime.getRuntime().availableProcessors();
+    private ColumnTransformSet transforms;
+
+    public ColumnTransformStage(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage) {
+        super(jobId, jobType, jobPipelineStage);
+        this.jobPipelineStage = jobPipelineStage;
+    }
+
+    @Override
+    public void onEvent(ChangeEventDTO changeEvent) throws Exception {
+        Map<String, Object> values = changeEvent.getValues();
+        if (values != null)
+            transforms.apply(changeEvent.getSchemaAndTableName(), values);
+    }
+
+    @Override
+    public void validateEventHandler() {
+        try {
+            if (ColumnTransformSet.compile(CustomStageConfiguration.of(jobPipelineStage).asMap(), CUSTOM_CONFIG_RULES_PREFIX).isEmpty())
+                LOGGER.warn("Instance: {} no {}<schemaAndTableName>.<order> transforms are configured, ColumnTransformStage will pass every event through unchanged", instanceId, CUSTOM_CONFIG_RULES_PREFIX);
+        } catch (ValidationException e) {
+            LOGGER.error("Instance: {} ColumnTransformStage transforms are invalid: {}", instanceId, e.getMessage());
+        }
+    }
+
+    @Override
+    public void init() throws Exception {
+        setSequenceCallback(new Sequence());
+
+        transforms = ColumnTransformSet.compile(CustomStageConfiguration.of(jobPipelineStage).asMap(), CUSTOM_CONFIG_RULES_PREFIX);
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully started disruptor (replication pipeline) in ColumnTransformStage. Available CPU: {}, transforms: {}", instanceId, processors, transforms);
+    }
+
+    @Override
+    public void shutdown() {
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully shutdown disruptor (replication pipeline) in ColumnTransformStage. Available CPU: {}", instanceId, processors);
+    }
+
+}
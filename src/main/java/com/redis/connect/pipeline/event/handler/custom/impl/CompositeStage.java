@@ -0,0 +1,141 @@
+package com.redis.connect.pipeline.event.handler.custom.impl;
+
+import com.lmax.disruptor.Sequence;
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs an ordered list of custom stages inside a single disruptor handler, so a chain such as
+ * {@code TO_UPPER_CASE -> GABS_CHANGE_EVENT_OPERATION_STAGE} costs one ring buffer hop instead of one per stage.
+ * <p>
+ * Sub-stages are created by {@code CustomChangeEventHandlerFactory} from {@code composite.stages} and share this
+ * stage's {@code customConfiguration}. They run in order on the same event; as soon as one of them marks the event
+ * invalid the remaining ones are skipped, where a chained pipeline would hand them an event they only log and ignore.
+ * Sub-stages implementing {@link EndOfBatchAware} are still notified when a skipped event closes the batch.
+ * Metrics are recorded for the composite as a whole; composites cannot be nested.
+ * <pre>
+ * "customConfiguration" : {
+ *   "composite.stages" : "TO_UPPER_CASE,GABS_CHANGE_EVENT_OPERATION_STAGE"
+ * }
+ * </pre>
+ */
+public class CompositeStage extends BaseCustomStageHandler {
+
+    private final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+    public static final String CUSTOM_CONFIG_STAGES = "composite.stages";
+    private final BaseCustomStageHandler[] stages;
+    private final String stageNames;
+
+    public CompositeStage(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage, List<BaseCustomStageHandler> stages) {
+        super(jobId, jobType, jobPipelineStage);
+        this.stages = stages.toArray(new BaseCustomStageHandler[0]);
+        this.stageNames = stages.stream().map(stage -> stage.getClass().getSimpleName()).toList().toString();
+    }
+
+    @Override
+    public void onEvent(ChangeEventDTO changeEvent, long sequence, boolean endOfBatch) throws Exception {
+
+        if (!changeEvent.isValid()) {
+            super.onEvent(changeEvent, sequence, endOfBatch);
+            if (endOfBatch)
+                endBatch(0);
+            return;
+        }
+
+        for (int i = 0; i < stages.length; i++) {
+            stages[i].onEvent(changeEvent, sequence, endOfBatch);
+
+            if (!changeEvent.isValid()) {
+                if (endOfBatch)
+                    endBatch(i + 1);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void onEvent(ChangeEventDTO changeEvent) throws Exception {
+        for (BaseCustomStageHandler stage : stages) {
+            stage.onEvent(changeEvent);
+            if (!changeEvent.isValid())
+                return;
+        }
+    }
+
+    private void endBatch(int from) throws Exception {
+        for (int i = from; i < stages.length; i++) {
+            if (stages[i] instanceof EndOfBatchAware stage)
+                stage.onEndOfBatch();
+        }
+    }
+
+    @Override
+    public void onBatchStart(long batchSize, long queueDepth) {
+        for (BaseCustomStageHandler stage : stages)
+            stage.onBatchStart(batchSize, queueDepth);
+    }
+
+    @Override
+    public void onTimeout(long sequence) throws Exception {
+        for (BaseCustomStageHandler stage : stages)
+            stage.onTimeout(sequence);
+    }
+
+    @Override
+    public void validateEventHandler() {
+        for (BaseCustomStageHandler stage : stages)
+            stage.validateEventHandler();
+    }
+
+    @Override
+    public void init() throws Exception {
+        setSequenceCallback(new Sequence());
+
+        for (BaseCustomStageHandler stage : stages)
+            stage.init();
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Instance: {} successfully started disruptor (replication pipeline) in CompositeStage with sub-stages: {}", instanceId, stageNames);
+        }
+    }
+
+    @Override
+    public void shutdown() throws Exception {
+        Exception failure = null;
+
+        // Every sub-stage gets the chance to release its resources, the first failure is reported
+        for (BaseCustomStageHandler stage : stages) {
+            try {
+                stage.shutdown();
+            } catch (Exception e) {
+                if (failure == null)
+                    failure = e;
+                else
+                    failure.addSuppressed(e);
+            }
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Instance: {} successfully shutdown disruptor (replication pipeline) in CompositeStage.", instanceId);
+        }
+
+        if (failure != null)
+            throw failure;
+    }
+
+    public List<BaseCustomStageHandler> getStages() {
+        return List.of(stages);
+    }
+
+    @Override
+    public String toString() {
+        return "Composite " + stageNames;
+    }
+
+}
@@ -0,0 +1,12 @@
+package com.redis.connect.pipeline.event.handler.custom.impl;
+
+/**
+ * Implemented by stages that defer work until the end of a disruptor batch, e.g. pipelined lookups that must complete
+ * before the batch is handed to the next stage. A {@link CompositeStage} that stops running its sub-stages for an
+ * event marked invalid still calls {@link #onEndOfBatch()} on the remaining ones when that event closes the batch.
+ */
+public interface EndOfBatchAware {
+
+    void onEndOfBatch() throws Exception;
+
+}
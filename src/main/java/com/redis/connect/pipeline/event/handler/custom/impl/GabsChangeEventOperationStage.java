@@ -4,124 +4,137 @@ import com.lmax.disruptor.Sequence;
 import com.redis.connect.dto.ChangeEventDTO;
 import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
 import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import com.redis.connect.pipeline.event.handler.custom.filter.FilterAction;
+import com.redis.connect.pipeline.event.handler.custom.filter.FilterRule;
+import com.redis.connect.pipeline.event.handler.custom.filter.FilterRuleSet;
+import com.redis.connect.pipeline.event.handler.custom.load.LoadMode;
+import com.redis.connect.pipeline.event.handler.custom.load.MicroBatch;
+import com.redis.connect.pipeline.event.handler.custom.metadata.MetadataEnricher;
+import com.redis.connect.pipeline.event.handler.custom.metadata.MetadataField;
+import com.redis.connect.pipeline.event.handler.custom.parallel.ThreadSafeStage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.management.ManagementFactory;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
-import static com.redis.connect.constants.DomainConstants.*;
-
-public class GabsChangeEventOperationStage extends BaseCustomStageHandler {
+public class GabsChangeEventOperationStage extends BaseCustomStageHandler implements ThreadSafeStage {
 
     private final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
     private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
     private final int processors = Runtime.getRuntime().availableProcessors();
 
+    private static final String DEFAULT_RULE = "GENREID != 2";
+
     // this is just for the demo. I will put this in the final JSON.
     private String jobId;
+    private final String jobType;
+    private final JobPipelineStageDTO jobPipelineStage;
+    private FilterRuleSet ruleSet;
+    private boolean defaultRule;
+    private MetadataEnricher metadataEnricher;
+    // Only during an initial load, events of a micro-batch share the log level check and the metadata timestamp
+    private MicroBatch microBatch;
 
     public GabsChangeEventOperationStage(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage) {
         super(jobId, jobType, jobPipelineStage);
         this.jobId = jobId;
+        this.jobType = jobType;
+        this.jobPipelineStage = jobPipelineStage;
     }
 
     @Override
     public void onEvent(ChangeEventDTO changeEvent) throws Exception {
 
-        if (LOGGER.isDebugEnabled())
+        MicroBatch.Window window = microBatch != null ? microBatch.next() : null;
+        boolean debug = window != null ? window.isDebugEnabled() : LOGGER.isDebugEnabled();
+
+        if (debug)
             LOGGER.debug("Instance: {} -------------------------------------------Stage: CUSTOM", instanceId);
 
         Map<String, Object> values = changeEvent.getValues();
 
-        if (values != null && values.containsKey("GENREID")) {
-
-            String schemaAndTableName = changeEvent.getSchemaAndTableName();
-            String operationType = changeEvent.getOperation();
-
-            if (LOGGER.isDebugEnabled())
-                LOGGER.debug("Instance: {} CustomStage::onEvent Processor, schemaAndTableName: {}, operationType: {}", instanceId, schemaAndTableName, operationType);
-
-            // Extract the GENREID value
-            Object genreIdObj = values.get("GENREID");
-
-            try {
-                int genreId;
-
-                // Handle if it's an Integer, Double, or String
-                if (genreIdObj instanceof Integer) {
-                    genreId = (Integer) genreIdObj;
-                } else if (genreIdObj instanceof Double) {
-                    // If it's a double but represents an integer (like 2.0), cast it
-                    genreId = ((Double) genreIdObj).intValue();
-                } else if (genreIdObj instanceof String) {
-                    String genreIdStr = (String) genreIdObj;
-                    // Check if the string is a floating point number like "2.0"
-                    if (genreIdStr.endsWith(".0")) {
-                        genreId = Integer.parseInt(genreIdStr.substring(0, genreIdStr.length() - 2));
-                    } else {
-                        genreId = Integer.parseInt(genreIdStr);
-                    }
-                } else {
-                    if (LOGGER.isWarnEnabled()) {
-                        LOGGER.warn("Instance: {} - Invalid GENREID type, expected Integer, Double, or String but got: {}", instanceId, genreIdObj.getClass());
-                    }
-                    return; // Exit early since the type is not valid
-                }
-
-                // If GENREID is not equal to 2, change the operation to DELETE
-                if (genreId != 2) {
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug("Instance: {} - Changing operation to DELETE for GENREID: {}", instanceId, genreId);
-                    }
-                    // Change the operation to DELETE
-                    changeEvent.setOperation(CHANGE_EVENT_DTO_OPERATION_DELETE);
-                } else {
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug("Instance: {} - Keeping operation as UPDATE for GENREID: {}", instanceId, genreId);
-                    }
-                }
-
-            } catch (NumberFormatException e) {
-                if (LOGGER.isWarnEnabled()) {
-                    LOGGER.warn("Instance: {} - Failed to parse GENREID: {}", instanceId, genreIdObj, e);
-                }
-            }
-        } else {
-            if (LOGGER.isWarnEnabled()) {
+        if (values != null) {
+
+            if (debug)
+                LOGGER.debug("Instance: {} CustomStage::onEvent Processor, schemaAndTableName: {}, operationType: {}", instanceId, changeEvent.getSchemaAndTableName(), changeEvent.getOperation());
+
+            // Configured rules may test any table and column, only the built-in rule needs GENREID
+            FilterAction action = ruleSet.apply(changeEvent);
+
+            if (debug)
+                LOGGER.debug("Instance: {} - Applied {} to schemaAndTableName: {}", instanceId, action == null ? "no rule" : action, changeEvent.getSchemaAndTableName());
+
+            if (defaultRule && !values.containsKey("GENREID") && LOGGER.isWarnEnabled())
                 LOGGER.warn("Instance: {} - GENREID is missing from the change event values.", instanceId);
-            }
         }
 
         // EXTRA PIECE JUST FOR FUN
         // Add the nested metadata object
-        if (values != null) {
-            Map<String, Object> metadata = new HashMap<>();
-            metadata.put("connect_app_version", "1.0.0");
-            metadata.put("owner", "Gabs");
-            metadata.put("job_id", jobId);
-            metadata.put("custom_stage_name", "GabsChangeEventOperationStage");
-            metadata.put("timestamp", System.currentTimeMillis());
-            metadata.put("instance_id", instanceId);
-            metadata.put("java_version", System.getProperty("java.version"));
-            metadata.put("os_name", System.getProperty("os.name"));
-            metadata.put("os_version", System.getProperty("os.version"));
-            metadata.put("thread_id", Thread.currentThread().getId());
-            metadata.put("message", "Processed by Redis Connect and Gabs!");
-
-            // Add any other metadata you want
-
-            values.put("gabs_connect_metadata", metadata);
+        if (window != null)
+            metadataEnricher.enrich(changeEvent, window.now());
+        else
+            metadataEnricher.enrich(changeEvent);
+    }
+
+    /**
+     * The built-in rule keeps the original coercion rather than the numeric comparison of {@code filter.rules.*}: a
+     * {@code Double} is truncated (so {@code 2.7} is genre 2), a {@code String} must hold an integer, optionally
+     * followed by {@code .0}, and any other type leaves the event alone with a warning.
+     */
+    private boolean isOtherGenre(Map<String, Object> values) {
+        Object genreId = values.get("GENREID");
+        try {
+            if (genreId instanceof Integer number)
+                return number != 2;
+            if (genreId instanceof Double number)
+                return number.intValue() != 2;
+            if (genreId instanceof String text)
+                return Integer.parseInt(text.endsWith(".0") ? text.substring(0, text.length() - 2) : text) != 2;
+        } catch (NumberFormatException e) {
+            if (LOGGER.isWarnEnabled())
+                LOGGER.warn("Instance: {} - Failed to parse GENREID: {}", instanceId, genreId, e);
+            return false;
         }
+
+        if (genreId != null && LOGGER.isWarnEnabled())
+            LOGGER.warn("Instance: {} - Invalid GENREID type, expected Integer, Double, or String but got: {}", instanceId, genreId.getClass());
+        return false;
+    }
+
+    @Override
+    public void onBatchStart(long batchSize, long queueDepth) {
+        if (microBatch != null)
+            microBatch.restart();
     }
 
     @Override
     public void init() throws Exception {
         setSequenceCallback(new Sequence());
 
+        // The original GENREID rule, unless the job configures its own filter.rules.*
+        CustomStageConfiguration configuration = CustomStageConfiguration.of(jobPipelineStage);
+        ruleSet = FilterRuleSet.compile(configuration.asMap(), ChangeEventFilterStage.CUSTOM_CONFIG_RULES_PREFIX);
+        defaultRule = ruleSet.isEmpty();
+        if (defaultRule)
+            ruleSet = FilterRuleSet.of(Map.of(FilterRuleSet.ALL_TABLES, Map.of(0, new FilterRule(DEFAULT_RULE, this::isOtherGenre, FilterAction.DELETE))));
+
+        // Add any other metadata you want with metadata.static.<name>
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("connect_app_version", "1.0.0");
+        metadata.put("owner", "Gabs");
+        metadata.put("message", "Processed by Redis Connect and Gabs!");
+        metadataEnricher = MetadataEnricher.of(configuration, jobId, "GabsChangeEventOperationStage", instanceId,
+                "gabs_connect_metadata", metadata, List.of(MetadataField.TIMESTAMP, MetadataField.THREAD_ID));
+
+        LoadMode loadMode = LoadMode.of(jobType, configuration);
+        microBatch = loadMode.isActive() ? new MicroBatch(loadMode.getMicroBatchSize(), LOGGER) : null;
+
         if (LOGGER.isDebugEnabled())
-            LOGGER.debug("Instance: {} successfully started disruptor (replication pipeline) in GabsChangeEventOperationStage. Available CPU: {}", instanceId, processors);
+            LOGGER.debug("Instance: {} successfully started disruptor (replication pipeline) in GabsChangeEventOperationStage. Available CPU: {}, mode: {}", instanceId, processors, loadMode);
     }
 
     @Override
@@ -3,28 +3,80 @@ package com.redis.connect.pipeline.event.handler.custom.impl;
 import com.lmax.disruptor.Sequence;
 import com.redis.connect.dto.ChangeEventDTO;
 import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.exception.ValidationException;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import com.redis.connect.pipeline.event.handler.custom.hash.HashFieldProjection;
+import com.redis.connect.pipeline.event.handler.custom.hash.HashValueFormatter;
+import com.redis.connect.pipeline.event.handler.custom.parallel.ThreadSafeStage;
 import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Map;
-import java.util.stream.Collectors;
 
-public class GemfireHashSinkPreparationStage extends BaseCustomStageHandler {
+/**
+ * Replaces the values of a Gemfire change event with the string fields of the target Redis hash, projected from the
+ * value blob by {@link HashFieldProjection}. Events without a value blob keep their values.
+ * <pre>
+ * "customConfiguration" : {
+ *   "hash.prep.date.format" : "yyyy-MM-dd HH:mm:ss",
+ *   "hash.prep.binary.format" : "HEX",
+ *   "hash.prep.null.value" : "",
+ *   "hash.prep.image.before" : "before",
+ *   "hash.prep.image.after" : "after",
+ *   "hash.prep.skip.unchanged" : true
+ * }
+ * </pre>
+ * {@code hash.prep.date.format} is {@code ISO} (default), {@code EPOCH_MILLIS} or a {@code DateTimeFormatter}
+ * pattern, {@code hash.prep.binary.format} is {@code BASE64} (default) or {@code HEX}. Without
+ * {@code hash.prep.null.value}, null values are left out of the hash.
+ */
+public class GemfireHashSinkPreparationStage extends BaseCustomStageHandler implements ThreadSafeStage {
     private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+    private static final String CUSTOM_CONFIG_DATE_FORMAT = "hash.prep.date.format";
+    private static final String CUSTOM_CONFIG_BINARY_FORMAT = "hash.prep.binary.format";
+    private static final String CUSTOM_CONFIG_NULL_VALUE = "hash.prep.null.value";
+    private static final String CUSTOM_CONFIG_BEFORE_IMAGE = "hash.prep.image.before";
+    private static final String CUSTOM_CONFIG_AFTER_IMAGE = "hash.prep.image.after";
+    private static final String CUSTOM_CONFIG_SKIP_UNCHANGED = "hash.prep.skip.unchanged";
+    private final JobPipelineStageDTO jobPipelineStage;
+    private HashFieldProjection projection;
+
     public GemfireHashSinkPreparationStage(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage) {
         super(jobId, jobType, jobPipelineStage);
+        this.jobPipelineStage = jobPipelineStage;
     }
 
     @Override
     public void onEvent(ChangeEventDTO changeEvent) throws Exception {
-        Map<String,Object> values = ((Map<String, Object>) changeEvent.getValueBlob()).entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e->e.getValue().toString()));
-        changeEvent.setValues(values);
+        Map<String, Object> values = projection.project(changeEvent.getValueBlob());
+        if (values != null)
+            changeEvent.setValues(values);
     }
 
     @Override
     public void init() throws Exception {
         setSequenceCallback(new Sequence());
+
+        CustomStageConfiguration configuration = CustomStageConfiguration.of(jobPipelineStage);
+        HashValueFormatter formatter;
+        try {
+            formatter = new HashValueFormatter(configuration.getString(CUSTOM_CONFIG_DATE_FORMAT, HashValueFormatter.DATE_FORMAT_ISO),
+                    configuration.getString(CUSTOM_CONFIG_BINARY_FORMAT, HashValueFormatter.BINARY_FORMAT_BASE64));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException(e, CUSTOM_CONFIG_DATE_FORMAT + " or " + CUSTOM_CONFIG_BINARY_FORMAT + " is invalid: " + e.getMessage());
+        }
+
+        String beforeImage = configuration.getString(CUSTOM_CONFIG_BEFORE_IMAGE);
+        String afterImage = configuration.getString(CUSTOM_CONFIG_AFTER_IMAGE);
+        boolean skipUnchanged = configuration.getBoolean(CUSTOM_CONFIG_SKIP_UNCHANGED, false);
+        if (skipUnchanged && (beforeImage == null || afterImage == null))
+            throw new ValidationException(CUSTOM_CONFIG_SKIP_UNCHANGED + " requires " + CUSTOM_CONFIG_BEFORE_IMAGE + " and " + CUSTOM_CONFIG_AFTER_IMAGE);
+
+        projection = new HashFieldProjection(formatter, configuration.getString(CUSTOM_CONFIG_NULL_VALUE), beforeImage, afterImage, skipUnchanged);
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Stage: GemfireHashSinkPreparationStage started, before image: {}, after image: {}, skip unchanged: {}", beforeImage, afterImage, skipUnchanged);
     }
 
     @Override
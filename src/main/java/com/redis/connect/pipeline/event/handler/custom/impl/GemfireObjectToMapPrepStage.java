@@ -1,27 +1,52 @@
 package com.redis.connect.pipeline.event.handler.custom.impl;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.lmax.disruptor.Sequence;
 import com.redis.connect.dto.ChangeEventDTO;
 import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.exception.ValidationException;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import com.redis.connect.pipeline.event.handler.custom.objectmap.ObjectMapConverter;
+import com.redis.connect.pipeline.event.handler.custom.parallel.ThreadSafeStage;
 import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
 
-import java.util.Map;
+import java.util.Locale;
+
+/**
+ * Replaces the values of a Gemfire change event with the properties of the domain object in its value blob, see
+ * {@link ObjectMapConverter}. {@code object.map.layout} is {@code NESTED} (default, same shape as Jackson's
+ * {@code convertValue}) or {@code FLAT} (nested objects as dotted keys).
+ * <pre>
+ * "customConfiguration" : {
+ *   "object.map.layout" : "FLAT"
+ * }
+ * </pre>
+ */
+public class GemfireObjectToMapPrepStage extends BaseCustomStageHandler implements ThreadSafeStage {
+
+    private static final String CUSTOM_CONFIG_LAYOUT = "object.map.layout";
+    private final JobPipelineStageDTO jobPipelineStage;
+    private ObjectMapConverter converter;
 
-public class GemfireObjectToMapPrepStage extends BaseCustomStageHandler {
     public GemfireObjectToMapPrepStage(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage) {
         super(jobId, jobType, jobPipelineStage);
+        this.jobPipelineStage = jobPipelineStage;
     }
 
     @Override
     public void onEvent(ChangeEventDTO changeEventDTO){
-        ObjectMapper mapper = new ObjectMapper();
-        changeEventDTO.setValues(mapper.convertValue(changeEventDTO.getValueBlob(), Map.class));
+        changeEventDTO.setValues(converter.toMap(changeEventDTO.getValueBlob()));
     }
 
     @Override
     public void init() throws Exception {
         setSequenceCallback(new Sequence());
+
+        String layoutName = CustomStageConfiguration.of(jobPipelineStage).getString(CUSTOM_CONFIG_LAYOUT, ObjectMapConverter.Layout.NESTED.name());
+        try {
+            converter = new ObjectMapConverter(ObjectMapConverter.Layout.valueOf(layoutName.toUpperCase(Locale.ROOT)));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException(e, CUSTOM_CONFIG_LAYOUT + " must be NESTED or FLAT but was: " + layoutName);
+        }
     }
 
     @Override
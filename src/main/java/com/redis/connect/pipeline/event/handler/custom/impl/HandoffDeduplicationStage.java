@@ -0,0 +1,184 @@
+package com.redis.connect.pipeline.event.handler.custom.impl;
+
+import com.lmax.disruptor.Sequence;
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import com.redis.connect.pipeline.event.handler.custom.handoff.HandoffWatermarks;
+import com.redis.connect.pipeline.event.handler.custom.load.LoadMode;
+import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drops the streamed changes a job's initial load already wrote, when the job is handed from LOAD to STREAM with a
+ * checkpoint taken before the load (see {@code gabs-redisconnect-job-transitioner}): every row changed while the load
+ * ran would otherwise be written twice.
+ * <ul>
+ *     <li>In the LOAD run, the stage records the SCN the load read each row at from {@code handoff.scn.column}
+ *     (default {@code ORA_ROWSCN}, which has to be selected with the rows, e.g. through a view) and removes that
+ *     column from the values. {@code ORA_ROWSCN} is never above the SCN the row was read at, so every change up to
+ *     it is in the loaded row.</li>
+ *     <li>In the STREAM run, a change whose commit SCN is at or below the SCN recorded for its row is dropped
+ *     ({@code setValid(false)}). The commit SCN is read from the {@code handoff.commit.scn.column} value (default
+ *     {@code COMMIT_SCN}), or from the checkpoint entry of that name; {@code sourceTxSequence} only orders the changes
+ *     of one source transaction time and is no SCN. A change without a commit SCN, or with one that is not a number,
+ *     is passed on. A row is forgotten once the stream passes its SCN, and all rows once the stream passes the highest
+ *     SCN of the load, the cut-over, after which the stage only passes events through.</li>
+ * </ul>
+ * The SCNs are kept in memory, at most {@code handoff.max.keys} rows, from the LOAD run to the STREAM run of the same
+ * job in the same JVM, and dropped when no STREAM run claims them within {@code handoff.stream.timeout.ms} of the end
+ * of the load. When the STREAM run is claimed by another instance, or a row was evicted, changes are passed on and
+ * written twice as before, never lost.
+ * <pre>
+ * "customConfiguration" : {
+ *   "handoff.scn.column" : "ORA_ROWSCN",
+ *   "handoff.commit.scn.column" : "COMMIT_SCN",
+ *   "handoff.max.keys" : 1000000,
+ *   "handoff.stream.timeout.ms" : 600000
+ * }
+ * </pre>
+ */
+public class HandoffDeduplicationStage extends BaseCustomStageHandler {
+
+    private static final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+    public static final String CUSTOM_CONFIG_SCN_COLUMN = "handoff.scn.column";
+    public static final String CUSTOM_CONFIG_COMMIT_SCN_COLUMN = "handoff.commit.scn.column";
+    public static final String CUSTOM_CONFIG_MAX_KEYS = "handoff.max.keys";
+    public static final String CUSTOM_CONFIG_STREAM_TIMEOUT_MS = "handoff.stream.timeout.ms";
+
+    private final String jobId;
+    private final String jobType;
+    private final JobPipelineStageDTO jobPipelineStage;
+    private final int processors = Runtime.getRuntime().availableProcessors();
+
+    private boolean load;
+    private String scnColumn;
+    private String commitScnColumn;
+    private long streamTimeoutMillis;
+    // null in STREAM once the cut-over SCN is passed, or when no load ran in this JVM
+    private HandoffWatermarks watermarks;
+    private long cutOverScn;
+    private long dropped;
+    private long withoutCommitScn;
+
+    public HandoffDeduplicationStage(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage) {
+        super(jobId, jobType, jobPipelineStage);
+        this.jobId = jobId;
+        this.jobType = jobType;
+        this.jobPipelineStage = jobPipelineStage;
+    }
+
+    @Override
+    public void onEvent(ChangeEventDTO changeEvent) throws Exception {
+        if (load)
+            record(changeEvent);
+        else if (watermarks != null)
+            deduplicate(changeEvent);
+    }
+
+    private void record(ChangeEventDTO changeEvent) {
+        Map<String, Object> values = changeEvent.getValues();
+        Object scn = values != null ? values.remove(scnColumn) : null;
+        if (scn == null || changeEvent.getKey() == null)
+            return;
+
+        try {
+            watermarks.record(changeEvent.getSchemaAndTableName(), changeEvent.getKey(), parseScn(scn));
+        } catch (NumberFormatException | ArithmeticException e) {
+            // Without its SCN the row is not deduplicated, its streamed changes are written again
+            LOGGER.warn("Instance: {} HandoffDeduplicationStage ignored {} value {} of key {}", instanceId, scnColumn, scn, changeEvent.getKey());
+        }
+    }
+
+    private void deduplicate(ChangeEventDTO changeEvent) {
+        if (changeEvent.getKey() == null)
+            return;
+        long commitScn = commitScn(changeEvent);
+        if (commitScn <= 0) {
+            // Nothing to compare with, the change may be newer than the load and is passed on
+            if (withoutCommitScn++ == 0)
+                LOGGER.warn("Instance: {} JobId: {} HandoffDeduplicationStage passes on changes without a numeric {}, e.g. key {} of {}", instanceId, jobId, commitScnColumn, changeEvent.getKey(), changeEvent.getSchemaAndTableName());
+            return;
+        }
+
+        if (commitScn > cutOverScn) {
+            LOGGER.info("Instance: {} JobId: {} HandoffDeduplicationStage passed cut-over SCN {} at SCN {}, dropped {} changes covered by the load, {}", instanceId, jobId, cutOverScn, commitScn, dropped, watermarks);
+            HandoffWatermarks.release(jobId, watermarks);
+            watermarks = null;
+            return;
+        }
+
+        if (watermarks.covers(changeEvent.getSchemaAndTableName(), changeEvent.getKey(), commitScn)) {
+            changeEvent.setValid(false);
+            dropped++;
+
+            if (LOGGER.isDebugEnabled())
+                LOGGER.debug("Instance: {} HandoffDeduplicationStage::onEvent Processor, dropped change covered by the load, schemaAndTableName: {}, key: {}, commit SCN: {}", instanceId, changeEvent.getSchemaAndTableName(), changeEvent.getKey(), commitScn);
+        }
+    }
+
+    /**
+     * @return the commit SCN of a streamed change, or {@link HandoffWatermarks#NONE} when it has none that is a number
+     */
+    private long commitScn(ChangeEventDTO changeEvent) {
+        Object scn = changeEvent.getValues() != null ? changeEvent.getValues().get(commitScnColumn) : null;
+        if (scn == null && changeEvent.getCheckpoint() != null)
+            scn = changeEvent.getCheckpoint().get(commitScnColumn);
+        if (scn == null)
+            return HandoffWatermarks.NONE;
+
+        try {
+            return parseScn(scn);
+        } catch (NumberFormatException | ArithmeticException e) {
+            return HandoffWatermarks.NONE;
+        }
+    }
+
+    private static long parseScn(Object scn) {
+        if (scn instanceof BigDecimal decimal)
+            return decimal.longValueExact();
+        if (scn instanceof Number number)
+            return number.longValue();
+        return Long.parseLong(scn.toString().trim());
+    }
+
+    @Override
+    public void init() throws Exception {
+        setSequenceCallback(new Sequence());
+
+        CustomStageConfiguration configuration = CustomStageConfiguration.of(jobPipelineStage);
+        load = LoadMode.isLoad(jobType);
+        scnColumn = configuration.getString(CUSTOM_CONFIG_SCN_COLUMN, "ORA_ROWSCN");
+        commitScnColumn = configuration.getString(CUSTOM_CONFIG_COMMIT_SCN_COLUMN, "COMMIT_SCN");
+        streamTimeoutMillis = configuration.getPositiveLong(CUSTOM_CONFIG_STREAM_TIMEOUT_MS, 600000);
+        if (load) {
+            watermarks = HandoffWatermarks.forLoad(jobId, configuration.getPositiveInt(CUSTOM_CONFIG_MAX_KEYS, 1_000_000));
+        } else {
+            watermarks = HandoffWatermarks.forStream(jobId);
+            if (watermarks != null)
+                cutOverScn = watermarks.getCutOverScn();
+        }
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully started disruptor (replication pipeline) in HandoffDeduplicationStage. Available CPU: {}, load: {}, watermarks: {}", instanceId, processors, load, watermarks);
+    }
+
+    @Override
+    public void shutdown() throws Exception {
+        if (watermarks != null) {
+            LOGGER.info("Instance: {} JobId: {} HandoffDeduplicationStage {} run stopped, dropped {} changes covered by the load, passed on {} without commit SCN, {}", instanceId, jobId, load ? "LOAD" : "STREAM", dropped, withoutCommitScn, watermarks);
+            if (load)
+                watermarks.loadStopped(jobId, streamTimeoutMillis);
+            watermarks = null;
+        }
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully shutdown disruptor (replication pipeline) in HandoffDeduplicationStage. Available CPU: {}", instanceId, processors);
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.redis.connect.pipeline.event.handler.custom.impl;
+
+import com.lmax.disruptor.Sequence;
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.pipeline.event.handler.custom.coalesce.LatestEventMap;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import com.redis.connect.pipeline.event.handler.custom.load.LoadMode;
+import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.redis.connect.constants.DomainConstants.CHANGE_EVENT_DTO_OPERATION_CREATE;
+import static com.redis.connect.constants.DomainConstants.CHANGE_EVENT_DTO_OPERATION_UPDATE;
+
+/**
+ * Collapses bursts of changes to the same row: within a window of at most {@code coalesce.window.events} events and
+ * {@code coalesce.window.ms} milliseconds, only the latest event of each ({@code schemaAndTableName}, key) is passed
+ * on and the earlier ones are dropped ({@code setValid(false)}). A delete therefore replaces the updates before it,
+ * and an update of a row inserted within the window is passed on as an insert.
+ * <p>
+ * Events are not reordered: the surviving event keeps its ring buffer slot, so events of different keys reach the
+ * next stage in commit order, and the last event of a window, which carries its highest checkpoint, always survives.
+ * <p>
+ * The disruptor hands a batch to the next stage once the stage returned from its last event, so the next stage sees
+ * no event of a window that could still be dropped only as long as the window lies within one disruptor batch: a
+ * window always closes at the end of the disruptor batch, and {@code coalesce.window.events} and
+ * {@code coalesce.window.ms} only split large batches, as they come under load, into several windows. For the same
+ * reason the stage cannot coalesce inside a {@code COMPOSITE} stage, whose later sub-stages have already run on an
+ * event by the time it is replaced, and the factory rejects such a composite.
+ * <p>
+ * Rows of an initial load ({@link LoadMode}) have distinct keys and are passed through.
+ * <pre>
+ * "customConfiguration" : {
+ *   "coalesce.window.events" : 1024,
+ *   "coalesce.window.ms" : 50
+ * }
+ * </pre>
+ */
+public class KeyCoalescingStage extends BaseCustomStageHandler {
+
+    private static final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+    public static final String CUSTOM_CONFIG_WINDOW_EVENTS = "coalesce.window.events";
+    public static final String CUSTOM_CONFIG_WINDOW_MS = "coalesce.window.ms";
+
+    private final String jobId;
+    private final String jobType;
+    private final JobPipelineStageDTO jobPipelineStage;
+    private final int processors = Runtime.getRuntime().availableProcessors();
+
+    private boolean load;
+    private int windowEvents;
+    private long windowNanos;
+    private LatestEventMap latestEvents;
+
+    // Only touched from the disruptor thread
+    private int eventsInWindow;
+    private long windowStartNanos;
+    private long events;
+    private long coalesced;
+    private long windows;
+
+    public KeyCoalescingStage(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage) {
+        super(jobId, jobType, jobPipelineStage);
+        this.jobId = jobId;
+        this.jobType = jobType;
+        this.jobPipelineStage = jobPipelineStage;
+    }
+
+    @Override
+    public void onEvent(ChangeEventDTO changeEvent, long sequence, boolean endOfBatch) throws Exception {
+
+        if (load) {
+            super.onEvent(changeEvent, sequence, endOfBatch);
+            return;
+        }
+
+        if (eventsInWindow++ == 0 && windowNanos > 0)
+            windowStartNanos = System.nanoTime();
+        events++;
+
+        if (changeEvent.isValid() && changeEvent.getKey() != null)
+            coalesce(changeEvent);
+
+        if (endOfBatch || eventsInWindow >= windowEvents || (windowNanos > 0 && System.nanoTime() - windowStartNanos >= windowNanos)) {
+            // Later events of the batch start a new window
+            latestEvents.clear();
+            eventsInWindow = 0;
+            windows++;
+        }
+    }
+
+    @Override
+    public void onEvent(ChangeEventDTO changeEvent) throws Exception {
+        // A single event has nothing to be coalesced with
+    }
+
+    private void coalesce(ChangeEventDTO changeEvent) {
+        ChangeEventDTO previous = latestEvents.put(changeEvent.getSchemaAndTableName(), changeEvent.getKey(), changeEvent);
+        if (previous == null)
+            return;
+
+        previous.setValid(false);
+        coalesced++;
+        // The row did not exist before the window, the target has never seen the insert
+        if (CHANGE_EVENT_DTO_OPERATION_CREATE.equals(previous.getOperation()) && CHANGE_EVENT_DTO_OPERATION_UPDATE.equals(changeEvent.getOperation()))
+            changeEvent.setOperation(CHANGE_EVENT_DTO_OPERATION_CREATE);
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} KeyCoalescingStage::onEvent Processor, schemaAndTableName: {}, key: {}, coalesced operation: {} into: {}", instanceId, changeEvent.getSchemaAndTableName(), changeEvent.getKey(), previous.getOperation(), changeEvent.getOperation());
+    }
+
+    @Override
+    public void init() throws Exception {
+        setSequenceCallback(new Sequence());
+
+        CustomStageConfiguration configuration = CustomStageConfiguration.of(jobPipelineStage);
+        load = LoadMode.of(jobType, configuration).isActive();
+        windowEvents = configuration.getPositiveInt(CUSTOM_CONFIG_WINDOW_EVENTS, 1024);
+        windowNanos = TimeUnit.MILLISECONDS.toNanos(configuration.getLong(CUSTOM_CONFIG_WINDOW_MS, 50));
+        // A window holds at most windowEvents keys, which bounds the map whatever the number of distinct keys
+        latestEvents = new LatestEventMap(windowEvents);
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully started disruptor (replication pipeline) in KeyCoalescingStage. Available CPU: {}, window events: {}, window ms: {}, load: {}", instanceId, processors, windowEvents, TimeUnit.NANOSECONDS.toMillis(windowNanos), load);
+    }
+
+    @Override
+    public void shutdown() throws Exception {
+        LOGGER.info("Instance: {} JobId: {} KeyCoalescingStage coalesced {} of {} events in {} windows", instanceId, jobId, coalesced, events, windows);
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully shutdown disruptor (replication pipeline) in KeyCoalescingStage. Available CPU: {}", instanceId, processors);
+    }
+
+}
@@ -0,0 +1,175 @@
+package com.redis.connect.pipeline.event.handler.custom.impl;
+
+import com.lmax.disruptor.Sequence;
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.exception.ValidationException;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import com.redis.connect.pipeline.event.handler.custom.lag.LagMetrics;
+import com.redis.connect.pipeline.event.handler.custom.lag.LagTimeline;
+import com.redis.connect.pipeline.event.handler.custom.load.LoadMode;
+import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
+import com.redis.connect.utils.ConnectThreadFactory;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures replication lag per {@code schemaAndTableName}. The stage is placed twice in a job pipeline:
+ * <ul>
+ *     <li>{@code lag.mode = STAGE} (default), before the sink: records source commit &rarr; stage and pipeline publish
+ *     &rarr; stage latency from the event's {@code sourceTxTime} and {@code publishPipelineTime}, and stamps the
+ *     event's ring buffer sequence with a monotonic entry time.</li>
+ *     <li>{@code lag.mode = SINK_ACK}, with an index after the sink: the disruptor hands it an event only once the
+ *     sink has released that sequence, so the time since the stamp is the stage &rarr; sink acknowledgement latency.</li>
+ * </ul>
+ * Each partition of the job runs its own pair of stages. The {@code SINK_ACK} stage finds the stamps of the
+ * {@code STAGE} stage of its own partition through the first ring buffer entry it is handed (see {@link LagTimeline}),
+ * events it is handed before that are counted as missing stamps.
+ * Source commit times come from the database clock and have millisecond resolution; everything measured inside the
+ * pipeline uses {@link System#nanoTime()}. Percentiles are exposed through the {@code LagMetrics} MBean and, with
+ * {@code lag.report.interval.ms}, logged periodically. {@code lag.stamp.column} optionally writes the stage entry
+ * time (epoch millis) into the values so that consumers of the target can measure the rest of the way. Rows of an
+ * initial load ({@link LoadMode}) were not committed by a streamed transaction, so no commit &rarr; stage latency is
+ * recorded for them.
+ * <pre>
+ * "customConfiguration" : {
+ *   "lag.mode" : "SINK_ACK",
+ *   "lag.timeline.size" : 65536,
+ *   "lag.report.interval.ms" : 60000
+ * }
+ * </pre>
+ */
+public class LagTrackingStage extends BaseCustomStageHandler {
+
+    private static final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+    private static final String CUSTOM_CONFIG_MODE = "lag.mode";
+    private static final String CUSTOM_CONFIG_TIMELINE_SIZE = "lag.timeline.size";
+    private static final String CUSTOM_CONFIG_REPORT_INTERVAL_MS = "lag.report.interval.ms";
+    private static final String CUSTOM_CONFIG_STAMP_COLUMN = "lag.stamp.column";
+    private final String jobId;
+    private final String jobType;
+    private final JobPipelineStageDTO jobPipelineStage;
+    private final int processors = Runtime.getRuntime().availableProcessors();
+
+    public enum Mode {
+        STAGE, SINK_ACK
+    }
+
+    private Mode mode;
+    private boolean load;
+    private String stampColumn;
+    private LagTimeline timeline;
+    private LagMetrics metrics;
+    private ScheduledExecutorService reporter;
+    private long currentSequence;
+
+    // Disruptor handlers are invoked by a single thread, consecutive events mostly belong to the same table
+    private String lastSchemaAndTableName;
+    private LagMetrics.TableLag lastTableLag;
+
+    public LagTrackingStage(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage) {
+        super(jobId, jobType, jobPipelineStage);
+        this.jobId = jobId;
+        this.jobType = jobType;
+        this.jobPipelineStage = jobPipelineStage;
+    }
+
+    @Override
+    public void onEvent(ChangeEventDTO changeEvent, long sequence, boolean endOfBatch) throws Exception {
+        currentSequence = sequence;
+        super.onEvent(changeEvent, sequence, endOfBatch);
+    }
+
+    @Override
+    public void onEvent(ChangeEventDTO changeEvent) throws Exception {
+        LagMetrics.TableLag tableLag = tableLag(changeEvent.getSchemaAndTableName());
+
+        if (mode == Mode.SINK_ACK) {
+            if (timeline == null)
+                timeline = LagTimeline.claim(changeEvent);
+            long stamp = timeline == null ? -1 : timeline.stampOf(currentSequence);
+            if (stamp < 0)
+                metrics.recordMissingStamp();
+            else
+                tableLag.recordStageToSinkAck(System.nanoTime() - stamp);
+            return;
+        }
+
+        timeline.stamp(currentSequence, System.nanoTime());
+        timeline.offer(changeEvent);
+
+        long now = System.currentTimeMillis();
+        if (!load && changeEvent.getSourceTxTime() > 0)
+            tableLag.recordCommitToStage(TimeUnit.MILLISECONDS.toNanos(now - changeEvent.getSourceTxTime()));
+        if (changeEvent.getPublishPipelineTime() > 0)
+            tableLag.recordPublishToStage(TimeUnit.MILLISECONDS.toNanos(now - changeEvent.getPublishPipelineTime()));
+        if (stampColumn != null && changeEvent.getValues() != null)
+            changeEvent.getValues().put(stampColumn, now);
+    }
+
+    private LagMetrics.TableLag tableLag(String schemaAndTableName) {
+        if (schemaAndTableName == null || !schemaAndTableName.equals(lastSchemaAndTableName)) {
+            lastTableLag = metrics.forTable(schemaAndTableName);
+            lastSchemaAndTableName = schemaAndTableName;
+        }
+        return lastTableLag;
+    }
+
+    @Override
+    public void init() throws Exception {
+        setSequenceCallback(new Sequence());
+
+        CustomStageConfiguration configuration = CustomStageConfiguration.of(jobPipelineStage);
+        String modeName = configuration.getString(CUSTOM_CONFIG_MODE, Mode.STAGE.name());
+        try {
+            mode = Mode.valueOf(modeName.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException(e, CUSTOM_CONFIG_MODE + " must be STAGE or SINK_ACK but was: " + modeName);
+        }
+        stampColumn = configuration.getString(CUSTOM_CONFIG_STAMP_COLUMN);
+        load = LoadMode.of(jobType, configuration).isActive();
+        // Must hold at least as many sequences as the ring buffer so that stamps survive until the sink releases them
+        int timelineSize = configuration.getPositiveInt(CUSTOM_CONFIG_TIMELINE_SIZE, 1 << 16);
+        if (mode == Mode.STAGE)
+            timeline = new LagTimeline(timelineSize);
+        metrics = LagMetrics.acquire(jobId);
+
+        long reportIntervalMs = configuration.getLong(CUSTOM_CONFIG_REPORT_INTERVAL_MS, 0);
+        if (reportIntervalMs > 0 && mode == Mode.SINK_ACK) {
+            reporter = Executors.newSingleThreadScheduledExecutor(new ConnectThreadFactory("lag-tracking-reporter-" + jobId));
+            reporter.scheduleAtFixedRate(() -> metrics.getTables().forEach(table ->
+                            LOGGER.info("Instance: {} JobId: {} replication lag {}", instanceId, jobId, table)),
+                    reportIntervalMs, reportIntervalMs, TimeUnit.MILLISECONDS);
+        }
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully started disruptor (replication pipeline) in LagTrackingStage. Available CPU: {}, mode: {}, timeline size: {}", instanceId, processors, mode, timelineSize);
+    }
+
+    @Override
+    public void shutdown() throws Exception {
+        if (reporter != null)
+            reporter.shutdownNow();
+        if (metrics != null) {
+            if (mode == Mode.SINK_ACK)
+                metrics.getTables().forEach(table -> LOGGER.info("Instance: {} JobId: {} replication lag {}", instanceId, jobId, table));
+            metrics.release();
+            metrics = null;
+        }
+        if (timeline != null) {
+            if (mode == Mode.STAGE)
+                timeline.withdraw();
+            timeline = null;
+        }
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully shutdown disruptor (replication pipeline) in LagTrackingStage. Available CPU: {}", instanceId, processors);
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.redis.connect.pipeline.event.handler.custom.impl;
+
+import com.lmax.disruptor.Sequence;
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import com.redis.connect.pipeline.event.handler.custom.load.LoadMode;
+import com.redis.connect.pipeline.event.handler.custom.load.MicroBatch;
+import com.redis.connect.pipeline.event.handler.custom.metadata.MetadataEnricher;
+import com.redis.connect.pipeline.event.handler.custom.metadata.MetadataField;
+import com.redis.connect.pipeline.event.handler.custom.parallel.ThreadSafeStage;
+import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adds processing metadata to every change event, see {@link MetadataEnricher} for the configuration. During an
+ * initial load ({@link LoadMode}) the events of a micro-batch share one processing timestamp.
+ */
+public class MetadataEnrichmentStage extends BaseCustomStageHandler implements ThreadSafeStage {
+
+    private static final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+    private final String jobId;
+    private final String jobType;
+    private final JobPipelineStageDTO jobPipelineStage;
+    private final int processors = Runtime.getRuntime().availableProcessors();
+    private MetadataEnricher metadataEnricher;
+    private MicroBatch microBatch;
+
+    public MetadataEnrichmentStage(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage) {
+        super(jobId, jobType, jobPipelineStage);
+        this.jobId = jobId;
+        this.jobType = jobType;
+        this.jobPipelineStage = jobPipelineStage;
+    }
+
+    @Override
+    public void onEvent(ChangeEventDTO changeEvent) throws Exception {
+        if (microBatch != null)
+            metadataEnricher.enrich(changeEvent, microBatch.next().now());
+        else
+            metadataEnricher.enrich(changeEvent);
+    }
+
+    @Override
+    public void onBatchStart(long batchSize, long queueDepth) {
+        if (microBatch != null)
+            microBatch.restart();
+    }
+
+    @Override
+    public void init() throws Exception {
+        setSequenceCallback(new Sequence());
+
+        CustomStageConfiguration configuration = CustomStageConfiguration.of(jobPipelineStage);
+        LoadMode loadMode = LoadMode.of(jobType, configuration);
+        microBatch = loadMode.isActive() ? new MicroBatch(loadMode.getMicroBatchSize(), LOGGER) : null;
+        metadataEnricher = MetadataEnricher.of(configuration, jobId, jobPipelineStage.getStageName(), instanceId,
+                "connect_metadata", Map.of(), List.of(MetadataField.TIMESTAMP, MetadataField.SOURCE_TX_SEQUENCE, MetadataField.SOURCE_TX_TIME));
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully started disruptor (replication pipeline) in MetadataEnrichmentStage. Available CPU: {}, metadata: {}, mode: {}", instanceId, processors, metadataEnricher, loadMode);
+    }
+
+    @Override
+    public void shutdown() throws Exception {
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully shutdown disruptor (replication pipeline) in MetadataEnrichmentStage. Available CPU: {}", instanceId, processors);
+    }
+
+}
@@ -0,0 +1,218 @@
+package com.redis.connect.pipeline.event.handler.custom.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.lmax.disruptor.Sequence;
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.exception.InvalidChangeEventException;
+import com.redis.connect.exception.ValidationException;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import com.redis.connect.pipeline.event.handler.custom.sink.JsonDocumentWrites;
+import com.redis.connect.pipeline.event.handler.custom.sink.RedisJsonWriter;
+import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes change events as RedisJSON documents, {@code json.writer.key.prefix} followed by the event key, over a
+ * pipelined lettuce connection instead of one round trip per event.
+ * <p>
+ * Writes are queued into micro-batches that are sent when {@code json.writer.batch.size} events were queued,
+ * {@code json.writer.linger.ms} after the first one, or at the end of the disruptor batch. One micro-batch is in
+ * flight while the next one is built. The stage {@link Sequence} only moves past an event once Redis acknowledged
+ * its writes, and the disruptor batch is not handed on before all of them are: a failed or timed out write
+ * ({@code json.writer.timeout.ms}) fails the batch with the sequence left before the first failed event.
+ * <p>
+ * Inserts write the whole document ({@code JSON.SET key $}), deletes {@code DEL} it. Updates depend on
+ * {@code json.writer.update.mode}:
+ * <ul>
+ *     <li>{@code PARTIAL} (default) remembers the column fingerprints of the last {@code json.writer.partial.cache.size}
+ *     documents it wrote and sets only the changed columns ({@code JSON.SET key $['COLUMN']}) when there are at most
+ *     {@code json.writer.partial.max.columns}, otherwise the whole document. An update that changes nothing is not
+ *     written; one whose document is no longer in Redis is written in full, unless a later event of the document
+ *     was queued meanwhile.</li>
+ *     <li>{@code MERGE} merges the event values into the document ({@code JSON.MERGE key $}, RedisJSON 2.6), for
+ *     sources that only send the changed columns. {@code null} values remove their member.</li>
+ *     <li>{@code FULL} always writes the whole document.</li>
+ * </ul>
+ * Events are left unchanged for the stages after this one. Writes are idempotent, events replayed after a failure are
+ * written again.
+ * <pre>
+ * "customConfiguration" : {
+ *   "json.writer.redis.url" : "redis://127.0.0.1:14000",
+ *   "json.writer.key.prefix" : "track:",
+ *   "json.writer.batch.size" : 512,
+ *   "json.writer.linger.ms" : 5,
+ *   "json.writer.timeout.ms" : 10000,
+ *   "json.writer.update.mode" : "PARTIAL",
+ *   "json.writer.partial.max.columns" : 4,
+ *   "json.writer.partial.cache.size" : 100000
+ * }
+ * </pre>
+ */
+public class RedisJsonWriterStage extends BaseCustomStageHandler implements EndOfBatchAware {
+
+    private static final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+    public static final String CUSTOM_CONFIG_REDIS_URL = "json.writer.redis.url";
+    public static final String CUSTOM_CONFIG_KEY_PREFIX = "json.writer.key.prefix";
+    public static final String CUSTOM_CONFIG_BATCH_SIZE = "json.writer.batch.size";
+    public static final String CUSTOM_CONFIG_LINGER_MS = "json.writer.linger.ms";
+    public static final String CUSTOM_CONFIG_TIMEOUT_MS = "json.writer.timeout.ms";
+    public static final String CUSTOM_CONFIG_UPDATE_MODE = "json.writer.update.mode";
+    public static final String CUSTOM_CONFIG_PARTIAL_MAX_COLUMNS = "json.writer.partial.max.columns";
+    public static final String CUSTOM_CONFIG_PARTIAL_CACHE_SIZE = "json.writer.partial.cache.size";
+
+    // Dates as ISO-8601 strings, whether the load delivered a Timestamp or the coercion stage a ZonedDateTime
+    private static final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private final String jobId;
+    private final JobPipelineStageDTO jobPipelineStage;
+    private final int processors = Runtime.getRuntime().availableProcessors();
+    private Sequence sequenceCallback;
+
+    private RedisJsonWriter writer;
+    private JsonDocumentWrites writes;
+    private int batchSize;
+    private long lingerNanos;
+    private long timeoutMillis;
+
+    // Only touched from the disruptor thread
+    private JsonDocumentWrites.Batch building;
+    private JsonDocumentWrites.Batch inFlight;
+
+    public RedisJsonWriterStage(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage) {
+        super(jobId, jobType, jobPipelineStage);
+        this.jobId = jobId;
+        this.jobPipelineStage = jobPipelineStage;
+    }
+
+    @Override
+    public void setSequenceCallback(Sequence sequenceCallback) {
+        super.setSequenceCallback(sequenceCallback);
+        this.sequenceCallback = sequenceCallback;
+    }
+
+    @Override
+    public void onEvent(ChangeEventDTO changeEvent, long sequence, boolean endOfBatch) throws Exception {
+
+        if (!changeEvent.isValid()) {
+            super.onEvent(changeEvent, sequence, endOfBatch);
+        } else {
+            try {
+                writes.queue(building, changeEvent, sequence);
+            } catch (Exception e) {
+                throw new InvalidChangeEventException(e, "Failed to write change event in custom stage");
+            }
+        }
+
+        if (endOfBatch)
+            onEndOfBatch();
+        else if (building.size() >= batchSize || building.age() >= lingerNanos)
+            send();
+    }
+
+    @Override
+    public void onEvent(ChangeEventDTO changeEvent) throws Exception {
+        // Single events, e.g. from a dead letter replay, are written and acknowledged right away
+        writes.queue(building, changeEvent, -1);
+        onEndOfBatch();
+    }
+
+    @Override
+    public void onEndOfBatch() throws Exception {
+        send();
+        acknowledge();
+    }
+
+    @Override
+    public void onTimeout(long sequence) throws Exception {
+        if (!building.isEmpty() || inFlight != null)
+            onEndOfBatch();
+    }
+
+    /**
+     * Sends the micro-batch being built and waits for the one sent before it, so that one is always in flight.
+     */
+    private void send() throws Exception {
+        if (building.isEmpty())
+            return;
+
+        writer.flush();
+        acknowledge();
+        inFlight = building;
+        building = writes.newBatch();
+    }
+
+    private void acknowledge() throws Exception {
+        JsonDocumentWrites.Batch acknowledged = inFlight;
+        if (acknowledged == null)
+            return;
+        inFlight = null;
+
+        // Retries of failed partial updates are sent after the writes already queued in the batch being built
+        long failedSequence = writes.await(acknowledged, building, timeoutMillis);
+        if (failedSequence != JsonDocumentWrites.NONE) {
+            // Events queued since are written again after the failed one
+            building = writes.newBatch();
+            sequenceCallback.set(failedSequence - 1);
+            throw new InvalidChangeEventException(acknowledged.getFailure(), "Failed to write change event in custom stage");
+        }
+        if (acknowledged.getLastSequence() >= 0)
+            sequenceCallback.set(acknowledged.getLastSequence());
+    }
+
+    @Override
+    public void init() throws Exception {
+        setSequenceCallback(new Sequence());
+
+        CustomStageConfiguration configuration = CustomStageConfiguration.of(jobPipelineStage);
+        String redisUrl = configuration.getString(CUSTOM_CONFIG_REDIS_URL);
+        if (redisUrl == null)
+            throw new ValidationException(CUSTOM_CONFIG_REDIS_URL + " is required by " + jobPipelineStage.getStageName());
+
+        JsonDocumentWrites.UpdateMode updateMode;
+        String updateModeName = configuration.getString(CUSTOM_CONFIG_UPDATE_MODE, JsonDocumentWrites.UpdateMode.PARTIAL.name());
+        try {
+            updateMode = JsonDocumentWrites.UpdateMode.valueOf(updateModeName.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException(e, CUSTOM_CONFIG_UPDATE_MODE + " must be PARTIAL, MERGE or FULL but was: " + updateModeName);
+        }
+
+        batchSize = configuration.getPositiveInt(CUSTOM_CONFIG_BATCH_SIZE, 512);
+        lingerNanos = TimeUnit.MILLISECONDS.toNanos(configuration.getLong(CUSTOM_CONFIG_LINGER_MS, 5));
+        timeoutMillis = configuration.getPositiveLong(CUSTOM_CONFIG_TIMEOUT_MS, 10000);
+
+        writer = new RedisJsonWriter(redisUrl);
+        writes = new JsonDocumentWrites(writer, mapper, configuration.getString(CUSTOM_CONFIG_KEY_PREFIX, ""), updateMode,
+                configuration.getPositiveInt(CUSTOM_CONFIG_PARTIAL_MAX_COLUMNS, 4), configuration.getPositiveInt(CUSTOM_CONFIG_PARTIAL_CACHE_SIZE, 100000));
+        building = writes.newBatch();
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully started disruptor (replication pipeline) in RedisJsonWriterStage. Available CPU: {}, update mode: {}, batch size: {}", instanceId, processors, updateMode, batchSize);
+    }
+
+    @Override
+    public void shutdown() throws Exception {
+        try {
+            if (writer != null)
+                onEndOfBatch();
+        } finally {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+            if (writes != null)
+                LOGGER.info("Instance: {} JobId: {} RedisJsonWriterStage {}", instanceId, jobId, writes);
+        }
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully shutdown disruptor (replication pipeline) in RedisJsonWriterStage. Available CPU: {}", instanceId, processors);
+    }
+
+}
@@ -0,0 +1,260 @@
+package com.redis.connect.pipeline.event.handler.custom.impl;
+
+import com.lmax.disruptor.Sequence;
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.exception.InvalidChangeEventException;
+import com.redis.connect.exception.ValidationException;
+import com.redis.connect.pipeline.event.handler.custom.cache.LookupCache;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import com.redis.connect.pipeline.event.handler.custom.join.ReferenceDataClient;
+import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Denormalizes change events with reference data kept in Redis, e.g. TRACK rows with the title of their ALBUM: the
+ * value of {@code join.column} replaces {@code {id}} in {@code join.key.pattern}, and the fields of that hash
+ * ({@code join.key.type} {@code HASH}) or JSON document ({@code JSON}) are added to the values, all of them or those
+ * listed in {@code join.fields}, prefixed with {@code join.target.prefix}. Events whose reference row does not exist
+ * are passed on unchanged.
+ * <p>
+ * Rows are read through a {@link ReferenceDataClient} near cache that Redis invalidates (RESP3 client-side caching),
+ * so steady-state joins need no network hop. Misses are collected until the end of the disruptor batch, or
+ * {@code join.batch.size} distinct keys, and fetched in one pipelined round trip; the events waiting for them are
+ * enriched in ring buffer order before the stage {@link Sequence} moves past them. Near cache hits and misses are
+ * published as {@code com.redis.connect.customstage:type=LookupCache} MBeans.
+ * <pre>
+ * "customConfiguration" : {
+ *   "join.redis.url" : "redis://127.0.0.1:14000",
+ *   "join.column" : "ALBUMID",
+ *   "join.key.pattern" : "ALBUM:{id}",
+ *   "join.key.type" : "HASH",
+ *   "join.fields" : "TITLE",
+ *   "join.target.prefix" : "ALBUM_",
+ *   "join.batch.size" : 512,
+ *   "join.timeout.ms" : 5000,
+ *   "join.cache.max.entries" : 100000,
+ *   "join.cache.ttl.ms" : 600000
+ * }
+ * </pre>
+ */
+public class ReferenceDataJoinStage extends BaseCustomStageHandler implements EndOfBatchAware {
+
+    private static final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+    public static final String CUSTOM_CONFIG_REDIS_URL = "join.redis.url";
+    public static final String CUSTOM_CONFIG_COLUMN = "join.column";
+    public static final String CUSTOM_CONFIG_KEY_PATTERN = "join.key.pattern";
+    public static final String CUSTOM_CONFIG_KEY_TYPE = "join.key.type";
+    public static final String CUSTOM_CONFIG_FIELDS = "join.fields";
+    public static final String CUSTOM_CONFIG_TARGET_PREFIX = "join.target.prefix";
+    public static final String CUSTOM_CONFIG_BATCH_SIZE = "join.batch.size";
+    public static final String CUSTOM_CONFIG_TIMEOUT_MS = "join.timeout.ms";
+    public static final String CUSTOM_CONFIG_CACHE_MAX_ENTRIES = "join.cache.max.entries";
+    public static final String CUSTOM_CONFIG_CACHE_TTL_MS = "join.cache.ttl.ms";
+    private static final String ID_PLACEHOLDER = "{id}";
+
+    private final String jobId;
+    private final JobPipelineStageDTO jobPipelineStage;
+    private final int processors = Runtime.getRuntime().availableProcessors();
+    private Sequence sequenceCallback;
+
+    private String column;
+    private String keyPrefix;
+    private String keySuffix;
+    private List<String> fields;
+    private String targetPrefix;
+    private int batchSize;
+    private long timeoutMillis;
+    private LookupCache<String, Map<String, Object>> nearCache;
+    private ReferenceDataClient client;
+
+    // Only touched from the disruptor thread
+    private final List<PendingJoin> pendingJoins = new ArrayList<>();
+    private final Set<String> missingKeys = new LinkedHashSet<>();
+    private long highestPendingSequence = -1;
+
+    public ReferenceDataJoinStage(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage) {
+        super(jobId, jobType, jobPipelineStage);
+        this.jobId = jobId;
+        this.jobPipelineStage = jobPipelineStage;
+    }
+
+    @Override
+    public void setSequenceCallback(Sequence sequenceCallback) {
+        super.setSequenceCallback(sequenceCallback);
+        this.sequenceCallback = sequenceCallback;
+    }
+
+    @Override
+    public void onEvent(ChangeEventDTO changeEvent, long sequence, boolean endOfBatch) throws Exception {
+
+        if (!changeEvent.isValid()) {
+            super.onEvent(changeEvent, sequence, endOfBatch);
+            if (endOfBatch)
+                onEndOfBatch();
+            return;
+        }
+
+        Map<String, Object> values = changeEvent.getValues();
+        String key = values != null ? key(values.get(column)) : null;
+        if (key != null) {
+            LookupCache.Entry<Map<String, Object>> cached = client.cached(key);
+            if (cached != null) {
+                if (!cached.negative())
+                    join(values, cached.value());
+            } else {
+                missingKeys.add(key);
+                pendingJoins.add(new PendingJoin(values, key, sequence));
+            }
+        }
+
+        if (pendingJoins.isEmpty()) {
+            sequenceCallback.set(sequence);
+        } else {
+            highestPendingSequence = sequence;
+            // Everything must be joined before the disruptor publishes this batch to the next stage
+            if (endOfBatch || missingKeys.size() >= batchSize)
+                drain();
+        }
+    }
+
+    @Override
+    public void onEvent(ChangeEventDTO changeEvent) throws Exception {
+        Map<String, Object> values = changeEvent.getValues();
+        String key = values != null ? key(values.get(column)) : null;
+        if (key == null)
+            return;
+
+        LookupCache.Entry<Map<String, Object>> cached = client.cached(key);
+        if (cached != null) {
+            if (!cached.negative())
+                join(values, cached.value());
+            return;
+        }
+        join(values, await(client.fetch(List.of(key)).get(key)));
+    }
+
+    @Override
+    public void onEndOfBatch() throws Exception {
+        if (!pendingJoins.isEmpty())
+            drain();
+    }
+
+    /**
+     * Fetches the missing rows in one round trip and joins them in ring buffer order. On the first failure the
+     * sequence is left just before the event waiting for it.
+     */
+    private void drain() throws Exception {
+        try {
+            Map<String, CompletableFuture<Map<String, Object>>> rows = client.fetch(missingKeys);
+            for (PendingJoin pending : pendingJoins) {
+                try {
+                    join(pending.values, await(rows.get(pending.key)));
+                } catch (Exception e) {
+                    sequenceCallback.set(pending.sequence - 1);
+                    throw new InvalidChangeEventException(e, "Failed to join change event with " + pending.key + " in custom stage");
+                }
+            }
+            sequenceCallback.set(highestPendingSequence);
+        } finally {
+            pendingJoins.clear();
+            missingKeys.clear();
+        }
+    }
+
+    private String key(Object id) {
+        return id == null ? null : keyPrefix + id + keySuffix;
+    }
+
+    private void join(Map<String, Object> values, Map<String, Object> row) {
+        if (fields.isEmpty()) {
+            for (Map.Entry<String, Object> field : row.entrySet())
+                values.put(targetPrefix + field.getKey(), field.getValue());
+        } else {
+            for (String field : fields) {
+                Object value = row.get(field);
+                if (value != null)
+                    values.put(targetPrefix + field, value);
+            }
+        }
+    }
+
+    private Map<String, Object> await(CompletableFuture<Map<String, Object>> row) throws Exception {
+        try {
+            return row.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+    @Override
+    public void init() throws Exception {
+        setSequenceCallback(new Sequence());
+
+        CustomStageConfiguration configuration = CustomStageConfiguration.of(jobPipelineStage);
+        String redisUrl = configuration.getString(CUSTOM_CONFIG_REDIS_URL);
+        column = configuration.getString(CUSTOM_CONFIG_COLUMN);
+        if (redisUrl == null || column == null)
+            throw new ValidationException(CUSTOM_CONFIG_REDIS_URL + " and " + CUSTOM_CONFIG_COLUMN + " are required by " + jobPipelineStage.getStageName());
+
+        String keyPattern = configuration.getString(CUSTOM_CONFIG_KEY_PATTERN, column + ":" + ID_PLACEHOLDER);
+        int placeholder = keyPattern.indexOf(ID_PLACEHOLDER);
+        if (placeholder < 0)
+            throw new ValidationException(CUSTOM_CONFIG_KEY_PATTERN + " must contain " + ID_PLACEHOLDER + " but was: " + keyPattern);
+        keyPrefix = keyPattern.substring(0, placeholder);
+        keySuffix = keyPattern.substring(placeholder + ID_PLACEHOLDER.length());
+
+        ReferenceDataClient.KeyType keyType;
+        String keyTypeName = configuration.getString(CUSTOM_CONFIG_KEY_TYPE, ReferenceDataClient.KeyType.HASH.name());
+        try {
+            keyType = ReferenceDataClient.KeyType.valueOf(keyTypeName.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException(e, CUSTOM_CONFIG_KEY_TYPE + " must be HASH or JSON but was: " + keyTypeName);
+        }
+
+        fields = configuration.getList(CUSTOM_CONFIG_FIELDS);
+        targetPrefix = configuration.getString(CUSTOM_CONFIG_TARGET_PREFIX, "");
+        batchSize = configuration.getPositiveInt(CUSTOM_CONFIG_BATCH_SIZE, 512);
+        timeoutMillis = configuration.getPositiveLong(CUSTOM_CONFIG_TIMEOUT_MS, 5000);
+
+        // Invalidations keep entries current, the TTL only bounds staleness when one is missed around a reconnect
+        long ttlMillis = configuration.getPositiveLong(CUSTOM_CONFIG_CACHE_TTL_MS, 600000);
+        nearCache = new LookupCache<>(configuration.getPositiveInt(CUSTOM_CONFIG_CACHE_MAX_ENTRIES, 100000), ttlMillis, ttlMillis);
+        nearCache.registerMBean(jobId + "-" + jobPipelineStage.getStageName() + "-" + jobPipelineStage.getIndex());
+        client = new ReferenceDataClient(redisUrl, keyType, nearCache);
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully started disruptor (replication pipeline) in ReferenceDataJoinStage. Available CPU: {}, column: {}, key pattern: {}, key type: {}", instanceId, processors, column, keyPattern, keyType);
+    }
+
+    @Override
+    public void shutdown() throws Exception {
+        if (client != null) {
+            LOGGER.info("Instance: {} JobId: {} ReferenceDataJoinStage {}", instanceId, jobId, client);
+            client.close();
+        }
+        if (nearCache != null)
+            nearCache.unregisterMBean();
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully shutdown disruptor (replication pipeline) in ReferenceDataJoinStage. Available CPU: {}", instanceId, processors);
+    }
+
+    private record PendingJoin(Map<String, Object> values, String key, long sequence) {
+    }
+
+}
@@ -1,68 +1,484 @@
 package com.redis.connect.pipeline.event.handler.custom.impl;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.lmax.disruptor.Sequence;
 import com.redis.connect.dto.ChangeEventDTO;
 import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.exception.InvalidChangeEventException;
 import com.redis.connect.exception.ValidationException;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import com.redis.connect.pipeline.event.handler.custom.deadletter.DeadLetter;
+import com.redis.connect.pipeline.event.handler.custom.deadletter.DeadLetterSink;
+import com.redis.connect.pipeline.event.handler.custom.deadletter.RetryPolicy;
+import com.redis.connect.pipeline.event.handler.custom.http.HttpClients;
+import com.redis.connect.pipeline.event.handler.custom.http.HttpStatusException;
 import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
+import com.redis.connect.utils.ConnectThreadFactory;
 import io.lettuce.core.RedisConnectionException;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.client.RestTemplate;
-
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 
-
+/**
+ * Forwards change events to a Splunk HTTP Event Collector (HEC) over a shared, keep-alive HTTP/1.1 client.
+ * <p>
+ * By default every change event is posted on its own. With {@code splunk.batch.enabled} set to true, events are
+ * appended to a bounded buffer and posted as a single newline-delimited HEC payload once any of the size, byte or
+ * linger thresholds is reached. Up to {@code splunk.batch.max.inflight} batches are posted concurrently, but the last
+ * event of a disruptor batch only returns once Splunk acknowledged, or the dead letter sink took, every HEC batch
+ * holding its events: the disruptor hands the batch on, and checkpoints it, as soon as that event returns. A failed
+ * HEC batch is rethrown on the disruptor thread, at the latest at the end of the disruptor batch, and the batches
+ * buffered after it are discarded so that the replay from the checkpoint does not post them twice.
+ * <p>
+ * Requests that fail with a transient error are retried as configured by {@link RetryPolicy} ({@code retry.*}), a
+ * batch as a whole. When {@code deadletter.redis.url} is set, events that still fail are written to a Redis Stream by
+ * {@link DeadLetterSink} (a failed batch as one entry per event) and the stage moves on; otherwise the failure stops
+ * the pipeline as before. {@code DeadLetterReplayTool} posts dead letters again once Splunk accepts them.
+ * <pre>
+ * "customConfiguration" : {
+ *   "splunk.destination.url" : "https://splunk:8088/services/collector/event",
+ *   "splunk.batch.enabled" : true,
+ *   "splunk.batch.max.events" : 500,
+ *   "splunk.batch.max.bytes" : 1048576,
+ *   "splunk.batch.linger.ms" : 50,
+ *   "splunk.batch.max.inflight" : 4,
+ *   "splunk.request.timeout.ms" : 30000,
+ *   "retry.max.attempts" : 5,
+ *   "retry.backoff.initial.ms" : 100,
+ *   "retry.backoff.max.ms" : 10000,
+ *   "deadletter.redis.url" : "redis://127.0.0.1:14000"
+ * }
+ * </pre>
+ */
 public class SplunkForwardHECRequestStage extends BaseCustomStageHandler {
 
+    private static final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+
     private static final String CUSTOM_CONFIG_DESTINATION_URL = "splunk.destination.url";
+    private static final String CUSTOM_CONFIG_BATCH_ENABLED = "splunk.batch.enabled";
+    private static final String CUSTOM_CONFIG_BATCH_MAX_EVENTS = "splunk.batch.max.events";
+    private static final String CUSTOM_CONFIG_BATCH_MAX_BYTES = "splunk.batch.max.bytes";
+    private static final String CUSTOM_CONFIG_BATCH_LINGER_MS = "splunk.batch.linger.ms";
+    private static final String CUSTOM_CONFIG_BATCH_MAX_INFLIGHT = "splunk.batch.max.inflight";
+    private static final String CUSTOM_CONFIG_REQUEST_TIMEOUT_MS = "splunk.request.timeout.ms";
     private static final String HTTP_HEADERS_KEY = "httpHeaders";
     private static final ObjectMapper mapper = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> PAYLOAD_TYPE = new TypeReference<>() {
+    };
 
+    private final String jobId;
+    private final JobPipelineStageDTO jobPipelineStage;
     private final String destinationUrl;
 
+    private URI destinationUri;
+    private Duration requestTimeout;
+    private boolean batchEnabled;
+    private int batchMaxEvents;
+    private int batchMaxBytes;
+    private long batchLingerMs;
+    private RetryPolicy retryPolicy;
+    private DeadLetterSink deadLetterSink;
+
+    private Sequence sequenceCallback;
+
+    // Batching state, guarded by batchLock since linger flushes run on the scheduler thread
+    private final ReentrantLock batchLock = new ReentrantLock();
+    private HecBatch batch;
+    private long batchGeneration;
+    private CompletableFuture<Void> lastAcknowledgement = CompletableFuture.completedFuture(null);
+    private Semaphore inFlightBatches;
+    private ScheduledExecutorService lingerScheduler;
+    private volatile Throwable batchFailure;
+    // Bumped when a failure is rethrown, batches posted before that cannot fail the batches of the replay
+    private volatile long failureScope;
+
+    // The headers are serialized per event but almost never change, so keep the last parsed copy around
+    private String lastRawHttpHeaders;
+    private HttpHeaders lastHttpHeaders;
+
     public SplunkForwardHECRequestStage(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage) {
         super(jobId, jobType, jobPipelineStage);
+        this.jobId = jobId;
+        this.jobPipelineStage = jobPipelineStage;
         destinationUrl = jobPipelineStage.getDatabase().getCustomConfiguration().get(CUSTOM_CONFIG_DESTINATION_URL);
     }
 
+    @Override
+    public void setSequenceCallback(Sequence sequenceCallback) {
+        super.setSequenceCallback(sequenceCallback);
+        this.sequenceCallback = sequenceCallback;
+    }
+
+    @Override
+    public void onEvent(ChangeEventDTO changeEvent, long sequence, boolean endOfBatch) throws Exception {
+
+        if (!batchEnabled) {
+            super.onEvent(changeEvent, sequence, endOfBatch);
+            return;
+        }
+
+        if (!changeEvent.isValid()) {
+            super.onEvent(changeEvent, sequence, endOfBatch);
+        } else {
+            try {
+                rethrowBatchFailure();
+                append(changeEvent, sequence);
+            } catch (Exception e) {
+                throw new InvalidChangeEventException(e, "Failed to transform change event in custom stage");
+            }
+        }
+
+        if (endOfBatch)
+            awaitAcknowledgement();
+    }
+
+    /**
+     * Posts what is buffered and waits until Splunk acknowledged every batch posted so far.
+     */
+    private void awaitAcknowledgement() throws Exception {
+        CompletableFuture<Void> acknowledgement;
+        batchLock.lock();
+        try {
+            flush();
+            acknowledgement = lastAcknowledgement;
+        } finally {
+            batchLock.unlock();
+        }
+
+        try {
+            acknowledgement.join();
+        } catch (CompletionException | CancellationException e) {
+            // Also recorded as the batch failure by the acknowledgement chain
+        }
+        try {
+            rethrowBatchFailure();
+        } catch (RedisConnectionException e) {
+            throw new InvalidChangeEventException(e, "Failed to transform change event in custom stage");
+        }
+    }
+
     @Override
     public void onEvent(ChangeEventDTO changeEvent) throws Exception {
 
         Map<String, Object> values = changeEvent.getValues();
         if (values != null) {
 
-            if (!values.containsKey(HTTP_HEADERS_KEY))
-                throw new ValidationException("Could not forward Splunk HTTP Event Collector (HEC) request because HTTP Headers were not provided");
+            HttpHeaders httpHeaders = removeHttpHeaders(values);
+            String rawHttpHeaders = lastRawHttpHeaders;
+            byte[] payload = mapper.writeValueAsBytes(values);
+
+            try {
+                retryPolicy.call(() -> send(httpHeaders, payload));
+            } catch (IOException | RedisConnectionException e) {
+                if (deadLetterSink == null)
+                    throw e;
+                // Dead-letter the values as they entered the stage, a replay needs the headers as well
+                values.put(HTTP_HEADERS_KEY, rawHttpHeaders);
+                deadLetterSink.write(DeadLetter.of(jobId, jobPipelineStage.getStageName(), changeEvent, values, e));
+            }
+        }
+    }
+
+    private Void send(HttpHeaders httpHeaders, byte[] payload) throws Exception {
+
+        // Forward HTTP Event Collector Request
+        HttpResponse<String> response = HttpClients.shared().send(newRequest(httpHeaders, payload, payload.length), HttpResponse.BodyHandlers.ofString());
+
+        if (response == null)
+            throw new RedisConnectionException("HTTP request to " + destinationUrl + " with HttpHeaders: " + httpHeaders + " did not receive a response");
+
+        else if (response.statusCode() != 200)
+            throw new HttpStatusException(destinationUrl, response.statusCode(), "with HttpHeaders: " + httpHeaders);
+
+        return null;
+    }
+
+    private void append(ChangeEventDTO changeEvent, long sequence) throws Exception {
+
+        Map<String, Object> values = changeEvent.getValues();
+        String rawHttpHeaders = null;
+        byte[] payload = null;
+
+        if (values != null) {
+            HttpHeaders httpHeaders = removeHttpHeaders(values);
+            rawHttpHeaders = lastRawHttpHeaders;
+            payload = mapper.writeValueAsBytes(values);
+
+            if (LOGGER.isTraceEnabled())
+                LOGGER.trace("Instance: {} SplunkForwardHECRequestStage buffering sequence: {} with HttpHeaders: {}", instanceId, sequence, httpHeaders);
+        }
 
-            HttpHeaders httpHeaders = mapper.readValue((String) values.remove(HTTP_HEADERS_KEY), HttpHeaders.class);
-            HttpEntity<String> entity = new HttpEntity<>(mapper.writeValueAsString(values), httpHeaders);
+        batchLock.lock();
+        try {
+            // Events carrying different headers (e.g. another HEC token) cannot share a request
+            if (batch != null && payload != null && batch.events > 0 && !Objects.equals(batch.rawHttpHeaders, rawHttpHeaders))
+                flush();
 
-            // Forward HTTP Event Collector Request
-            ResponseEntity<String> response = new RestTemplate().postForEntity(URI.create(destinationUrl), entity, String.class);
+            if (batch == null) {
+                batch = new HecBatch(batchMaxBytes, deadLetterSink != null);
+                scheduleLingerFlush(++batchGeneration);
+            }
 
-            if (response == null)
-                throw new RedisConnectionException("HTTP request to " + destinationUrl + " with HttpHeaders: " + httpHeaders + " did not receive a response");
+            if (payload != null)
+                batch.add(rawHttpHeaders, lastHttpHeaders, payload, changeEvent);
+            batch.lastSequence = sequence;
 
-            else if (!response.getStatusCode().equals(HttpStatus.OK))
-                throw new RedisConnectionException("HTTP request to " + destinationUrl + " with HttpHeaders: " + httpHeaders + " received a response with HttpStatusCode: " + response.getStatusCode());
+            if (batch.events >= batchMaxEvents || batch.size >= batchMaxBytes)
+                flush();
+        } finally {
+            batchLock.unlock();
         }
     }
 
+    private void scheduleLingerFlush(long generation) {
+        lingerScheduler.schedule(() -> {
+            batchLock.lock();
+            try {
+                if (batch != null && batchGeneration == generation)
+                    flush();
+            } catch (Throwable t) {
+                if (batchFailure == null)
+                    batchFailure = t;
+            } finally {
+                batchLock.unlock();
+            }
+        }, batchLingerMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Hands the current batch to the HTTP client. Must be called while holding {@link #batchLock}. Blocks when
+     * {@code splunk.batch.max.inflight} batches are already awaiting a response, which back-pressures the disruptor.
+     */
+    private void flush() throws InterruptedException {
+
+        HecBatch flushed = batch;
+        batch = null;
+        if (flushed == null)
+            return;
+
+        final long acknowledgedSequence = flushed.lastSequence;
+        final long scope = failureScope;
+        CompletableFuture<Void> delivery;
+
+        if (flushed.events == 0) {
+            delivery = CompletableFuture.completedFuture(null);
+        } else {
+            inFlightBatches.acquire();
+            HttpRequest request = newRequest(flushed.httpHeaders, flushed.buffer, flushed.size);
+            delivery = retryPolicy.callAsync(() -> HttpClients.shared().sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                    .thenAccept(response -> {
+                        if (response.statusCode() != 200)
+                            throw new HttpStatusException(destinationUrl, response.statusCode(), "with HttpHeaders: " + flushed.httpHeaders);
+                    }));
+            if (deadLetterSink != null)
+                delivery = delivery.exceptionallyCompose(t -> deadLetter(flushed, t));
+            delivery = delivery.whenComplete((ignored, t) -> inFlightBatches.release());
+        }
+
+        // Acknowledge strictly in order, a batch never moves the checkpoint past a batch that has not been delivered
+        lastAcknowledgement = lastAcknowledgement.thenCombine(delivery, (previous, current) -> current)
+                .whenComplete((ignored, t) -> {
+                    if (t != null) {
+                        if (batchFailure == null && scope == failureScope)
+                            batchFailure = t;
+                        LOGGER.error("Instance: {} JobId: {} failed to forward {} buffered change event(s) to Splunk HEC at {}", instanceId, jobId, flushed.events, destinationUrl, t);
+                    } else {
+                        sequenceCallback.set(acknowledgedSequence);
+                    }
+                });
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} SplunkForwardHECRequestStage flushed {} change event(s), {} bytes, up to sequence: {}", instanceId, flushed.events, flushed.size, acknowledgedSequence);
+    }
+
+    /**
+     * Writes one dead letter per event of a batch Splunk did not accept, the batch is delivered once all are written.
+     */
+    private CompletableFuture<Void> deadLetter(HecBatch failed, Throwable failure) {
+        CompletableFuture<?>[] writes = new CompletableFuture<?>[failed.events];
+        int start = 0;
+        for (int i = 0; i < failed.events; i++) {
+            int end = start;
+            while (failed.buffer[end] != '\n')
+                end++;
+
+            BufferedEvent event = failed.bufferedEvents.get(i);
+            try {
+                // Every payload is a single line, Jackson escapes line breaks inside values
+                Map<String, Object> values = mapper.readValue(failed.buffer, start, end - start, PAYLOAD_TYPE);
+                values.put(HTTP_HEADERS_KEY, failed.rawHttpHeaders);
+                writes[i] = deadLetterSink.writeAsync(DeadLetter.of(jobId, jobPipelineStage.getStageName(), event.table(), event.key(),
+                        event.operation(), event.sourceTxTime(), mapper.writeValueAsString(values), failure));
+            } catch (IOException e) {
+                writes[i] = deadLetterSink.writeAsync(DeadLetter.of(jobId, jobPipelineStage.getStageName(), event.table(), event.key(),
+                        event.operation(), event.sourceTxTime(), new String(failed.buffer, start, end - start, StandardCharsets.UTF_8), failure));
+            }
+            start = end + 1;
+        }
+        return CompletableFuture.allOf(writes);
+    }
+
+    /**
+     * Rethrows the first failure since the last one rethrown. The failure is scoped to the batch it happened in: what
+     * is buffered is discarded and the acknowledgement chain starts over, so the batches of the replay are posted and
+     * acknowledged again.
+     */
+    private void rethrowBatchFailure() throws RedisConnectionException {
+        Throwable t = batchFailure;
+        if (t != null) {
+            batchLock.lock();
+            try {
+                batch = null;
+                batchGeneration++;
+                failureScope++;
+                lastAcknowledgement = CompletableFuture.completedFuture(null);
+                batchFailure = null;
+            } finally {
+                batchLock.unlock();
+            }
+
+            Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            if (cause instanceof RedisConnectionException rce)
+                throw rce;
+            throw new RedisConnectionException("HTTP request to " + destinationUrl + " failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    private HttpHeaders removeHttpHeaders(Map<String, Object> values) throws Exception {
+
+        if (!values.containsKey(HTTP_HEADERS_KEY))
+            throw new ValidationException("Could not forward Splunk HTTP Event Collector (HEC) request because HTTP Headers were not provided");
+
+        String rawHttpHeaders = (String) values.remove(HTTP_HEADERS_KEY);
+        if (!rawHttpHeaders.equals(lastRawHttpHeaders)) {
+            lastHttpHeaders = mapper.readValue(rawHttpHeaders, HttpHeaders.class);
+            lastRawHttpHeaders = rawHttpHeaders;
+        }
+        return lastHttpHeaders;
+    }
+
+    private HttpRequest newRequest(HttpHeaders httpHeaders, byte[] body, int length) {
+        return HttpClients.headers(HttpRequest.newBuilder(destinationUri), httpHeaders)
+                .timeout(requestTimeout)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body, 0, length))
+                .build();
+    }
+
     @Override
     public void init() throws Exception {
         setSequenceCallback(new Sequence());
 
         if (destinationUrl == null || destinationUrl.isBlank())
             throw new ValidationException(CUSTOM_CONFIG_DESTINATION_URL + " is a required configuration for this custom stage");
+
+        CustomStageConfiguration configuration = CustomStageConfiguration.of(jobPipelineStage);
+        destinationUri = URI.create(destinationUrl);
+        requestTimeout = Duration.ofMillis(configuration.getPositiveLong(CUSTOM_CONFIG_REQUEST_TIMEOUT_MS, 30000));
+        batchEnabled = configuration.getBoolean(CUSTOM_CONFIG_BATCH_ENABLED, false);
+        retryPolicy = RetryPolicy.of(configuration);
+        deadLetterSink = DeadLetterSink.of(configuration, jobId, jobPipelineStage.getStageName());
+
+        if (batchEnabled) {
+            batchMaxEvents = configuration.getPositiveInt(CUSTOM_CONFIG_BATCH_MAX_EVENTS, 100);
+            batchMaxBytes = configuration.getPositiveInt(CUSTOM_CONFIG_BATCH_MAX_BYTES, 1024 * 1024);
+            batchLingerMs = configuration.getPositiveLong(CUSTOM_CONFIG_BATCH_LINGER_MS, 50);
+            inFlightBatches = new Semaphore(configuration.getPositiveInt(CUSTOM_CONFIG_BATCH_MAX_INFLIGHT, 4));
+            lingerScheduler = Executors.newSingleThreadScheduledExecutor(new ConnectThreadFactory("splunk-hec-linger-" + jobId));
+        }
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully started disruptor (replication pipeline) in SplunkForwardHECRequestStage. Batching enabled: {}, {}, dead letters: {}", instanceId, batchEnabled, retryPolicy, deadLetterSink);
     }
 
     @Override
     public void shutdown() {
+        if (batchEnabled) {
+            batchLock.lock();
+            try {
+                flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                batchLock.unlock();
+            }
+
+            try {
+                lastAcknowledgement.get(requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                LOGGER.warn("Instance: {} JobId: {} SplunkForwardHECRequestStage shutdown before all buffered change events were acknowledged by Splunk HEC", instanceId, jobId);
+            }
+            lingerScheduler.shutdownNow();
+        }
+
+        if (deadLetterSink != null) {
+            LOGGER.info("Instance: {} SplunkForwardHECRequestStage dead letters: {}", instanceId, deadLetterSink);
+            deadLetterSink.close();
+        }
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully shutdown disruptor (replication pipeline) in SplunkForwardHECRequestStage.", instanceId);
+    }
+
+    /**
+     * Newline-delimited HEC payload accumulated in a single growable byte array.
+     */
+    private static final class HecBatch {
+
+        private byte[] buffer;
+        private int size;
+        private int events;
+        private long lastSequence;
+        private String rawHttpHeaders;
+        private HttpHeaders httpHeaders;
+        // Only kept when dead-lettering, the payload alone does not say which event it came from
+        private final List<BufferedEvent> bufferedEvents;
+
+        private HecBatch(int maxBytes, boolean keepEvents) {
+            buffer = new byte[Math.min(maxBytes, 64 * 1024)];
+            bufferedEvents = keepEvents ? new ArrayList<>() : null;
+        }
+
+        private void add(String rawHttpHeaders, HttpHeaders httpHeaders, byte[] payload, ChangeEventDTO changeEvent) {
+            if (bufferedEvents != null)
+                bufferedEvents.add(new BufferedEvent(changeEvent.getSchemaAndTableName(), changeEvent.getKey(), changeEvent.getOperation(), changeEvent.getSourceTxTime()));
+            ensureCapacity(size + payload.length + 1);
+            System.arraycopy(payload, 0, buffer, size, payload.length);
+            size += payload.length;
+            buffer[size++] = '\n';
+            events++;
+            this.rawHttpHeaders = rawHttpHeaders;
+            this.httpHeaders = httpHeaders;
+        }
+
+        private void ensureCapacity(int required) {
+            if (required > buffer.length)
+                buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length << 1));
+        }
+    }
+
+    private record BufferedEvent(String table, String key, String operation, long sourceTxTime) {
     }
 
-}
\ No newline at end of file
+}
@@ -1,35 +1,70 @@
 package com.redis.connect.pipeline.event.handler.custom.impl;
 
-import com.fasterxml.jackson.core.JacksonException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.lmax.disruptor.Sequence;
 import com.redis.connect.dto.ChangeEventDTO;
 import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.exception.ValidationException;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import com.redis.connect.pipeline.event.handler.custom.json.JsonPointerProjection;
+import com.redis.connect.pipeline.event.handler.custom.json.StreamingLobJsonReader;
+import com.redis.connect.pipeline.event.handler.custom.parallel.ThreadSafeStage;
 import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
 import java.lang.management.ManagementFactory;
-import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-
-public class TransformLobToJsonStage extends BaseCustomStageHandler {
+/**
+ * Promotes the top-level fields of a JSON document stored in a CLOB/BLOB column (plain or Base64 encoded) into the
+ * change event values and drops the LOB column itself. The document is streamed, see {@link StreamingLobJsonReader}.
+ * <p>
+ * LOB columns are configured per table with {@code lob.columns.<schemaAndTableName>}. {@code lob.columns} (or, for
+ * backward compatibility, the {@code REDISCONNECT_LOB_COLUMNS} environment variable) applies to every other table.
+ * {@code lob.projection.<schemaAndTableName>.<column>} optionally restricts the promoted fields to a comma separated
+ * list of JSON pointers. Everything is compiled once in {@code init()}; events of tables without LOB columns cost a
+ * single map lookup.
+ * <pre>
+ * "customConfiguration" : {
+ *   "lob.columns.CHINOOK.INVOICE" : "PAYLOAD,METADATA",
+ *   "lob.projection.CHINOOK.INVOICE.PAYLOAD" : "/customer/id,/total",
+ *   "lob.json.max.depth" : 64,
+ *   "lob.json.max.bytes" : 67108864
+ * }
+ * </pre>
+ */
+public class TransformLobToJsonStage extends BaseCustomStageHandler implements ThreadSafeStage {
 
     private static final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
     private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+    private static final String CUSTOM_CONFIG_COLUMNS = "lob.columns";
+    private static final String CUSTOM_CONFIG_TABLE_COLUMNS_PREFIX = "lob.columns.";
+    private static final String CUSTOM_CONFIG_PROJECTION_PREFIX = "lob.projection.";
+    private static final String CUSTOM_CONFIG_MAX_DEPTH = "lob.json.max.depth";
+    private static final String CUSTOM_CONFIG_MAX_BYTES = "lob.json.max.bytes";
     private final String jsonLobColumnNames;
-    private static final ObjectMapper mapper = new ObjectMapper();
+    private final JobPipelineStageDTO jobPipelineStage;
     private final int processors = Runtime.getRuntime().availableProcessors();
+    private StreamingLobJsonReader lobJsonReader;
+
+    // Compiled in init(), immutable afterwards
+    private Map<String, LobColumn[]> lobColumnsByTable = Map.of();
+    private LobColumn[] defaultLobColumns;
 
     public TransformLobToJsonStage(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage) {
         super(jobId, jobType, jobPipelineStage);
+        this.jobPipelineStage = jobPipelineStage;
         this.jsonLobColumnNames = System.getenv("REDISCONNECT_LOB_COLUMNS");
     }
 
     @Override
     public void onEvent(ChangeEventDTO changeEvent) throws Exception {
 
+        LobColumn[] lobColumns = lobColumnsByTable.getOrDefault(changeEvent.getSchemaAndTableName(), defaultLobColumns);
+        if (lobColumns == null)
+            return;
+
         Map<String, Object> values = changeEvent.getValues();
 
         if (LOGGER.isDebugEnabled())
@@ -37,28 +72,16 @@ public class TransformLobToJsonStage extends BaseCustomStageHandler {
 
         if (values != null && !values.isEmpty()) {
 
-            String[] jsonLobColumnNameList = jsonLobColumnNames.split(",", -1);
-            for (String columnName : jsonLobColumnNameList) {
+            for (LobColumn lobColumn : lobColumns) {
 
-                if (values.containsKey(columnName)) {
+                if (values.containsKey(lobColumn.name)) {
 
                     if (LOGGER.isDebugEnabled()) {
-                        System.getenv().forEach((k, v) -> LOGGER.debug(k + ":" + v));
-                        LOGGER.debug("Instance: {} -------------------------------------------Stage: CUSTOM, columnName: {}, values: {}", instanceId, columnName, values);
-                    }
-
-                    final var ref = new Object() {
-                        JsonNode jsonNode;
-                    };
-
-                    try {
-                        ref.jsonNode = mapper.readTree(String.valueOf(values.get(columnName)));
-                    } catch (JacksonException e) {
-                        ref.jsonNode = mapper.readTree(new String(Base64.getDecoder().decode((String) values.get(columnName))));
+                        LOGGER.debug("Instance: {} -------------------------------------------Stage: CUSTOM, columnName: {}, values: {}", instanceId, lobColumn.name, values);
                     }
 
-                    ref.jsonNode.fieldNames().forEachRemaining(key -> values.put(key, ref.jsonNode.get(key)));
-                    values.remove(columnName);
+                    lobJsonReader.flattenInto(values.get(lobColumn.name), values, lobColumn.projection);
+                    values.remove(lobColumn.name);
                 }
             }
         }
@@ -66,18 +89,61 @@ public class TransformLobToJsonStage extends BaseCustomStageHandler {
 
     @Override
     public void validateEventHandler() {
-        if (jsonLobColumnNames == null || jsonLobColumnNames.isEmpty()) {
-            LOGGER.error("Instance: {} REDISCONNECT_LOB_COLUMNS environment variable is not set. " +
-                         "Please set REDISCONNECT_LOB_COLUMNS variable in redisconnect.conf and provide value(s) for one or more comma separated clob/blob column names", instanceId);
+        CustomStageConfiguration configuration = CustomStageConfiguration.of(jobPipelineStage);
+        boolean configured = configuration.asMap().keySet().stream().anyMatch(key -> key.startsWith(CUSTOM_CONFIG_COLUMNS));
+
+        if (!configured && (jsonLobColumnNames == null || jsonLobColumnNames.isEmpty())) {
+            LOGGER.error("Instance: {} Neither {} nor REDISCONNECT_LOB_COLUMNS environment variable is set. " +
+                         "Please configure {}[.<schemaAndTableName>] in the stage customConfiguration and provide value(s) for one or more comma separated clob/blob column names", instanceId, CUSTOM_CONFIG_COLUMNS, CUSTOM_CONFIG_COLUMNS);
         }
     }
 
     @Override
-    public void init() {
+    public void init() throws Exception {
         setSequenceCallback(new Sequence());
+
+        CustomStageConfiguration configuration = CustomStageConfiguration.of(jobPipelineStage);
+        lobJsonReader = new StreamingLobJsonReader(configuration.getPositiveInt(CUSTOM_CONFIG_MAX_DEPTH, 64),
+                configuration.getPositiveLong(CUSTOM_CONFIG_MAX_BYTES, 64L * 1024 * 1024));
+
+        Map<String, LobColumn[]> compiled = new HashMap<>();
+        for (Map.Entry<String, String> entry : configuration.asMap().entrySet()) {
+            if (entry.getKey().startsWith(CUSTOM_CONFIG_TABLE_COLUMNS_PREFIX)) {
+                String schemaAndTableName = entry.getKey().substring(CUSTOM_CONFIG_TABLE_COLUMNS_PREFIX.length());
+                compiled.put(schemaAndTableName, compile(configuration, schemaAndTableName, CustomStageConfiguration.splitList(entry.getValue())));
+            }
+        }
+        lobColumnsByTable = Map.copyOf(compiled);
+
+        List<String> defaultColumnNames = configuration.contains(CUSTOM_CONFIG_COLUMNS)
+                ? configuration.getList(CUSTOM_CONFIG_COLUMNS)
+                : CustomStageConfiguration.splitList(jsonLobColumnNames);
+        defaultLobColumns = defaultColumnNames.isEmpty() ? null : compile(configuration, null, defaultColumnNames);
+
         if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Instance: {} successfully started disruptor (replication pipeline) in TransformLobToJsonStage. Available CPU: {}", instanceId, processors);
+            LOGGER.debug("Instance: {} successfully started disruptor (replication pipeline) in TransformLobToJsonStage. Available CPU: {}, LOB tables: {}", instanceId, processors, lobColumnsByTable.keySet());
+        }
+    }
+
+    private static LobColumn[] compile(CustomStageConfiguration configuration, String schemaAndTableName, List<String> columnNames) throws ValidationException {
+        LobColumn[] lobColumns = new LobColumn[columnNames.size()];
+        for (int i = 0; i < lobColumns.length; i++) {
+            String columnName = columnNames.get(i);
+            JsonPointerProjection projection = null;
+
+            if (schemaAndTableName != null) {
+                String projectionKey = CUSTOM_CONFIG_PROJECTION_PREFIX + schemaAndTableName + "." + columnName;
+                if (configuration.contains(projectionKey)) {
+                    try {
+                        projection = JsonPointerProjection.compile(configuration.getList(projectionKey));
+                    } catch (IllegalArgumentException e) {
+                        throw new ValidationException(e, projectionKey + " must be a comma separated list of JSON pointers");
+                    }
+                }
+            }
+            lobColumns[i] = new LobColumn(columnName, projection);
         }
+        return lobColumns;
     }
 
     @Override
@@ -87,4 +153,7 @@ public class TransformLobToJsonStage extends BaseCustomStageHandler {
         }
     }
 
-}
\ No newline at end of file
+    private record LobColumn(String name, JsonPointerProjection projection) {
+    }
+
+}
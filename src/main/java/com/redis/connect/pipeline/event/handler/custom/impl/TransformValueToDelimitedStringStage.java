@@ -3,15 +3,20 @@ package com.redis.connect.pipeline.event.handler.custom.impl;
 import com.lmax.disruptor.Sequence;
 import com.redis.connect.dto.ChangeEventDTO;
 import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.exception.ValidationException;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import com.redis.connect.pipeline.event.handler.custom.delimited.ColumnFormatter;
+import com.redis.connect.pipeline.event.handler.custom.delimited.DateTimeColumnFormatter;
+import com.redis.connect.pipeline.event.handler.custom.delimited.DelimitedRecordEncoder;
+import com.redis.connect.pipeline.event.handler.custom.load.LoadMode;
+import com.redis.connect.pipeline.event.handler.custom.load.MicroBatch;
+import com.redis.connect.pipeline.event.handler.custom.parallel.ThreadSafeStage;
 import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
 import java.lang.management.ManagementFactory;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import oracle.sql.TIMESTAMPTZ;
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -83,44 +88,69 @@ oracle-job.json:
     }
   }
 }
+
+Delimited and fixed-layout concatenation layouts are configured per table in the stage customConfiguration and compiled
+once in init(). During an initial load (jobType LOAD, see LoadMode) the delete check is skipped, the load only reads
+rows, and the log level is checked once per micro-batch of load.micro.batch.size events. Concatenation appends the configured columns back to back, skipping nulls; PREFIX[first..last] expands
+to a column range. Without any delimited.columns.* or concat.columns.* entry, the DEV environment falls back to the
+built-in C##RCUSER.TEST and C##RCUSER.BIGTABLE layouts shown below.
+  "customConfiguration" : {
+    "delimited.columns.C##RCUSER.TEST" : "ID,PIECE1,PIECE2,PIECE3,MODIFIED_DATE",
+    "delimited.format.C##RCUSER.TEST.MODIFIED_DATE" : "MM/dd/yyyy HH:mm:ss.SSSSSS a x:00",
+    "delimited.delimiter" : "|",
+    "delimited.terminator" : "\n",
+    "delimited.trailing.delimiter" : true,
+    "delimited.legacy.escaping" : true,
+    "delimited.skip.deletes" : true,
+    "concat.columns.C##RCUSER.BIGTABLE" : "PIECE[1..60]",
+    "concat.terminator" : "\n"
+  }
 */
-public class TransformValueToDelimitedStringStage extends BaseCustomStageHandler {
+public class TransformValueToDelimitedStringStage extends BaseCustomStageHandler implements ThreadSafeStage {
 
     private final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
     private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+    private static final String CUSTOM_CONFIG_COLUMNS_PREFIX = "delimited.columns.";
+    private static final String CUSTOM_CONFIG_FORMAT_PREFIX = "delimited.format.";
+    private static final String CUSTOM_CONFIG_DELIMITER = "delimited.delimiter";
+    private static final String CUSTOM_CONFIG_TERMINATOR = "delimited.terminator";
+    private static final String CUSTOM_CONFIG_TRAILING_DELIMITER = "delimited.trailing.delimiter";
+    private static final String CUSTOM_CONFIG_LEGACY_ESCAPING = "delimited.legacy.escaping";
+    private static final String CUSTOM_CONFIG_SKIP_DELETES = "delimited.skip.deletes";
+    private static final String CUSTOM_CONFIG_CONCAT_COLUMNS_PREFIX = "concat.columns.";
+    private static final String CUSTOM_CONFIG_CONCAT_TERMINATOR = "concat.terminator";
+    private static final String LEGACY_TABLE = "C##RCUSER.TEST";
+    private static final String LEGACY_COLUMNS = "ID,PIECE1,PIECE2,PIECE3,MODIFIED_DATE";
+    private static final String LEGACY_DATE_COLUMN = "MODIFIED_DATE";
+    private static final String LEGACY_DATE_PATTERN = "MM/dd/yyyy HH:mm:ss.SSSSSS a x:00";
+    private static final String LEGACY_CONCAT_TABLE = "C##RCUSER.BIGTABLE";
+    private static final String LEGACY_CONCAT_COLUMNS = "PIECE[1..60]";
     private final String environment;
+    private final String jobType;
+    private final JobPipelineStageDTO jobPipelineStage;
+
+    // Compiled in init(), immutable afterwards
+    private Map<String, TableLayout> layoutsByTable = Map.of();
+    private MicroBatch microBatch;
 
     private final int processors = Runtime.getRuntime().availableProcessors();
 
     public TransformValueToDelimitedStringStage(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage) {
         super(jobId, jobType, jobPipelineStage);
+        this.jobType = jobType;
+        this.jobPipelineStage = jobPipelineStage;
         this.environment = System.getenv("REDISCONNECT_TEST_ENVIRONMENT");
     }
 
-    public static String concatenatePieces(Map<String, Object> map, int quantity) {
-        StringBuilder result = new StringBuilder();
-
-        for (int i = 1; i <= quantity; i++) {
-            String key = "PIECE" + i;
-            String value = (String) map.get(key);
-
-            if (value != null) {
-                result.append(value);
-            }
-        }
-
-        result.append(System.lineSeparator()); // Append a newline character
-        return result.toString();
-    }
-    
     @Override
     public void onEvent(ChangeEventDTO changeEvent) throws Exception {
-        if (LOGGER.isDebugEnabled()) {
+        boolean load = microBatch != null;
+        boolean debug = load ? microBatch.next().isDebugEnabled() : LOGGER.isDebugEnabled();
+
+        if (debug) {
             LOGGER.debug("Instance: {}, Raw Change Event: {} -------------------------------------------Stage: CUSTOM", instanceId, changeEvent.getValues());
         }
 
-        List<Object> valueAsList = new ArrayList<>();
-
         //if (changeEvent.getValues() != null && !changeEvent.getValues().isEmpty()) {
 
         if (changeEvent.getValues() != null) {
@@ -129,47 +159,27 @@ public class TransformValueToDelimitedStringStage extends BaseCustomStageHandler
             String schemaAndTableName = changeEvent.getSchemaAndTableName();
             String operationType = changeEvent.getOperation();
 
-            if (LOGGER.isDebugEnabled()) {
+            if (debug) {
                 LOGGER.debug("Instance: {} TransformValueToDelimitedStringStage::onEvent Processor, schemaAndTableName: {}, operationType: {}, values: {}", instanceId, schemaAndTableName, operationType, keyValueAsMap);
             }
 
-            if ("DEV".equals(environment)) {
-                if (schemaAndTableName.equals("C##RCUSER.TEST")) { // We are only interested in the values and not keys as App expects it
-                    if (operationType.equals(CHANGE_EVENT_DTO_OPERATION_DELETE))
-                    {
-                        if (LOGGER.isDebugEnabled()) {
-                            LOGGER.debug("Instance: {} Ignoring change event for schemaAndTableName: {}, operationType: {}, values: {}", instanceId, schemaAndTableName, operationType, keyValueAsMap);
-                        }
-                        changeEvent.setValid(false);
-                        return;
-                    }
-                    valueAsList.add(keyValueAsMap.get("ID")); // Adding values to List in the same order as App expects it
-                    valueAsList.add(keyValueAsMap.get("PIECE1"));
-                    valueAsList.add(keyValueAsMap.get("PIECE2"));
-                    valueAsList.add(keyValueAsMap.get("PIECE3"));
-
-                    Object dateObj = keyValueAsMap.get("MODIFIED_DATE");
-                    if (dateObj instanceof TIMESTAMPTZ ts) { // load/snapshot will return oracle.sql.TIMESTAMPTZ
-                        /*
-                        See Patterns for Formatting and Parsing,
-                        https://docs.oracle.com/javase/8/docs/api/java/time/format/DateTimeFormatter.html#:~:text=Patterns%20for%20Formatting%20and%20Parsing
-                         */
-                        dateObj = ts.toZonedDateTime().format(DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm:ss.SSSSSS a x:00"));
-                        valueAsList.add(dateObj);
-                    } else { // stream job returns date with time zone
-                        DateTimeFormatter newFormat = DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm:ss.SSSSSS a x:00");
-                        valueAsList.add(ZonedDateTime.parse(String.valueOf(dateObj)).format(newFormat));
+            TableLayout layout = layoutsByTable.get(schemaAndTableName);
+            if (layout != null) { // We are only interested in the values and not keys as App expects it
+                if (!load && layout.skipDeletes && operationType.equals(CHANGE_EVENT_DTO_OPERATION_DELETE))
+                {
+                    if (debug) {
+                        LOGGER.debug("Instance: {} Ignoring change event for schemaAndTableName: {}, operationType: {}, values: {}", instanceId, schemaAndTableName, operationType, keyValueAsMap);
                     }
+                    changeEvent.setValid(false);
+                    return;
+                }
 
-                    valueAsList.add("\n");
+                // Final values for this table
+                String valueBlob = layout.encoder.encode(keyValueAsMap);
+                changeEvent.setValueBlob(valueBlob);
 
-                    // Final values for this table
-                    changeEvent.setValueBlob(String.join("|", StringUtils.join(valueAsList).split(",\\s")).replaceAll("^\\[", "").replaceAll("]$", ""));
-                } else if (schemaAndTableName.equals("C##RCUSER.BIGTABLE")) {
-                    LOGGER.debug("+++ keyValueAsMap={}", String.join(", ", keyValueAsMap.keySet()));
-                    LOGGER.debug("+++ Concat={}", concatenatePieces(keyValueAsMap, 60));
-                    changeEvent.setValueBlob(concatenatePieces(keyValueAsMap, 60));
-                    LOGGER.debug("+++ changeEvent.getValueBlob()= {}", changeEvent.getValueBlob());
+                if (debug) {
+                    LOGGER.debug("Instance: {} TransformValueToDelimitedStringStage::onEvent Processor, schemaAndTableName: {}, valueBlob: {}", instanceId, schemaAndTableName, valueBlob);
                 }
             }
         }
@@ -184,17 +194,84 @@ public class TransformValueToDelimitedStringStage extends BaseCustomStageHandler
     }
 
     @Override
-    public void init() {
+    public void init() throws Exception {
         setSequenceCallback(new Sequence());
+
+        CustomStageConfiguration configuration = CustomStageConfiguration.of(jobPipelineStage);
+        String delimiter = unescape(configuration.asMap().getOrDefault(CUSTOM_CONFIG_DELIMITER, "|"));
+        String terminator = unescape(configuration.asMap().getOrDefault(CUSTOM_CONFIG_TERMINATOR, "\n"));
+        boolean trailingDelimiter = configuration.getBoolean(CUSTOM_CONFIG_TRAILING_DELIMITER, true);
+        boolean legacyEscaping = configuration.getBoolean(CUSTOM_CONFIG_LEGACY_ESCAPING, true);
+        boolean skipDeletes = configuration.getBoolean(CUSTOM_CONFIG_SKIP_DELETES, true);
+        String concatTerminator = unescape(configuration.asMap().getOrDefault(CUSTOM_CONFIG_CONCAT_TERMINATOR, System.lineSeparator()));
+
+        Map<String, TableLayout> compiled = new HashMap<>();
+        for (Map.Entry<String, String> entry : configuration.asMap().entrySet()) {
+            if (entry.getKey().startsWith(CUSTOM_CONFIG_COLUMNS_PREFIX)) {
+                String schemaAndTableName = entry.getKey().substring(CUSTOM_CONFIG_COLUMNS_PREFIX.length());
+                compiled.put(schemaAndTableName, new TableLayout(compile(configuration.asMap(), schemaAndTableName, CustomStageConfiguration.splitList(entry.getValue()),
+                        delimiter, terminator, trailingDelimiter, legacyEscaping), skipDeletes));
+            } else if (entry.getKey().startsWith(CUSTOM_CONFIG_CONCAT_COLUMNS_PREFIX)) {
+                String schemaAndTableName = entry.getKey().substring(CUSTOM_CONFIG_CONCAT_COLUMNS_PREFIX.length());
+                compiled.put(schemaAndTableName, new TableLayout(DelimitedRecordEncoder.concatenation(expandColumns(entry.getKey(), entry.getValue()), concatTerminator), false));
+            }
+        }
+
+        if (compiled.isEmpty() && "DEV".equals(environment)) {
+            compiled.put(LEGACY_TABLE, new TableLayout(compile(Map.of(CUSTOM_CONFIG_FORMAT_PREFIX + LEGACY_TABLE + "." + LEGACY_DATE_COLUMN, LEGACY_DATE_PATTERN),
+                    LEGACY_TABLE, CustomStageConfiguration.splitList(LEGACY_COLUMNS), delimiter, terminator, trailingDelimiter, legacyEscaping), skipDeletes));
+            compiled.put(LEGACY_CONCAT_TABLE, new TableLayout(DelimitedRecordEncoder.concatenation(expandColumns(CUSTOM_CONFIG_CONCAT_COLUMNS_PREFIX + LEGACY_CONCAT_TABLE, LEGACY_CONCAT_COLUMNS), concatTerminator), false));
+        }
+        layoutsByTable = Map.copyOf(compiled);
+
+        LoadMode loadMode = LoadMode.of(jobType, configuration);
+        microBatch = loadMode.isActive() ? new MicroBatch(loadMode.getMicroBatchSize(), LOGGER) : null;
+
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Instance: {} successfully started disruptor (replication pipeline) in TransformValueToDelimitedStringStage. Available CPU: {}", instanceId, processors);
         }
     }
 
+    @Override
+    public void onBatchStart(long batchSize, long queueDepth) {
+        if (microBatch != null)
+            microBatch.restart();
+    }
+
+    private static DelimitedRecordEncoder compile(Map<String, String> properties, String schemaAndTableName, List<String> columns, String delimiter,
+                                                  String terminator, boolean trailingDelimiter, boolean legacyEscaping) throws ValidationException {
+        List<ColumnFormatter> formatters = new ArrayList<>(columns.size());
+        for (String column : columns) {
+            String formatKey = CUSTOM_CONFIG_FORMAT_PREFIX + schemaAndTableName + "." + column;
+            String pattern = properties.get(formatKey);
+            try {
+                formatters.add(pattern == null || pattern.isBlank() ? ColumnFormatter.TO_STRING : new DateTimeColumnFormatter(pattern));
+            } catch (IllegalArgumentException e) {
+                throw new ValidationException(e, formatKey + " is not a valid date time pattern: " + pattern);
+            }
+        }
+        return new DelimitedRecordEncoder(columns, formatters, delimiter, terminator, trailingDelimiter, legacyEscaping);
+    }
+
+    private static List<String> expandColumns(String key, String columns) throws ValidationException {
+        try {
+            return DelimitedRecordEncoder.expandColumns(CustomStageConfiguration.splitList(columns));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException(e, key + " contains an invalid column range: " + columns);
+        }
+    }
+
+    private static String unescape(String value) {
+        return value.replace("\\n", "\n").replace("\\r", "\r").replace("\\t", "\t");
+    }
+
     @Override
     public void shutdown() {
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Instance: {} successfully shutdown disruptor (replication pipeline) in TransformValueToDelimitedStringStage. Available CPU: {}", instanceId, processors);
         }
     }
-}
\ No newline at end of file
+
+    private record TableLayout(DelimitedRecordEncoder encoder, boolean skipDeletes) {
+    }
+}
@@ -1,17 +1,17 @@
 package com.redis.connect.pipeline.event.handler.custom.impl;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.lmax.disruptor.Sequence;
 import com.redis.connect.dto.ChangeEventDTO;
 import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import com.redis.connect.pipeline.event.handler.custom.parallel.ThreadSafeStage;
+import com.redis.connect.pipeline.event.handler.custom.transform.ColumnTransform;
+import com.redis.connect.pipeline.event.handler.custom.transform.ColumnTransformSet;
 import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.lang.management.ManagementFactory;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,58 +19,42 @@ import org.slf4j.LoggerFactory;
  * This is an example of writing a custom transformation
  * i.e. not already built with Redis Connect framework. For example, a custom transformation you need
  * to apply before writing the changes to Redis Enterprise target.
- * Pass any 2 columns with STRING data type to convert them to UPPER CASE
- * e.g. From cli do, export col1=fname and export col2=lname
- * OR add it to redisconnect.conf as col1=fname and col2=lname
- * OR with container use -e col1=fname, -e col2=lname
+ * Converts the STRING columns listed in {@code upper.case.columns} to UPPER CASE in every table, by default the
+ * {@code NAME} column of the CHINOOK TRACK table. It is a fixed configuration of {@link ColumnTransformStage}, use
+ * that stage for per-table or other transforms.
+ * <pre>
+ * "customConfiguration" : {
+ *   "upper.case.columns" : "fname,lname"
+ * }
+ * </pre>
  * <p>
  * NOTE: Any CustomStage Classes must extend the BaseCustomStageHandler class as this is the source of
  * all the changes coming to Redis Connect Custom Stage framework.
  */
-public class TransformValueToUpperCaseStage extends BaseCustomStageHandler {
+public class TransformValueToUpperCaseStage extends BaseCustomStageHandler implements ThreadSafeStage {
 
     private final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
     private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
-
-    private HttpURLConnection urlConnection;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String CUSTOM_CONFIG_COLUMNS = "upper.case.columns";
+    private final JobPipelineStageDTO jobPipelineStage;
     private final int processors = Runtime.getRuntime().availableProcessors();
+    private ColumnTransformSet transforms;
 
     public TransformValueToUpperCaseStage(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage) {
         super(jobId, jobType, jobPipelineStage);
+        this.jobPipelineStage = jobPipelineStage;
     }
 
     @Override
     public void onEvent(ChangeEventDTO changeEvent) throws Exception {
 
-        if (LOGGER.isDebugEnabled())
-            LOGGER.debug("Instance: {} -------------------------------------------Stage: CUSTOM", instanceId);
-
         Map<String, Object> values = changeEvent.getValues();
-        if (!values.isEmpty()) {
-
-            String schemaAndTableName = changeEvent.getSchemaAndTableName();
-            String operationType = changeEvent.getOperation();
+        if (values != null && !values.isEmpty()) {
 
             if (LOGGER.isDebugEnabled())
-                LOGGER.debug("Instance: {} CustomStage::onEvent Processor, schemaAndTableName: {}, operationType: {}", instanceId, schemaAndTableName, operationType);
-
-            // Extract the "NAME" column value (specific to CHINOOK TRACK table)
-            String trackName = (String) values.get("NAME");
+                LOGGER.debug("Instance: {} CustomStage::onEvent Processor, schemaAndTableName: {}, operationType: {}", instanceId, changeEvent.getSchemaAndTableName(), changeEvent.getOperation());
 
-            // If the "NAME" column exists, convert it to uppercase
-            if (trackName != null) {
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("Original NAME: {}", trackName);
-                }
-
-                // Convert the "NAME" value to uppercase
-                values.put("NAME", trackName.toUpperCase());
-
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("Updated NAME: {}", values.get("NAME"));
-                }
-            }
+            transforms.apply(changeEvent.getSchemaAndTableName(), values);
         }
     }
 
@@ -83,16 +67,22 @@ public class TransformValueToUpperCaseStage extends BaseCustomStageHandler {
     public void init() {
         setSequenceCallback(new Sequence());
 
+        List<String> columns = CustomStageConfiguration.of(jobPipelineStage).getList(CUSTOM_CONFIG_COLUMNS);
+        if (columns.isEmpty())
+            columns = List.of("NAME");
+
+        Map<Integer, ColumnTransform> upperCase = new TreeMap<>();
+        for (String column : columns)
+            upperCase.put(upperCase.size(), ColumnTransform.compile("\"" + column + "\" : upper"));
+        transforms = ColumnTransformSet.of(Map.of(ColumnTransformSet.ALL_TABLES, upperCase));
+
         if (LOGGER.isDebugEnabled())
-            LOGGER.debug("Instance: {} successfully started disruptor (replication pipeline) in TransformValueToUpperCaseStage. Available CPU: {}", instanceId, processors);
+            LOGGER.debug("Instance: {} successfully started disruptor (replication pipeline) in TransformValueToUpperCaseStage. Available CPU: {}, columns: {}", instanceId, processors, columns);
     }
 
     @Override
     public void shutdown() {
-        if (urlConnection != null)
-            urlConnection.disconnect();
-
         if (LOGGER.isDebugEnabled())
             LOGGER.debug("Instance: {} successfully shutdown disruptor (replication pipeline) in TransformValueToUpperCaseStage. Available CPU: {}", instanceId, processors);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,61 @@
+package com.redis.connect.pipeline.event.handler.custom.impl;
+
+import com.lmax.disruptor.Sequence;
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.pipeline.event.handler.custom.coerce.TypeCoercion;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import com.redis.connect.pipeline.event.handler.custom.parallel.ThreadSafeStage;
+import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
+import java.lang.management.ManagementFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Normalizes column values once per event, at the head of the pipeline, so that the stages after it see one Java type
+ * per column whether the event comes from the initial load or from streaming, e.g. a {@code ZonedDateTime} for both
+ * {@code oracle.sql.TIMESTAMPTZ} and its ISO-8601 string, and a {@code Long} for {@code 2}, {@code 2.0} and
+ * {@code BigDecimal} 2. See {@link TypeCoercion} for the configuration layout.
+ * <pre>
+ * "customConfiguration" : {
+ *   "coerce.types.C##RCUSER.TEST.MODIFIED_DATE" : "TIMESTAMP_TZ",
+ *   "coerce.types.*.GENREID" : "LONG",
+ *   "coerce.infer.events" : 16
+ * }
+ * </pre>
+ */
+public class TypeCoercionStage extends BaseCustomStageHandler implements ThreadSafeStage {
+
+    private static final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+    private final JobPipelineStageDTO jobPipelineStage;
+    private final int processors = Runtime.getRuntime().availableProcessors();
+    private TypeCoercion coercion;
+
+    public TypeCoercionStage(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage) {
+        super(jobId, jobType, jobPipelineStage);
+        this.jobPipelineStage = jobPipelineStage;
+    }
+
+    @Override
+    public void onEvent(ChangeEventDTO changeEvent) throws Exception {
+        coercion.coerce(changeEvent);
+    }
+
+    @Override
+    public void init() throws Exception {
+        setSequenceCallback(new Sequence());
+
+        coercion = TypeCoercion.of(CustomStageConfiguration.of(jobPipelineStage));
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully started disruptor (replication pipeline) in TypeCoercionStage. Available CPU: {}", instanceId, processors);
+    }
+
+    @Override
+    public void shutdown() {
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully shutdown disruptor (replication pipeline) in TypeCoercionStage. Available CPU: {}", instanceId, processors);
+    }
+
+}
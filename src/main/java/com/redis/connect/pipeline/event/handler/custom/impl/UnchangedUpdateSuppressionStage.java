@@ -0,0 +1,148 @@
+package com.redis.connect.pipeline.event.handler.custom.impl;
+
+import com.lmax.disruptor.Sequence;
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.exception.ValidationException;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import com.redis.connect.pipeline.event.handler.custom.fingerprint.UnchangedUpdates;
+import com.redis.connect.pipeline.event.handler.custom.load.LoadMode;
+import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Locale;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drops ({@code setValid(false)}) updates that do not change the projected columns of their row, such as those Oracle
+ * emits with {@code ADD SUPPLEMENTAL LOG DATA (ALL) COLUMNS} when an untracked column or nothing at all changed, so
+ * that the stages after it and the target write skip them. Rows are compared through a 64-bit fingerprint of
+ * {@code unchanged.columns} (all columns by default) minus {@code unchanged.ignore.columns}, kept for the
+ * {@code unchanged.cache.size} most recently changed rows; an update of a row that is not in the cache is passed on.
+ * <p>
+ * A row only counts as unchanged against values the target holds, so the stage is placed twice in a job pipeline:
+ * <ul>
+ *     <li>{@code unchanged.mode = SUPPRESS} (default), before the stages that write: compares and drops updates, and
+ *     parks the fingerprint of every event it passes on.</li>
+ *     <li>{@code unchanged.mode = COMMIT}, with an index after the sink: the disruptor hands it an event only once the
+ *     sink has released that sequence, and only if no stage dropped it, so it records the parked fingerprint as
+ *     written.</li>
+ * </ul>
+ * Without the {@code COMMIT} stage nothing is ever suppressed. An update replayed after a failure of the sink or a
+ * restart of the job is passed on, since its fingerprint was never committed. Each partition of the job runs its own
+ * pair of stages, which find each other through the ring buffer entries they are both handed; parked fingerprints
+ * must survive until the sink releases them, so {@code unchanged.pending.size} must be at least the ring buffer size.
+ * <p>
+ * Suppressed updates, the cache size, evictions and footprint are published as
+ * {@code com.redis.connect.customstage:type=UnchangedUpdates} MBeans. Rows of an initial load ({@link LoadMode}) are
+ * passed through without being remembered.
+ * <pre>
+ * "customConfiguration" : {
+ *   "unchanged.mode" : "SUPPRESS",
+ *   "unchanged.cache.size" : 1000000,
+ *   "unchanged.pending.size" : 65536,
+ *   "unchanged.columns" : "NAME,GENREID,UNITPRICE",
+ *   "unchanged.ignore.columns" : "LAST_UPDATED"
+ * }
+ * </pre>
+ */
+public class UnchangedUpdateSuppressionStage extends BaseCustomStageHandler {
+
+    private static final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+    public static final String CUSTOM_CONFIG_MODE = "unchanged.mode";
+    public static final String CUSTOM_CONFIG_CACHE_SIZE = "unchanged.cache.size";
+    public static final String CUSTOM_CONFIG_PENDING_SIZE = "unchanged.pending.size";
+    public static final String CUSTOM_CONFIG_COLUMNS = "unchanged.columns";
+    public static final String CUSTOM_CONFIG_IGNORE_COLUMNS = "unchanged.ignore.columns";
+
+    private final String jobId;
+    private final String jobType;
+    private final JobPipelineStageDTO jobPipelineStage;
+    private final int processors = Runtime.getRuntime().availableProcessors();
+
+    public enum Mode {
+        SUPPRESS, COMMIT
+    }
+
+    private Mode mode;
+    private boolean load;
+    private UnchangedUpdates unchangedUpdates;
+    private long currentSequence;
+
+    public UnchangedUpdateSuppressionStage(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage) {
+        super(jobId, jobType, jobPipelineStage);
+        this.jobId = jobId;
+        this.jobType = jobType;
+        this.jobPipelineStage = jobPipelineStage;
+    }
+
+    @Override
+    public void onEvent(ChangeEventDTO changeEvent, long sequence, boolean endOfBatch) throws Exception {
+        currentSequence = sequence;
+        super.onEvent(changeEvent, sequence, endOfBatch);
+    }
+
+    @Override
+    public void onEvent(ChangeEventDTO changeEvent) throws Exception {
+        if (load || changeEvent.getKey() == null)
+            return;
+
+        if (mode == Mode.COMMIT) {
+            if (unchangedUpdates == null)
+                unchangedUpdates = UnchangedUpdates.claim(changeEvent);
+            if (unchangedUpdates != null)
+                unchangedUpdates.commit(changeEvent, currentSequence);
+            return;
+        }
+
+        unchangedUpdates.offer(changeEvent);
+        if (unchangedUpdates.isUnchanged(changeEvent, currentSequence)) {
+            changeEvent.setValid(false);
+
+            if (LOGGER.isDebugEnabled())
+                LOGGER.debug("Instance: {} UnchangedUpdateSuppressionStage::onEvent Processor, suppressed unchanged update, schemaAndTableName: {}, key: {}", instanceId, changeEvent.getSchemaAndTableName(), changeEvent.getKey());
+        }
+    }
+
+    @Override
+    public void init() throws Exception {
+        setSequenceCallback(new Sequence());
+
+        CustomStageConfiguration configuration = CustomStageConfiguration.of(jobPipelineStage);
+        String modeName = configuration.getString(CUSTOM_CONFIG_MODE, Mode.SUPPRESS.name());
+        try {
+            mode = Mode.valueOf(modeName.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException(e, CUSTOM_CONFIG_MODE + " must be SUPPRESS or COMMIT but was: " + modeName);
+        }
+        load = LoadMode.of(jobType, configuration).isActive();
+        // A restarted stage starts over, so rows replayed from the checkpoint are never suppressed
+        unchangedUpdates = null;
+        if (mode == Mode.SUPPRESS) {
+            unchangedUpdates = new UnchangedUpdates(configuration.getPositiveInt(CUSTOM_CONFIG_CACHE_SIZE, 1_000_000),
+                    configuration.getPositiveInt(CUSTOM_CONFIG_PENDING_SIZE, 1 << 16),
+                    configuration.getList(CUSTOM_CONFIG_COLUMNS), new HashSet<>(configuration.getList(CUSTOM_CONFIG_IGNORE_COLUMNS)));
+            unchangedUpdates.registerMBean(jobId + "-" + jobPipelineStage.getStageName() + "-" + jobPipelineStage.getIndex());
+        }
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully started disruptor (replication pipeline) in UnchangedUpdateSuppressionStage. Available CPU: {}, mode: {}, cache footprint: {} bytes, load: {}", instanceId, processors, mode,
+                    unchangedUpdates == null ? 0 : unchangedUpdates.getCacheFootprintBytes(), load);
+    }
+
+    @Override
+    public void shutdown() throws Exception {
+        if (unchangedUpdates != null && mode == Mode.SUPPRESS) {
+            LOGGER.info("Instance: {} JobId: {} {}", instanceId, jobId, unchangedUpdates);
+            unchangedUpdates.withdraw();
+            unchangedUpdates.unregisterMBean();
+        }
+        unchangedUpdates = null;
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully shutdown disruptor (replication pipeline) in UnchangedUpdateSuppressionStage. Available CPU: {}", instanceId, processors);
+    }
+
+}
@@ -0,0 +1,197 @@
+package com.redis.connect.pipeline.event.handler.custom.join;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redis.connect.pipeline.event.handler.custom.cache.LookupCache;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.push.PushListener;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.output.ValueListOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.ProtocolKeyword;
+import io.lettuce.core.protocol.ProtocolVersion;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads reference data rows, Redis hashes or RedisJSON documents, through a local near cache that Redis keeps
+ * current: the connection speaks RESP3 with {@code CLIENT TRACKING ON}, so Redis pushes an invalidation for every key
+ * this client read once it changes, and the key is dropped from the cache. Keys that do not exist are cached as
+ * missing and invalidated the same way when they are created. Steady-state lookups therefore need no round trip.
+ * <p>
+ * Cache misses are fetched together: {@link #fetch(Collection)} queues one pipelined {@code HGETALL} per hash, or a
+ * single {@code JSON.MGET} for documents, and sends them in one write. Fetched rows are cached from the I/O thread as
+ * the replies arrive, in order with the invalidations of the same connection, so a change made after a read can never
+ * be overwritten by that read. After a reconnect the cache is cleared and tracking is enabled again; the cache TTL
+ * bounds how long a row read in between can be stale. Lookups are not thread safe, invalidations may arrive on any
+ * thread.
+ */
+public class ReferenceDataClient implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final TypeReference<List<Map<String, Object>>> JSON_PATH_RESULT = new TypeReference<>() {
+    };
+
+    public enum KeyType {
+        HASH, JSON
+    }
+
+    private enum JsonCommand implements ProtocolKeyword {
+        MGET("JSON.MGET");
+
+        private final byte[] bytes;
+
+        JsonCommand(String name) {
+            this.bytes = name.getBytes(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public byte[] getBytes() {
+            return bytes;
+        }
+    }
+
+    private final KeyType keyType;
+    private final LookupCache<String, Map<String, Object>> nearCache;
+    private final RedisClient redisClient;
+    private final StatefulRedisConnection<String, String> connection;
+    private final RedisAsyncCommands<String, String> commands;
+
+    private final LongAdder fetchedKeys = new LongAdder();
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public ReferenceDataClient(String redisUrl, KeyType keyType, LookupCache<String, Map<String, Object>> nearCache) {
+        this.keyType = keyType;
+        this.nearCache = nearCache;
+        this.redisClient = RedisClient.create(redisUrl);
+        this.redisClient.setOptions(ClientOptions.builder().protocolVersion(ProtocolVersion.RESP3).build());
+        this.connection = redisClient.connect();
+        this.connection.addListener((PushListener) this::onPushMessage);
+        this.redisClient.addListener(new RedisConnectionStateListener() {
+            @Override
+            public void onRedisConnected(RedisChannelHandler<?, ?> connection, SocketAddress socketAddress) {
+                onReconnected();
+            }
+        });
+        this.commands = connection.async();
+        // Tracking has to be on before the first read, the command is awaited with auto-flush still enabled
+        this.connection.sync().clientTracking(TrackingArgs.Builder.enabled());
+        this.connection.setAutoFlushCommands(false);
+    }
+
+    /**
+     * @return the cached row of {@code key}, a negative entry when the key does not exist, or {@code null} on a miss
+     */
+    public LookupCache.Entry<Map<String, Object>> cached(String key) {
+        return nearCache.get(key);
+    }
+
+    /**
+     * Fetches the rows of {@code keys} in one round trip and caches them.
+     *
+     * @return the row of each key, an empty map when it does not exist
+     */
+    public Map<String, CompletableFuture<Map<String, Object>>> fetch(Collection<String> keys) {
+        Map<String, CompletableFuture<Map<String, Object>>> rows = new HashMap<>(keys.size() * 2);
+        fetches.increment();
+        fetchedKeys.add(keys.size());
+
+        if (keyType == KeyType.HASH) {
+            for (String key : keys) {
+                RedisFuture<Map<String, String>> hash = commands.hgetall(key);
+                // Registered before the flush, runs on the I/O thread as soon as the reply is decoded
+                rows.put(key, hash.toCompletableFuture().thenApply(fields -> cache(key, Collections.<String, Object>unmodifiableMap(fields))));
+            }
+        } else {
+            CommandArgs<String, String> args = new CommandArgs<>(StringCodec.UTF8).addKeys(keys).add("$");
+            CompletableFuture<List<String>> documents = commands.dispatch(JsonCommand.MGET, new ValueListOutput<>(StringCodec.UTF8), args).toCompletableFuture();
+            int i = 0;
+            for (String key : keys) {
+                int index = i++;
+                rows.put(key, documents.thenApply(results -> cache(key, parseDocument(results.get(index)))));
+            }
+        }
+
+        connection.flushCommands();
+        return rows;
+    }
+
+    private Map<String, Object> cache(String key, Map<String, Object> row) {
+        if (row.isEmpty())
+            nearCache.putNegative(key);
+        else
+            nearCache.put(key, row);
+        return row;
+    }
+
+    private static Map<String, Object> parseDocument(String document) {
+        if (document == null)
+            return Collections.emptyMap();
+        try {
+            // A $ path returns every match, a document root has exactly one
+            List<Map<String, Object>> matches = mapper.readValue(document, JSON_PATH_RESULT);
+            return matches.isEmpty() || matches.get(0) == null ? Collections.emptyMap() : Collections.unmodifiableMap(matches.get(0));
+        } catch (Exception e) {
+            throw new IllegalStateException("Reference document is not a JSON object: " + document, e);
+        }
+    }
+
+    private void onPushMessage(PushMessage message) {
+        if (!"invalidate".equals(message.getType()))
+            return;
+
+        List<Object> content = message.getContent(StringCodec.UTF8::decodeKey);
+        Object keys = content.size() > 1 ? content.get(1) : null;
+        if (keys instanceof List<?> invalidated) {
+            for (Object key : invalidated)
+                nearCache.invalidate(String.valueOf(key));
+            invalidations.add(invalidated.size());
+        } else {
+            // A null key list means the server flushed its tracking table, e.g. after FLUSHALL
+            nearCache.clear();
+            invalidations.increment();
+        }
+    }
+
+    private void onReconnected() {
+        nearCache.clear();
+        commands.clientTracking(TrackingArgs.Builder.enabled()).exceptionally(t -> {
+            LOGGER.warn("Failed to enable client tracking after reconnecting, cached reference data expires after its TTL only", t);
+            return null;
+        });
+        connection.flushCommands();
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+        redisClient.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "ReferenceDataClient{keyType=" + keyType + ", fetches=" + fetches.sum() + ", fetchedKeys=" + fetchedKeys.sum() +
+                ", invalidations=" + invalidations.sum() + ", nearCache=" + nearCache + "}";
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.redis.connect.pipeline.event.handler.custom.json;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiled set of JSON pointers selecting which members of a document are promoted into a change event.
+ * <p>
+ * The pointers are merged into a trie of object member names so a document can be filtered in a single streaming
+ * pass: members outside the trie are skipped by the parser without being materialized. A selected member is
+ * written under its pointer path joined with dots, e.g. {@code /address/city} becomes {@code address.city}.
+ * Pointers address object members only, array elements cannot be selected individually.
+ */
+public final class JsonPointerProjection {
+
+    private final Node root = new Node(null);
+
+    private JsonPointerProjection() {
+    }
+
+    /**
+     * @throws IllegalArgumentException if one of the pointers is not a valid JSON pointer
+     */
+    public static JsonPointerProjection compile(Collection<String> pointers) {
+        JsonPointerProjection projection = new JsonPointerProjection();
+        for (String expression : pointers) {
+            JsonPointer pointer = JsonPointer.compile(expression);
+            if (pointer.matches())
+                throw new IllegalArgumentException("JSON pointer " + expression + " selects the whole document");
+
+            Node node = projection.root;
+            StringBuilder targetKey = new StringBuilder();
+            for (JsonPointer segment = pointer; !segment.matches(); segment = segment.tail()) {
+                if (!targetKey.isEmpty())
+                    targetKey.append('.');
+                targetKey.append(segment.getMatchingProperty());
+                node = node.children.computeIfAbsent(segment.getMatchingProperty(), name -> new Node(null));
+            }
+            node.targetKey = targetKey.toString();
+        }
+        return projection;
+    }
+
+    Node root() {
+        return root;
+    }
+
+    static final class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+        private String targetKey;
+
+        private Node(String targetKey) {
+            this.targetKey = targetKey;
+        }
+
+        Node child(String name) {
+            return children.get(name);
+        }
+
+        /**
+         * @return the key a selected member is written under, or null if only some of its descendants are selected
+         */
+        String targetKey() {
+            return targetKey;
+        }
+    }
+
+}
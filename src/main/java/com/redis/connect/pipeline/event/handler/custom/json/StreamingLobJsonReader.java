@@ -0,0 +1,336 @@
+package com.redis.connect.pipeline.event.handler.custom.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams a JSON document held in a LOB column straight into a change event's values map.
+ * <p>
+ * The source is read incrementally from a {@link Clob}, {@link Blob}, {@code byte[]}, {@link Reader},
+ * {@link InputStream} or {@link CharSequence} without first materializing it as a {@code String}. The first
+ * non-whitespace character decides the encoding: a JSON document starts with an object or array, anything else is
+ * treated as Base64 and decoded on the fly. Top-level fields are written as plain Java values (nested objects and arrays
+ * become {@link LinkedHashMap}/{@link ArrayList}), no {@code JsonNode} tree is built. An optional
+ * {@link JsonPointerProjection} limits the promoted fields, everything else is skipped by the parser.
+ * <p>
+ * Instances are stateless apart from their limits and may be shared between threads.
+ */
+public class StreamingLobJsonReader {
+
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .disable(JsonFactory.Feature.INTERN_FIELD_NAMES)
+            .build();
+
+    private final int maxDepth;
+    private final long maxBytes;
+
+    /**
+     * @param maxDepth maximum nesting depth of the document, the top-level object being depth 1
+     * @param maxBytes maximum number of characters (or bytes for binary sources) read from the LOB
+     */
+    public StreamingLobJsonReader(int maxDepth, long maxBytes) {
+        this.maxDepth = maxDepth;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Promotes the top-level fields of the JSON object held in {@code lob} into {@code target}.
+     *
+     * @return the number of promoted fields, or -1 when the LOB is null or does not hold a JSON object
+     */
+    public int flattenInto(Object lob, Map<String, Object> target) throws IOException, SQLException {
+        return flattenInto(lob, target, null);
+    }
+
+    /**
+     * Promotes the members of the JSON object held in {@code lob} selected by {@code projection} into {@code target},
+     * or every top-level field when {@code projection} is null.
+     *
+     * @return the number of promoted fields, or -1 when the LOB is null or does not hold a JSON object
+     */
+    public int flattenInto(Object lob, Map<String, Object> target, JsonPointerProjection projection) throws IOException, SQLException {
+        if (lob == null)
+            return -1;
+
+        try (JsonParser parser = open(lob)) {
+            if (parser == null || parser.nextToken() != JsonToken.START_OBJECT)
+                return -1;
+
+            if (projection != null)
+                return project(parser, projection.root(), target, 2);
+
+            int fields = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                target.put(name, readValue(parser, 2));
+                fields++;
+            }
+            return fields;
+        }
+    }
+
+    private int project(JsonParser parser, JsonPointerProjection.Node node, Map<String, Object> target, int depth) throws IOException {
+        int fields = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            JsonPointerProjection.Node child = node.child(parser.currentName());
+            JsonToken token = parser.nextToken();
+
+            if (child == null) {
+                parser.skipChildren();
+            } else if (child.targetKey() != null) {
+                target.put(child.targetKey(), readValue(parser, depth));
+                fields++;
+            } else if (token == JsonToken.START_OBJECT) {
+                checkDepth(depth);
+                fields += project(parser, child, target, depth + 1);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return fields;
+    }
+
+    private JsonParser open(Object lob) throws IOException, SQLException {
+
+        if (lob instanceof Clob clob) {
+            checkLength(clob.length());
+            return open(clob.getCharacterStream());
+        }
+        if (lob instanceof Blob blob) {
+            checkLength(blob.length());
+            return open(blob.getBinaryStream());
+        }
+        if (lob instanceof byte[] bytes) {
+            checkLength(bytes.length);
+            return open(new ByteArrayInputStream(bytes));
+        }
+        if (lob instanceof InputStream inputStream)
+            return open(inputStream);
+        if (lob instanceof Reader reader)
+            return open(reader);
+
+        CharSequence text = lob instanceof CharSequence charSequence ? charSequence : String.valueOf(lob);
+        checkLength(text.length());
+        return open(text instanceof String string ? new StringReader(string) : new StringReader(text.toString()));
+    }
+
+    private JsonParser open(Reader source) throws IOException {
+        PushbackReader reader = new PushbackReader(new LimitedReader(source, maxBytes), 1);
+        int first = skipWhitespace(reader);
+        if (first < 0)
+            return null;
+
+        reader.unread(first);
+        if (isJsonStart(first))
+            return JSON_FACTORY.createParser(reader);
+
+        // Base64 text is pure ASCII, so each char maps to exactly one byte for the decoder
+        return openDecoded(new AsciiInputStream(reader));
+    }
+
+    private JsonParser open(InputStream source) throws IOException {
+        PushbackInputStream stream = new PushbackInputStream(new LimitedInputStream(source, maxBytes), 1);
+        int first = skipWhitespace(stream);
+        if (first < 0)
+            return null;
+
+        stream.unread(first);
+        if (isJsonStart(first))
+            return JSON_FACTORY.createParser(stream);
+
+        return openDecoded(stream);
+    }
+
+    private JsonParser openDecoded(InputStream base64) throws IOException {
+        PushbackInputStream decoded = new PushbackInputStream(Base64.getMimeDecoder().wrap(base64), 1);
+        int first = skipWhitespace(decoded);
+        if (first < 0)
+            return null;
+
+        decoded.unread(first);
+        return JSON_FACTORY.createParser(decoded);
+    }
+
+    private Object readValue(JsonParser parser, int depth) throws IOException {
+        JsonToken token = parser.currentToken();
+        switch (token) {
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getNumberValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            case START_OBJECT: {
+                checkDepth(depth);
+                Map<String, Object> object = new LinkedHashMap<>();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    parser.nextToken();
+                    object.put(name, readValue(parser, depth + 1));
+                }
+                return object;
+            }
+            case START_ARRAY: {
+                checkDepth(depth);
+                List<Object> array = new ArrayList<>();
+                while (parser.nextToken() != JsonToken.END_ARRAY)
+                    array.add(readValue(parser, depth + 1));
+                return array;
+            }
+            default:
+                return parser.getEmbeddedObject();
+        }
+    }
+
+    private void checkDepth(int depth) throws IOException {
+        if (depth > maxDepth)
+            throw new IOException("LOB JSON document exceeds the maximum nesting depth of " + maxDepth);
+    }
+
+    private void checkLength(long length) throws IOException {
+        if (length > maxBytes)
+            throw new IOException("LOB of length " + length + " exceeds the maximum size of " + maxBytes);
+    }
+
+    private static boolean isJsonStart(int c) {
+        return c == '{' || c == '[';
+    }
+
+    private static int skipWhitespace(Reader reader) throws IOException {
+        int c;
+        do {
+            c = reader.read();
+        } while (c >= 0 && Character.isWhitespace(c));
+        return c;
+    }
+
+    private static int skipWhitespace(InputStream stream) throws IOException {
+        int c;
+        do {
+            c = stream.read();
+        } while (c >= 0 && Character.isWhitespace(c));
+        return c;
+    }
+
+    private static final class LimitedReader extends FilterReader {
+
+        private final long limit;
+        private long count;
+
+        private LimitedReader(Reader in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c >= 0)
+                count(1);
+            return c;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0)
+                count(read);
+            return read;
+        }
+
+        private void count(int read) throws IOException {
+            count += read;
+            if (count > limit)
+                throw new IOException("LOB exceeds the maximum size of " + limit);
+        }
+    }
+
+    private static final class LimitedInputStream extends FilterInputStream {
+
+        private final long limit;
+        private long count;
+
+        private LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                count(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0)
+                count(read);
+            return read;
+        }
+
+        private void count(int read) throws IOException {
+            count += read;
+            if (count > limit)
+                throw new IOException("LOB exceeds the maximum size of " + limit);
+        }
+    }
+
+    /**
+     * Narrows chars to bytes, only valid for ASCII content such as Base64.
+     */
+    private static final class AsciiInputStream extends InputStream {
+
+        private final Reader reader;
+        private final char[] chars = new char[8192];
+
+        private AsciiInputStream(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return reader.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = reader.read(chars, 0, Math.min(length, chars.length));
+            for (int i = 0; i < read; i++)
+                buffer[offset + i] = (byte) chars[i];
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+}
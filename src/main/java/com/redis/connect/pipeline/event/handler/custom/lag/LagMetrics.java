@@ -0,0 +1,128 @@
+package com.redis.connect.pipeline.event.handler.custom.lag;
+
+import com.redis.connect.pipeline.event.handler.custom.metrics.LatencyHistogram;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-table replication lag of a job: source commit to stage, pipeline publish to stage, and stage to sink
+ * acknowledgement. One instance is shared by the stamping and the acknowledging lag tracking stage of a job.
+ */
+public final class LagMetrics implements LagMetricsMXBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+    private static final String UNKNOWN_TABLE = "<unknown>";
+    private static final Map<String, LagMetrics> metricsByJob = new ConcurrentHashMap<>();
+
+    private final String jobId;
+    private final Map<String, TableLag> tables = new ConcurrentHashMap<>();
+    private final LongAdder missingStamps = new LongAdder();
+    private ObjectName objectName;
+    private int references;
+
+    private LagMetrics(String jobId) {
+        this.jobId = jobId;
+    }
+
+    /**
+     * Every call must be paired with {@link #release()}. The MBean is registered while the metrics are referenced.
+     */
+    public static LagMetrics acquire(String jobId) {
+        LagMetrics metrics = metricsByJob.computeIfAbsent(jobId, LagMetrics::new);
+        synchronized (metrics) {
+            if (metrics.references++ == 0)
+                metrics.registerMBean();
+        }
+        return metrics;
+    }
+
+    public void release() {
+        synchronized (this) {
+            if (--references > 0)
+                return;
+            unregisterMBean();
+        }
+        metricsByJob.remove(jobId, this);
+    }
+
+    public TableLag forTable(String schemaAndTableName) {
+        return tables.computeIfAbsent(schemaAndTableName == null ? UNKNOWN_TABLE : schemaAndTableName, table -> new TableLag());
+    }
+
+    public void recordMissingStamp() {
+        missingStamps.increment();
+    }
+
+    @Override
+    public String getJobId() {
+        return jobId;
+    }
+
+    @Override
+    public long getMissingStamps() {
+        return missingStamps.sum();
+    }
+
+    @Override
+    public List<TableLagView> getTables() {
+        List<TableLagView> views = new ArrayList<>();
+        tables.forEach((table, lag) -> views.add(new TableLagView(table, LatencyView.of(lag.commitToStage), LatencyView.of(lag.publishToStage),
+                LatencyView.of(lag.stageToSinkAck))));
+        views.sort(Comparator.comparing(TableLagView::getSchemaAndTableName));
+        return views;
+    }
+
+    private void registerMBean() {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("com.redis.connect.customstage:type=LagMetrics,name=" + ObjectName.quote(jobId));
+            if (mBeanServer.isRegistered(objectName))
+                mBeanServer.unregisterMBean(objectName);
+            mBeanServer.registerMBean(this, objectName);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to register lag metrics MBean for {}", jobId, e);
+        }
+    }
+
+    private void unregisterMBean() {
+        try {
+            if (objectName != null && ManagementFactory.getPlatformMBeanServer().isRegistered(objectName))
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to unregister lag metrics MBean {}", objectName, e);
+        }
+    }
+
+    public static final class TableLag {
+
+        private final LatencyHistogram commitToStage = new LatencyHistogram();
+        private final LatencyHistogram publishToStage = new LatencyHistogram();
+        private final LatencyHistogram stageToSinkAck = new LatencyHistogram();
+
+        private TableLag() {
+        }
+
+        public void recordCommitToStage(long nanos) {
+            commitToStage.record(nanos);
+        }
+
+        public void recordPublishToStage(long nanos) {
+            publishToStage.record(nanos);
+        }
+
+        public void recordStageToSinkAck(long nanos) {
+            stageToSinkAck.record(nanos);
+        }
+
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.redis.connect.pipeline.event.handler.custom.lag;
+
+import java.util.List;
+
+/**
+ * JMX view of {@link LagMetrics}, registered under {@code com.redis.connect.customstage:type=LagMetrics}.
+ */
+public interface LagMetricsMXBean {
+
+    String getJobId();
+
+    /** Events that reached the sink-ack stage after their stamp had been overwritten, i.e. the timeline is too small. */
+    long getMissingStamps();
+
+    List<TableLagView> getTables();
+
+}
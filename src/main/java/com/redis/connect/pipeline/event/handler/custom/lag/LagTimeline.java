@@ -0,0 +1,94 @@
+package com.redis.connect.pipeline.event.handler.custom.lag;
+
+import com.redis.connect.dto.ChangeEventDTO;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Stage entry times of the most recent change events of one partition, indexed by ring buffer sequence. It is owned by
+ * the lag tracking stage placed before the sink, which stamps events, and read by the one placed after it in the same
+ * partition, which reads the stamps back once the sink has released the event.
+ * <p>
+ * Every partition of a job numbers its ring buffer sequences from 0, so the timeline cannot be shared by job. Instead
+ * the stamping stage {@link #offer offers} its timeline with the events it stamps, and the reading stage
+ * {@link #claim claims} it with the first event it is handed: both stages of a partition are handed the same
+ * preallocated ring buffer entries, which no other partition ever sees.
+ * <p>
+ * Slots are plain arrays: the disruptor orders the stamping stage's write before the reading stage sees the sequence,
+ * because every handler publishes its progress through a volatile sequence. A slot overwritten by a later lap of the
+ * ring is detected by its sequence and reported as missing.
+ */
+public final class LagTimeline {
+
+    // Ring buffer entries stamped by timelines no reading stage has claimed yet
+    private static final Map<ChangeEventDTO, LagTimeline> unclaimed = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    private final long[] sequences;
+    private final long[] stampNanos;
+    private final int mask;
+    private volatile boolean claimed;
+    private int offers;
+
+    /**
+     * @param size at least the ring buffer size, rounded up to a power of two
+     */
+    public LagTimeline(int size) {
+        size = Integer.highestOneBit(Math.max(2, size - 1)) << 1;
+        this.sequences = new long[size];
+        this.stampNanos = new long[size];
+        this.mask = size - 1;
+        Arrays.fill(sequences, -1);
+    }
+
+    /**
+     * Makes this timeline claimable through {@code changeEvent} until a reading stage claims it. The reading stage is
+     * first handed the first event stamped, so offering stops after one lap of the timeline.
+     */
+    public void offer(ChangeEventDTO changeEvent) {
+        if (claimed || offers > mask)
+            return;
+        offers++;
+        unclaimed.put(changeEvent, this);
+    }
+
+    /**
+     * @return the timeline of the stamping stage that was handed {@code changeEvent}, or {@code null}
+     */
+    public static LagTimeline claim(ChangeEventDTO changeEvent) {
+        LagTimeline timeline = unclaimed.get(changeEvent);
+        if (timeline != null) {
+            timeline.claimed = true;
+            timeline.withdraw();
+        }
+        return timeline;
+    }
+
+    /**
+     * Removes the remaining offers of this timeline, when it is claimed or its stamping stage shuts down.
+     */
+    public void withdraw() {
+        unclaimed.values().removeIf(timeline -> timeline == this);
+    }
+
+    public void stamp(long sequence, long nanos) {
+        int slot = (int) sequence & mask;
+        stampNanos[slot] = nanos;
+        sequences[slot] = sequence;
+    }
+
+    /**
+     * @return the stamp of the sequence, or -1 when it was never stamped or has already been overwritten
+     */
+    public long stampOf(long sequence) {
+        int slot = (int) sequence & mask;
+        long nanos = stampNanos[slot];
+        return sequences[slot] == sequence ? nanos : -1;
+    }
+
+    public int size() {
+        return mask + 1;
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.redis.connect.pipeline.event.handler.custom.lag;
+
+import com.redis.connect.pipeline.event.handler.custom.metrics.LatencyHistogram;
+import java.beans.ConstructorProperties;
+
+/**
+ * Percentiles of one lag histogram in microseconds, exposed as composite data over JMX.
+ */
+public final class LatencyView {
+
+    private final long count;
+    private final double mean;
+    private final double p50;
+    private final double p90;
+    private final double p99;
+    private final double p999;
+    private final double max;
+
+    @ConstructorProperties({"count", "mean", "p50", "p90", "p99", "p999", "max"})
+    public LatencyView(long count, double mean, double p50, double p90, double p99, double p999, double max) {
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+    }
+
+    static LatencyView of(LatencyHistogram histogram) {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        return new LatencyView(snapshot.getCount(), snapshot.getMean() / 1e3, snapshot.getValueAtPercentile(50) / 1e3,
+                snapshot.getValueAtPercentile(90) / 1e3, snapshot.getValueAtPercentile(99) / 1e3,
+                snapshot.getValueAtPercentile(99.9) / 1e3, snapshot.getMax() / 1e3);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP90() {
+        return p90;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public double getP999() {
+        return p999;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(java.util.Locale.ROOT, "count=%d p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus", count, p50, p90, p99, p999, max);
+    }
+
+}
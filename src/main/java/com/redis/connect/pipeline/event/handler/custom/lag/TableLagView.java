@@ -0,0 +1,44 @@
+package com.redis.connect.pipeline.event.handler.custom.lag;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Lag percentiles of one {@code schemaAndTableName}, see {@link LagMetrics}.
+ */
+public final class TableLagView {
+
+    private final String schemaAndTableName;
+    private final LatencyView commitToStage;
+    private final LatencyView publishToStage;
+    private final LatencyView stageToSinkAck;
+
+    @ConstructorProperties({"schemaAndTableName", "commitToStage", "publishToStage", "stageToSinkAck"})
+    public TableLagView(String schemaAndTableName, LatencyView commitToStage, LatencyView publishToStage, LatencyView stageToSinkAck) {
+        this.schemaAndTableName = schemaAndTableName;
+        this.commitToStage = commitToStage;
+        this.publishToStage = publishToStage;
+        this.stageToSinkAck = stageToSinkAck;
+    }
+
+    public String getSchemaAndTableName() {
+        return schemaAndTableName;
+    }
+
+    public LatencyView getCommitToStage() {
+        return commitToStage;
+    }
+
+    public LatencyView getPublishToStage() {
+        return publishToStage;
+    }
+
+    public LatencyView getStageToSinkAck() {
+        return stageToSinkAck;
+    }
+
+    @Override
+    public String toString() {
+        return schemaAndTableName + " commit->stage [" + commitToStage + "] publish->stage [" + publishToStage + "] stage->sink-ack [" + stageToSinkAck + "]";
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.redis.connect.pipeline.event.handler.custom.load;
+
+import com.redis.connect.exception.ValidationException;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+
+/**
+ * Whether a stage runs the initial load fast path: the job type is {@code LOAD} and {@code load.fast.path.enabled} is
+ * not false. Initial load events are committed rows read by the load partitions, never deletes and without a source
+ * transaction, so stages skip what only matters while streaming and pay their per-event overhead (clock reads, log
+ * level checks, metadata objects, latency timing) once per micro-batch of {@code load.micro.batch.size} events, see
+ * {@link MicroBatch}.
+ * <pre>
+ * "customConfiguration" : {
+ *   "load.fast.path.enabled" : true,
+ *   "load.micro.batch.size" : 256
+ * }
+ * </pre>
+ */
+public final class LoadMode {
+
+    public static final String JOB_TYPE_LOAD = "LOAD";
+    public static final String CUSTOM_CONFIG_FAST_PATH_ENABLED = "load.fast.path.enabled";
+    public static final String CUSTOM_CONFIG_MICRO_BATCH_SIZE = "load.micro.batch.size";
+
+    private static final LoadMode STREAM = new LoadMode(false, 1);
+
+    private final boolean active;
+    private final int microBatchSize;
+
+    private LoadMode(boolean active, int microBatchSize) {
+        this.active = active;
+        this.microBatchSize = microBatchSize;
+    }
+
+    public static LoadMode of(String jobType, CustomStageConfiguration configuration) throws ValidationException {
+        if (!isLoad(jobType) || !configuration.getBoolean(CUSTOM_CONFIG_FAST_PATH_ENABLED, true))
+            return STREAM;
+        return new LoadMode(true, configuration.getPositiveInt(CUSTOM_CONFIG_MICRO_BATCH_SIZE, 256));
+    }
+
+    public static boolean isLoad(String jobType) {
+        return JOB_TYPE_LOAD.equalsIgnoreCase(jobType);
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * @return the number of events that share a micro-batch, 1 outside of the fast path
+     */
+    public int getMicroBatchSize() {
+        return microBatchSize;
+    }
+
+    @Override
+    public String toString() {
+        return active ? "LOAD(micro batch: " + microBatchSize + ")" : "STREAM";
+    }
+
+}
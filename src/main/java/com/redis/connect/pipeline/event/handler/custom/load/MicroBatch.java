@@ -0,0 +1,63 @@
+package com.redis.connect.pipeline.event.handler.custom.load;
+
+import org.slf4j.Logger;
+
+/**
+ * Splits the events a stage processes into micro-batches of a fixed size and holds what the events of a micro-batch
+ * share: the wall clock time and whether debug logging is enabled, both read at the first event of the micro-batch.
+ * A stage calls {@link #next()} once per event and reads the returned {@link Window}.
+ * <p>
+ * The state is kept per thread, so a {@code ThreadSafeStage} running on {@code parallel.workers} gets a micro-batch
+ * per worker. {@link #restart()}, e.g. from {@code onBatchStart} on the disruptor thread, makes the next event of every
+ * thread start a new micro-batch, so a disruptor batch never reuses the time of the previous one: it bumps a
+ * generation that {@link #next()} compares with the one its window was started in.
+ */
+public final class MicroBatch {
+
+    private final int size;
+    private final Logger logger;
+    private final ThreadLocal<Window> windows = ThreadLocal.withInitial(Window::new);
+    private volatile int generation;
+
+    public MicroBatch(int size, Logger logger) {
+        this.size = size;
+        this.logger = logger;
+    }
+
+    public Window next() {
+        Window window = windows.get();
+        int current = generation;
+        if (--window.remaining < 0 || window.generation != current) {
+            window.generation = current;
+            window.remaining = size - 1;
+            window.now = System.currentTimeMillis();
+            window.debugEnabled = logger.isDebugEnabled();
+        }
+        return window;
+    }
+
+    public void restart() {
+        // Only called from the disruptor thread, the workers merely read the generation
+        generation++;
+    }
+
+    public static final class Window {
+
+        private int remaining;
+        private int generation = -1;
+        private long now;
+        private boolean debugEnabled;
+
+        /**
+         * @return the wall clock time at the first event of the micro-batch, in epoch millis
+         */
+        public long now() {
+            return now;
+        }
+
+        public boolean isDebugEnabled() {
+            return debugEnabled;
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.redis.connect.pipeline.event.handler.custom.metadata;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only metadata of one change event. The static entries are shared by every event of a stage and only the
+ * dynamic {@link MetadataField} values are held per instance, so enriching an event costs one small object and a
+ * {@code long[]} instead of a fully populated {@code HashMap}. When no dynamic field reads the event, the events of a
+ * millisecond share one instance, see {@link MetadataEnricher#enrich(com.redis.connect.dto.ChangeEventDTO, long)}.
+ * <p>
+ * Because of that sharing the map cannot be modified: {@link #put} and the removal methods throw
+ * {@link UnsupportedOperationException}. A later stage that needs to change the metadata replaces the nested map with a
+ * copy, e.g. {@code values.put(field, new HashMap<>(metadata))}. Null static values are mapped like any other value.
+ */
+final class EventMetadata extends AbstractMap<String, Object> {
+
+    private final String[] staticKeys;
+    private final Object[] staticValues;
+    private final MetadataField[] dynamicFields;
+    private final long[] dynamicValues;
+    private final long createdAt;
+    private final Thread createdBy;
+
+    EventMetadata(String[] staticKeys, Object[] staticValues, MetadataField[] dynamicFields, long[] dynamicValues, long createdAt) {
+        this.staticKeys = staticKeys;
+        this.staticValues = staticValues;
+        this.dynamicFields = dynamicFields;
+        this.dynamicValues = dynamicValues;
+        this.createdAt = createdAt;
+        this.createdBy = Thread.currentThread();
+    }
+
+    /**
+     * @return true when this instance holds the values of events that do not read the event at {@code now} on the
+     * calling thread
+     */
+    boolean isCurrent(long now) {
+        return createdAt == now && createdBy == Thread.currentThread();
+    }
+
+    @Override
+    public int size() {
+        return staticKeys.length + dynamicFields.length;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int index = indexOf(key);
+        if (index < 0)
+            return null;
+        return index < staticKeys.length ? staticValues[index] : dynamicValues[index - staticKeys.length];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        throw new UnsupportedOperationException("Event metadata is shared between events, replace it with a copy to modify it");
+    }
+
+    /**
+     * @return the position of {@code key} in {@link #entrySet()} order, or -1; dynamic fields shadow static keys
+     */
+    private int indexOf(Object key) {
+        for (int i = 0; i < dynamicFields.length; i++) {
+            if (dynamicFields[i].key().equals(key))
+                return staticKeys.length + i;
+        }
+        for (int i = 0; i < staticKeys.length; i++) {
+            if (staticKeys[i].equals(key))
+                return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public int size() {
+                return EventMetadata.this.size();
+            }
+
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<>() {
+                    private int index;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < size();
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+                        int i = index++;
+                        if (i < staticKeys.length)
+                            return new SimpleImmutableEntry<>(staticKeys[i], staticValues[i]);
+                        i -= staticKeys.length;
+                        return new SimpleImmutableEntry<>(dynamicFields[i].key(), dynamicValues[i]);
+                    }
+                };
+            }
+        };
+    }
+
+}
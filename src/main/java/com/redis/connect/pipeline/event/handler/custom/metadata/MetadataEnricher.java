@@ -0,0 +1,162 @@
+package com.redis.connect.pipeline.event.handler.custom.metadata;
+
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.exception.ValidationException;
+import com.redis.connect.pipeline.event.handler.custom.config.CustomStageConfiguration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Adds processing metadata to the values of a change event. Everything that does not change between events (job,
+ * instance, JVM and OS details and any {@code metadata.static.<name>} entry) is resolved once when the enricher is
+ * built; only the configured {@link MetadataField dynamic fields} are computed per event, and not even those when
+ * none of them reads the event: the nested metadata is then built once per millisecond and thread and shared.
+ * <p>
+ * The metadata is written either as one nested map under {@code metadata.field}, which suits {@code REDIS_JSON_SINK},
+ * or as flat {@code <metadata.prefix><name>} columns, which suits hash sinks.
+ * <pre>
+ * "customConfiguration" : {
+ *   "metadata.field" : "connect_metadata",
+ *   "metadata.layout" : "FLAT",
+ *   "metadata.prefix" : "meta_",
+ *   "metadata.dynamic" : "timestamp,source_tx_sequence,source_latency_ms",
+ *   "metadata.static.owner" : "Gabs"
+ * }
+ * </pre>
+ */
+public final class MetadataEnricher {
+
+    public static final String CUSTOM_CONFIG_FIELD = "metadata.field";
+    public static final String CUSTOM_CONFIG_LAYOUT = "metadata.layout";
+    public static final String CUSTOM_CONFIG_PREFIX = "metadata.prefix";
+    public static final String CUSTOM_CONFIG_DYNAMIC = "metadata.dynamic";
+    public static final String CUSTOM_CONFIG_RUNTIME_ENABLED = "metadata.runtime.enabled";
+    public static final String CUSTOM_CONFIG_STATIC_PREFIX = "metadata.static.";
+
+    public enum Layout {
+        NESTED, FLAT
+    }
+
+    private final Layout layout;
+    private final String field;
+    private final String prefix;
+    private final String[] staticKeys;
+    private final Object[] staticValues;
+    private final String[] flatStaticKeys;
+    private final MetadataField[] dynamicFields;
+    private final String[] flatDynamicKeys;
+    private final boolean shareable;
+    private volatile EventMetadata shared;
+
+    private MetadataEnricher(Layout layout, String field, String prefix, Map<String, Object> staticEntries, List<MetadataField> dynamicFields) {
+        this.layout = layout;
+        this.field = field;
+        this.prefix = prefix;
+        this.staticKeys = staticEntries.keySet().toArray(new String[0]);
+        this.staticValues = staticEntries.values().toArray();
+        this.flatStaticKeys = new String[staticKeys.length];
+        for (int i = 0; i < staticKeys.length; i++)
+            flatStaticKeys[i] = prefix + staticKeys[i];
+        this.dynamicFields = dynamicFields.toArray(new MetadataField[0]);
+        this.flatDynamicKeys = new String[this.dynamicFields.length];
+        for (int i = 0; i < this.dynamicFields.length; i++)
+            flatDynamicKeys[i] = prefix + this.dynamicFields[i].key();
+        this.shareable = dynamicFields.stream().noneMatch(MetadataField::readsEvent);
+    }
+
+    /**
+     * @param defaults static entries and dynamic fields used when the configuration does not override them
+     */
+    public static MetadataEnricher of(CustomStageConfiguration configuration, String jobId, String stageName, String instanceId,
+                                      String defaultField, Map<String, Object> defaultStaticEntries,
+                                      List<MetadataField> defaultDynamicFields) throws ValidationException {
+
+        String field = configuration.getString(CUSTOM_CONFIG_FIELD, defaultField);
+        String prefix = configuration.getString(CUSTOM_CONFIG_PREFIX, field + "_");
+
+        Layout layout;
+        String layoutName = configuration.getString(CUSTOM_CONFIG_LAYOUT, Layout.NESTED.name());
+        try {
+            layout = Layout.valueOf(layoutName.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException(e, CUSTOM_CONFIG_LAYOUT + " must be NESTED or FLAT but was: " + layoutName);
+        }
+
+        Map<String, Object> staticEntries = new LinkedHashMap<>(defaultStaticEntries);
+        if (configuration.getBoolean(CUSTOM_CONFIG_RUNTIME_ENABLED, true)) {
+            staticEntries.put("job_id", jobId);
+            staticEntries.put("custom_stage_name", stageName);
+            staticEntries.put("instance_id", instanceId);
+            staticEntries.put("java_version", System.getProperty("java.version"));
+            staticEntries.put("os_name", System.getProperty("os.name"));
+            staticEntries.put("os_version", System.getProperty("os.version"));
+        }
+        for (Map.Entry<String, String> entry : configuration.asMap().entrySet()) {
+            if (entry.getKey().startsWith(CUSTOM_CONFIG_STATIC_PREFIX))
+                staticEntries.put(entry.getKey().substring(CUSTOM_CONFIG_STATIC_PREFIX.length()), entry.getValue());
+        }
+
+        List<MetadataField> dynamicFields = new ArrayList<>(defaultDynamicFields);
+        if (configuration.contains(CUSTOM_CONFIG_DYNAMIC)) {
+            dynamicFields.clear();
+            for (String name : configuration.getList(CUSTOM_CONFIG_DYNAMIC)) {
+                try {
+                    dynamicFields.add(MetadataField.of(name));
+                } catch (IllegalArgumentException e) {
+                    throw new ValidationException(e, CUSTOM_CONFIG_DYNAMIC + " contains an unknown field: " + name);
+                }
+            }
+        }
+        // A configured static entry must not shadow a dynamic field of the same name
+        dynamicFields.forEach(dynamicField -> staticEntries.remove(dynamicField.key()));
+
+        return new MetadataEnricher(layout, field, prefix, staticEntries, dynamicFields);
+    }
+
+    public void enrich(ChangeEventDTO changeEvent) {
+        enrich(changeEvent, System.currentTimeMillis());
+    }
+
+    /**
+     * @param now the processing time, e.g. the start of the micro-batch during an initial load, in epoch millis
+     */
+    public void enrich(ChangeEventDTO changeEvent, long now) {
+        Map<String, Object> values = changeEvent.getValues();
+        if (values == null)
+            return;
+
+        if (layout == Layout.NESTED) {
+            EventMetadata metadata = shareable ? shared : null;
+            if (metadata == null || !metadata.isCurrent(now)) {
+                long[] dynamicValues = new long[dynamicFields.length];
+                for (int i = 0; i < dynamicFields.length; i++)
+                    dynamicValues[i] = dynamicFields[i].valueOf(changeEvent, now);
+                metadata = new EventMetadata(staticKeys, staticValues, dynamicFields, dynamicValues, now);
+                if (shareable)
+                    shared = metadata;
+            }
+            values.put(field, metadata);
+        } else {
+            for (int i = 0; i < flatStaticKeys.length; i++)
+                values.put(flatStaticKeys[i], staticValues[i]);
+            for (int i = 0; i < dynamicFields.length; i++)
+                values.put(flatDynamicKeys[i], dynamicFields[i].valueOf(changeEvent, now));
+        }
+    }
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    @Override
+    public String toString() {
+        List<String> keys = new ArrayList<>(List.of(staticKeys));
+        for (MetadataField dynamicField : dynamicFields)
+            keys.add(dynamicField.key());
+        return layout + " " + (layout == Layout.NESTED ? field : prefix + "*") + " " + keys;
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.redis.connect.pipeline.event.handler.custom.metadata;
+
+import com.redis.connect.dto.ChangeEventDTO;
+import java.util.Locale;
+
+/**
+ * Metadata fields whose value changes per change event. All of them are primitive longs so that the per-event state
+ * of an {@link EventMetadata} is a single {@code long[]}. Fields that only depend on the clock and the thread
+ * ({@link #TIMESTAMP}, {@link #THREAD_ID}) have the same value for every event of a millisecond on a thread.
+ */
+public enum MetadataField {
+
+    /** Wall clock time the event went through the stage, in epoch millis. */
+    TIMESTAMP(false) {
+        @Override
+        long valueOf(ChangeEventDTO changeEvent, long now) {
+            return now;
+        }
+    },
+    THREAD_ID(false) {
+        @Override
+        long valueOf(ChangeEventDTO changeEvent, long now) {
+            return Thread.currentThread().getId();
+        }
+    },
+    /** Commit time of the source transaction, in epoch millis. */
+    SOURCE_TX_TIME(true) {
+        @Override
+        long valueOf(ChangeEventDTO changeEvent, long now) {
+            return changeEvent.getSourceTxTime();
+        }
+    },
+    /** Position of the source transaction, e.g. the Oracle SCN. */
+    SOURCE_TX_SEQUENCE(true) {
+        @Override
+        long valueOf(ChangeEventDTO changeEvent, long now) {
+            return changeEvent.getSourceTxSequence();
+        }
+    },
+    /** Millis from the source commit to this stage, -1 when the source does not provide a commit time. */
+    SOURCE_LATENCY_MS(true) {
+        @Override
+        long valueOf(ChangeEventDTO changeEvent, long now) {
+            long sourceTxTime = changeEvent.getSourceTxTime();
+            return sourceTxTime > 0 ? now - sourceTxTime : -1;
+        }
+    },
+    /** Millis from publishing the event to the pipeline to this stage, -1 when unknown. */
+    PIPELINE_LATENCY_MS(true) {
+        @Override
+        long valueOf(ChangeEventDTO changeEvent, long now) {
+            long publishPipelineTime = changeEvent.getPublishPipelineTime();
+            return publishPipelineTime > 0 ? now - publishPipelineTime : -1;
+        }
+    };
+
+    private final String key = name().toLowerCase(Locale.ROOT);
+    private final boolean readsEvent;
+
+    MetadataField(boolean readsEvent) {
+        this.readsEvent = readsEvent;
+    }
+
+    abstract long valueOf(ChangeEventDTO changeEvent, long now);
+
+    /**
+     * @return true when the value is read from the change event, false when it only depends on the clock and thread
+     */
+    public boolean readsEvent() {
+        return readsEvent;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the name does not match any field, e.g. {@code thread_id}
+     */
+    public static MetadataField of(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown metadata field " + name, e);
+        }
+    }
+
+}
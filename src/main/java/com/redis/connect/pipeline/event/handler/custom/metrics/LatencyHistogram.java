@@ -0,0 +1,102 @@
+package com.redis.connect.pipeline.event.handler.custom.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, log-linear latency histogram in the spirit of HdrHistogram: values below 64 ns get a bucket each, every
+ * power of two above is split into 32 linear sub-buckets, so any recorded value is reported within ~3% over the full
+ * {@code long} range. Recording is a couple of bit operations and one uncontended atomic increment; reads take a
+ * consistent-enough copy without blocking writers.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+    private static final int BUCKETS = SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * SUB_BUCKET_HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray totals = new AtomicLongArray(2); // [0] sum of values, [1] max value
+
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        counts.incrementAndGet(indexOf(nanos));
+        totals.addAndGet(0, nanos);
+        long max = totals.get(1);
+        while (nanos > max && !totals.compareAndSet(1, max, nanos))
+            max = totals.get(1);
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, totals.get(0), totals.get(1));
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT)
+            return (int) value;
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - SUB_BUCKET_BITS + 1;
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + (int) (value >>> shift) - SUB_BUCKET_HALF;
+    }
+
+    /** Highest value that falls into the bucket, so percentiles never under-report. */
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKET_COUNT)
+            return index;
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0)
+                return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank)
+                    return Math.min(highestValueOf(i), max);
+            }
+            return max;
+        }
+
+    }
+
+}
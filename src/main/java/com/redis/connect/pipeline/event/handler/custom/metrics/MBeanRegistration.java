@@ -0,0 +1,98 @@
+package com.redis.connect.pipeline.event.handler.custom.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JMX registration of a custom stage MBean. Every partition of a job builds its own stage instances from the same
+ * {@code <jobId>-<stageName>-<index>} name, so each registration takes the lowest instance number not in use under
+ * that name and registers as {@code com.redis.connect.customstage:type=<type>,name=<name>,instance=<instance>}: the
+ * beans of concurrently running partitions neither replace nor unregister each other, and a restarted partition reuses
+ * the number it released.
+ */
+public final class MBeanRegistration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+    private static final Map<String, BitSet> instancesByName = new HashMap<>();
+
+    private final String key;
+    private final String name;
+    private final int instance;
+    private final ObjectName objectName;
+    private boolean unregistered;
+
+    private MBeanRegistration(String key, String name, int instance, ObjectName objectName) {
+        this.key = key;
+        this.name = name;
+        this.instance = instance;
+        this.objectName = objectName;
+    }
+
+    /**
+     * Registers {@code mBean}; failures are logged, the returned registration must be {@link #unregister()
+     * unregistered} either way.
+     */
+    public static MBeanRegistration register(String type, String name, Object mBean) {
+        String key = type + "/" + name;
+        int instance;
+        synchronized (instancesByName) {
+            BitSet instances = instancesByName.computeIfAbsent(key, k -> new BitSet());
+            instance = instances.nextClearBit(0);
+            instances.set(instance);
+        }
+
+        ObjectName objectName = null;
+        try {
+            objectName = new ObjectName("com.redis.connect.customstage:type=" + type + ",name=" + ObjectName.quote(name) + ",instance=" + instance);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mBean, objectName);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to register {} MBean for {}", type, name, e);
+            objectName = null;
+        }
+        return new MBeanRegistration(key, name, instance, objectName);
+    }
+
+    public void unregister() {
+        synchronized (instancesByName) {
+            // Idempotent, the instance number may already belong to another registration
+            if (unregistered)
+                return;
+            unregistered = true;
+        }
+
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            if (objectName != null && mBeanServer.isRegistered(objectName))
+                mBeanServer.unregisterMBean(objectName);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to unregister MBean {}", objectName, e);
+        }
+
+        synchronized (instancesByName) {
+            BitSet instances = instancesByName.get(key);
+            if (instances != null) {
+                instances.clear(instance);
+                if (instances.isEmpty())
+                    instancesByName.remove(key);
+            }
+        }
+    }
+
+    public int getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return the name qualified with the instance number, unique among the live registrations of this type
+     */
+    public String getInstanceName() {
+        return name + "-" + instance;
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.redis.connect.pipeline.event.handler.custom.metrics;
+
+import com.redis.connect.pipeline.event.handler.ChangeEventHandler;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.function.ToDoubleFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Optional HTTP pull endpoint for the metrics of every instrumented custom stage in this JVM. It is started with the
+ * first registered stage when the {@code REDISCONNECT_CUSTOM_STAGE_METRICS_PORT} environment variable is set:
+ * <ul>
+ *     <li>{@code GET /metrics} returns the metrics as JSON</li>
+ *     <li>{@code GET /metrics/prometheus} returns them in the Prometheus text exposition format</li>
+ * </ul>
+ */
+public final class MetricsEndpoint {
+
+    private static final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+    private static final String PORT_ENV = "REDISCONNECT_CUSTOM_STAGE_METRICS_PORT";
+    private static final Map<String, StageMetrics> stages = new ConcurrentHashMap<>();
+    private static HttpServer server;
+
+    private MetricsEndpoint() {
+    }
+
+    static void register(StageMetrics stageMetrics) {
+        stages.put(stageMetrics.getName(), stageMetrics);
+        startIfConfigured();
+    }
+
+    static void unregister(StageMetrics stageMetrics) {
+        stages.remove(stageMetrics.getName(), stageMetrics);
+    }
+
+    private static synchronized void startIfConfigured() {
+        String port = System.getenv(PORT_ENV);
+        if (server != null || port == null || port.isBlank())
+            return;
+
+        try {
+            server = HttpServer.create(new InetSocketAddress(Integer.parseInt(port.trim())), 0);
+            server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "custom-stage-metrics-endpoint");
+                thread.setDaemon(true);
+                return thread;
+            }));
+            server.createContext("/metrics", MetricsEndpoint::handle);
+            server.start();
+            LOGGER.info("Instance: {} custom stage metrics endpoint listening on port {}", instanceId, server.getAddress().getPort());
+        } catch (IOException | NumberFormatException e) {
+            server = null;
+            LOGGER.error("Instance: {} failed to start custom stage metrics endpoint on {}={}", instanceId, PORT_ENV, port, e);
+        }
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            byte[] body;
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/metrics") || path.equals("/metrics/")) {
+                body = ChangeEventHandler.mapper.writeValueAsBytes(json());
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+            } else if (path.equals("/metrics/prometheus")) {
+                body = prometheus().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream response = exchange.getResponseBody()) {
+                response.write(body);
+            }
+        }
+    }
+
+    private static List<Map<String, Object>> json() {
+        List<Map<String, Object>> json = new ArrayList<>();
+        for (StageMetrics stage : stages.values()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("jobId", stage.getJobId());
+            entry.put("stageName", stage.getStageName());
+            entry.put("index", stage.getIndex());
+            entry.put("instance", stage.getInstance());
+            entry.put("tables", stage.getTables());
+            json.add(entry);
+        }
+        return json;
+    }
+
+    private static String prometheus() {
+        // Samples of a metric family must be contiguous, so snapshot every stage first and emit family by family
+        List<String> labels = new ArrayList<>();
+        List<TableMetricsView> tables = new ArrayList<>();
+        for (StageMetrics stage : stages.values()) {
+            for (TableMetricsView table : stage.getTables()) {
+                labels.add("job=\"" + escape(stage.getJobId()) + "\",stage=\"" + escape(stage.getStageName()) + "\",index=\"" + stage.getIndex()
+                        + "\",stage_instance=\"" + stage.getInstance() + "\",table=\"" + escape(table.getSchemaAndTableName()) + "\"");
+                tables.add(table);
+            }
+        }
+
+        StringBuilder text = new StringBuilder(4096);
+        family(text, "redis_connect_custom_stage_events_total", "counter", labels, tables, TableMetricsView::getEvents);
+        family(text, "redis_connect_custom_stage_dropped_total", "counter", labels, tables, TableMetricsView::getDropped);
+        family(text, "redis_connect_custom_stage_rewritten_total", "counter", labels, tables, TableMetricsView::getRewritten);
+        family(text, "redis_connect_custom_stage_exceptions_total", "counter", labels, tables, TableMetricsView::getExceptions);
+        family(text, "redis_connect_custom_stage_events_per_second", "gauge", labels, tables, TableMetricsView::getEventsPerSecond);
+
+        String latency = "redis_connect_custom_stage_latency_microseconds";
+        text.append("# TYPE ").append(latency).append(" summary\n");
+        for (int i = 0; i < tables.size(); i++) {
+            TableMetricsView table = tables.get(i);
+            sample(text, latency, labels.get(i) + ",quantile=\"0.5\"", table.getLatencyP50());
+            sample(text, latency, labels.get(i) + ",quantile=\"0.9\"", table.getLatencyP90());
+            sample(text, latency, labels.get(i) + ",quantile=\"0.99\"", table.getLatencyP99());
+            sample(text, latency, labels.get(i) + ",quantile=\"0.999\"", table.getLatencyP999());
+            sample(text, latency + "_sum", labels.get(i), table.getLatencyMean() * table.getEvents());
+            sample(text, latency + "_count", labels.get(i), table.getEvents());
+        }
+        return text.toString();
+    }
+
+    private static void family(StringBuilder text, String name, String type, List<String> labels, List<TableMetricsView> tables,
+                               ToDoubleFunction<TableMetricsView> value) {
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        for (int i = 0; i < tables.size(); i++)
+            sample(text, name, labels.get(i), value.applyAsDouble(tables.get(i)));
+    }
+
+    private static void sample(StringBuilder text, String name, String labels, double value) {
+        text.append(name).append('{').append(labels).append("} ").append(String.format(Locale.ROOT, "%.3f", value)).append('\n');
+    }
+
+    private static String escape(String label) {
+        return label == null ? "" : label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+}
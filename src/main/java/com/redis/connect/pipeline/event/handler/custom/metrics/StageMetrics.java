@@ -0,0 +1,109 @@
+package com.redis.connect.pipeline.event.handler.custom.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-table metrics of one custom stage instance, published through JMX and the {@link MetricsEndpoint}.
+ */
+public final class StageMetrics implements StageMetricsMXBean {
+
+    private static final String UNKNOWN_TABLE = "<unknown>";
+
+    private final String jobId;
+    private final String stageName;
+    private final int index;
+    private final Map<String, TableMetrics> tables = new ConcurrentHashMap<>();
+    private volatile MBeanRegistration registration;
+
+    public StageMetrics(String jobId, String stageName, int index) {
+        this.jobId = jobId;
+        this.stageName = stageName;
+        this.index = index;
+    }
+
+    public TableMetrics forTable(String schemaAndTableName) {
+        return tables.computeIfAbsent(schemaAndTableName == null ? UNKNOWN_TABLE : schemaAndTableName, TableMetrics::new);
+    }
+
+    /**
+     * @return {@code <jobId>-<stageName>-<index>-<instance>} once registered, the partitions of a job each have their own
+     */
+    public String getName() {
+        MBeanRegistration current = registration;
+        return current != null ? current.getInstanceName() : jobId + "-" + stageName + "-" + index;
+    }
+
+    @Override
+    public String getJobId() {
+        return jobId;
+    }
+
+    @Override
+    public String getStageName() {
+        return stageName;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the number telling this stage instance apart from those of the other partitions of the job
+     */
+    public int getInstance() {
+        MBeanRegistration current = registration;
+        return current != null ? current.getInstance() : 0;
+    }
+
+    @Override
+    public long getEvents() {
+        return tables.values().stream().mapToLong(TableMetrics::getEvents).sum();
+    }
+
+    @Override
+    public long getDropped() {
+        return tables.values().stream().mapToLong(TableMetrics::getDropped).sum();
+    }
+
+    @Override
+    public long getRewritten() {
+        return tables.values().stream().mapToLong(TableMetrics::getRewritten).sum();
+    }
+
+    @Override
+    public long getExceptions() {
+        return tables.values().stream().mapToLong(TableMetrics::getExceptions).sum();
+    }
+
+    @Override
+    public double getEventsPerSecond() {
+        return tables.values().stream().mapToDouble(TableMetrics::getEventsPerSecond).sum();
+    }
+
+    @Override
+    public List<TableMetricsView> getTables() {
+        Collection<TableMetrics> snapshot = tables.values();
+        List<TableMetricsView> views = new ArrayList<>(snapshot.size());
+        for (TableMetrics metrics : snapshot)
+            views.add(TableMetricsView.of(metrics));
+        views.sort(Comparator.comparing(TableMetricsView::getSchemaAndTableName));
+        return views;
+    }
+
+    public void register() {
+        registration = MBeanRegistration.register("StageMetrics", jobId + "-" + stageName + "-" + index, this);
+        MetricsEndpoint.register(this);
+    }
+
+    public void unregister() {
+        MetricsEndpoint.unregister(this);
+        if (registration != null)
+            registration.unregister();
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.redis.connect.pipeline.event.handler.custom.metrics;
+
+import java.util.List;
+
+/**
+ * JMX view of a {@link StageMetrics}, registered under {@code com.redis.connect.customstage:type=StageMetrics}.
+ * Latencies are in microseconds.
+ */
+public interface StageMetricsMXBean {
+
+    String getJobId();
+
+    String getStageName();
+
+    long getEvents();
+
+    long getDropped();
+
+    long getRewritten();
+
+    long getExceptions();
+
+    double getEventsPerSecond();
+
+    List<TableMetricsView> getTables();
+
+}
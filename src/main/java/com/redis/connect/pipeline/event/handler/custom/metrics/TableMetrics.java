@@ -0,0 +1,86 @@
+package com.redis.connect.pipeline.event.handler.custom.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and {@code onEvent} latency of one custom stage for one {@code schemaAndTableName}.
+ */
+public final class TableMetrics {
+
+    /** Latency of an event that was counted but not timed, see {@link InstrumentedStageHandler}. */
+    static final long UNTIMED = -1;
+
+    private static final double RATE_WINDOW_NANOS = 60e9;
+    private static final long RATE_MIN_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final String schemaAndTableName;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder events = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder rewritten = new LongAdder();
+    private final LongAdder exceptions = new LongAdder();
+
+    // Events per second, an exponentially weighted moving average over about a minute that is advanced on read
+    private long rateCount;
+    private long rateNanos = System.nanoTime();
+    private double rate;
+
+    TableMetrics(String schemaAndTableName) {
+        this.schemaAndTableName = schemaAndTableName;
+    }
+
+    void record(long latencyNanos, boolean wasDropped, boolean wasRewritten) {
+        events.increment();
+        if (latencyNanos != UNTIMED)
+            latency.record(latencyNanos);
+        if (wasDropped)
+            dropped.increment();
+        if (wasRewritten)
+            rewritten.increment();
+    }
+
+    void recordException(long latencyNanos) {
+        events.increment();
+        exceptions.increment();
+        if (latencyNanos != UNTIMED)
+            latency.record(latencyNanos);
+    }
+
+    public String getSchemaAndTableName() {
+        return schemaAndTableName;
+    }
+
+    public long getEvents() {
+        return events.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getRewritten() {
+        return rewritten.sum();
+    }
+
+    public long getExceptions() {
+        return exceptions.sum();
+    }
+
+    public LatencyHistogram.Snapshot getLatency() {
+        return latency.snapshot();
+    }
+
+    public synchronized double getEventsPerSecond() {
+        long now = System.nanoTime();
+        long elapsed = now - rateNanos;
+        if (elapsed >= RATE_MIN_INTERVAL_NANOS) {
+            long count = events.sum();
+            double instantRate = (count - rateCount) * 1e9 / elapsed;
+            rate += (1 - Math.exp(-elapsed / RATE_WINDOW_NANOS)) * (instantRate - rate);
+            rateCount = count;
+            rateNanos = now;
+        }
+        return rate;
+    }
+
+}
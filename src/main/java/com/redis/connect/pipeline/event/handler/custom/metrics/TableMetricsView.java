@@ -0,0 +1,98 @@
+package com.redis.connect.pipeline.event.handler.custom.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Point-in-time copy of a {@link TableMetrics}, exposed as composite data over JMX and as JSON by the
+ * {@link MetricsEndpoint}. Latencies are in microseconds.
+ */
+public final class TableMetricsView {
+
+    private final String schemaAndTableName;
+    private final long events;
+    private final long dropped;
+    private final long rewritten;
+    private final long exceptions;
+    private final double eventsPerSecond;
+    private final double latencyMean;
+    private final double latencyP50;
+    private final double latencyP90;
+    private final double latencyP99;
+    private final double latencyP999;
+    private final double latencyMax;
+
+    @ConstructorProperties({"schemaAndTableName", "events", "dropped", "rewritten", "exceptions", "eventsPerSecond",
+            "latencyMean", "latencyP50", "latencyP90", "latencyP99", "latencyP999", "latencyMax"})
+    public TableMetricsView(String schemaAndTableName, long events, long dropped, long rewritten, long exceptions, double eventsPerSecond,
+                            double latencyMean, double latencyP50, double latencyP90, double latencyP99, double latencyP999, double latencyMax) {
+        this.schemaAndTableName = schemaAndTableName;
+        this.events = events;
+        this.dropped = dropped;
+        this.rewritten = rewritten;
+        this.exceptions = exceptions;
+        this.eventsPerSecond = eventsPerSecond;
+        this.latencyMean = latencyMean;
+        this.latencyP50 = latencyP50;
+        this.latencyP90 = latencyP90;
+        this.latencyP99 = latencyP99;
+        this.latencyP999 = latencyP999;
+        this.latencyMax = latencyMax;
+    }
+
+    static TableMetricsView of(TableMetrics metrics) {
+        LatencyHistogram.Snapshot latency = metrics.getLatency();
+        return new TableMetricsView(metrics.getSchemaAndTableName(), metrics.getEvents(), metrics.getDropped(), metrics.getRewritten(),
+                metrics.getExceptions(), metrics.getEventsPerSecond(), latency.getMean() / 1e3,
+                latency.getValueAtPercentile(50) / 1e3, latency.getValueAtPercentile(90) / 1e3, latency.getValueAtPercentile(99) / 1e3,
+                latency.getValueAtPercentile(99.9) / 1e3, latency.getMax() / 1e3);
+    }
+
+    public String getSchemaAndTableName() {
+        return schemaAndTableName;
+    }
+
+    public long getEvents() {
+        return events;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public long getRewritten() {
+        return rewritten;
+    }
+
+    public long getExceptions() {
+        return exceptions;
+    }
+
+    public double getEventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    public double getLatencyMean() {
+        return latencyMean;
+    }
+
+    public double getLatencyP50() {
+        return latencyP50;
+    }
+
+    public double getLatencyP90() {
+        return latencyP90;
+    }
+
+    public double getLatencyP99() {
+        return latencyP99;
+    }
+
+    public double getLatencyP999() {
+        return latencyP999;
+    }
+
+    public double getLatencyMax() {
+        return latencyMax;
+    }
+
+}
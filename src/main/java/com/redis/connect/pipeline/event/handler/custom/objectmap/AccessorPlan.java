@@ -0,0 +1,157 @@
+package com.redis.connect.pipeline.event.handler.custom.objectmap;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * The public getters of a class, resolved once into {@link MethodHandle}s and cached per class in a
+ * {@link ClassValue}. Properties whose declared type is itself a bean carry the accessors of that type, with their
+ * dotted path from the root class, so nested objects such as {@code EmployeeData.nameAndNumber} are walked without
+ * further lookups.
+ * <p>
+ * Property names follow the Jackson defaults ({@code getEmpNumber} is {@code empNumber}, {@code isActive} is
+ * {@code active}), in field declaration order followed by getters without a backing field.
+ */
+final class AccessorPlan {
+
+    private static final int MAX_DEPTH = 8;
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final ClassValue<AccessorPlan> PLANS = new ClassValue<>() {
+        @Override
+        protected AccessorPlan computeValue(Class<?> type) {
+            // Values such as strings, numbers or collections get an empty plan
+            return new AccessorPlan(isBean(type) ? accessors(type, "", new HashSet<>()) : new Accessor[0]);
+        }
+    };
+
+    final Accessor[] accessors;
+    final int leafCount;
+
+    private AccessorPlan(Accessor[] accessors) {
+        this.accessors = accessors;
+        this.leafCount = leafCount(accessors);
+    }
+
+    static AccessorPlan of(Class<?> type) {
+        return PLANS.get(type);
+    }
+
+    /**
+     * One property of a bean.
+     *
+     * @param name     the property name, used by the nested layout
+     * @param path     the dotted path from the root class, used by the flat layout
+     * @param getter   {@code (Object) -> Object}
+     * @param type     the declared type of the property
+     * @param children the accessors of a nested bean property, {@code null} for values
+     */
+    record Accessor(String name, String path, MethodHandle getter, Class<?> type, Accessor[] children) {
+
+        Object get(Object bean) {
+            try {
+                return (Object) getter.invokeExact(bean);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException("Failed to read property " + path + " of " + bean.getClass().getName(), t);
+            }
+        }
+    }
+
+    private static Accessor[] accessors(Class<?> type, String prefix, Set<Class<?>> visiting) {
+        visiting.add(type);
+        List<Accessor> accessors = new ArrayList<>();
+        for (Map.Entry<String, Method> getter : getters(type).entrySet()) {
+            String path = (prefix + getter.getKey()).intern();
+            Class<?> propertyType = getter.getValue().getReturnType();
+
+            MethodHandle handle;
+            try {
+                handle = MethodHandles.publicLookup().unreflect(getter.getValue()).asType(GETTER_TYPE);
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Getter " + getter.getValue() + " cannot be accessed", e);
+            }
+
+            // Self-referencing types and very deep graphs are kept as values instead of being walked
+            Accessor[] children = null;
+            if (isBean(propertyType) && !visiting.contains(propertyType) && visiting.size() < MAX_DEPTH)
+                children = accessors(propertyType, path + ".", visiting);
+
+            accessors.add(new Accessor(getter.getKey().intern(), path, handle, propertyType, children));
+        }
+        visiting.remove(type);
+        return accessors.toArray(new Accessor[0]);
+    }
+
+    private static Map<String, Method> getters(Class<?> type) {
+        Map<String, Method> byProperty = new TreeMap<>();
+        for (Method method : type.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers()) || method.getParameterCount() != 0 || method.getDeclaringClass() == Object.class)
+                continue;
+            String name = method.getName();
+            if (name.startsWith("get") && name.length() > 3 && method.getReturnType() != void.class)
+                byProperty.put(propertyName(name.substring(3)), method);
+            else if (name.startsWith("is") && name.length() > 2 && (method.getReturnType() == boolean.class || method.getReturnType() == Boolean.class))
+                byProperty.putIfAbsent(propertyName(name.substring(2)), method);
+        }
+
+        // Field declaration order first, like Jackson
+        Map<String, Method> ordered = new LinkedHashMap<>();
+        for (Class<?> declaring = type; declaring != null && declaring != Object.class; declaring = declaring.getSuperclass()) {
+            for (Field field : declaring.getDeclaredFields()) {
+                Method getter = byProperty.remove(field.getName());
+                if (getter != null)
+                    ordered.put(field.getName(), getter);
+            }
+        }
+        ordered.putAll(byProperty);
+        return ordered;
+    }
+
+    // Jackson's default mangling lower cases the leading upper case characters: getURL is url, getEmpNumber is empNumber
+    private static String propertyName(String name) {
+        int i = 0;
+        while (i < name.length() && Character.isUpperCase(name.charAt(i)))
+            i++;
+        return name.substring(0, i).toLowerCase(Locale.ROOT) + name.substring(i);
+    }
+
+    /**
+     * @return true when instances of the type are walked property by property instead of being kept as a value
+     */
+    private static boolean isBean(Class<?> type) {
+        if (type.isPrimitive() || type.isArray() || type.isEnum() || type.isInterface() || type == Object.class)
+            return false;
+        if (CharSequence.class.isAssignableFrom(type) || Number.class.isAssignableFrom(type) || Boolean.class == type || Character.class == type
+                || Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type) || Date.class.isAssignableFrom(type) || UUID.class == type)
+            return false;
+        String packageName = type.getPackageName();
+        if (packageName.startsWith("java.") || packageName.startsWith("javax."))
+            return false;
+        return Modifier.isPublic(type.getModifiers()) && !getters(type).isEmpty();
+    }
+
+    private static int leafCount(Accessor[] accessors) {
+        int count = 0;
+        for (Accessor accessor : accessors)
+            count += accessor.children == null ? 1 : Math.max(1, leafCount(accessor.children));
+        return count;
+    }
+
+}
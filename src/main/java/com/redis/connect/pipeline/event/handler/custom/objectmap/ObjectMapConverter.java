@@ -0,0 +1,100 @@
+package com.redis.connect.pipeline.event.handler.custom.objectmap;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Converts the domain objects carried in a change event's value blob (e.g. Gemfire's {@code EmployeeData}) into the
+ * event values, reading their getters through a per-class {@link AccessorPlan} into a map presized for the number of
+ * properties. Nothing is serialized: leaf values are put into the map as the getters return them.
+ * <ul>
+ *     <li>{@link Layout#NESTED} mirrors Jackson's {@code convertValue(blob, Map.class)}: a nested bean becomes a nested
+ *     map, e.g. {@code {nameAndNumber={name=.., empNumber=..}, salary=.., hoursPerWeek=..}}.</li>
+ *     <li>{@link Layout#FLAT} flattens nested beans to dotted keys, e.g.
+ *     {@code {nameAndNumber.name=.., nameAndNumber.empNumber=.., salary=.., hoursPerWeek=..}}.</li>
+ * </ul>
+ * Unlike Jackson, dates and enums are not converted to numbers and names. A blob that already is a map is copied as
+ * it is.
+ */
+public final class ObjectMapConverter {
+
+    public enum Layout {
+        NESTED, FLAT
+    }
+
+    private final Layout layout;
+
+    public ObjectMapConverter(Layout layout) {
+        this.layout = layout;
+    }
+
+    /**
+     * @return the properties of the blob, or {@code null} for a {@code null} blob
+     * @throws IllegalArgumentException when the blob is neither a map nor a public class with getters
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> toMap(Object blob) {
+        if (blob == null)
+            return null;
+        if (blob instanceof Map<?, ?> map)
+            return new HashMap<>((Map<String, Object>) map);
+
+        AccessorPlan plan = AccessorPlan.of(blob.getClass());
+        if (plan.accessors.length == 0)
+            throw new IllegalArgumentException("Cannot convert " + blob.getClass().getName() + " to a map, it is not a public class with getters");
+
+        if (layout == Layout.NESTED)
+            return nested(blob, plan.accessors);
+
+        Map<String, Object> values = new HashMap<>(capacity(plan.leafCount));
+        flatten(blob, plan.accessors, values);
+        return values;
+    }
+
+    /**
+     * @return true when {@link #toMap(Object)} walks instances of the type property by property, false for maps and
+     * values such as strings, numbers, dates, collections and arrays
+     */
+    public static boolean isBean(Class<?> type) {
+        return AccessorPlan.of(type).accessors.length > 0;
+    }
+
+    private static Map<String, Object> nested(Object bean, AccessorPlan.Accessor[] accessors) {
+        Map<String, Object> values = new HashMap<>(capacity(accessors.length));
+        for (AccessorPlan.Accessor accessor : accessors) {
+            Object value = accessor.get(bean);
+            if (value != null && accessor.children() != null)
+                value = nested(value, value.getClass() == accessor.type() ? accessor.children() : AccessorPlan.of(value.getClass()).accessors);
+            values.put(accessor.name(), value);
+        }
+        return values;
+    }
+
+    private static void flatten(Object bean, AccessorPlan.Accessor[] accessors, Map<String, Object> values) {
+        for (AccessorPlan.Accessor accessor : accessors) {
+            Object value = accessor.get(bean);
+            if (value == null || accessor.children() == null)
+                values.put(accessor.path(), value);
+            else if (value.getClass() == accessor.type())
+                flatten(value, accessor.children(), values);
+            else
+                flattenSubtype(value, accessor.path() + ".", values);
+        }
+    }
+
+    // The runtime type of a nested bean differs from the declared one, its paths cannot be precomputed
+    private static void flattenSubtype(Object bean, String prefix, Map<String, Object> values) {
+        for (AccessorPlan.Accessor accessor : AccessorPlan.of(bean.getClass()).accessors) {
+            Object value = accessor.get(bean);
+            if (value == null || accessor.children() == null)
+                values.put(prefix + accessor.path(), value);
+            else
+                flattenSubtype(value, prefix + accessor.name() + ".", values);
+        }
+    }
+
+    private static int capacity(int entries) {
+        return (int) (entries / 0.75f) + 1;
+    }
+
+}
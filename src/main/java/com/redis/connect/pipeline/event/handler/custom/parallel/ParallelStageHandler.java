@@ -0,0 +1,229 @@
+package com.redis.connect.pipeline.event.handler.custom.parallel;
+
+import com.lmax.disruptor.Sequence;
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.exception.InvalidChangeEventException;
+import com.redis.connect.pipeline.event.handler.impl.BaseCustomStageHandler;
+import com.redis.connect.utils.ConnectThreadFactory;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads the {@code onEvent} work of a CPU-heavy {@link ThreadSafeStage} over {@code parallel.workers} threads.
+ * <p>
+ * The disruptor thread hands every valid event to the worker selected by the hash of its key, through a queue of
+ * {@code parallel.queue.depth} events, so events with the same key are still processed in ring buffer order. Before
+ * the disruptor batch is handed to the next stage, and before the stage {@link Sequence} advances, the disruptor
+ * thread waits for the workers to finish every event of the batch, spinning briefly and then parked until the last
+ * worker to finish wakes it up. The same happens when {@code parallel.queue.depth} events are in flight. When a worker fails, the sequence is left just before the
+ * earliest failed event and the failure is rethrown on the disruptor thread, an {@link Error} as it is.
+ * <pre>
+ * "customConfiguration" : {
+ *   "parallel.workers" : 4,
+ *   "parallel.queue.depth" : 1024
+ * }
+ * </pre>
+ */
+public class ParallelStageHandler extends BaseCustomStageHandler {
+
+    private static final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+    public static final String CUSTOM_CONFIG_WORKERS = "parallel.workers";
+    public static final String CUSTOM_CONFIG_QUEUE_DEPTH = "parallel.queue.depth";
+    private static final int SPINS = 100;
+    private static final int YIELDS = 100;
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final BaseCustomStageHandler delegate;
+    private final String jobId;
+    private final JobPipelineStageDTO jobPipelineStage;
+    private final int workerCount;
+    private final int queueDepth;
+    private final List<BlockingQueue<Task>> queues;
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicReference<Task> firstFailure = new AtomicReference<>();
+    private ExecutorService workers;
+    private Sequence sequenceCallback;
+    // The disruptor thread while it is parked in awaitWorkers
+    private volatile Thread waiter;
+
+    // Only touched from the disruptor thread
+    private long submitted;
+    private long highestSubmittedSequence = -1;
+
+    public ParallelStageHandler(String jobId, String jobType, JobPipelineStageDTO jobPipelineStage, BaseCustomStageHandler delegate, int workerCount, int queueDepth) {
+        super(jobId, jobType, jobPipelineStage);
+        this.delegate = delegate;
+        this.jobId = jobId;
+        this.jobPipelineStage = jobPipelineStage;
+        this.workerCount = workerCount;
+        this.queueDepth = queueDepth;
+        this.queues = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++)
+            queues.add(new ArrayBlockingQueue<>(Math.max(1, queueDepth / workerCount)));
+    }
+
+    public BaseCustomStageHandler getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void setSequenceCallback(Sequence sequenceCallback) {
+        super.setSequenceCallback(sequenceCallback);
+        this.sequenceCallback = sequenceCallback;
+    }
+
+    @Override
+    public void onEvent(ChangeEventDTO changeEvent, long sequence, boolean endOfBatch) throws Exception {
+
+        if (changeEvent.isValid()) {
+            queues.get(shard(changeEvent.getKey())).put(new Task(changeEvent, sequence));
+            submitted++;
+            highestSubmittedSequence = sequence;
+        } else {
+            // Logged and ignored exactly like a stage running on the disruptor thread
+            super.onEvent(changeEvent, sequence, endOfBatch);
+        }
+
+        // Everything must be processed before the disruptor publishes this batch to the next stage
+        if (endOfBatch || submitted - completed.get() >= queueDepth)
+            awaitWorkers();
+    }
+
+    @Override
+    public void onEvent(ChangeEventDTO changeEvent) throws Exception {
+        delegate.onEvent(changeEvent);
+    }
+
+    private int shard(String key) {
+        if (key == null)
+            return 0;
+        int hash = key.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), workerCount);
+    }
+
+    /**
+     * Waits until the workers have processed every submitted event and moves the stage sequence past them. Short waits
+     * spin, longer ones park the disruptor thread rather than keep a core busy.
+     */
+    private void awaitWorkers() throws Exception {
+        for (int spins = 0; completed.get() < submitted; spins++) {
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else if (spins < SPINS + YIELDS) {
+                Thread.yield();
+            } else {
+                waiter = Thread.currentThread();
+                // Checked again after publishing the waiter, a worker that completes in between sees it and unparks
+                if (completed.get() < submitted)
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                waiter = null;
+            }
+        }
+
+        Task failure = firstFailure.getAndSet(null);
+        if (failure != null) {
+            sequenceCallback.set(failure.sequence - 1);
+            if (failure.failure instanceof Error error)
+                throw error;
+            throw new InvalidChangeEventException(failure.failure instanceof Exception exception ? exception : new Exception(failure.failure),
+                    "Failed to transform change event in custom stage");
+        }
+        if (highestSubmittedSequence >= 0)
+            sequenceCallback.set(highestSubmittedSequence);
+    }
+
+    private void work(BlockingQueue<Task> queue) {
+        while (!Thread.currentThread().isInterrupted()) {
+            Task task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            try {
+                delegate.onEvent(task.changeEvent);
+            } catch (Throwable t) {
+                task.failure = t;
+                // Keep the earliest failure in ring buffer order, events after it are processed again after a restart
+                firstFailure.accumulateAndGet(task, (current, failed) -> current == null || failed.sequence < current.sequence ? failed : current);
+            } finally {
+                // The disruptor thread waits for this count, whatever the outcome
+                completed.incrementAndGet();
+                // The last event in flight leaves every queue empty, only then is the waiter done
+                Thread thread = waiter;
+                if (thread != null && queue.isEmpty())
+                    LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    @Override
+    public void onBatchStart(long batchSize, long queueDepth) {
+        delegate.onBatchStart(batchSize, queueDepth);
+    }
+
+    @Override
+    public void onTimeout(long sequence) throws Exception {
+        delegate.onTimeout(sequence);
+    }
+
+    @Override
+    public void validateEventHandler() {
+        delegate.validateEventHandler();
+    }
+
+    @Override
+    public void init() throws Exception {
+        setSequenceCallback(new Sequence());
+        delegate.init();
+
+        workers = Executors.newFixedThreadPool(workerCount, new ConnectThreadFactory("custom-stage-worker-" + jobId + "-" + jobPipelineStage.getStageName()));
+        for (BlockingQueue<Task> queue : queues)
+            workers.execute(() -> work(queue));
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("Instance: {} successfully started {} workers with a queue depth of {} for Stage: {}", instanceId, workerCount, queueDepth, jobPipelineStage.getStageName());
+    }
+
+    @Override
+    public void shutdown() throws Exception {
+        if (workers != null) {
+            workers.shutdownNow();
+            if (!workers.awaitTermination(5, TimeUnit.SECONDS))
+                LOGGER.warn("Instance: {} workers of Stage: {} did not terminate within 5 seconds", instanceId, jobPipelineStage.getStageName());
+        }
+        delegate.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "Parallel(" + workerCount + ") " + delegate;
+    }
+
+    private static final class Task {
+        private final ChangeEventDTO changeEvent;
+        private final long sequence;
+        private Throwable failure;
+
+        private Task(ChangeEventDTO changeEvent, long sequence) {
+            this.changeEvent = changeEvent;
+            this.sequence = sequence;
+        }
+    }
+
+}
@@ -0,0 +1,9 @@
+package com.redis.connect.pipeline.event.handler.custom.parallel;
+
+/**
+ * Marks a custom stage whose {@code onEvent(ChangeEventDTO)} only touches the event it is given and state that is
+ * immutable after {@code init()} or safe for concurrent use, so that {@link ParallelStageHandler} may call it from
+ * several worker threads at once.
+ */
+public interface ThreadSafeStage {
+}
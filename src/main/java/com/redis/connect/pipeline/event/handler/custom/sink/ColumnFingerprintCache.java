@@ -0,0 +1,130 @@
+package com.redis.connect.pipeline.event.handler.custom.sink;
+
+import com.redis.connect.pipeline.event.handler.custom.fingerprint.ValueFingerprint;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the {@link ValueFingerprint}s of the columns last written for up to {@code maxDocuments} keys, least
+ * recently written first out, to tell which columns an update changed. Column names are held once per table, in the
+ * order they were first seen, and each document keeps a {@code long[]} in that order. Not thread safe.
+ */
+final class ColumnFingerprintCache {
+
+    private final int maxDocuments;
+    private final Map<String, TableColumns> tables = new HashMap<>();
+    private final LinkedHashMap<String, long[]> documents;
+    // Changed columns of the last diff
+    private TableColumns lastColumns;
+    private int[] changed = new int[16];
+
+    ColumnFingerprintCache(int maxDocuments) {
+        this.maxDocuments = maxDocuments;
+        this.documents = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+                return size() > ColumnFingerprintCache.this.maxDocuments;
+            }
+        };
+    }
+
+    /**
+     * Compares the row with the last one written for the key and remembers the row.
+     *
+     * @return the number of changed columns, see {@link #changedPath(int)}, or -1 when the key is unknown or a column
+     * was removed from the row, which only a full write reflects
+     */
+    int diff(String table, String key, Map<String, Object> values) {
+        TableColumns columns = tables.computeIfAbsent(table, name -> new TableColumns());
+        columns.addAll(values);
+
+        long[] previous = documents.get(key);
+        long[] current = fingerprints(columns, values);
+        documents.put(key, current);
+        lastColumns = columns;
+        if (previous == null)
+            return -1;
+
+        int count = 0;
+        for (int i = 0; i < current.length; i++) {
+            long before = i < previous.length ? previous[i] : ValueFingerprint.ABSENT;
+            if (before == current[i])
+                continue;
+            if (current[i] == ValueFingerprint.ABSENT)
+                return -1;
+            if (count == changed.length)
+                changed = Arrays.copyOf(changed, count * 2);
+            changed[count++] = i;
+        }
+        return count;
+    }
+
+    /**
+     * @return the JSONPath of the {@code i}-th changed column of the last {@link #diff}
+     */
+    String changedPath(int i) {
+        return lastColumns.paths[changed[i]];
+    }
+
+    /**
+     * @return the name of the {@code i}-th changed column of the last {@link #diff}
+     */
+    String changedColumn(int i) {
+        return lastColumns.names[changed[i]];
+    }
+
+    void remember(String table, String key, Map<String, Object> values) {
+        TableColumns columns = tables.computeIfAbsent(table, name -> new TableColumns());
+        columns.addAll(values);
+        documents.put(key, fingerprints(columns, values));
+    }
+
+    void forget(String key) {
+        documents.remove(key);
+    }
+
+    void clear() {
+        documents.clear();
+    }
+
+    int size() {
+        return documents.size();
+    }
+
+    private static long[] fingerprints(TableColumns columns, Map<String, Object> values) {
+        long[] fingerprints = new long[columns.names.length];
+        for (int i = 0; i < fingerprints.length; i++) {
+            Object value = values.get(columns.names[i]);
+            fingerprints[i] = value == null && !values.containsKey(columns.names[i]) ? ValueFingerprint.ABSENT : ValueFingerprint.of(value);
+        }
+        return fingerprints;
+    }
+
+    private static final class TableColumns {
+
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private String[] names = new String[0];
+        private String[] paths = new String[0];
+
+        private void addAll(Map<String, Object> values) {
+            if (values.size() <= names.length && indexes.keySet().containsAll(values.keySet()))
+                return;
+            for (String name : values.keySet()) {
+                if (indexes.containsKey(name))
+                    continue;
+                indexes.put(name, names.length);
+                names = Arrays.copyOf(names, names.length + 1);
+                paths = Arrays.copyOf(paths, paths.length + 1);
+                names[names.length - 1] = name;
+                paths[paths.length - 1] = path(name);
+            }
+        }
+
+        private static String path(String name) {
+            return RedisJsonWriter.ROOT + "['" + name.replace("\\", "\\\\").replace("'", "\\'") + "']";
+        }
+    }
+
+}
@@ -0,0 +1,286 @@
+package com.redis.connect.pipeline.event.handler.custom.sink;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.exception.InvalidChangeEventException;
+import io.lettuce.core.RedisFuture;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.redis.connect.constants.DomainConstants.CHANGE_EVENT_DTO_OPERATION_CREATE;
+import static com.redis.connect.constants.DomainConstants.CHANGE_EVENT_DTO_OPERATION_DELETE;
+
+/**
+ * Turns change events into RedisJSON writes queued on a {@link RedisJsonWriter}, grouped in {@link Batch}es that are
+ * awaited together, and keeps the column fingerprints partial updates are based on. Not thread safe.
+ */
+public class JsonDocumentWrites {
+
+    private static final String instanceId = ManagementFactory.getRuntimeMXBean().getName();
+    private static final Logger LOGGER = LoggerFactory.getLogger("redis-connect");
+
+    /** Returned by {@link #await} when every write of the batch succeeded. */
+    public static final long NONE = Long.MIN_VALUE;
+
+    public enum UpdateMode {
+        /** Changed columns only, when there are few enough of them. */
+        PARTIAL,
+        /** {@code JSON.MERGE} of the event values. */
+        MERGE,
+        /** The whole document. */
+        FULL
+    }
+
+    private final RedisJsonWriter writer;
+    private final ObjectMapper mapper;
+    private final String keyPrefix;
+    private final UpdateMode updateMode;
+    private final int partialMaxColumns;
+    private final ColumnFingerprintCache fingerprints;
+
+    private long documentsSet;
+    private long partialUpdates;
+    private long columnsSet;
+    private long merged;
+    private long deleted;
+    private long unchanged;
+    private long fallbacks;
+
+    public JsonDocumentWrites(RedisJsonWriter writer, ObjectMapper mapper, String keyPrefix, UpdateMode updateMode, int partialMaxColumns, int partialCacheSize) {
+        this.writer = writer;
+        this.mapper = mapper;
+        this.keyPrefix = keyPrefix;
+        this.updateMode = updateMode;
+        this.partialMaxColumns = partialMaxColumns;
+        this.fingerprints = updateMode == UpdateMode.PARTIAL ? new ColumnFingerprintCache(partialCacheSize) : null;
+    }
+
+    public Batch newBatch() {
+        return new Batch();
+    }
+
+    /**
+     * Queues the writes of a change event, they are sent on the next {@link RedisJsonWriter#flush()}.
+     *
+     * @param sequence ring buffer sequence of the event, reported by {@link #await} when one of its writes fails
+     */
+    public void queue(Batch batch, ChangeEventDTO changeEvent, long sequence) throws JsonProcessingException {
+        batch.add(sequence);
+
+        if (changeEvent.getKey() == null) {
+            LOGGER.warn("Instance: {} RedisJsonWriter skipped change event without key, schemaAndTableName: {}, operation: {}", instanceId, changeEvent.getSchemaAndTableName(), changeEvent.getOperation());
+            return;
+        }
+        String key = keyPrefix + changeEvent.getKey();
+        String operation = changeEvent.getOperation();
+        Map<String, Object> values = changeEvent.getValues() != null ? changeEvent.getValues() : Collections.emptyMap();
+
+        if (CHANGE_EVENT_DTO_OPERATION_DELETE.equals(operation)) {
+            if (fingerprints != null)
+                fingerprints.forget(key);
+            batch.writes.add(new Write(writer.del(key), key, sequence, null));
+            deleted++;
+            return;
+        }
+
+        if (CHANGE_EVENT_DTO_OPERATION_CREATE.equals(operation) || updateMode == UpdateMode.FULL) {
+            if (fingerprints != null)
+                fingerprints.remember(changeEvent.getSchemaAndTableName(), key, values);
+            setDocument(batch, key, sequence, values);
+            return;
+        }
+
+        if (updateMode == UpdateMode.MERGE) {
+            batch.writes.add(new Write(writer.merge(key, RedisJsonWriter.ROOT, mapper.writeValueAsString(values)), key, sequence, null));
+            merged++;
+            return;
+        }
+
+        int changed = fingerprints.diff(changeEvent.getSchemaAndTableName(), key, values);
+        if (changed == 0) {
+            unchanged++;
+        } else if (changed < 0 || changed > partialMaxColumns) {
+            setDocument(batch, key, sequence, values);
+        } else {
+            for (int i = 0; i < changed; i++) {
+                String json = mapper.writeValueAsString(values.get(fingerprints.changedColumn(i)));
+                batch.writes.add(new Write(writer.set(key, fingerprints.changedPath(i), json), key, sequence, values));
+            }
+            partialUpdates++;
+            columnsSet += changed;
+        }
+    }
+
+    private void setDocument(Batch batch, String key, long sequence, Map<String, Object> values) throws JsonProcessingException {
+        batch.writes.add(new Write(writer.set(key, RedisJsonWriter.ROOT, mapper.writeValueAsString(values)), key, sequence, null));
+        documentsSet++;
+    }
+
+    /**
+     * Waits for the writes of a sent batch. A partial update that failed, because the document is not in Redis
+     * anymore, is written again as a whole document unless a later write of the batch replaced or deleted it, or
+     * {@code next} writes the document too: its writes are queued on the connection before the retry and the retry
+     * would overwrite them. A write of {@code next} that still depends on the missing document fails and is retried
+     * in turn, with its own, newer values.
+     *
+     * @param next the batch queued after {@code batch}, sent or not
+     * @return the sequence of the first event whose writes failed, with the failure in {@link Batch#getFailure()},
+     * or {@link #NONE}
+     */
+    public long await(Batch batch, Batch next, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        List<Write> failedPartials = null;
+
+        for (Write write : batch.writes) {
+            Exception failure = await(write.future, deadline);
+            if (failure == null)
+                continue;
+            if (write.partialValues == null || failure instanceof TimeoutException)
+                return fail(batch, failedPartials != null ? failedPartials.get(0) : write, failure);
+            if (failedPartials == null)
+                failedPartials = new ArrayList<>();
+            failedPartials.add(write);
+        }
+
+        if (failedPartials == null)
+            return NONE;
+
+        List<Write> retries = retries(batch, next, failedPartials);
+        writer.flush();
+        for (Write retry : retries) {
+            Exception failure = await(retry.future, deadline);
+            if (failure != null)
+                return fail(batch, failedPartials.get(0), failure);
+        }
+        return NONE;
+    }
+
+    private List<Write> retries(Batch batch, Batch next, List<Write> failedPartials) {
+        Set<String> replaced = new HashSet<>();
+        for (Write write : batch.writes) {
+            if (write.partialValues == null)
+                replaced.add(write.key);
+        }
+        Set<String> writtenNext = new HashSet<>();
+        if (next != null) {
+            for (Write write : next.writes)
+                writtenNext.add(write.key);
+        }
+
+        // The last failed event of a document holds all of its columns, earlier ones need no write of their own
+        List<Write> retries = new ArrayList<>();
+        Set<String> retried = new HashSet<>();
+        for (int i = failedPartials.size() - 1; i >= 0; i--) {
+            Write failed = failedPartials.get(i);
+            if (isReplacedLater(batch, failed, replaced) || writtenNext.contains(failed.key) || !retried.add(failed.key))
+                continue;
+            try {
+                retries.add(new Write(writer.set(failed.key, RedisJsonWriter.ROOT, mapper.writeValueAsString(failed.partialValues)), failed.key, failed.sequence, null));
+                fallbacks++;
+            } catch (JsonProcessingException e) {
+                // Already serialized once, column by column
+                throw new IllegalStateException(e);
+            }
+        }
+        return retries;
+    }
+
+    private static boolean isReplacedLater(Batch batch, Write failed, Set<String> replaced) {
+        if (!replaced.contains(failed.key))
+            return false;
+        for (int i = batch.writes.size() - 1; i >= 0; i--) {
+            Write write = batch.writes.get(i);
+            if (write == failed)
+                return false;
+            if (write.partialValues == null && write.key.equals(failed.key))
+                return true;
+        }
+        return false;
+    }
+
+    private static Exception await(RedisFuture<?> future, long deadline) throws InterruptedException {
+        try {
+            future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause() instanceof Exception cause ? cause : e;
+        } catch (TimeoutException e) {
+            return e;
+        }
+    }
+
+    private long fail(Batch batch, Write write, Exception failure) {
+        // Writes after the failed one may or may not have been applied, the events are written again in full
+        if (fingerprints != null)
+            fingerprints.clear();
+        batch.failure = new InvalidChangeEventException(failure, "Failed to write JSON document " + write.key);
+        LOGGER.error("Instance: {} RedisJsonWriter failed to write JSON document {} at sequence {}", instanceId, write.key, write.sequence, failure);
+        return write.sequence;
+    }
+
+    @Override
+    public String toString() {
+        return "documentsSet=" + documentsSet + ", partialUpdates=" + partialUpdates + ", columnsSet=" + columnsSet
+                + ", merged=" + merged + ", deleted=" + deleted + ", unchanged=" + unchanged + ", fallbacks=" + fallbacks
+                + (fingerprints != null ? ", cachedDocuments=" + fingerprints.size() : "");
+    }
+
+    private record Write(RedisFuture<?> future, String key, long sequence, Map<String, Object> partialValues) {
+    }
+
+    /**
+     * Writes sent, or to be sent, together. {@link #size()} counts events, including those that needed no write.
+     */
+    public static class Batch {
+
+        private final List<Write> writes = new ArrayList<>();
+        private int events;
+        private long startNanos;
+        private long lastSequence = -1;
+        private Exception failure;
+
+        private Batch() {
+        }
+
+        private void add(long sequence) {
+            if (events++ == 0)
+                startNanos = System.nanoTime();
+            lastSequence = sequence;
+        }
+
+        public int size() {
+            return events;
+        }
+
+        public boolean isEmpty() {
+            return events == 0;
+        }
+
+        /**
+         * @return nanoseconds since the first event was queued
+         */
+        public long age() {
+            return events == 0 ? 0 : System.nanoTime() - startNanos;
+        }
+
+        public long getLastSequence() {
+            return lastSequence;
+        }
+
+        public Exception getFailure() {
+            return failure;
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.redis.connect.pipeline.event.handler.custom.sink;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.output.StatusOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.ProtocolKeyword;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pipelines RedisJSON writes over a dedicated lettuce connection: commands are queued without being sent until
+ * {@link #flush()}, so a micro-batch of documents costs one write to the socket and about one round trip instead of
+ * one per document. Replies complete the returned futures in command order.
+ * <p>
+ * lettuce has no RedisJSON API, {@code JSON.SET} and {@code JSON.MERGE} are dispatched as custom commands
+ * ({@code JSON.MERGE} requires RedisJSON 2.6). Not thread safe, commands must be queued and flushed by one thread.
+ */
+public class RedisJsonWriter implements AutoCloseable {
+
+    public static final String ROOT = "$";
+
+    private enum JsonCommand implements ProtocolKeyword {
+        SET("JSON.SET"), MERGE("JSON.MERGE");
+
+        private final byte[] bytes;
+
+        JsonCommand(String name) {
+            this.bytes = name.getBytes(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public byte[] getBytes() {
+            return bytes;
+        }
+    }
+
+    private final RedisClient redisClient;
+    private final StatefulRedisConnection<String, String> connection;
+    private final RedisAsyncCommands<String, String> commands;
+
+    public RedisJsonWriter(String redisUrl) {
+        this.redisClient = RedisClient.create(redisUrl);
+        this.connection = redisClient.connect();
+        this.connection.setAutoFlushCommands(false);
+        this.commands = connection.async();
+    }
+
+    /**
+     * {@code JSON.SET key path json}, fails when {@code path} is not the root and the document does not exist.
+     */
+    public RedisFuture<String> set(String key, String path, String json) {
+        return commands.dispatch(JsonCommand.SET, new StatusOutput<>(StringCodec.UTF8),
+                new CommandArgs<>(StringCodec.UTF8).addKey(key).add(path).add(json));
+    }
+
+    /**
+     * {@code JSON.MERGE key path json}, RFC 7396 merge: members set to {@code null} are removed.
+     */
+    public RedisFuture<String> merge(String key, String path, String json) {
+        return commands.dispatch(JsonCommand.MERGE, new StatusOutput<>(StringCodec.UTF8),
+                new CommandArgs<>(StringCodec.UTF8).addKey(key).add(path).add(json));
+    }
+
+    public RedisFuture<Long> del(String key) {
+        return commands.del(key);
+    }
+
+    /**
+     * Sends every queued command.
+     */
+    public void flush() {
+        connection.flushCommands();
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+        redisClient.shutdown();
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.redis.connect.pipeline.event.handler.custom.transform;
+
+import java.util.Map;
+
+/**
+ * A compiled {@code <column> : <transform> [| <transform>]*} rule, e.g. {@code NAME : trim | upper}. The column is read
+ * once, passed through every {@link ValueTransform} in order and written back, under a new name after
+ * {@code rename(...)}. {@code drop} removes the column.
+ * <p>
+ * A column missing from the values is only created when a transform, typically {@code default(...)}, produces a value
+ * for it.
+ */
+public final class ColumnTransform {
+
+    private static final ValueTransform[] NO_TRANSFORMS = new ValueTransform[0];
+
+    private final String expression;
+    private final String column;
+    private final ValueTransform[] transforms;
+    private final String targetColumn;
+    private final boolean drop;
+
+    ColumnTransform(String expression, String column, ValueTransform[] transforms, String targetColumn, boolean drop) {
+        this.expression = expression;
+        this.column = column;
+        this.transforms = transforms;
+        this.targetColumn = targetColumn;
+        this.drop = drop;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the rule is malformed
+     */
+    public static ColumnTransform compile(String rule) {
+        return ColumnTransformCompiler.compile(rule);
+    }
+
+    static ColumnTransform drop(String expression, String column) {
+        return new ColumnTransform(expression, column, NO_TRANSFORMS, column, true);
+    }
+
+    public void apply(Map<String, Object> values) {
+        if (drop) {
+            values.remove(column);
+            return;
+        }
+
+        Object original = values.get(column);
+        Object value = original;
+        for (ValueTransform transform : transforms)
+            value = transform.apply(value);
+
+        boolean present = original != null || values.containsKey(column);
+        if (targetColumn != column) {
+            if (present)
+                values.remove(column);
+            if (present || value != null)
+                values.put(targetColumn, value);
+        } else if (value != original) {
+            values.put(column, value);
+        }
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+}
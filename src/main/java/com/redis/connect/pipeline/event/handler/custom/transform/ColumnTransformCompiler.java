@@ -0,0 +1,276 @@
+package com.redis.connect.pipeline.event.handler.custom.transform;
+
+import com.redis.connect.pipeline.event.handler.custom.filter.NumericValues;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiles a column transform rule into a {@link ColumnTransform}.
+ * <pre>
+ * rule      := column ':' transform ( '|' transform )*
+ * transform := UPPER | LOWER | TRIM
+ *            | SUBSTRING '(' begin [ ',' end ] ')'
+ *            | REPLACE '(' 'regex' ',' 'replacement' ')'
+ *            | CAST '(' STRING | INT | LONG | DOUBLE | DECIMAL | BOOLEAN ')'
+ *            | DEFAULT '(' literal ')'
+ *            | RENAME '(' column ')'
+ *            | DROP
+ * </pre>
+ * Transform names are case-insensitive, column names may be double quoted and string literals are single quoted with
+ * {@code ''} as escape. {@code rename} and {@code drop} must come last. Regular expressions are compiled here, once;
+ * {@code substring} clamps its bounds to the length of the value, every transform but {@code default} passes
+ * {@code null} through and text transforms leave non-text values unchanged.
+ */
+final class ColumnTransformCompiler {
+
+    private final String rule;
+    private final List<String> tokens;
+    private int position;
+
+    private ColumnTransformCompiler(String rule) {
+        this.rule = rule;
+        this.tokens = tokenize(rule);
+    }
+
+    static ColumnTransform compile(String rule) {
+        return new ColumnTransformCompiler(rule).parseRule();
+    }
+
+    private ColumnTransform parseRule() {
+        String column = parseColumn();
+        expect(":");
+
+        List<ValueTransform> transforms = new ArrayList<>();
+        String targetColumn = column;
+        do {
+            if (targetColumn != column)
+                throw error("rename must be the last transform");
+
+            String name = next("transform").toUpperCase(Locale.ROOT);
+            switch (name) {
+                case "UPPER" -> transforms.add(ValueTransform.UPPER);
+                case "LOWER" -> transforms.add(ValueTransform.LOWER);
+                case "TRIM" -> transforms.add(ValueTransform.TRIM);
+                case "SUBSTRING" -> transforms.add(parseSubstring());
+                case "REPLACE" -> transforms.add(parseReplace());
+                case "CAST" -> transforms.add(parseCast());
+                case "DEFAULT" -> transforms.add(parseDefault());
+                case "RENAME" -> {
+                    expect("(");
+                    targetColumn = parseColumn();
+                    expect(")");
+                }
+                case "DROP" -> {
+                    if (!transforms.isEmpty() || position != tokens.size())
+                        throw error("drop cannot be combined with other transforms");
+                    return ColumnTransform.drop(rule, column);
+                }
+                default -> throw error("unknown transform " + name);
+            }
+        } while (accept("|"));
+
+        if (position != tokens.size())
+            throw error("unexpected token '" + tokens.get(position) + "'");
+        return new ColumnTransform(rule, column, transforms.toArray(new ValueTransform[0]), targetColumn, false);
+    }
+
+    private ValueTransform parseSubstring() {
+        expect("(");
+        int begin = parseIndex();
+        int end = accept(",") ? parseIndex() : Integer.MAX_VALUE;
+        expect(")");
+        if (end < begin)
+            throw error("substring end " + end + " is before its begin " + begin);
+
+        return value -> {
+            if (!(value instanceof CharSequence text))
+                return value;
+            int length = text.length();
+            if (begin == 0 && end >= length)
+                return value;
+            return text.subSequence(Math.min(begin, length), Math.min(end, length)).toString();
+        };
+    }
+
+    private ValueTransform parseReplace() {
+        expect("(");
+        String regex = parseString();
+        expect(",");
+        String replacement = parseString();
+        expect(")");
+
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            throw error("invalid regular expression: " + e.getDescription());
+        }
+        return value -> value instanceof CharSequence text ? pattern.matcher(text).replaceAll(replacement) : value;
+    }
+
+    private ValueTransform parseCast() {
+        expect("(");
+        String type = next("cast type").toUpperCase(Locale.ROOT);
+        expect(")");
+
+        return switch (type) {
+            case "STRING" -> value -> value == null || value instanceof String ? value : String.valueOf(value);
+            case "INT" -> value -> value == null || value instanceof Integer ? value : toDecimal(value).intValueExact();
+            case "LONG" -> value -> value == null || value instanceof Long ? value : toDecimal(value).longValueExact();
+            case "DOUBLE" -> value -> {
+                if (value == null || value instanceof Double)
+                    return value;
+                double number = NumericValues.toDouble(value);
+                if (Double.isNaN(number))
+                    throw new IllegalArgumentException("Cannot cast " + value + " to DOUBLE");
+                return number;
+            };
+            case "DECIMAL" -> value -> value == null || value instanceof BigDecimal ? value : toDecimal(value);
+            case "BOOLEAN" -> value -> {
+                if (value == null || value instanceof Boolean)
+                    return value;
+                if (value instanceof Number number)
+                    return number.doubleValue() != 0;
+                String text = value.toString().strip();
+                if (text.equalsIgnoreCase("true") || text.equalsIgnoreCase("Y") || text.equals("1"))
+                    return Boolean.TRUE;
+                if (text.equalsIgnoreCase("false") || text.equalsIgnoreCase("N") || text.equals("0"))
+                    return Boolean.FALSE;
+                throw new IllegalArgumentException("Cannot cast " + value + " to BOOLEAN");
+            };
+            default -> throw error("unknown cast type " + type);
+        };
+    }
+
+    private static BigDecimal toDecimal(Object value) {
+        if (value instanceof BigDecimal decimal)
+            return decimal;
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+            return BigDecimal.valueOf(((Number) value).longValue());
+        if (value instanceof Number number)
+            return new BigDecimal(number.toString());
+        if (value instanceof Boolean bool)
+            return bool ? BigDecimal.ONE : BigDecimal.ZERO;
+        try {
+            return new BigDecimal(value.toString().strip());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cannot cast " + value + " to a number", e);
+        }
+    }
+
+    private ValueTransform parseDefault() {
+        expect("(");
+        String token = next("default value");
+        expect(")");
+
+        Object defaultValue;
+        if (token.startsWith("'")) {
+            defaultValue = unquote(token);
+        } else {
+            try {
+                defaultValue = token.indexOf('.') < 0 ? (Object) Long.parseLong(token) : new BigDecimal(token);
+            } catch (NumberFormatException e) {
+                throw error("expected a number or a quoted string but found '" + token + "'");
+            }
+        }
+        return value -> value == null ? defaultValue : value;
+    }
+
+    private String parseColumn() {
+        String token = next("column name");
+        if (token.startsWith("\""))
+            return token.substring(1, token.length() - 1).intern();
+        if (token.startsWith("'") || token.length() == 1 && ":|(),".indexOf(token.charAt(0)) >= 0)
+            throw error("expected a column name but found '" + token + "'");
+        return token.intern();
+    }
+
+    private String parseString() {
+        String token = next("quoted string");
+        if (!token.startsWith("'"))
+            throw error("expected a quoted string but found '" + token + "'");
+        return unquote(token);
+    }
+
+    private int parseIndex() {
+        String token = next("index");
+        try {
+            int index = Integer.parseInt(token);
+            if (index < 0)
+                throw error("negative index " + index);
+            return index;
+        } catch (NumberFormatException e) {
+            throw error("expected an index but found '" + token + "'");
+        }
+    }
+
+    private static String unquote(String token) {
+        return token.substring(1, token.length() - 1).replace("''", "'");
+    }
+
+    private boolean accept(String token) {
+        if (position < tokens.size() && tokens.get(position).equals(token)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) {
+        if (!accept(token))
+            throw error("expected '" + token + "'");
+    }
+
+    private String next(String expected) {
+        if (position >= tokens.size())
+            throw error("expected " + expected + " but reached the end of the rule");
+        return tokens.get(position++);
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Invalid column transform [" + rule + "]: " + message);
+    }
+
+    private static List<String> tokenize(String rule) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < rule.length()) {
+            char c = rule.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'' || c == '"') {
+                int end = i + 1;
+                while (true) {
+                    if (end >= rule.length())
+                        throw new IllegalArgumentException("Invalid column transform [" + rule + "]: unterminated quote");
+                    if (rule.charAt(end) == c) {
+                        // '' escapes a quote inside a string literal
+                        if (c == '\'' && end + 1 < rule.length() && rule.charAt(end + 1) == '\'') {
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                tokens.add(rule.substring(i, end + 1));
+                i = end + 1;
+            } else if (":|(),".indexOf(c) >= 0) {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else {
+                int end = i;
+                while (end < rule.length() && !Character.isWhitespace(rule.charAt(end)) && ":|(),'\"".indexOf(rule.charAt(end)) < 0)
+                    end++;
+                tokens.add(rule.substring(i, end));
+                i = end;
+            }
+        }
+        return tokens;
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.redis.connect.pipeline.event.handler.custom.transform;
+
+import com.redis.connect.exception.ValidationException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Ordered, per-table column transforms compiled from stage configuration entries of the form
+ * {@code <prefix><schemaAndTableName>.<order> = <column> : <transform> [| <transform>]*}. Transforms run by ascending
+ * order; transforms of the {@code *} table run for every table after its own.
+ * <p>
+ * Every table resolves to a flat array of {@link ColumnTransform}s with interned column names, so applying the set
+ * costs one map lookup plus the transforms themselves. A table without transforms pays the lookup only.
+ */
+public final class ColumnTransformSet {
+
+    public static final String ALL_TABLES = "*";
+
+    private static final ColumnTransform[] NO_TRANSFORMS = new ColumnTransform[0];
+
+    private final Map<String, ColumnTransform[]> transformsByTable;
+    private final ColumnTransform[] defaultTransforms;
+
+    private ColumnTransformSet(Map<String, ColumnTransform[]> transformsByTable, ColumnTransform[] defaultTransforms) {
+        this.transformsByTable = transformsByTable;
+        this.defaultTransforms = defaultTransforms;
+    }
+
+    public static ColumnTransformSet compile(Map<String, String> properties, String prefix) throws ValidationException {
+        Map<String, TreeMap<Integer, ColumnTransform>> transforms = new HashMap<>();
+
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith(prefix) || entry.getValue() == null || entry.getValue().isBlank())
+                continue;
+
+            String schemaAndTableName = key.substring(prefix.length());
+            int order = 0;
+            int lastDot = schemaAndTableName.lastIndexOf('.');
+            if (lastDot > 0 && isDigits(schemaAndTableName, lastDot + 1)) {
+                order = Integer.parseInt(schemaAndTableName.substring(lastDot + 1));
+                schemaAndTableName = schemaAndTableName.substring(0, lastDot);
+            }
+
+            ColumnTransform transform;
+            try {
+                transform = ColumnTransform.compile(entry.getValue());
+            } catch (IllegalArgumentException e) {
+                throw new ValidationException(e, key + " is not a valid column transform: " + e.getMessage());
+            }
+            if (transforms.computeIfAbsent(schemaAndTableName, table -> new TreeMap<>()).put(order, transform) != null)
+                throw new ValidationException("Duplicate column transform order " + order + " for table " + schemaAndTableName);
+        }
+
+        return of(transforms);
+    }
+
+    /**
+     * Builds a transform set from transforms already in order, keyed by table or {@link #ALL_TABLES}.
+     */
+    public static ColumnTransformSet of(Map<String, ? extends Map<Integer, ColumnTransform>> transforms) {
+        List<ColumnTransform> wildcardTransforms = transforms.containsKey(ALL_TABLES) ? List.copyOf(transforms.get(ALL_TABLES).values()) : List.of();
+
+        Map<String, ColumnTransform[]> transformsByTable = new HashMap<>();
+        for (Map.Entry<String, ? extends Map<Integer, ColumnTransform>> entry : transforms.entrySet()) {
+            if (ALL_TABLES.equals(entry.getKey()))
+                continue;
+            List<ColumnTransform> tableTransforms = new ArrayList<>(entry.getValue().values());
+            tableTransforms.addAll(wildcardTransforms);
+            transformsByTable.put(entry.getKey(), tableTransforms.toArray(NO_TRANSFORMS));
+        }
+
+        return new ColumnTransformSet(Map.copyOf(transformsByTable), wildcardTransforms.toArray(NO_TRANSFORMS));
+    }
+
+    /**
+     * Applies the transforms of the table in order.
+     */
+    public void apply(String schemaAndTableName, Map<String, Object> values) {
+        ColumnTransform[] transforms = schemaAndTableName == null ? defaultTransforms : transformsByTable.getOrDefault(schemaAndTableName, defaultTransforms);
+        for (ColumnTransform transform : transforms)
+            transform.apply(values);
+    }
+
+    public boolean isEmpty() {
+        return transformsByTable.isEmpty() && defaultTransforms.length == 0;
+    }
+
+    @Override
+    public String toString() {
+        Map<String, List<ColumnTransform>> description = new TreeMap<>();
+        transformsByTable.forEach((table, transforms) -> description.put(table, List.of(transforms)));
+        if (defaultTransforms.length > 0)
+            description.put(ALL_TABLES, List.of(defaultTransforms));
+        return description.toString();
+    }
+
+    private static boolean isDigits(String text, int start) {
+        if (start >= text.length() || text.length() - start > 9)
+            return false;
+        for (int i = start; i < text.length(); i++) {
+            if (!Character.isDigit(text.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.redis.connect.pipeline.event.handler.custom.transform;
+
+import java.util.Locale;
+
+/**
+ * One step of a compiled column transform. Implementations are stateless, receive {@code null} for missing or null
+ * columns and return the new value of the column.
+ */
+@FunctionalInterface
+public interface ValueTransform {
+
+    ValueTransform UPPER = value -> value instanceof CharSequence text ? text.toString().toUpperCase(Locale.ROOT) : value;
+
+    ValueTransform LOWER = value -> value instanceof CharSequence text ? text.toString().toLowerCase(Locale.ROOT) : value;
+
+    ValueTransform TRIM = value -> value instanceof CharSequence text ? text.toString().strip() : value;
+
+    Object apply(Object value);
+
+}
@@ -0,0 +1,75 @@
+package com.redis.connect.pipeline.event.handler.custom.coerce;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TypeCoercionTest {
+
+    private static final String TABLE = "CHINOOK.TRACK";
+
+    @Test
+    void inferredLongWidensToDecimalAtTheFirstFraction() throws Exception {
+        TypeCoercion coercion = new TypeCoercion(Map.of(), 16);
+
+        assertEquals(3L, coerce(coercion, 3).get("UNITPRICE"));
+        assertEquals(new BigDecimal("0.99"), coerce(coercion, 0.99d).get("UNITPRICE"));
+        assertEquals(new BigDecimal("3"), coerce(coercion, 3L).get("UNITPRICE"));
+        assertEquals(LogicalType.DECIMAL, coercion.getTypes(TABLE).get("UNITPRICE"));
+    }
+
+    @Test
+    void declaredLongIsNeverWidened() throws Exception {
+        TypeCoercion coercion = new TypeCoercion(Map.of(TypeCoercion.ALL_TABLES, Map.of("UNITPRICE", LogicalType.LONG)), 16);
+
+        assertEquals(0.99d, coerce(coercion, 0.99d).get("UNITPRICE"));
+        assertEquals(LogicalType.LONG, coercion.getTypes(TABLE).get("UNITPRICE"));
+    }
+
+    @Test
+    void wideningIsNeverLostToAConcurrentWorker() throws Exception {
+        int workers = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            for (int trial = 0; trial < 5000; trial++) {
+                TypeCoercion coercion = new TypeCoercion(Map.of(), 16);
+                coerce(coercion, 1);
+
+                // One worker widens the column while the others add converters for the classes they are handed
+                CyclicBarrier start = new CyclicBarrier(workers);
+                List<Object> values = List.of(2.5d, 2L, (short) 2, new BigDecimal("2"));
+                List<Future<?>> futures = new ArrayList<>();
+                for (Object value : values) {
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        return coerce(coercion, value);
+                    }));
+                }
+                for (Future<?> future : futures)
+                    future.get();
+
+                assertEquals(LogicalType.DECIMAL, coercion.getTypes(TABLE).get("UNITPRICE"), "trial " + trial);
+                for (Object value : values)
+                    assertEquals(BigDecimal.class, coerce(coercion, value).get("UNITPRICE").getClass(), "trial " + trial + ", " + value.getClass());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Map<String, Object> coerce(TypeCoercion coercion, Object unitPrice) throws Exception {
+        Map<String, Object> values = new HashMap<>(Map.of("TRACKID", 1, "UNITPRICE", unitPrice));
+        coercion.coerce(TABLE, values);
+        return values;
+    }
+
+}
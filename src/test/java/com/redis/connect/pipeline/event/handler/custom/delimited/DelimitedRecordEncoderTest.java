@@ -0,0 +1,113 @@
+package com.redis.connect.pipeline.event.handler.custom.delimited;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import oracle.sql.TIMESTAMPTZ;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Golden-output tests: with legacy escaping, the encoder must produce exactly what the original list based
+ * {@code TransformValueToDelimitedStringStage} produced for the {@code C##RCUSER.TEST} layout.
+ */
+class DelimitedRecordEncoderTest {
+
+    private static final List<String> COLUMNS = List.of("ID", "PIECE1", "PIECE2", "PIECE3", "MODIFIED_DATE");
+    private static final String DATE_PATTERN = "MM/dd/yyyy HH:mm:ss.SSSSSS a x:00";
+    private static final String ISO_DATE = "2024-03-05T14:07:09.123456-05:00";
+    private static final String ISO_ZONED_DATE = "2024-11-03T01:30:00.000001-04:00[America/New_York]";
+
+    private final DelimitedRecordEncoder encoder = new DelimitedRecordEncoder(COLUMNS,
+            List.of(ColumnFormatter.TO_STRING, ColumnFormatter.TO_STRING, ColumnFormatter.TO_STRING, ColumnFormatter.TO_STRING,
+                    new DateTimeColumnFormatter(DATE_PATTERN)),
+            "|", "\n", true, true);
+
+    static Stream<Arguments> rows() throws Exception {
+        return Stream.of(
+                Arguments.of("plain values", row(1, "a", "b", "c", ISO_DATE)),
+                Arguments.of("comma and space inside a value", row(2, "Smith, John", "x", "y", ISO_DATE)),
+                Arguments.of("comma and other whitespace inside values", row(3, "a,\tb", "c,\nd", "e,\u000Bf,\fg,\rh", ISO_DATE)),
+                Arguments.of("comma without whitespace", row(4, "a,b", "1,000", ",", ISO_DATE)),
+                Arguments.of("trailing comma and space", row(5, "a, ", ", b", ", ", ISO_DATE)),
+                Arguments.of("null pieces", row(6, null, "b", null, ISO_DATE)),
+                Arguments.of("all pieces null", row(7, null, null, null, ISO_DATE)),
+                Arguments.of("brackets", row("[8]", "[a", "b]", "]", ISO_DATE)),
+                Arguments.of("pipe inside a value", row(9, "a|b", "", " ", ISO_DATE)),
+                Arguments.of("ISO string with zone id", row(10, "a", "b", "c", ISO_ZONED_DATE)),
+                Arguments.of("TIMESTAMPTZ", row(11, "a", "b", "c", TIMESTAMPTZ.of(ZonedDateTime.parse(ISO_DATE)))),
+                Arguments.of("TIMESTAMPTZ with zone id", row(12, "a, b", null, "c", TIMESTAMPTZ.of(ZonedDateTime.parse(ISO_ZONED_DATE))))
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("rows")
+    void matchesLegacyOutput(String description, Map<String, Object> values) throws Exception {
+        assertEquals(legacy(values), encoder.encode(values));
+    }
+
+    @Test
+    void timestampTzAndIsoStringEncodeAlike() throws Exception {
+        String fromString = encoder.encode(row(1, "a", "b", "c", ISO_DATE));
+        String fromTimestampTz = encoder.encode(row(1, "a", "b", "c", TIMESTAMPTZ.of(ZonedDateTime.parse(ISO_DATE))));
+
+        // The AM/PM marker follows the default locale, in the legacy output as well
+        assertTrue(fromString.startsWith("1|a|b|c|03/05/2024 14:07:09.123456 "), fromString);
+        assertTrue(fromString.endsWith(" -05:00|\n"), fromString);
+        assertEquals(fromString, fromTimestampTz);
+    }
+
+    @Test
+    void reusedBufferDoesNotLeakPreviousRecord() throws Exception {
+        Map<String, Object> wide = row(1, "a".repeat(1000), "b".repeat(1000), "c".repeat(1000), ISO_DATE);
+        Map<String, Object> narrow = row(2, "x", null, "z", ISO_DATE);
+
+        encoder.encode(wide);
+        assertEquals(legacy(narrow), encoder.encode(narrow));
+    }
+
+    private static Map<String, Object> row(Object id, String piece1, String piece2, String piece3, Object modifiedDate) {
+        Map<String, Object> values = new HashMap<>();
+        values.put("ID", id);
+        values.put("PIECE1", piece1);
+        values.put("PIECE2", piece2);
+        values.put("PIECE3", piece3);
+        values.put("MODIFIED_DATE", modifiedDate);
+        return values;
+    }
+
+    /**
+     * The DEV branch of the original stage for {@code C##RCUSER.TEST}, verbatim.
+     */
+    private static String legacy(Map<String, Object> keyValueAsMap) throws Exception {
+        List<Object> valueAsList = new ArrayList<>();
+        valueAsList.add(keyValueAsMap.get("ID"));
+        valueAsList.add(keyValueAsMap.get("PIECE1"));
+        valueAsList.add(keyValueAsMap.get("PIECE2"));
+        valueAsList.add(keyValueAsMap.get("PIECE3"));
+
+        Object dateObj = keyValueAsMap.get("MODIFIED_DATE");
+        if (dateObj instanceof TIMESTAMPTZ ts) {
+            dateObj = ts.toZonedDateTime().format(DateTimeFormatter.ofPattern(DATE_PATTERN));
+            valueAsList.add(dateObj);
+        } else {
+            DateTimeFormatter newFormat = DateTimeFormatter.ofPattern(DATE_PATTERN);
+            valueAsList.add(ZonedDateTime.parse(String.valueOf(dateObj)).format(newFormat));
+        }
+
+        valueAsList.add("\n");
+
+        return String.join("|", StringUtils.join(valueAsList).split(",\\s")).replaceAll("^\\[", "").replaceAll("]$", "");
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.redis.connect.pipeline.event.handler.custom.filter;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PredicateCompilerTest {
+
+    @Test
+    void numericLiteralsCompareNumerically() {
+        ValuePredicate predicate = PredicateCompiler.compile("GENREID = 2");
+
+        assertTrue(predicate.test(Map.of("GENREID", 2)));
+        assertTrue(predicate.test(Map.of("GENREID", 2.0d)));
+        assertTrue(predicate.test(Map.of("GENREID", "2.0")));
+        assertFalse(predicate.test(Map.of("GENREID", 2.7d)));
+    }
+
+    @Test
+    void comparisonAndItsNegationAreBothFalseOnANullColumn() {
+        Map<String, Object> nullGenre = new HashMap<>();
+        nullGenre.put("GENREID", null);
+
+        assertFalse(PredicateCompiler.compile("GENREID = 2").test(nullGenre));
+        assertFalse(PredicateCompiler.compile("NOT (GENREID = 2)").test(nullGenre));
+        assertFalse(PredicateCompiler.compile("NOT GENREID IN (1, 2)").test(Map.of()));
+        assertFalse(PredicateCompiler.compile("NOT (GENREID = 2 AND NAME = 'Rock')").test(Map.of("NAME", "Jazz")));
+        assertTrue(PredicateCompiler.compile("NOT (GENREID = 2)").test(Map.of("GENREID", 1)));
+    }
+
+    @Test
+    void nullTestsAreNegatedOnANullColumn() {
+        assertTrue(PredicateCompiler.compile("NOT (GENREID IS NOT NULL)").test(Map.of()));
+        assertFalse(PredicateCompiler.compile("NOT (GENREID IS NULL)").test(Map.of()));
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.redis.connect.pipeline.event.handler.custom.handoff;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HandoffWatermarksTest {
+
+    private static final String TABLE = "CHINOOK.TRACK";
+    private static final long STREAM_TIMEOUT_MILLIS = 50;
+
+    @Test
+    void changesUpToTheLoadedScnAreCovered() {
+        HandoffWatermarks watermarks = HandoffWatermarks.forLoad("covered", 16);
+        watermarks.record(TABLE, "1", 100);
+        watermarks.record(TABLE, "2", 120);
+
+        assertEquals(120, watermarks.getCutOverScn());
+        assertTrue(watermarks.covers(TABLE, "1", 100));
+        assertFalse(watermarks.covers(TABLE, "1", 101));
+        // Forgotten once the stream passed it
+        assertFalse(watermarks.covers(TABLE, "1", 90));
+        assertFalse(watermarks.covers(TABLE, "3", 1));
+        HandoffWatermarks.release("covered", watermarks);
+    }
+
+    @Test
+    void unclaimedWatermarksExpireAfterTheStreamTimeout() throws Exception {
+        HandoffWatermarks watermarks = HandoffWatermarks.forLoad("unclaimed", 16);
+        watermarks.record(TABLE, "1", 100);
+        watermarks.loadStopped("unclaimed", STREAM_TIMEOUT_MILLIS);
+
+        Thread.sleep(STREAM_TIMEOUT_MILLIS * 10);
+
+        assertNull(HandoffWatermarks.forStream("unclaimed"));
+    }
+
+    @Test
+    void claimedWatermarksOutliveTheStreamTimeout() throws Exception {
+        HandoffWatermarks watermarks = HandoffWatermarks.forLoad("claimed", 16);
+        watermarks.record(TABLE, "1", 100);
+        watermarks.loadStopped("claimed", STREAM_TIMEOUT_MILLIS);
+        assertSame(watermarks, HandoffWatermarks.forStream("claimed"));
+
+        Thread.sleep(STREAM_TIMEOUT_MILLIS * 10);
+
+        assertSame(watermarks, HandoffWatermarks.forStream("claimed"));
+        HandoffWatermarks.release("claimed", watermarks);
+    }
+
+    @Test
+    void watermarksWaitForEveryLoadPartition() throws Exception {
+        HandoffWatermarks watermarks = HandoffWatermarks.forLoad("partitioned", 16);
+        assertSame(watermarks, HandoffWatermarks.forLoad("partitioned", 16));
+        watermarks.record(TABLE, "1", 100);
+        watermarks.loadStopped("partitioned", STREAM_TIMEOUT_MILLIS);
+
+        Thread.sleep(STREAM_TIMEOUT_MILLIS * 10);
+
+        assertSame(watermarks, HandoffWatermarks.forStream("partitioned"));
+        HandoffWatermarks.release("partitioned", watermarks);
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.redis.connect.pipeline.event.handler.custom.impl;
+
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.dto.DatabaseDTO;
+import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.exception.ValidationException;
+import com.redis.connect.pipeline.event.handler.CustomChangeEventHandlerFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyCoalescingStageTest {
+
+    private long sequence;
+
+    @Test
+    void onlyTheLatestEventOfAKeySurvivesTheBatch() throws Exception {
+        KeyCoalescingStage stage = stage(Map.of());
+        ChangeEventDTO update1 = event("U", "1");
+        ChangeEventDTO update2 = event("U", "2");
+        ChangeEventDTO delete1 = event("D", "1");
+        ChangeEventDTO update2Again = event("U", "2");
+
+        batch(stage, update1, update2, delete1, update2Again);
+
+        assertFalse(update1.isValid());
+        assertFalse(update2.isValid());
+        assertTrue(delete1.isValid());
+        assertTrue(update2Again.isValid());
+    }
+
+    @Test
+    void updateOfARowInsertedInTheWindowBecomesAnInsert() throws Exception {
+        KeyCoalescingStage stage = stage(Map.of());
+        ChangeEventDTO insert = event("C", "1");
+        ChangeEventDTO update = event("U", "1");
+
+        batch(stage, insert, update);
+
+        assertFalse(insert.isValid());
+        assertTrue(update.isValid());
+        assertEquals("C", update.getOperation());
+    }
+
+    @Test
+    void windowsEndWithTheDisruptorBatch() throws Exception {
+        KeyCoalescingStage stage = stage(Map.of());
+        ChangeEventDTO first = event("U", "1");
+        ChangeEventDTO second = event("U", "1");
+
+        batch(stage, first);
+        batch(stage, second);
+
+        assertTrue(first.isValid());
+        assertTrue(second.isValid());
+    }
+
+    @Test
+    void windowEventsSplitALargeBatch() throws Exception {
+        KeyCoalescingStage stage = stage(Map.of(KeyCoalescingStage.CUSTOM_CONFIG_WINDOW_EVENTS, "2"));
+        ChangeEventDTO first = event("U", "1");
+        ChangeEventDTO second = event("U", "1");
+        ChangeEventDTO third = event("U", "1");
+
+        batch(stage, first, second, third);
+
+        assertFalse(first.isValid());
+        assertTrue(second.isValid());
+        assertTrue(third.isValid());
+    }
+
+    @Test
+    void compositeCannotContainTheStage() {
+        JobPipelineStageDTO composite = stageDefinition("COMPOSITE", Map.of(CompositeStage.CUSTOM_CONFIG_STAGES, "COALESCE_KEYS,TO_UPPER_CASE"));
+
+        assertThrows(ValidationException.class, () -> new CustomChangeEventHandlerFactory().getInstance("job", "STREAM", composite));
+    }
+
+    private void batch(KeyCoalescingStage stage, ChangeEventDTO... events) throws Exception {
+        List<ChangeEventDTO> batch = List.of(events);
+        for (int i = 0; i < batch.size(); i++)
+            stage.onEvent(batch.get(i), sequence++, i == batch.size() - 1);
+    }
+
+    private static KeyCoalescingStage stage(Map<String, String> configuration) throws Exception {
+        KeyCoalescingStage stage = new KeyCoalescingStage("job", "STREAM", stageDefinition("COALESCE_KEYS", configuration));
+        stage.init();
+        return stage;
+    }
+
+    private static JobPipelineStageDTO stageDefinition(String stageName, Map<String, String> configuration) {
+        DatabaseDTO database = new DatabaseDTO();
+        database.setCustomConfiguration(new HashMap<>(configuration));
+        JobPipelineStageDTO jobPipelineStage = new JobPipelineStageDTO();
+        jobPipelineStage.setStageName(stageName);
+        jobPipelineStage.setUserDefinedType("CUSTOM");
+        jobPipelineStage.setIndex(1);
+        jobPipelineStage.setDatabase(database);
+        return jobPipelineStage;
+    }
+
+    private static ChangeEventDTO event(String operation, String key) {
+        ChangeEventDTO changeEvent = new ChangeEventDTO();
+        changeEvent.setValid(true);
+        changeEvent.setSchemaAndTableName("CHINOOK.TRACK");
+        changeEvent.setOperation(operation);
+        changeEvent.setKey(key);
+        changeEvent.setValues(new HashMap<>(Map.of("TRACKID", key)));
+        return changeEvent;
+    }
+
+}
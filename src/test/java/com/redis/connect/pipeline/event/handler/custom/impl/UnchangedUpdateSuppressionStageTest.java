@@ -0,0 +1,153 @@
+package com.redis.connect.pipeline.event.handler.custom.impl;
+
+import com.redis.connect.dto.ChangeEventDTO;
+import com.redis.connect.dto.DatabaseDTO;
+import com.redis.connect.dto.JobPipelineStageDTO;
+import com.redis.connect.exception.ValidationException;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UnchangedUpdateSuppressionStageTest {
+
+    private UnchangedUpdateSuppressionStage suppress;
+    private UnchangedUpdateSuppressionStage commit;
+    private long sequence;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        suppress = stage("SUPPRESS", 1);
+        commit = stage("COMMIT", 3);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        suppress.shutdown();
+        commit.shutdown();
+    }
+
+    @Test
+    void updateToTheValuesTheTargetHoldsIsSuppressed() throws Exception {
+        written(event("C", "AC/DC"));
+
+        ChangeEventDTO update = event("U", "AC/DC");
+        suppress.onEvent(update, sequence++, true);
+
+        assertFalse(update.isValid());
+    }
+
+    @Test
+    void updateReplayedAfterTheSinkFailedIsPassedOn() throws Exception {
+        written(event("C", "AC/DC"));
+        ChangeEventDTO update = event("U", "Accept");
+        suppress.onEvent(update, sequence++, true);
+        // The sink fails the batch, the committing stage never sees the update and the job replays it
+
+        ChangeEventDTO replayed = event("U", "Accept");
+        suppress.onEvent(replayed, sequence++, true);
+
+        assertTrue(replayed.isValid());
+    }
+
+    @Test
+    void updateDroppedByALaterStageIsNotRemembered() throws Exception {
+        written(event("C", "AC/DC"));
+        ChangeEventDTO dropped = event("U", "Accept");
+        long droppedSequence = sequence++;
+        suppress.onEvent(dropped, droppedSequence, true);
+        dropped.setValid(false);
+        commit.onEvent(dropped, droppedSequence, true);
+
+        ChangeEventDTO update = event("U", "Accept");
+        suppress.onEvent(update, sequence++, true);
+
+        assertTrue(update.isValid());
+    }
+
+    @Test
+    void updateFollowingADifferentUpdateInFlightIsPassedOn() throws Exception {
+        written(event("C", "AC/DC"));
+        suppress.onEvent(event("U", "Accept"), sequence++, false);
+
+        ChangeEventDTO revert = event("U", "AC/DC");
+        suppress.onEvent(revert, sequence++, true);
+
+        assertTrue(revert.isValid());
+    }
+
+    @Test
+    void restartForgetsEveryFingerprint() throws Exception {
+        written(event("C", "AC/DC"));
+        suppress.shutdown();
+        commit.shutdown();
+        suppress.init();
+        commit.init();
+
+        ChangeEventDTO replayed = event("U", "AC/DC");
+        suppress.onEvent(replayed, sequence++, true);
+
+        assertTrue(replayed.isValid());
+    }
+
+    @Test
+    void deleteForgetsTheRow() throws Exception {
+        written(event("C", "AC/DC"));
+        written(event("D", "AC/DC"));
+        written(event("C", "AC/DC"));
+
+        ChangeEventDTO update = event("U", "AC/DC");
+        suppress.onEvent(update, sequence++, true);
+
+        assertFalse(update.isValid());
+    }
+
+    @Test
+    void unknownModeIsRejected() {
+        UnchangedUpdateSuppressionStage stage = new UnchangedUpdateSuppressionStage("job", "STREAM",
+                stageDefinition(Map.of(UnchangedUpdateSuppressionStage.CUSTOM_CONFIG_MODE, "SINK_ACK"), 2));
+
+        assertThrows(ValidationException.class, stage::init);
+    }
+
+    private void written(ChangeEventDTO changeEvent) throws Exception {
+        long written = sequence++;
+        suppress.onEvent(changeEvent, written, true);
+        commit.onEvent(changeEvent, written, true);
+    }
+
+    private static UnchangedUpdateSuppressionStage stage(String mode, int index) throws Exception {
+        UnchangedUpdateSuppressionStage stage = new UnchangedUpdateSuppressionStage("job", "STREAM",
+                stageDefinition(Map.of(UnchangedUpdateSuppressionStage.CUSTOM_CONFIG_MODE, mode, UnchangedUpdateSuppressionStage.CUSTOM_CONFIG_PENDING_SIZE, "16",
+                        UnchangedUpdateSuppressionStage.CUSTOM_CONFIG_CACHE_SIZE, "1024"), index));
+        stage.init();
+        return stage;
+    }
+
+    private static JobPipelineStageDTO stageDefinition(Map<String, String> configuration, int index) {
+        DatabaseDTO database = new DatabaseDTO();
+        database.setCustomConfiguration(new HashMap<>(configuration));
+        JobPipelineStageDTO jobPipelineStage = new JobPipelineStageDTO();
+        jobPipelineStage.setStageName("SUPPRESS_UNCHANGED_UPDATES");
+        jobPipelineStage.setUserDefinedType("CUSTOM");
+        jobPipelineStage.setIndex(index);
+        jobPipelineStage.setDatabase(database);
+        return jobPipelineStage;
+    }
+
+    private static ChangeEventDTO event(String operation, String name) {
+        ChangeEventDTO changeEvent = new ChangeEventDTO();
+        changeEvent.setValid(true);
+        changeEvent.setSchemaAndTableName("CHINOOK.ARTIST");
+        changeEvent.setOperation(operation);
+        changeEvent.setKey("1");
+        changeEvent.setValues(new HashMap<>(Map.of("ARTISTID", 1, "NAME", name)));
+        return changeEvent;
+    }
+
+}
@@ -0,0 +1,145 @@
+package com.redis.connect.pipeline.event.handler.custom.sink;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Just enough of a RESP2 server with RedisJSON for {@link RedisJsonWriter}: {@code JSON.SET} of the root or of a
+ * top-level member, which fails when the document does not exist, and {@code DEL}. Every other command succeeds.
+ */
+final class FakeRedisJsonServer implements AutoCloseable {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final ServerSocket serverSocket;
+    private final Map<String, Map<String, Object>> documents = new ConcurrentHashMap<>();
+    private final List<String> commands = new CopyOnWriteArrayList<>();
+
+    FakeRedisJsonServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "fake-redis-json");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    String getRedisUrl() {
+        return "redis://127.0.0.1:" + serverSocket.getLocalPort();
+    }
+
+    Map<String, Object> getDocument(String key) {
+        return documents.get(key);
+    }
+
+    /**
+     * Drops a document behind the writer's back, as an eviction or a manual delete would.
+     */
+    void evict(String key) {
+        documents.remove(key);
+    }
+
+    /**
+     * @return {@code JSON.SET <key> <path>} and {@code DEL <key>} commands received so far, in order
+     */
+    List<String> getCommands() {
+        return commands;
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread connection = new Thread(() -> serve(socket), "fake-redis-json-connection");
+                connection.setDaemon(true);
+                connection.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            List<String> command;
+            while ((command = read(in)) != null)
+                out.write(execute(command).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // Connection closed by the client
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private String execute(List<String> command) throws IOException {
+        switch (command.get(0).toUpperCase()) {
+            case "HELLO" -> {
+                return "-ERR unknown command 'HELLO'\r\n";
+            }
+            case "JSON.SET" -> {
+                String key = command.get(1);
+                String path = command.get(2);
+                commands.add("JSON.SET " + key + " " + path);
+                if (path.equals(RedisJsonWriter.ROOT)) {
+                    documents.put(key, mapper.readValue(command.get(3), Map.class));
+                    return "+OK\r\n";
+                }
+                Map<String, Object> document = documents.get(key);
+                if (document == null)
+                    return "-ERR new objects must be created at the root\r\n";
+                document.put(path.substring(3, path.length() - 2), mapper.readValue(command.get(3), Object.class));
+                return "+OK\r\n";
+            }
+            case "DEL" -> {
+                commands.add("DEL " + command.get(1));
+                return ":" + (documents.remove(command.get(1)) != null ? 1 : 0) + "\r\n";
+            }
+            default -> {
+                return "+OK\r\n";
+            }
+        }
+    }
+
+    private static List<String> read(InputStream in) throws IOException {
+        String header = readLine(in);
+        if (header == null)
+            return null;
+        int count = Integer.parseInt(header.substring(1));
+        List<String> command = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = Integer.parseInt(readLine(in).substring(1));
+            byte[] bytes = in.readNBytes(length + 2);
+            command.add(new String(bytes, 0, length, StandardCharsets.UTF_8));
+        }
+        return command;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0)
+                return null;
+            if (c != '\r')
+                line.append((char) c);
+        }
+        return line.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+}
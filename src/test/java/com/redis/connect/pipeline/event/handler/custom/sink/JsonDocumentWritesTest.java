@@ -0,0 +1,124 @@
+package com.redis.connect.pipeline.event.handler.custom.sink;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redis.connect.dto.ChangeEventDTO;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class JsonDocumentWritesTest {
+
+    private static final String KEY = "track:1";
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private FakeRedisJsonServer server;
+    private RedisJsonWriter writer;
+    private JsonDocumentWrites writes;
+    private long sequence;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeRedisJsonServer();
+        writer = new RedisJsonWriter(server.getRedisUrl());
+        writes = new JsonDocumentWrites(writer, new ObjectMapper(), "track:", JsonDocumentWrites.UpdateMode.PARTIAL, 2, 1024);
+
+        JsonDocumentWrites.Batch created = send(event("C", "Balls to the Wall", 1));
+        assertEquals(JsonDocumentWrites.NONE, writes.await(created, null, TIMEOUT_MILLIS));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        writer.close();
+        server.close();
+    }
+
+    @Test
+    void changedColumnsAreSetOneByOne() throws Exception {
+        JsonDocumentWrites.Batch batch = send(event("U", "Fast As a Shark", 1));
+
+        assertEquals(JsonDocumentWrites.NONE, writes.await(batch, null, TIMEOUT_MILLIS));
+        assertEquals("JSON.SET track:1 $['NAME']", last(server.getCommands()));
+        assertEquals("Fast As a Shark", server.getDocument(KEY).get("NAME"));
+    }
+
+    @Test
+    void partialUpdateOfAnEvictedDocumentIsRetriedInFull() throws Exception {
+        server.evict(KEY);
+        JsonDocumentWrites.Batch batch = send(event("U", "Fast As a Shark", 1));
+
+        assertEquals(JsonDocumentWrites.NONE, writes.await(batch, null, TIMEOUT_MILLIS));
+        assertEquals("JSON.SET track:1 $", last(server.getCommands()));
+        assertEquals(Map.of("TRACKID", 1, "NAME", "Fast As a Shark", "GENREID", 1), server.getDocument(KEY));
+    }
+
+    @Test
+    void retryIsSupersededByAWriteOfTheSameBatch() throws Exception {
+        server.evict(KEY);
+        JsonDocumentWrites.Batch batch = writes.newBatch();
+        writes.queue(batch, event("U", "Fast As a Shark", 1), sequence++);
+        writes.queue(batch, event("D", "Fast As a Shark", 1), sequence++);
+        writer.flush();
+
+        assertEquals(JsonDocumentWrites.NONE, writes.await(batch, null, TIMEOUT_MILLIS));
+        assertEquals("DEL track:1", last(server.getCommands()));
+        assertNull(server.getDocument(KEY));
+    }
+
+    @Test
+    void retryIsSupersededByTheNextBatch() throws Exception {
+        server.evict(KEY);
+        JsonDocumentWrites.Batch batch = send(event("U", "Fast As a Shark", 1));
+        // Queued on the connection before the retry would be
+        JsonDocumentWrites.Batch next = writes.newBatch();
+        writes.queue(next, event("U", "Restless and Wild", 1), sequence++);
+
+        assertEquals(JsonDocumentWrites.NONE, writes.await(batch, next, TIMEOUT_MILLIS));
+        writer.flush();
+        assertEquals(JsonDocumentWrites.NONE, writes.await(next, null, TIMEOUT_MILLIS));
+
+        // The older values are never written over the newer ones
+        assertEquals(List.of("JSON.SET track:1 $", "JSON.SET track:1 $['NAME']", "JSON.SET track:1 $['NAME']", "JSON.SET track:1 $"), server.getCommands());
+        assertEquals("Restless and Wild", server.getDocument(KEY).get("NAME"));
+    }
+
+    @Test
+    void onlyTheLastFailedUpdateOfADocumentIsRetried() throws Exception {
+        server.evict(KEY);
+        JsonDocumentWrites.Batch batch = writes.newBatch();
+        writes.queue(batch, event("U", "Fast As a Shark", 1), sequence++);
+        writes.queue(batch, event("U", "Fast As a Shark", 2), sequence++);
+        writer.flush();
+
+        assertEquals(JsonDocumentWrites.NONE, writes.await(batch, null, TIMEOUT_MILLIS));
+        assertEquals(List.of("JSON.SET track:1 $", "JSON.SET track:1 $['NAME']", "JSON.SET track:1 $['GENREID']", "JSON.SET track:1 $"), server.getCommands());
+        assertEquals(Map.of("TRACKID", 1, "NAME", "Fast As a Shark", "GENREID", 2), server.getDocument(KEY));
+    }
+
+    private JsonDocumentWrites.Batch send(ChangeEventDTO changeEvent) throws Exception {
+        JsonDocumentWrites.Batch batch = writes.newBatch();
+        writes.queue(batch, changeEvent, sequence++);
+        writer.flush();
+        return batch;
+    }
+
+    private static String last(List<String> commands) {
+        return commands.get(commands.size() - 1);
+    }
+
+    private static ChangeEventDTO event(String operation, String name, int genreId) {
+        ChangeEventDTO changeEvent = new ChangeEventDTO();
+        changeEvent.setValid(true);
+        changeEvent.setSchemaAndTableName("CHINOOK.TRACK");
+        changeEvent.setOperation(operation);
+        changeEvent.setKey("1");
+        changeEvent.setValues(new HashMap<>(Map.of("TRACKID", 1, "NAME", name, "GENREID", genreId)));
+        return changeEvent;
+    }
+
+}